@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2016 Andriy Druk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.druk.dnssd;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pure Java name construction and parsing of {@link DNSName}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DNSNameBenchmark {
+
+    private String serviceName = "Living Room TV (2)";
+    private String escapedName = "Dr\\.\\032Pepper._http._tcp.local.";
+
+    @Benchmark
+    public String constructFullName() throws DNSSDException {
+        return DNSName.constructFullName(serviceName, "_http._tcp.", "local.");
+    }
+
+    @Benchmark
+    public List<String> splitLabels() {
+        return DNSName.splitLabels(escapedName);
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2016 Andriy Druk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.druk.dnssd;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the Handler hop every DNSSD callback takes compared to invoking the listener in place.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DispatchBenchmark {
+
+    private HandlerThread thread;
+    private Handler handler;
+    private final Runnable task = this::onCallback;
+    private final Runnable timeout = () -> { };
+    private volatile long executed;
+    private long posted;
+
+    @Setup
+    public void setup() {
+        thread = new HandlerThread("DispatchBenchmark");
+        thread.start();
+        handler = new Handler(thread.getLooper());
+    }
+
+    @TearDown
+    public void tearDown() {
+        thread.quit();
+    }
+
+    private void onCallback() {
+        executed++;
+    }
+
+    @Benchmark
+    public long direct() {
+        task.run();
+        return executed;
+    }
+
+    @Benchmark
+    public long handlerPost() {
+        handler.post(task);
+        return await(++posted);
+    }
+
+    /** The resolve and queryRecord callbacks cancel their timeout before posting. */
+    @Benchmark
+    public long handlerRemoveAndPost() {
+        handler.removeCallbacks(timeout);
+        handler.post(task);
+        return await(++posted);
+    }
+
+    private long await(long target) {
+        while (executed < target) {
+            Thread.yield();
+        }
+        return target;
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2016 Andriy Druk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.druk.dnssd;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time-to-discoverable of a registration: from {@link DNSSD#register} until a browser of the same embedded
+ * daemon finds the service on the loopback interface, with the standard mDNS schedule and in fast announce mode.
+ * Every invocation registers a new name, so each one goes through probing. Registrations stay until the end
+ * of the trial: the goodbye of a stopped one would make the browser hold new answers of the type for a second.<P>
+ *
+ * Runs against a host build of the embedded daemon, see {@code embeddedLibrary} in build.gradle.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 20)
+public class EmbeddedAnnounceBenchmark {
+
+    private static final String REG_TYPE = "_announce._tcp";
+    private static final long TIMEOUT_SECONDS = 10;
+
+    @Param({"false", "true"})
+    public boolean fastAnnounce;
+
+    private DNSSDEmbedded dnssd;
+    private DNSSDService browser;
+    private final List<DNSSDService> registrations = new ArrayList<>();
+    private int invocations;
+    private volatile String serviceName;
+    private volatile CountDownLatch found;
+
+    @Setup
+    public void setup() throws DNSSDException {
+        dnssd = new DNSSDEmbedded(new BenchmarkContext());
+        dnssd.setMulticastLockManager(new NoOpMulticastLockManager());
+        dnssd.setInterfaceAllowList("lo");
+        dnssd.setFastAnnounce(fastAnnounce);
+        dnssd.init();
+        browser = dnssd.browse(REG_TYPE, new BrowseListener() {
+            @Override
+            public void serviceFound(DNSSDService browser, int flags, int ifIndex, String name, String regType, String domain) {
+                if (name.equals(serviceName)) {
+                    found.countDown();
+                }
+            }
+
+            @Override
+            public void serviceLost(DNSSDService browser, int flags, int ifIndex, String name, String regType, String domain) {
+            }
+
+            @Override
+            public void operationFailed(DNSSDService service, int errorCode) {
+                throw new IllegalStateException("Browse failed: " + errorCode);
+            }
+        });
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (DNSSDService registration : registrations) {
+            registration.stop();
+        }
+        browser.stop();
+    }
+
+    @Setup(Level.Invocation)
+    public void prepare() {
+        serviceName = "announce-" + fastAnnounce + "-" + invocations++;
+        found = new CountDownLatch(1);
+    }
+
+    @Benchmark
+    public void registerUntilFound() throws DNSSDException, InterruptedException {
+        DNSSDService registration = dnssd.register(serviceName, REG_TYPE, 9, new RegisterListener() {
+            @Override
+            public void serviceRegistered(DNSSDRegistration registration, int flags, String name, String regType, String domain) {
+            }
+
+            @Override
+            public void operationFailed(DNSSDService service, int errorCode) {
+                throw new IllegalStateException("Register failed: " + errorCode);
+            }
+        });
+        registrations.add(registration);
+        if (!found.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            throw new IllegalStateException(serviceName + " wasn't found in " + TIMEOUT_SECONDS + " seconds");
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2016 Andriy Druk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.druk.dnssd;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time-to-all-registered of many services on the embedded daemon, registered one by one with {@link DNSSD#register}
+ * and through a single {@link DNSSDRegistrationGroup}. Every invocation registers new names and waits until the
+ * daemon has probed all of them. Secondary results report the threads alive and the heap retained while all
+ * services are registered, relative to the idle daemon.<P>
+ *
+ * Runs against a host build of the embedded daemon, see {@code embeddedLibrary} in build.gradle.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class EmbeddedRegistrationStressBenchmark {
+
+    private static final String REG_TYPE = "_stress._tcp";
+    private static final long TIMEOUT_SECONDS = 60;
+
+    @Param({"500", "2000"})
+    public int services;
+
+    @Param({"register", "group"})
+    public String api;
+
+    private DNSSDEmbedded dnssd;
+    private int invocations;
+    private int baseThreads;
+    private long baseHeap;
+    private String prefix;
+    private CountDownLatch registered;
+    private final List<DNSSDService> registrations = new ArrayList<>();
+    private DNSSDRegistrationGroup group;
+
+    /** Resources in use while all services are registered. Single shot iterations have one invocation each. */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Footprint {
+        public long threads;
+        public long heapKiB;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            threads = 0;
+            heapKiB = 0;
+        }
+    }
+
+    @Setup
+    public void setup() {
+        dnssd = new DNSSDEmbedded(new BenchmarkContext());
+        dnssd.setMulticastLockManager(new NoOpMulticastLockManager());
+        dnssd.setInterfaceAllowList("lo");
+        dnssd.setFastAnnounce(true);
+        dnssd.init();
+    }
+
+    @TearDown
+    public void tearDown() {
+        dnssd.exit();
+    }
+
+    @Setup(Level.Invocation)
+    public void prepare() {
+        prefix = "stress-" + api + "-" + invocations++ + "-";
+        registered = new CountDownLatch(services);
+        baseThreads = Thread.activeCount();
+        baseHeap = usedHeap();
+    }
+
+    @TearDown(Level.Invocation)
+    public void release(Footprint footprint) {
+        footprint.threads = Thread.activeCount() - baseThreads;
+        footprint.heapKiB = (usedHeap() - baseHeap) / 1024;
+        if (group != null) {
+            group.stop();
+            group = null;
+        }
+        for (DNSSDService registration : registrations) {
+            registration.stop();
+        }
+        registrations.clear();
+    }
+
+    @Benchmark
+    public void registerAll() throws DNSSDException, InterruptedException {
+        if (api.equals("group")) {
+            group = dnssd.createRegistrationGroup(new RegisterGroupListener() {
+                @Override
+                public void groupRegistered(DNSSDRegistrationGroup group, int registered, int failed) {
+                    if (failed != 0) {
+                        throw new IllegalStateException(failed + " services failed to register");
+                    }
+                }
+
+                @Override
+                public void serviceRegistered(DNSSDRegistration registration, int flags, String name, String regType, String domain) {
+                    registered.countDown();
+                }
+
+                @Override
+                public void operationFailed(DNSSDService service, int errorCode) {
+                    throw new IllegalStateException("Register failed: " + errorCode);
+                }
+            });
+            List<RegistrationRequest> requests = new ArrayList<>(services);
+            for (int i = 0; i < services; i++) {
+                requests.add(new RegistrationRequest(prefix + i, REG_TYPE, 9));
+            }
+            group.registerAll(requests);
+        } else {
+            RegisterListener listener = new RegisterListener() {
+                @Override
+                public void serviceRegistered(DNSSDRegistration registration, int flags, String name, String regType, String domain) {
+                    registered.countDown();
+                }
+
+                @Override
+                public void operationFailed(DNSSDService service, int errorCode) {
+                    throw new IllegalStateException("Register failed: " + errorCode);
+                }
+            };
+            for (int i = 0; i < services; i++) {
+                registrations.add(dnssd.register(prefix + i, REG_TYPE, 9, listener));
+            }
+        }
+        if (!registered.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            throw new IllegalStateException(registered.getCount() + " services weren't registered in " + TIMEOUT_SECONDS + " seconds");
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2016 Andriy Druk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.druk.dnssd;
+
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * {@link InternalDNSSD} implementation that answers every operation from memory, so benchmarks can run
+ * the Java layers without the native library. All replies are delivered from a single thread, the same
+ * way the embedded daemon delivers its callbacks.<P>
+ *
+ * Installed by {@link BenchmarkDNSSD}; touching this class first would initialize {@link InternalDNSSD}
+ * with the default implementation.
+ */
+public class SyntheticDNSSD extends InternalDNSSD {
+
+    /** Domain reported by browse results. */
+    public static final String DOMAIN = "local.";
+
+    /** Port reported by resolve results. */
+    public static final int PORT = 8080;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int FLAGS_ADD = 0x2;
+    private static final int TTL = 120;
+    private static final byte[] TXT_BYTES;
+
+    static {
+        TXTRecord txtRecord = new TXTRecord();
+        txtRecord.set("txtvers", "1");
+        txtRecord.set("path", "/index.html");
+        txtRecord.set("model", "synthetic");
+        TXT_BYTES = txtRecord.getRawBytes();
+    }
+
+    private static final ExecutorService DAEMON = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "SyntheticDNSSD");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static volatile int browseResults = 1;
+
+    /** Set number of instances reported by every browse operation. */
+    public static void setBrowseResults(int count) {
+        browseResults = count;
+    }
+
+    @Override
+    protected void _init(String lib) {
+        // Nothing to load
+    }
+
+    @Override
+    protected DNSSDService _makeBrowser(int flags, int ifIndex, final String regType, final String domain,
+                                        final InternalBrowseListener listener) {
+        final SyntheticService service = new SyntheticService();
+        final int count = browseResults;
+        for (int i = 0; i < count; i++) {
+            final byte[] serviceName = ("instance-" + i).getBytes(UTF_8);
+            final int moreComing = i < count - 1 ? MORE_COMING : 0;
+            service.post(() -> listener.serviceFound(service, FLAGS_ADD | moreComing, 1, serviceName,
+                    regType.getBytes(UTF_8), DOMAIN.getBytes(UTF_8)));
+        }
+        return service;
+    }
+
+    @Override
+    protected DNSSDService _resolve(int flags, final int ifIndex, final String serviceName, final String regType,
+                                    final String domain, final InternalResolveListener listener) {
+        final SyntheticService service = new SyntheticService();
+        service.post(() -> listener.serviceResolved(service, 0, ifIndex,
+                (serviceName + "." + regType + "." + domain).getBytes(UTF_8),
+                (serviceName + "." + DOMAIN).getBytes(UTF_8), PORT, new TXTRecord(TXT_BYTES)));
+        return service;
+    }
+
+    @Override
+    protected DNSSDRegistration _register(int flags, int ifIndex, final String serviceName, final String regType,
+                                          String domain, String host, int port, TXTRecord txtRecord,
+                                          final InternalRegisterListener listener) {
+        final SyntheticService service = new SyntheticService();
+        service.post(() -> listener.serviceRegistered(service, 0, serviceName.getBytes(UTF_8),
+                regType.getBytes(UTF_8), DOMAIN.getBytes(UTF_8)));
+        return service;
+    }
+
+    @Override
+    protected DNSSDService _createRegistrationGroup(BaseListener listener) {
+        return new SyntheticService();
+    }
+
+    @Override
+    protected DNSSDRegistration[] _registerAll(DNSSDService group, RegistrationRequest[] requests,
+                                               InternalRegisterListener[] listeners, int[] errors) {
+        DNSSDRegistration[] registrations = new DNSSDRegistration[requests.length];
+        for (int i = 0; i < requests.length; i++) {
+            RegistrationRequest request = requests[i];
+            registrations[i] = _register(request.getFlags(), request.getIfIndex(), request.getServiceName(), request.getRegType(),
+                    request.getDomain(), request.getHost(), request.getPort(), request.getTxtRecord(), listeners[i]);
+        }
+        return registrations;
+    }
+
+    @Override
+    protected DNSSDRecordRegistrar _createRecordRegistrar(RegisterRecordListener listener) throws DNSSDException {
+        throw new AppleDNSSDException(DNSSDException.UNSUPPORTED);
+    }
+
+    @Override
+    protected DNSSDService _createQueryGroup(BaseListener listener) {
+        return new SyntheticService();
+    }
+
+    @Override
+    protected DNSSDService _queryRecord(DNSSDService group, int flags, int ifIndex, String serviceName, int rrtype,
+                                        int rrclass, InternalQueryListener listener) {
+        return _queryRecord(flags, ifIndex, serviceName, rrtype, rrclass, listener);
+    }
+
+    @Override
+    protected DNSSDService _queryRecord(int flags, final int ifIndex, final String serviceName, final int rrtype,
+                                        final int rrclass, final InternalQueryListener listener) {
+        final SyntheticService service = new SyntheticService();
+        final byte[] rdata;
+        if (rrtype == NSType.A) {
+            rdata = new byte[]{10, 0, 0, (byte) (serviceName.hashCode() & 0x7F)};
+        } else if (rrtype == NSType.AAAA) {
+            rdata = new byte[16];
+            rdata[0] = (byte) 0xFE;
+            rdata[1] = (byte) 0x80;
+            rdata[15] = (byte) (serviceName.hashCode() & 0x7F);
+        } else if (rrtype == NSType.TXT) {
+            rdata = TXT_BYTES;
+        } else {
+            rdata = new byte[0];
+        }
+        service.post(() -> listener.queryAnswered(service, FLAGS_ADD, ifIndex, serviceName.getBytes(UTF_8),
+                rrtype, rrclass, rdata.clone(), TTL));
+        return service;
+    }
+
+    @Override
+    protected DNSSDService _enumerateDomains(int flags, final int ifIndex, final InternalDomainListener listener) {
+        final SyntheticService service = new SyntheticService();
+        service.post(() -> listener.domainFound(service, DEFAULT, ifIndex, DOMAIN.getBytes(UTF_8)));
+        return service;
+    }
+
+    @Override
+    protected String _constructFullName(String serviceName, String regType, String domain) {
+        return serviceName + "." + regType + "." + domain;
+    }
+
+    @Override
+    protected int _reconfirmRecord(int flags, int ifIndex, String fullName, int rrtype, int rrclass, byte[] rdata) {
+        return DNSSDException.NO_ERROR;
+    }
+
+    @Override
+    protected String _getNameForIfIndex(int ifIndex) {
+        return "lo";
+    }
+
+    @Override
+    protected int _getIfIndexForName(String ifName) {
+        return 1;
+    }
+
+    private static class SyntheticService implements DNSSDRegistration {
+
+        private volatile boolean stopped;
+
+        void post(final Runnable reply) {
+            DAEMON.execute(() -> {
+                if (!stopped) {
+                    reply.run();
+                }
+            });
+        }
+
+        @Override
+        public DNSRecord getTXTRecord() throws DNSSDException {
+            throw new AppleDNSSDException(DNSSDException.UNSUPPORTED);
+        }
+
+        @Override
+        public DNSRecord addRecord(int flags, int rrType, byte[] rData, int ttl) throws DNSSDException {
+            throw new AppleDNSSDException(DNSSDException.UNSUPPORTED);
+        }
+
+        @Override
+        public List<RecordResult> applyRecords(List<RecordOperation> operations) throws DNSSDException {
+            throw new AppleDNSSDException(DNSSDException.UNSUPPORTED);
+        }
+
+        @Override
+        public void stop() {
+            stopped = true;
+        }
+    }
+}
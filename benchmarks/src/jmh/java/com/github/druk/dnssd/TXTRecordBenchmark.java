@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2016 Andriy Druk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.druk.dnssd;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TXTRecordBenchmark {
+
+    @Param({"4", "16"})
+    int entries;
+
+    private String[] keys;
+    private String[] values;
+    private byte[] rawBytes;
+    private TXTRecord record;
+
+    @Setup
+    public void setup() {
+        keys = new String[entries];
+        values = new String[entries];
+        record = new TXTRecord();
+        for (int i = 0; i < entries; i++) {
+            keys[i] = "key" + i;
+            values[i] = "value-" + i;
+            record.set(keys[i], values[i]);
+        }
+        rawBytes = record.getRawBytes();
+    }
+
+    @Benchmark
+    public TXTRecord construct() {
+        TXTRecord txtRecord = new TXTRecord();
+        for (int i = 0; i < entries; i++) {
+            txtRecord.set(keys[i], values[i]);
+        }
+        return txtRecord;
+    }
+
+    @Benchmark
+    public byte[] constructRawBytes() {
+        return construct().getRawBytes();
+    }
+
+    @Benchmark
+    public void parse(Blackhole blackhole) {
+        TXTRecord txtRecord = new TXTRecord(rawBytes);
+        int size = txtRecord.size();
+        for (int i = 0; i < size; i++) {
+            blackhole.consume(txtRecord.getKey(i));
+            blackhole.consume(txtRecord.getValueAsString(i));
+        }
+    }
+
+    @Benchmark
+    public byte[] lookupLastKey() {
+        return record.getValue(keys[entries - 1]);
+    }
+
+    @Benchmark
+    public Map<String, String> parseTXTRecords() {
+        return DNSSD.parseTXTRecords(rawBytes);
+    }
+}
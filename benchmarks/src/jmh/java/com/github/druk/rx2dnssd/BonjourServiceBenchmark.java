@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2016 Andriy Druk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.druk.rx2dnssd;
+
+import android.os.Parcel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BonjourServiceBenchmark {
+
+    private Map<String, String> txtRecords;
+    private InetAddress inetAddress;
+    private BonjourService resolved;
+
+    @Setup
+    public void setup() throws UnknownHostException {
+        txtRecords = new HashMap<>();
+        txtRecords.put("txtvers", "1");
+        txtRecords.put("path", "/index.html");
+        txtRecords.put("model", "synthetic");
+        inetAddress = InetAddress.getByAddress(new byte[]{10, 0, 0, 1});
+        resolved = new BonjourService.Builder(0, 1, "instance", "_http._tcp.", "local.")
+                .port(8080)
+                .hostname("instance.local.")
+                .dnsRecords(txtRecords)
+                .build();
+    }
+
+    @Benchmark
+    public BonjourService build() {
+        return new BonjourService.Builder(0, 1, "instance", "_http._tcp.", "local.")
+                .port(8080)
+                .hostname("instance.local.")
+                .dnsRecords(txtRecords)
+                .build();
+    }
+
+    /** What Rx2QueryListener does for every address answer. */
+    @Benchmark
+    public BonjourService copyWithAddress() {
+        BonjourService.Builder builder = new BonjourService.Builder(resolved);
+        builder.inetAddress(inetAddress);
+        return builder.build();
+    }
+
+    @Benchmark
+    public BonjourService parcelRoundTrip() {
+        Parcel parcel = Parcel.obtain();
+        resolved.writeToParcel(parcel, 0);
+        parcel.setDataPosition(0);
+        BonjourService result = BonjourService.CREATOR.createFromParcel(parcel);
+        parcel.recycle();
+        return result;
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2016 Andriy Druk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.druk.rx2dnssd;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+
+import com.github.druk.dnssd.BenchmarkDNSSD;
+import com.github.druk.dnssd.DNSSDRecorder;
+import com.github.druk.dnssd.DNSSDReplayer;
+import com.github.druk.dnssd.SyntheticDNSSD;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The browse -&gt; resolve -&gt; queryIPRecords chain fed by {@link DNSSDReplayer} as fast as possible.<P>
+ *
+ * Replays a recording made by {@link DNSSDRecorder} on a device when <code>-Dreplay.file=...</code> is set
+ * (together with <code>-Dreplay.regType=...</code> of the recorded browse and <code>-p instances=...</code>),
+ * otherwise records a {@link SyntheticDNSSD} session first.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ReplayBenchmark {
+
+    private static final String REG_TYPE = System.getProperty("replay.regType", "_http._tcp.");
+    private static final String DOMAIN = System.getProperty("replay.domain", SyntheticDNSSD.DOMAIN);
+
+    @Param({"16", "128"})
+    int instances;
+
+    private HandlerThread thread;
+    private Rx2Dnssd rxDnssd;
+    private byte[] recording;
+    private DNSSDReplayer replayer;
+
+    @Setup
+    public void setup() throws IOException {
+        thread = new HandlerThread("ReplayBenchmark");
+        thread.start();
+        rxDnssd = new Rx2DnssdCommon(new BenchmarkDNSSD(new Handler(thread.getLooper()))) {
+        };
+        String file = System.getProperty("replay.file");
+        if (file != null) {
+            recording = Files.readAllBytes(Paths.get(file));
+            return;
+        }
+        SyntheticDNSSD.setBrowseResults(instances);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DNSSDRecorder recorder = DNSSDRecorder.start(out);
+        pipeline();
+        recorder.stop();
+        recording = out.toByteArray();
+    }
+
+    @Setup(Level.Invocation)
+    public void startReplay() throws IOException {
+        replayer = DNSSDReplayer.start(new ByteArrayInputStream(recording), DNSSDReplayer.AS_FAST_AS_POSSIBLE);
+    }
+
+    @TearDown(Level.Invocation)
+    public void stopReplay() {
+        replayer.stop();
+    }
+
+    @TearDown
+    public void tearDown() {
+        thread.quit();
+    }
+
+    @Benchmark
+    public long browseResolveQueryIPRecords() {
+        return pipeline();
+    }
+
+    private long pipeline() {
+        return rxDnssd.browse(REG_TYPE, DOMAIN)
+                .take(instances)
+                .compose(rxDnssd.resolve())
+                .compose(rxDnssd.queryIPRecords())
+                .count()
+                .blockingGet();
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2016 Andriy Druk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.druk.rx2dnssd;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+
+import com.github.druk.dnssd.BenchmarkDNSSD;
+import com.github.druk.dnssd.SyntheticDNSSD;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The browse -&gt; resolve -&gt; queryIPRecords chain from the README, answered by {@link SyntheticDNSSD}.
+ * Callbacks hop through a Handler thread exactly like on a device.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class Rx2PipelineBenchmark {
+
+    private static final String REG_TYPE = "_http._tcp.";
+
+    @Param({"1", "16", "128"})
+    int instances;
+
+    private HandlerThread thread;
+    private Rx2Dnssd rxDnssd;
+
+    @Setup
+    public void setup() {
+        thread = new HandlerThread("Rx2PipelineBenchmark");
+        thread.start();
+        rxDnssd = new Rx2DnssdCommon(new BenchmarkDNSSD(new Handler(thread.getLooper()))) {
+        };
+        SyntheticDNSSD.setBrowseResults(instances);
+    }
+
+    @TearDown
+    public void tearDown() {
+        thread.quit();
+    }
+
+    @Benchmark
+    public long browse() {
+        return rxDnssd.browse(REG_TYPE, SyntheticDNSSD.DOMAIN)
+                .take(instances)
+                .count()
+                .blockingGet();
+    }
+
+    @Benchmark
+    public long browseResolve() {
+        return rxDnssd.browse(REG_TYPE, SyntheticDNSSD.DOMAIN)
+                .take(instances)
+                .compose(rxDnssd.resolve())
+                .count()
+                .blockingGet();
+    }
+
+    @Benchmark
+    public long browseResolveQueryIPRecords() {
+        return rxDnssd.browse(REG_TYPE, SyntheticDNSSD.DOMAIN)
+                .take(instances)
+                .compose(rxDnssd.resolve())
+                .compose(rxDnssd.queryIPRecords())
+                .count()
+                .blockingGet();
+    }
+}
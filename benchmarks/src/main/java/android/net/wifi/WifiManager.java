@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2016 Andriy Druk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.net.wifi;
+
+/**
+ * JVM replacement of the framework class, see the benchmarks build.gradle.
+ */
+public class WifiManager {
+
+    public MulticastLock createMulticastLock(String tag) {
+        return new MulticastLock();
+    }
+
+    public class MulticastLock {
+        private boolean refCounted = true;
+        private int refCount;
+
+        public void acquire() {
+            synchronized (this) {
+                refCount = refCounted ? refCount + 1 : 1;
+            }
+        }
+
+        public void release() {
+            synchronized (this) {
+                if (refCount == 0) {
+                    throw new RuntimeException("MulticastLock under-locked");
+                }
+                refCount = refCounted ? refCount - 1 : 0;
+            }
+        }
+
+        public void setReferenceCounted(boolean refCounted) {
+            this.refCounted = refCounted;
+        }
+
+        public boolean isHeld() {
+            synchronized (this) {
+                return refCount > 0;
+            }
+        }
+    }
+}
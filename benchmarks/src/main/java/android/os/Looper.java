@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2016 Andriy Druk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.os;
+
+import java.util.PriorityQueue;
+
+/**
+ * JVM replacement of the framework class, see the benchmarks build.gradle.
+ * Messages are kept in a time ordered queue and dispatched by the thread that called {@link #loop()}.
+ */
+public final class Looper {
+
+    private static final ThreadLocal<Looper> LOOPERS = new ThreadLocal<>();
+    private static Looper mainLooper;
+
+    private final PriorityQueue<Message> queue = new PriorityQueue<>();
+    private final Thread thread;
+    private long sequence;
+    private boolean quitting;
+
+    private Looper() {
+        thread = Thread.currentThread();
+    }
+
+    public static void prepare() {
+        if (LOOPERS.get() != null) {
+            throw new RuntimeException("Only one Looper may be created per thread");
+        }
+        LOOPERS.set(new Looper());
+    }
+
+    public static Looper myLooper() {
+        return LOOPERS.get();
+    }
+
+    /** The main looper is started lazily on a daemon thread named "main". */
+    public static synchronized Looper getMainLooper() {
+        if (mainLooper == null) {
+            HandlerThread main = new HandlerThread("main");
+            main.setDaemon(true);
+            main.start();
+            mainLooper = main.getLooper();
+        }
+        return mainLooper;
+    }
+
+    public static void loop() {
+        Looper me = myLooper();
+        if (me == null) {
+            throw new RuntimeException("No Looper; Looper.prepare() wasn't called on this thread.");
+        }
+        while (true) {
+            Message msg = me.next();
+            if (msg == null) {
+                return;
+            }
+            msg.callback.run();
+        }
+    }
+
+    public Thread getThread() {
+        return thread;
+    }
+
+    public void quit() {
+        synchronized (queue) {
+            quitting = true;
+            queue.notifyAll();
+        }
+    }
+
+    boolean enqueue(Handler target, Runnable r, long uptimeMillis) {
+        synchronized (queue) {
+            if (quitting) {
+                return false;
+            }
+            queue.add(new Message(target, r, uptimeMillis, sequence++));
+            queue.notifyAll();
+            return true;
+        }
+    }
+
+    void remove(Handler target, Runnable r) {
+        synchronized (queue) {
+            queue.removeIf(msg -> msg.target == target && msg.callback == r);
+        }
+    }
+
+    private Message next() {
+        synchronized (queue) {
+            while (true) {
+                if (quitting) {
+                    return null;
+                }
+                Message head = queue.peek();
+                long now = SystemClock.uptimeMillis();
+                if (head != null && head.when <= now) {
+                    return queue.poll();
+                }
+                try {
+                    queue.wait(head == null ? 0 : head.when - now);
+                } catch (InterruptedException e) {
+                    return null;
+                }
+            }
+        }
+    }
+
+    private static final class Message implements Comparable<Message> {
+        final Handler target;
+        final Runnable callback;
+        final long when;
+        final long sequence;
+
+        Message(Handler target, Runnable callback, long when, long sequence) {
+            this.target = target;
+            this.callback = callback;
+            this.when = when;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Message o) {
+            if (when != o.when) {
+                return when < o.when ? -1 : 1;
+            }
+            return Long.compare(sequence, o.sequence);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2016 Andriy Druk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.os;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * JVM replacement of the framework class, see the benchmarks build.gradle.
+ * Like the framework implementation, strings are written as UTF-16 and serializables go through
+ * {@link ObjectOutputStream}, so relative costs of the different write calls are preserved.
+ */
+public final class Parcel {
+
+    private static final Charset UTF_16 = Charset.forName("UTF-16LE");
+
+    private byte[] data = new byte[256];
+    private int size;
+    private int position;
+
+    private Parcel() {
+    }
+
+    public static Parcel obtain() {
+        return new Parcel();
+    }
+
+    public void recycle() {
+        size = 0;
+        position = 0;
+    }
+
+    public int dataSize() {
+        return size;
+    }
+
+    public void setDataPosition(int pos) {
+        position = pos;
+    }
+
+    public void writeInt(int val) {
+        ensure(4);
+        data[position++] = (byte) (val >>> 24);
+        data[position++] = (byte) (val >>> 16);
+        data[position++] = (byte) (val >>> 8);
+        data[position++] = (byte) val;
+        size = Math.max(size, position);
+    }
+
+    public int readInt() {
+        if (position + 4 > size) {
+            return 0;
+        }
+        return ((data[position++] & 0xFF) << 24) | ((data[position++] & 0xFF) << 16)
+                | ((data[position++] & 0xFF) << 8) | (data[position++] & 0xFF);
+    }
+
+    public void writeString(String val) {
+        if (val == null) {
+            writeInt(-1);
+            return;
+        }
+        writeInt(val.length());
+        writeBytes(val.getBytes(UTF_16));
+    }
+
+    public String readString() {
+        int length = readInt();
+        if (length < 0) {
+            return null;
+        }
+        String result = new String(data, position, length * 2, UTF_16);
+        position += length * 2;
+        return result;
+    }
+
+    public void writeSerializable(Serializable s) {
+        if (s == null) {
+            writeInt(-1);
+            return;
+        }
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+            oos.writeObject(s);
+        } catch (IOException e) {
+            throw new RuntimeException("Parcelable encountered IOException writing serializable object", e);
+        }
+        byte[] bytes = baos.toByteArray();
+        writeInt(bytes.length);
+        writeBytes(bytes);
+    }
+
+    public Serializable readSerializable() {
+        int length = readInt();
+        if (length < 0) {
+            return null;
+        }
+        ByteArrayInputStream bais = new ByteArrayInputStream(data, position, length);
+        position += length;
+        try (ObjectInputStream ois = new ObjectInputStream(bais)) {
+            return (Serializable) ois.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            throw new RuntimeException("Parcelable encountered exception reading a Serializable object", e);
+        }
+    }
+
+    private void writeBytes(byte[] bytes) {
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, data, position, bytes.length);
+        position += bytes.length;
+        size = Math.max(size, position);
+    }
+
+    private void ensure(int extra) {
+        if (position + extra > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, position + extra));
+        }
+    }
+}
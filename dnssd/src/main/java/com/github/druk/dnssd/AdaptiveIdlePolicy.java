@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2016 Andriy Druk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.druk.dnssd;
+
+/**
+ * {@link IdlePolicy} that learns the gaps between bursts of operations.<P>
+ *
+ * Gaps are smoothed with an exponentially weighted moving average. While the expected gap (with a safety margin)
+ * fits into the maximum idle timeout the daemon is kept alive long enough to catch the next burst. When bursts are
+ * further apart than that, keeping the daemon alive doesn't pay off and it is stopped after the minimum idle timeout.
+ */
+public final class AdaptiveIdlePolicy implements IdlePolicy {
+
+    static final double ALPHA = 0.25;
+    static final double MARGIN = 1.5;
+
+    private final long minIdleTimeout;
+    private final long maxIdleTimeout;
+
+    private long idleSince = -1;
+    private double averageGap = -1;
+
+    /**
+     * @param minIdleTimeout time in milliseconds to keep the daemon alive when bursts are too far apart
+     * @param maxIdleTimeout the longest time in milliseconds to keep the daemon alive
+     */
+    public AdaptiveIdlePolicy(long minIdleTimeout, long maxIdleTimeout) {
+        if (minIdleTimeout < 0 || maxIdleTimeout < minIdleTimeout) {
+            throw new IllegalArgumentException("Wrong idle timeouts: " + minIdleTimeout + ", " + maxIdleTimeout);
+        }
+        this.minIdleTimeout = minIdleTimeout;
+        this.maxIdleTimeout = maxIdleTimeout;
+    }
+
+    @Override
+    public synchronized void onActive(long uptimeMillis) {
+        if (idleSince < 0) {
+            return;
+        }
+        long gap = Math.max(0, uptimeMillis - idleSince);
+        averageGap = averageGap < 0 ? gap : averageGap + ALPHA * (gap - averageGap);
+        idleSince = -1;
+    }
+
+    @Override
+    public synchronized long onIdle(long uptimeMillis) {
+        if (idleSince < 0) {
+            idleSince = uptimeMillis;
+        }
+        if (averageGap < 0) {
+            return minIdleTimeout;
+        }
+        long timeout = (long) (averageGap * MARGIN);
+        if (timeout > maxIdleTimeout) {
+            return minIdleTimeout;
+        }
+        return Math.max(minIdleTimeout, timeout);
+    }
+
+    @Override
+    public void setOnChangedListener(Runnable callback) {
+    }
+
+    /** Smoothed gap between bursts in milliseconds, -1 if there wasn't any gap yet. */
+    public synchronized long getAverageGap() {
+        return (long) averageGap;
+    }
+}
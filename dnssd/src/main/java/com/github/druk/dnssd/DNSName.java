@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2016 Andriy Druk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.druk.dnssd;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pure Java construction, escaping and parsing of DNS-SD names.<P>
+ *
+ * {@link #constructFullName} produces the same result as DNSServiceConstructFullName of dnssd_clientlib.c
+ * (including the 1005 bytes limit of modified UTF-8 output), but doesn't touch the daemon or JNI.
+ */
+public final class DNSName {
+
+    // DNSServiceConstructFullName limits output to 1005 bytes including terminating zero
+    private static final int MAX_FULL_NAME = 1005;
+
+    private DNSName() {
+    }
+
+    /** Concatenate a three-part domain name into a properly-escaped full domain name, see {@link DNSSD#constructFullName}.
+     @param	serviceName
+     The service name - any dots or slashes must NOT be escaped. May be null or empty.
+     <P>
+     @param	regType
+     The registration type followed by the protocol, separated by a dot (e.g. "_ftp._tcp").
+     <P>
+     @param	domain
+     The domain name, e.g. "apple.com".  Any literal dots or backslashes must be escaped.
+     <P>
+     @return		The full domain name.
+
+     @throws DNSSDException with {@link DNSSDException#BAD_PARAM} if regType isn't "_tcp" or "_udp" based,
+     domain is empty or the result is too long.
+     */
+    public static String constructFullName(String serviceName, String regType, String domain) throws DNSSDException {
+        int regTypeEndsInDot = regType != null && endsInDot(regType) ? 1 : 0;
+        int length = regType == null ? 0 : utfLength(regType) - regTypeEndsInDot;
+        if (length < 6 || domain == null || domain.isEmpty()) {
+            throw InternalDNSSD.newException(DNSSDException.BAD_PARAM);
+        }
+        if (!regType.regionMatches(true, regType.length() - regTypeEndsInDot - 4, "_tcp", 0, 4) &&
+                !regType.regionMatches(true, regType.length() - regTypeEndsInDot - 4, "_udp", 0, 4)) {
+            throw InternalDNSSD.newException(DNSSDException.BAD_PARAM);
+        }
+
+        char[] result = new char[(serviceName != null ? serviceName.length() * 4 + 1 : 0) + regType.length() + domain.length() + 2];
+        int size = 0;
+        int bytes = 0;
+        if (serviceName != null && !serviceName.isEmpty()) {
+            for (int i = 0; i < serviceName.length(); i++) {
+                char c = serviceName.charAt(i);
+                if (c != 0 && c <= ' ') {
+                    // Escape non-printable characters
+                    if ((bytes += 4) >= MAX_FULL_NAME) {
+                        throw InternalDNSSD.newException(DNSSDException.BAD_PARAM);
+                    }
+                    result[size++] = '\\';
+                    result[size++] = (char) ('0' + c / 100);
+                    result[size++] = (char) ('0' + (c / 10) % 10);
+                    result[size++] = (char) ('0' + c % 10);
+                    continue;
+                }
+                if (c == '.' || c == '\\') {
+                    // Escape dot and backslash literals
+                    if ((bytes += 2) >= MAX_FULL_NAME) {
+                        throw InternalDNSSD.newException(DNSSDException.BAD_PARAM);
+                    }
+                    result[size++] = '\\';
+                } else if ((bytes += utfLength(c)) >= MAX_FULL_NAME) {
+                    throw InternalDNSSD.newException(DNSSDException.BAD_PARAM);
+                }
+                result[size++] = c;
+            }
+            result[size++] = '.';
+            bytes++;
+        }
+
+        bytes += utfLength(regType) + utfLength(domain) + (regTypeEndsInDot == 0 ? 1 : 0) + (endsInDot(domain) ? 0 : 1);
+        if (bytes >= MAX_FULL_NAME) {
+            throw InternalDNSSD.newException(DNSSDException.BAD_PARAM);
+        }
+        regType.getChars(0, regType.length(), result, size);
+        size += regType.length();
+        if (regTypeEndsInDot == 0) {
+            result[size++] = '.';
+        }
+        domain.getChars(0, domain.length(), result, size);
+        size += domain.length();
+        if (!endsInDot(domain)) {
+            result[size++] = '.';
+        }
+        return new String(result, 0, size);
+    }
+
+    /** Replace escape sequences (<code>\ddd</code> and <code>\x</code>) of a name or label with the characters they stand for. */
+    public static String unescape(String name) {
+        int escape = name.indexOf('\\');
+        if (escape < 0) {
+            return name;
+        }
+        return unescape(name, 0, name.length(), escape);
+    }
+
+    /** Split an escaped name on unescaped dots and unescape each label. The root (trailing dot) doesn't produce an empty label. */
+    public static List<String> splitLabels(String name) {
+        List<String> result = new ArrayList<>();
+        int start = 0;
+        int escape = -1;
+        int i = 0;
+        while (i < name.length()) {
+            char c = name.charAt(i);
+            if (c == '\\') {
+                if (escape < 0) {
+                    escape = i;
+                }
+                i += isDecimalEscape(name, i) ? 4 : 2;
+            } else if (c == '.') {
+                result.add(escape < 0 ? name.substring(start, i) : unescape(name, start, i, escape));
+                start = ++i;
+                escape = -1;
+            } else {
+                i++;
+            }
+        }
+        if (start < name.length()) {
+            result.add(escape < 0 ? name.substring(start) : unescape(name, start, name.length(), escape));
+        }
+        return result;
+    }
+
+    private static String unescape(String name, int start, int end, int escape) {
+        StringBuilder builder = new StringBuilder(end - start);
+        builder.append(name, start, escape);
+        int i = escape;
+        while (i < end) {
+            char c = name.charAt(i);
+            if (c != '\\' || i + 1 >= end) {
+                builder.append(c);
+                i++;
+            } else if (isDecimalEscape(name, i) && i + 3 < end) {
+                builder.append((char) ((name.charAt(i + 1) - '0') * 100 + (name.charAt(i + 2) - '0') * 10 + (name.charAt(i + 3) - '0')));
+                i += 4;
+            } else {
+                builder.append(name.charAt(i + 1));
+                i += 2;
+            }
+        }
+        return builder.toString();
+    }
+
+    private static boolean isDecimalEscape(String name, int i) {
+        return i + 3 < name.length() && isDigit(name.charAt(i + 1)) && isDigit(name.charAt(i + 2)) && isDigit(name.charAt(i + 3));
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    // Same as DomainEndsInDot of dnssd_clientlib.c
+    static boolean endsInDot(String name) {
+        int i = 0;
+        int length = name.length();
+        while (i + 1 < length) {
+            if (name.charAt(i) == '\\') {
+                i += isDecimalEscape(name, i) ? 4 : 2;
+            } else {
+                i++;
+            }
+        }
+        return i < length && name.charAt(i) == '.';
+    }
+
+    // Length of the modified UTF-8 representation used by JNI
+    private static int utfLength(String s) {
+        int result = 0;
+        for (int i = 0; i < s.length(); i++) {
+            result += utfLength(s.charAt(i));
+        }
+        return result;
+    }
+
+    private static int utfLength(char c) {
+        if (c != 0 && c < 0x80) {
+            return 1;
+        }
+        return c < 0x800 ? 2 : 3;
+    }
+}
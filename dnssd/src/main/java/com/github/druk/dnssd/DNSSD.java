@@ -17,7 +17,6 @@
 package com.github.druk.dnssd;
 
 import android.content.Context;
-import android.net.wifi.WifiManager;
 import android.os.Handler;
 import android.os.Looper;
 import android.text.TextUtils;
@@ -38,6 +37,10 @@ public abstract class DNSSD implements InternalDNSSDService.DnssdServiceListener
      */
     public static final int		MORE_COMING = 1 << 0;
 
+    /** If flag is set in a {@link QueryListener} or {@link BrowseListener} callback, the result was added,
+     otherwise it was removed. */
+    public static final int		ADD = 1 << 1;
+
     /** If flag is set in a {@link DomainListener} callback, indicates that the result is the default domain. */
     public static final int		DEFAULT = 1 << 2;
 
@@ -70,13 +73,28 @@ public abstract class DNSSD implements InternalDNSSDService.DnssdServiceListener
     public static final int     LOCALHOST_ONLY = -1;
 
     private static final Charset UTF_8 = Charset.forName("UTF-8");
-    private static final String MULTICAST_LOCK_NAME = "com.github.druk.dnssd.DNSSD";
 
     private final Handler handler;
     private final Context context;
 
     // Lock for multicast packages
-    private volatile WifiManager.MulticastLock multicastLock = null;
+    private volatile MulticastLockManager multicastLockManager;
+
+    // Leases taken from multicastLockManager by running operations, guarded by leaseLock
+    private final Object leaseLock = new Object();
+    private int multicastLeases;
+
+    // Null while metrics are disabled
+    private volatile DNSSDMetrics metrics = null;
+
+    // Shared by all instances, null while admission control is off
+    private static volatile DNSSDAdmission admission = null;
+
+    // Null while tracing is disabled
+    private volatile TraceSink traceSink = null;
+
+    // Always-on journal of the latest events
+    private final DNSSDJournal journal = new DNSSDJournal(DNSSDJournal.DEFAULT_CAPACITY);
 
     /** Timeout for resolve and query records operations. Default value: {@value #DNSSD_DEFAULT_TIMEOUT} */
     private final int serviceTimeout;
@@ -90,6 +108,7 @@ public abstract class DNSSD implements InternalDNSSDService.DnssdServiceListener
         InternalDNSSD.init(lib);
         this.handler = new Handler(looper);
         this.serviceTimeout = DNSSD_DEFAULT_TIMEOUT;
+        this.multicastLockManager = new WifiMulticastLockManager(this.context, handler, 0);
     }
 
     DNSSD(Context context, String lib, Handler handler) {
@@ -97,6 +116,7 @@ public abstract class DNSSD implements InternalDNSSDService.DnssdServiceListener
         InternalDNSSD.init(lib);
         this.handler = handler;
         this.serviceTimeout = DNSSD_DEFAULT_TIMEOUT;
+        this.multicastLockManager = new WifiMulticastLockManager(this.context, handler, 0);
     }
 
     DNSSD(Context context, String lib, Handler handler, int serviceTimeout) {
@@ -104,6 +124,7 @@ public abstract class DNSSD implements InternalDNSSDService.DnssdServiceListener
         InternalDNSSD.init(lib);
         this.handler = handler;
         this.serviceTimeout = serviceTimeout;
+        this.multicastLockManager = new WifiMulticastLockManager(this.context, handler, 0);
     }
 
     /** Browse for instances of a service.<P>
@@ -137,30 +158,50 @@ public abstract class DNSSD implements InternalDNSSDService.DnssdServiceListener
      @see    RuntimePermission
      */
     public DNSSDService browse(int flags, int ifIndex, String regType, String domain, final BrowseListener listener) throws DNSSDException {
-        onServiceStarting();
+        final DNSSDMetrics metrics = this.metrics;
+        final OperationTrace trace = newTrace(DNSSDMetrics.BROWSE);
+        final InternalDNSSDService.DnssdServiceListener serviceListener = serviceListener(metrics, trace, DNSSDMetrics.BROWSE);
+        serviceListener.onServiceStarting();
         final InternalDNSSDService[] services = new InternalDNSSDService[1];
-        services[0] = new InternalDNSSDService(this, InternalDNSSD.browse(flags, ifIndex, regType, domain, new InternalBrowseListener() {
+        final InternalBrowseListener internalListener = new InternalBrowseListener() {
             @Override
             public void serviceFound(final DNSSDService browser, final int flags, final int ifIndex, final byte[] serviceName, final byte[] regType, final byte[] domain) {
+                traceReply(trace);
+                journal.record(DNSSDJournal.SERVICE_FOUND, flags, ifIndex, DNSSDJournal.hash(serviceName), 0);
+                if (metrics != null) {
+                    metrics.browseEvent();
+                }
                 final String serviceNameStr = new String(serviceName, UTF_8);
                 final String regTypeStr = new String(regType, UTF_8);
                 final String domainStr = new String(domain, UTF_8);
-                handler.post(() -> listener.serviceFound(services[0], flags, ifIndex, serviceNameStr, regTypeStr, domainStr));
+                post(trace, () -> listener.serviceFound(services[0], flags, ifIndex, serviceNameStr, regTypeStr, domainStr));
             }
 
             @Override
             public void serviceLost(DNSSDService browser, final int flags, final int ifIndex, byte[] serviceName, byte[] regType, byte[] domain) {
+                traceReply(trace);
+                journal.record(DNSSDJournal.SERVICE_LOST, flags, ifIndex, DNSSDJournal.hash(serviceName), 0);
+                if (metrics != null) {
+                    metrics.browseEvent();
+                }
                 final String serviceNameStr = new String(serviceName, UTF_8);
                 final String regTypeStr = new String(regType, UTF_8);
                 final String domainStr = new String(domain, UTF_8);
-                handler.post(() -> listener.serviceLost(services[0], flags, ifIndex, serviceNameStr, regTypeStr, domainStr));
+                post(trace, () -> listener.serviceLost(services[0], flags, ifIndex, serviceNameStr, regTypeStr, domainStr));
             }
 
             @Override
             public void operationFailed(final DNSSDService service, final int errorCode) {
-                handler.post(() -> listener.operationFailed(services[0], errorCode));
+                traceReply(trace);
+                onOperationFailed(metrics, DNSSDMetrics.BROWSE, regType, errorCode);
+                post(trace, () -> listener.operationFailed(services[0], errorCode));
             }
-        }));
+        };
+        services[0] = new InternalDNSSDService(serviceListener, admitOperation(DNSSDMetrics.BROWSE, serviceListener,
+                () -> InternalDNSSD.browse(flags, ifIndex, regType, domain, internalListener), internalListener));
+        if (trace != null) {
+            trace.mark(TraceSink.STARTED);
+        }
         return services[0];
 
     }
@@ -224,19 +265,28 @@ public abstract class DNSSD implements InternalDNSSDService.DnssdServiceListener
      @see    RuntimePermission
      */
     public DNSSDService resolve(int flags, int ifIndex, String serviceName, String regType, String domain, final ResolveListener listener) throws DNSSDException {
-        onServiceStarting();
+        final DNSSDMetrics metrics = this.metrics;
+        final OperationTrace trace = newTrace(DNSSDMetrics.RESOLVE);
+        final long startTime = metrics != null ? System.nanoTime() : 0;
+        final InternalDNSSDService.DnssdServiceListener serviceListener = serviceListener(metrics, trace, DNSSDMetrics.RESOLVE);
+        serviceListener.onServiceStarting();
         final DNSSDService[] services = new DNSSDService[1];
 
-        final Runnable timeoutRunnable = () -> services[0].stop();
+        final Runnable timeoutRunnable = timeoutRunnable(metrics, services);
 
-        services[0] = new InternalDNSSDService(this, InternalDNSSD.resolve(flags, ifIndex, serviceName, regType, domain, new InternalResolveListener() {
+        final InternalResolveListener internalListener = new InternalResolveListener() {
             @Override
             public void serviceResolved(final DNSSDService resolver, final int flags, final int ifIndex, byte[] fullName, byte[] hostName, final int port, TXTRecord txtRecord) {
+                traceReply(trace);
+                journal.record(DNSSDJournal.SERVICE_RESOLVED, flags, ifIndex, DNSSDJournal.hash(fullName), port);
+                if (metrics != null) {
+                    metrics.resolved(startTime);
+                }
                 final String fullNameStr =  new String(fullName, UTF_8);
                 final String hostNameStr =  new String(hostName, UTF_8);
                 final Map<String, String> record = parseTXTRecords(txtRecord);
                 handler.removeCallbacks(timeoutRunnable);
-                handler.post(() -> {
+                post(trace, () -> {
                     listener.serviceResolved(services[0], flags, ifIndex, fullNameStr, hostNameStr, port, record);
                     services[0].stop();
                 });
@@ -244,13 +294,20 @@ public abstract class DNSSD implements InternalDNSSDService.DnssdServiceListener
 
             @Override
             public void operationFailed(final DNSSDService service, final int errorCode) {
+                traceReply(trace);
+                onOperationFailed(metrics, DNSSDMetrics.RESOLVE, serviceName, errorCode);
                 handler.removeCallbacks(timeoutRunnable);
-                handler.post(() -> {
+                post(trace, () -> {
                     listener.operationFailed(services[0], errorCode);
                     services[0].stop();
                 });
             }
-        }));
+        };
+        services[0] = new InternalDNSSDService(serviceListener, admitOperation(DNSSDMetrics.RESOLVE, serviceListener,
+                () -> InternalDNSSD.resolve(flags, ifIndex, serviceName, regType, domain, internalListener), internalListener));
+        if (trace != null) {
+            trace.mark(TraceSink.STARTED);
+        }
 
         handler.postDelayed(timeoutRunnable, serviceTimeout);
         return services[0];
@@ -311,24 +368,33 @@ public abstract class DNSSD implements InternalDNSSDService.DnssdServiceListener
      */
     public DNSSDRegistration register(int flags, int ifIndex, String serviceName, String regType, String domain, String host, int port, TXTRecord txtRecord,
                                       final RegisterListener listener) throws DNSSDException {
-        onServiceStarting();
+        final DNSSDMetrics metrics = this.metrics;
+        final OperationTrace trace = newTrace(DNSSDMetrics.REGISTER);
+        final InternalDNSSDService.DnssdServiceListener serviceListener = serviceListener(metrics, trace, DNSSDMetrics.REGISTER);
+        serviceListener.onServiceStarting();
         final DNSSDRegistration[] services = new DNSSDRegistration[1];
-        services[0] = new InternalDNSSDRegistration(this, InternalDNSSD.register(flags, ifIndex, serviceName, regType, domain, host, port, txtRecord,
+        services[0] = new InternalDNSSDRegistration(serviceListener, InternalDNSSD.register(flags, ifIndex, serviceName, regType, domain, host, port, txtRecord,
                 new InternalRegisterListener() {
 
             @Override
             public void serviceRegistered(DNSSDRegistration registration, final int flags, final byte[] serviceName, byte[] regType, final byte[] domain) {
+                traceReply(trace);
                 final String serviceNameStr =  new String(serviceName, UTF_8);
                 final String regTypeStr = new String(regType, UTF_8);
                 final String domainStr = new String(domain, UTF_8);
-                handler.post(() -> listener.serviceRegistered(services[0], flags, serviceNameStr, regTypeStr, domainStr));
+                post(trace, () -> listener.serviceRegistered(services[0], flags, serviceNameStr, regTypeStr, domainStr));
             }
 
             @Override
             public void operationFailed(DNSSDService service, final int errorCode) {
-                handler.post(() -> listener.operationFailed(services[0], errorCode));
+                traceReply(trace);
+                onOperationFailed(metrics, DNSSDMetrics.REGISTER, serviceName, errorCode);
+                post(trace, () -> listener.operationFailed(services[0], errorCode));
             }
         }));
+        if (trace != null) {
+            trace.mark(TraceSink.STARTED);
+        }
         return services[0];
     }
 
@@ -361,6 +427,51 @@ public abstract class DNSSD implements InternalDNSSDService.DnssdServiceListener
         return register(0, 0, serviceName, regType, null, null, port, null, listener);
     }
 
+    /** Create a {@link DNSSDRegistrationGroup} that registers many services over a single daemon connection.<P>
+
+     Use it instead of {@link #register} when publishing hundreds of services: the group opens one connection
+     and one thread for all of them and holds a single multicast lock lease.
+     <P>
+     @param	listener
+     This object will get called for every service of the group and when all added services are registered.
+     <P>
+     @return		A {@link DNSSDRegistrationGroup}, stopping it deregisters all its services.
+
+     @throws SecurityException If a security manager is present and denies <tt>RuntimePermission("getDNSSDInstance")</tt>.
+     @see    RuntimePermission
+     */
+    public DNSSDRegistrationGroup createRegistrationGroup(final RegisterGroupListener listener) throws DNSSDException {
+        final DNSSDMetrics metrics = this.metrics;
+        final OperationTrace trace = newTrace(DNSSDMetrics.REGISTER);
+        final InternalDNSSDService.DnssdServiceListener serviceListener = serviceListener(metrics, trace, DNSSDMetrics.REGISTER);
+        serviceListener.onServiceStarting();
+        DNSSDRegistrationGroup group = new InternalDNSSDRegistrationGroup(serviceListener, new InternalDNSSDRegistrationGroup.Reporter() {
+
+            @Override
+            public void serviceRegistered(DNSSDRegistration registration, int flags, String serviceName, String regType, String domain) {
+                traceReply(trace);
+                post(trace, () -> listener.serviceRegistered(registration, flags, serviceName, regType, domain));
+            }
+
+            @Override
+            public void operationFailed(DNSSDService service, String serviceName, int errorCode) {
+                traceReply(trace);
+                onOperationFailed(metrics, DNSSDMetrics.REGISTER, serviceName, errorCode);
+                post(trace, () -> listener.operationFailed(service, errorCode));
+            }
+
+            @Override
+            public void groupRegistered(DNSSDRegistrationGroup group, int registered, int failed) {
+                traceReply(trace);
+                post(trace, () -> listener.groupRegistered(group, registered, failed));
+            }
+        });
+        if (trace != null) {
+            trace.mark(TraceSink.STARTED);
+        }
+        return group;
+    }
+
     /** Create a {@link DNSSDRecordRegistrar} allowing efficient registration of
      multiple individual records.<P>
      <P>
@@ -370,8 +481,14 @@ public abstract class DNSSD implements InternalDNSSDService.DnssdServiceListener
      @see    RuntimePermission
      */
     public DNSSDRecordRegistrar createRecordRegistrar(RegisterRecordListener listener) throws DNSSDException {
-        onServiceStarting();
-        return new InternalDNSSDRecordRegistrar(this, InternalDNSSD.createRecordRegistrar(listener));
+        final OperationTrace trace = newTrace(DNSSDMetrics.RECORD_REGISTRAR);
+        final InternalDNSSDService.DnssdServiceListener serviceListener = serviceListener(metrics, trace, DNSSDMetrics.RECORD_REGISTRAR);
+        serviceListener.onServiceStarting();
+        DNSSDRecordRegistrar registrar = new InternalDNSSDRecordRegistrar(serviceListener, InternalDNSSD.createRecordRegistrar(listener));
+        if (trace != null) {
+            trace.mark(TraceSink.STARTED);
+        }
+        return registrar;
     }
 
     /** Query for an arbitrary DNS record.<P>
@@ -442,17 +559,48 @@ public abstract class DNSSD implements InternalDNSSDService.DnssdServiceListener
      @see    RuntimePermission
      */
     public DNSSDService queryRecord(int flags, int ifIndex, final String serviceName, int rrtype, int rrclass, boolean autoStop, final QueryListener listener) throws DNSSDException {
-        onServiceStarting();
+        return queryRecord(null, flags, ifIndex, serviceName, rrtype, rrclass, autoStop, listener);
+    }
+
+    /** Create a {@link DNSSDQueryGroup} running queries over one shared daemon connection.<P>
+     Use it to keep several long-lived queries, e.g. SRV, TXT and address records of a service,
+     without a connection and a thread per query.
+     <P>
+     @return		A {@link DNSSDQueryGroup}, stopping it stops all its queries.
+
+     @throws SecurityException If a security manager is present and denies <tt>RuntimePermission("getDNSSDInstance")</tt>.
+     @see    RuntimePermission
+     */
+    public DNSSDQueryGroup createQueryGroup() throws DNSSDException {
+        return new InternalDNSSDQueryGroup((group, flags, ifIndex, serviceName, rrtype, rrclass, listener) ->
+                queryRecord(group, flags, ifIndex, serviceName, rrtype, rrclass, false, listener));
+    }
+
+    private DNSSDService queryRecord(final DNSSDService group, int flags, int ifIndex, final String serviceName, int rrtype, int rrclass,
+                                     boolean autoStop, final QueryListener listener) throws DNSSDException {
+        final DNSSDMetrics metrics = this.metrics;
+        final OperationTrace trace = newTrace(DNSSDMetrics.QUERY);
+        final long startTime = metrics != null ? System.nanoTime() : 0;
+        final InternalDNSSDService.DnssdServiceListener serviceListener = serviceListener(metrics, trace, DNSSDMetrics.QUERY);
+        serviceListener.onServiceStarting();
         final DNSSDService[] services = new DNSSDService[1];
 
-        final Runnable timeoutRunnable = () -> services[0].stop();
+        final Runnable timeoutRunnable = timeoutRunnable(metrics, services);
+
+        final InternalQueryListener internalListener = new InternalQueryListener() {
+            private boolean isAnswered = false;
 
-        services[0] = new InternalDNSSDService(this, InternalDNSSD.queryRecord(flags, ifIndex, serviceName, rrtype, rrclass, new InternalQueryListener() {
             @Override
             public void queryAnswered(DNSSDService query, final int flags, final int ifIndex, byte[] fullName, final int rrtype, final int rrclass, byte[] rdata, final int ttl) {
+                traceReply(trace);
+                journal.record(DNSSDJournal.QUERY_ANSWERED, flags, ifIndex, DNSSDJournal.hash(fullName), rrtype);
+                if (metrics != null && !isAnswered) {
+                    metrics.queryAnswered(startTime);
+                }
+                isAnswered = true;
                 final String fullNameStr = new String(fullName, UTF_8);
                 handler.removeCallbacks(timeoutRunnable);
-                handler.post(() -> {
+                post(trace, () -> {
                     listener.queryAnswered(services[0], flags, ifIndex, fullNameStr, rrtype, rrclass, rdata, ttl);
                     if (autoStop) {
                         services[0].stop();
@@ -462,13 +610,24 @@ public abstract class DNSSD implements InternalDNSSDService.DnssdServiceListener
 
             @Override
             public void operationFailed(DNSSDService service, final int errorCode) {
+                traceReply(trace);
+                onOperationFailed(metrics, DNSSDMetrics.QUERY, serviceName, errorCode);
                 handler.removeCallbacks(timeoutRunnable);
-                handler.post(() -> {
+                post(trace, () -> {
                     listener.operationFailed(services[0], errorCode);
                     services[0].stop();
                 });
             }
-        }));
+        };
+        // Queries of a group share its connection, so they don't count against the admission budget
+        services[0] = new InternalDNSSDService(serviceListener, group == null
+                ? admitOperation(DNSSDMetrics.QUERY, serviceListener,
+                        () -> InternalDNSSD.queryRecord(flags, ifIndex, serviceName, rrtype, rrclass, internalListener), internalListener)
+                : startOperation(() -> InternalDNSSD.queryRecord(group, flags, ifIndex, serviceName, rrtype, rrclass, internalListener),
+                        internalListener));
+        if (trace != null) {
+            trace.mark(TraceSink.STARTED);
+        }
 
         if (autoStop) {
             handler.postDelayed(timeoutRunnable, serviceTimeout);
@@ -501,26 +660,38 @@ public abstract class DNSSD implements InternalDNSSDService.DnssdServiceListener
      @see    RuntimePermission
      */
     public DNSSDService enumerateDomains(int flags, int ifIndex, final DomainListener listener) throws DNSSDException {
-        onServiceStarting();
+        final DNSSDMetrics metrics = this.metrics;
+        final OperationTrace trace = newTrace(DNSSDMetrics.ENUMERATE_DOMAINS);
+        final InternalDNSSDService.DnssdServiceListener serviceListener = serviceListener(metrics, trace, DNSSDMetrics.ENUMERATE_DOMAINS);
+        serviceListener.onServiceStarting();
         final DNSSDService[] services = new DNSSDService[1];
-        services[0] = new InternalDNSSDService(this, InternalDNSSD.enumerateDomains(flags, ifIndex, new InternalDomainListener() {
+        final InternalDomainListener internalListener = new InternalDomainListener() {
             @Override
             public void domainFound(DNSSDService domainEnum, final int flags, final int ifIndex, byte[] domain) {
+                traceReply(trace);
                 final String domainStr = new String(domain, UTF_8);
-                handler.post(() -> listener.domainFound(services[0], flags, ifIndex, domainStr));
+                post(trace, () -> listener.domainFound(services[0], flags, ifIndex, domainStr));
             }
 
             @Override
             public void domainLost(DNSSDService domainEnum, final int flags, final int ifIndex, byte[] domain) {
+                traceReply(trace);
                 final String domainStr = new String(domain, UTF_8);
-                handler.post(() -> listener.domainLost(services[0], flags, ifIndex, domainStr));
+                post(trace, () -> listener.domainLost(services[0], flags, ifIndex, domainStr));
             }
 
             @Override
             public void operationFailed(final DNSSDService service, final int errorCode) {
-                handler.post(() -> listener.operationFailed(services[0], errorCode));
+                traceReply(trace);
+                onOperationFailed(metrics, DNSSDMetrics.ENUMERATE_DOMAINS, null, errorCode);
+                post(trace, () -> listener.operationFailed(services[0], errorCode));
             }
-        }));
+        };
+        services[0] = new InternalDNSSDService(serviceListener, admitOperation(DNSSDMetrics.ENUMERATE_DOMAINS, serviceListener,
+                () -> InternalDNSSD.enumerateDomains(flags, ifIndex, internalListener), internalListener));
+        if (trace != null) {
+            trace.mark(TraceSink.STARTED);
+        }
         return services[0];
     }
 
@@ -539,14 +710,11 @@ public abstract class DNSSD implements InternalDNSSDService.DnssdServiceListener
      <P>
      @return		The full domain name.
 
-     @throws SecurityException If a security manager is present and denies <tt>RuntimePermission("getDNSSDInstance")</tt>.
-     @see    RuntimePermission
+     Note: the name is constructed in Java, so this method doesn't start the daemon and can be called from any thread.
+     @see    DNSName
      */
     public String constructFullName(String serviceName, String regType, String domain) throws DNSSDException {
-        onServiceStarting();
-        String result = InternalDNSSD.constructFullName(serviceName, regType, domain);
-        onServiceStopped();
-        return  result;
+        return DNSName.constructFullName(serviceName, regType, domain);
     }
 
     /** Instruct the daemon to verify the validity of a resource record that appears to
@@ -590,30 +758,177 @@ public abstract class DNSSD implements InternalDNSSDService.DnssdServiceListener
 
     @Override
     public void onServiceStarting() {
-        if (multicastLock == null) {
-            synchronized (this) { // Double-check lock
-                if (multicastLock == null) {
-                    WifiManager wifi = (WifiManager) context.getApplicationContext()
-                            .getSystemService(Context.WIFI_SERVICE);
-                    if (wifi == null) {
-                        Log.wtf("DNSSD", "Can't get WIFI Service");
-                        return;
-                    }
-                    multicastLock = wifi.createMulticastLock(MULTICAST_LOCK_NAME);
-                    multicastLock.setReferenceCounted(true);
-                }
-            }
+        synchronized (leaseLock) {
+            multicastLockManager.acquire();
+            multicastLeases++;
+        }
+        DNSSDMetrics metrics = this.metrics;
+        if (metrics != null) {
+            metrics.multicastLockAcquired();
         }
-        multicastLock.acquire();
     }
 
     @Override
     public void onServiceStopped() {
-        if (multicastLock == null) {
-            Log.wtf("DNSSD", "Multicast lock doesn't exist");
-            return;
+        synchronized (leaseLock) {
+            multicastLockManager.release();
+            multicastLeases--;
+        }
+        DNSSDMetrics metrics = this.metrics;
+        if (metrics != null) {
+            metrics.multicastLockReleased();
+        }
+    }
+
+    /** Replace the manager of multicast lock.<P>
+
+     By default the lock is acquired while any operation is active and released right after the last one stops.
+     Leases of running operations move to the new manager: they are taken from it before they are returned to the
+     old one, so the lock isn't dropped in between.
+     @see #setMulticastLockGracePeriod(long)
+     @see NoOpMulticastLockManager
+     */
+    public void setMulticastLockManager(MulticastLockManager multicastLockManager) {
+        synchronized (leaseLock) {
+            MulticastLockManager old = this.multicastLockManager;
+            if (old == multicastLockManager) {
+                return;
+            }
+            for (int i = 0; i < multicastLeases; i++) {
+                multicastLockManager.acquire();
+            }
+            for (int i = 0; i < multicastLeases; i++) {
+                old.release();
+            }
+            this.multicastLockManager = multicastLockManager;
+        }
+    }
+
+    public MulticastLockManager getMulticastLockManager() {
+        return multicastLockManager;
+    }
+
+    /** Keep multicast lock for <code>idleGracePeriod</code> milliseconds after the last operation stops,
+     so bursts of short operations don't toggle the Wi-Fi multicast filter.
+     */
+    public void setMulticastLockGracePeriod(long idleGracePeriod) {
+        setMulticastLockManager(new WifiMulticastLockManager(context, handler, idleGracePeriod));
+    }
+
+    /** Enable or disable collection of {@link DNSSDMetrics}. Disabling drops collected values.<P>
+
+     Only operations started while metrics are enabled are counted.
+     */
+    public void setMetricsEnabled(boolean enabled) {
+        synchronized (this) {
+            if (!enabled) {
+                metrics = null;
+            } else if (metrics == null) {
+                metrics = new DNSSDMetrics();
+            }
+        }
+    }
+
+    /** Return collected metrics or null if metrics are disabled.<P>
+     @see #setMetricsEnabled(boolean)
+     */
+    public DNSSDMetrics getMetrics() {
+        return metrics;
+    }
+
+    /** Set the budget of concurrent browse, resolve, query and domain enumeration operations of all instances
+     in the process, or null to remove it. Operations started before the call aren't counted.<P>
+     @see DNSSDAdmission
+     */
+    public static void setAdmission(DNSSDAdmission admission) {
+        DNSSD.admission = admission;
+    }
+
+    /** Return the process-wide admission budget or null if there is none.<P>
+     @see #setAdmission(DNSSDAdmission)
+     */
+    public static DNSSDAdmission getAdmission() {
+        return admission;
+    }
+
+    /** Return the journal of the latest browse, resolve and query events and operation failures of this instance. */
+    public DNSSDJournal getJournal() {
+        return journal;
+    }
+
+    /** Set a receiver of per-operation tracing events or null to disable tracing.<P>
+
+     Only operations started after this call are traced.
+     */
+    public void setTraceSink(TraceSink traceSink) {
+        this.traceSink = traceSink;
+    }
+
+    private OperationTrace newTrace(int operationType) {
+        TraceSink traceSink = this.traceSink;
+        return traceSink != null ? new OperationTrace(traceSink, operationType) : null;
+    }
+
+    private InternalDNSSDService.DnssdServiceListener serviceListener(DNSSDMetrics metrics, OperationTrace trace, int operationType) {
+        InternalDNSSDService.DnssdServiceListener listener = this;
+        if (metrics != null) {
+            listener = metrics.trackOperation(listener, operationType);
+        }
+        if (trace != null) {
+            listener = trace.track(listener);
         }
-        multicastLock.release();
+        return listener;
+    }
+
+    private void onOperationFailed(DNSSDMetrics metrics, int operationType, String name, int errorCode) {
+        journal.record(DNSSDJournal.OPERATION_FAILED, operationType, 0, name != null ? DNSSDJournal.hash(name.getBytes(UTF_8)) : 0, errorCode);
+        if (metrics != null) {
+            metrics.operationFailed(errorCode);
+        }
+    }
+
+    /** Start a native operation within the admission budget of its type, if one is set. */
+    private DNSSDService admitOperation(int operationType, InternalDNSSDService.DnssdServiceListener serviceListener,
+                                        final NativeOperation operation, final BaseListener listener) throws DNSSDException {
+        DNSSDAdmission admission = DNSSD.admission;
+        if (admission == null) {
+            return startOperation(operation, listener);
+        }
+        try {
+            return admission.admit(operationType, () -> startOperation(operation, listener), listener);
+        } catch (DNSSDException e) {
+            serviceListener.onServiceStopped();
+            throw e;
+        }
+    }
+
+    /** Start a native operation. Subclasses may defer the start, e.g. until the daemon is ready. */
+    DNSSDService startOperation(NativeOperation operation, BaseListener listener) throws DNSSDException {
+        return operation.start();
+    }
+
+    interface NativeOperation {
+        DNSSDService start() throws DNSSDException;
+    }
+
+    /** Mark the first reply of a traced operation, before the reply is decoded. */
+    private static void traceReply(OperationTrace trace) {
+        if (trace != null) {
+            trace.reply();
+        }
+    }
+
+    private void post(OperationTrace trace, Runnable runnable) {
+        handler.post(trace != null ? trace.callback(runnable) : runnable);
+    }
+
+    private static Runnable timeoutRunnable(final DNSSDMetrics metrics, final DNSSDService[] services) {
+        return () -> {
+            if (metrics != null) {
+                metrics.timeoutFired();
+            }
+            services[0].stop();
+        };
     }
 
     /** Return the index of a named interface.<P>
@@ -0,0 +1,262 @@
+/*
+ * Copyright (C) 2016 Andriy Druk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.druk.dnssd;
+
+import java.util.ArrayDeque;
+
+/**
+ * Budget of concurrent native operations, shared by all {@link DNSSD} instances of the process once set with
+ * {@link DNSSD#setAdmission(DNSSDAdmission)}.<P>
+ *
+ * Every browse, resolve, query and domain enumeration holds a daemon connection, with its thread and socket,
+ * until it's stopped. Each of these operation types, see {@link DNSSDMetrics#BROWSE} and others, may get a limit.
+ * An operation over the limit either waits in a FIFO queue until another operation of its type stops, or is refused
+ * with {@link DNSSDException#REFUSED}. A queued operation is returned as a {@link DNSSDService} like a running one,
+ * stopping it removes it from the queue. Queries of a {@link DNSSDQueryGroup} share the connection of the group and
+ * aren't counted. Timeouts of resolves and auto-stopped queries include the time spent in the queue.
+ */
+public final class DNSSDAdmission {
+
+    /** Limit of an operation type without a budget. */
+    public static final int UNLIMITED = Integer.MAX_VALUE;
+
+    /** Policy that queues operations over the limit. */
+    public static final int QUEUE = 0;
+    /** Policy that refuses operations over the limit. */
+    public static final int REJECT = 1;
+
+    private static final int QUEUED = 0;
+    private static final int RUNNING = 1;
+    private static final int STOPPED = 2;
+
+    private final Budget[] budgets = new Budget[DNSSDMetrics.OPERATION_TYPES];
+
+    public DNSSDAdmission() {
+        for (int i = 0; i < budgets.length; i++) {
+            budgets[i] = new Budget();
+        }
+    }
+
+    /** Set the budget of an operation type. Raising a limit starts queued operations right away.<P>
+     @param	operationType
+     One of {@link DNSSDMetrics#BROWSE}, {@link DNSSDMetrics#RESOLVE}, {@link DNSSDMetrics#QUERY} or
+     {@link DNSSDMetrics#ENUMERATE_DOMAINS}.
+     <P>
+     @param	limit
+     Number of operations of the type that run at once, or {@link #UNLIMITED}.
+     <P>
+     @param	policy
+     {@link #QUEUE} or {@link #REJECT}.
+     */
+    public void setLimit(int operationType, int limit, int policy) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit must be positive: " + limit);
+        }
+        if (policy != QUEUE && policy != REJECT) {
+            throw new IllegalArgumentException("Unknown policy: " + policy);
+        }
+        Budget budget = budgets[operationType];
+        synchronized (budget) {
+            budget.limit = limit;
+            budget.policy = policy;
+        }
+        startQueued(budget);
+    }
+
+    public int getLimit(int operationType) {
+        Budget budget = budgets[operationType];
+        synchronized (budget) {
+            return budget.limit;
+        }
+    }
+
+    /** Return the number of admitted operations of a type that haven't stopped yet. */
+    public int getRunning(int operationType) {
+        Budget budget = budgets[operationType];
+        synchronized (budget) {
+            return budget.running;
+        }
+    }
+
+    /** Return the number of operations of a type waiting for a slot. */
+    public int getQueueDepth(int operationType) {
+        Budget budget = budgets[operationType];
+        synchronized (budget) {
+            return budget.queue.size();
+        }
+    }
+
+    /** Return the highest number of operations of a type that waited at once. */
+    public int getMaxQueueDepth(int operationType) {
+        Budget budget = budgets[operationType];
+        synchronized (budget) {
+            return budget.maxQueueDepth;
+        }
+    }
+
+    /** Return the number of refused operations of a type. */
+    public long getRejected(int operationType) {
+        Budget budget = budgets[operationType];
+        synchronized (budget) {
+            return budget.rejected;
+        }
+    }
+
+    /** Return how long queued operations of a type waited before they started. Operations admitted right away
+     and operations stopped in the queue aren't recorded.
+     */
+    public DNSSDMetrics.Latency getWaitTime(int operationType) {
+        return budgets[operationType].waitTime.snapshot();
+    }
+
+    /** Start the operation now, queue it or refuse it with {@link DNSSDException#REFUSED}. */
+    DNSSDService admit(int operationType, DNSSD.NativeOperation operation, BaseListener listener) throws DNSSDException {
+        Budget budget = budgets[operationType];
+        Admitted admitted = new Admitted(budget, operation, listener);
+        synchronized (budget) {
+            if (budget.running >= budget.limit) {
+                if (budget.policy == REJECT) {
+                    budget.rejected++;
+                    throw InternalDNSSD.newException(DNSSDException.REFUSED);
+                }
+                admitted.enqueuedAt = System.nanoTime();
+                budget.queue.add(admitted);
+                budget.maxQueueDepth = Math.max(budget.maxQueueDepth, budget.queue.size());
+                return admitted;
+            }
+            budget.running++;
+            admitted.state = RUNNING;
+        }
+        try {
+            admitted.service = operation.start();
+        } catch (DNSSDException e) {
+            release(budget);
+            throw e;
+        }
+        return admitted;
+    }
+
+    private void release(Budget budget) {
+        synchronized (budget) {
+            budget.running--;
+        }
+        startQueued(budget);
+    }
+
+    // Loops instead of recursing through release() when queued operations fail to start
+    private void startQueued(Budget budget) {
+        while (true) {
+            Admitted next;
+            synchronized (budget) {
+                if (budget.running >= budget.limit || (next = budget.queue.poll()) == null) {
+                    return;
+                }
+                budget.running++;
+                next.state = RUNNING;
+            }
+            budget.waitTime.record(System.nanoTime() - next.enqueuedAt);
+            if (!next.start()) {
+                synchronized (budget) {
+                    budget.running--;
+                }
+            }
+        }
+    }
+
+    private static class Budget {
+
+        // Guarded by this
+        private int limit = UNLIMITED;
+        private int policy = QUEUE;
+        private int running;
+        private int maxQueueDepth;
+        private long rejected;
+        private final ArrayDeque<Admitted> queue = new ArrayDeque<>();
+
+        private final LatencyHistogram waitTime = new LatencyHistogram();
+    }
+
+    /** Operation that holds, or waits for, a slot of its budget. */
+    private class Admitted implements DNSSDService {
+
+        private final Budget budget;
+        private final DNSSD.NativeOperation operation;
+        private final BaseListener listener;
+
+        // Guarded by the budget
+        private int state = QUEUED;
+        private long enqueuedAt;
+
+        // Guarded by this
+        private DNSSDService service;
+        private boolean isStopped;
+
+        Admitted(Budget budget, DNSSD.NativeOperation operation, BaseListener listener) {
+            this.budget = budget;
+            this.operation = operation;
+            this.listener = listener;
+        }
+
+        /** @return false if the operation failed to start and gave up its slot. */
+        boolean start() {
+            int error;
+            synchronized (this) {
+                if (isStopped) {
+                    return true; // stop() released the slot
+                }
+                try {
+                    service = operation.start();
+                    return true;
+                } catch (DNSSDException e) {
+                    error = e.getErrorCode();
+                }
+            }
+            synchronized (budget) {
+                if (state == STOPPED) {
+                    return true; // stop() ran after the failure and released the slot
+                }
+                state = STOPPED;
+            }
+            listener.operationFailed(this, error);
+            return false;
+        }
+
+        @Override
+        public void stop() {
+            boolean wasRunning;
+            synchronized (budget) {
+                if (state == STOPPED) {
+                    return;
+                }
+                wasRunning = state == RUNNING;
+                if (!wasRunning) {
+                    budget.queue.remove(this);
+                }
+                state = STOPPED;
+            }
+            synchronized (this) {
+                isStopped = true;
+                if (service != null) {
+                    service.stop();
+                    service = null;
+                }
+            }
+            if (wasRunning) {
+                release(budget);
+            }
+        }
+    }
+}
@@ -21,98 +21,358 @@ import android.os.Handler;
 import android.os.Looper;
 import android.util.Log;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
 /**
  * RxDnssd is implementation of RxDnssd with embedded DNS-SD  {@link InternalDNSSD}
  */
 public class DNSSDEmbedded extends DNSSD {
 
     public static final int DEFAULT_STOP_TIMER_DELAY = 5000; //5 sec
+    public static final int DEFAULT_CACHE_SIZE = 500; // records
+    public static final int MAX_INTERFACE_FILTER = 32;
 
     private static final String TAG = "DNSSDEmbedded";
-    private final long mStopTimerDelay;
     private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable exitRunnable = DNSSDEmbedded::nativeExit;
+    private final Runnable idlePolicyChanged = this::onIdlePolicyChanged;
+    private final List<PendingService> pendingServices = new ArrayList<>();
     private Thread mThread;
-    private volatile boolean isStarted = false;
+    private Startup mStartup;
+    private volatile boolean isReady = false;
+    private volatile long initTimeNanos = 0;
     private int serviceCount = 0;
+    private volatile IdlePolicy idlePolicy;
+    private boolean isIdle = false;
+    private long coldStartCount = 0;
+    private long warmStartCount = 0;
+    private int cacheSize = DEFAULT_CACHE_SIZE;
+    private int cacheGrowth = DEFAULT_CACHE_SIZE;
+    private long cacheMaxBytes = 0;
+    private boolean interfaceFilterAllow = false;
+    private String[] interfaceFilterNames = new String[0];
+    private int[] interfaceFilterIndexes = new int[0];
+    private boolean fastAnnounce = false;
+
+    /** Listener of asynchronous DNS-SD initialization, see {@link #initAsync(InitListener)}. */
+    public interface InitListener {
+
+        /**
+         * Called on the main thread when DNS-SD initialization finished.
+         *
+         * @param error 0 if DNS-SD is ready, otherwise error code of native initialization
+         * @param initTimeNanos duration of native initialization
+         */
+        void onInitialized(int error, long initTimeNanos);
+    }
 
     public DNSSDEmbedded(Context context) {
         this(context, DEFAULT_STOP_TIMER_DELAY);
     }
 
     public DNSSDEmbedded(Context context, long stopTimerDelay) {
+        this(context, new FixedIdlePolicy(stopTimerDelay));
+    }
+
+    /**
+     * @param context context
+     * @param idlePolicy policy that decides how long DNS-SD thread stays alive without operations
+     */
+    public DNSSDEmbedded(Context context, IdlePolicy idlePolicy) {
         super(context, "jdns_sd_embedded");
-        mStopTimerDelay = stopTimerDelay;
+        setIdlePolicy(idlePolicy);
     }
 
-    static native int nativeInit();
+    static native int nativeInit(int cacheSize, int cacheGrowth, long cacheMaxBytes);
 
     static native int nativeLoop();
 
     static native void nativeExit();
 
+    static native void nativeGetCacheStats(long[] stats);
+
+    static native int nativeGetStats(long[] stats, long[] interfaceStats);
+
+    static native int nativeSetInterfaceFilter(boolean allow, String[] names, int[] indexes);
+
+    static native void nativeSetFastAnnounce(boolean enabled);
+
     /**
      * Init DNS-SD thread and start event loop. Should be called before using any of DNSSD operations.
      * If DNS-SD thread has already initialised will try to reuse it.
      *
-     * Note: This method will block thread until DNS-SD initialization finish.
+     * Note: This method will block thread until DNS-SD initialization finish, use {@link #initAsync(InitListener)} to avoid it.
      */
     public void init() {
-        handler.removeCallbacks(DNSSDEmbedded::nativeExit);
-
-        if (mThread != null && mThread.isAlive()) {
-            Log.i(TAG, "already started");
-            waitUntilStarted();
-            return;
+        Future<Integer> startup = initAsync(null);
+        while (true) {
+            try {
+                startup.get();
+                return;
+            } catch (InterruptedException e) {
+                Log.e(TAG, "waitUntilStarted exception: ", e);
+            } catch (ExecutionException e) {
+                Log.e(TAG, "init exception: ", e.getCause());
+                return;
+            }
         }
+    }
 
-        isStarted = false;
+    /**
+     * Init DNS-SD thread and start event loop without blocking the calling thread.
+     * If DNS-SD thread has already initialised will try to reuse it.<P>
+     *
+     * Browse, resolve, query and domain enumeration operations started before DNS-SD is ready are queued
+     * and started as soon as initialization finishes (or fail with its error code).
+     *
+     * @param listener optional listener of initialization result
+     * @return future with the error code of native initialization, 0 on success
+     */
+    public Future<Integer> initAsync(InitListener listener) {
+        synchronized (DNSSDEmbedded.class) {
+            handler.removeCallbacks(exitRunnable);
 
-        InternalDNSSD.getInstance();
-        mThread = new Thread() {
-            public void run() {
-                Log.i(TAG, "init");
-                int err = nativeInit();
-                synchronized (DNSSDEmbedded.class) {
-                    isStarted = true;
-                    DNSSDEmbedded.class.notifyAll();
-                }
-                if (err != 0) {
-                    Log.e(TAG, "error: " + err);
-                    return;
+            if (mThread != null && mThread.isAlive()) {
+                Log.i(TAG, "already started");
+                if (isIdle) {
+                    isIdle = false;
+                    warmStartCount++;
                 }
-                Log.i(TAG, "start");
-                int ret = nativeLoop();
-                isStarted = false;
-                Log.i(TAG, "finish with code: " + ret);
+                mStartup.addListener(listener);
+                return mStartup;
             }
-        };
-        mThread.setPriority(Thread.MAX_PRIORITY);
-        mThread.setName("DNS-SDEmbedded");
-        mThread.start();
 
-        waitUntilStarted();
+            isReady = false;
+            isIdle = false;
+            coldStartCount++;
+
+            InternalDNSSD.getInstance();
+            final int cacheSize = this.cacheSize;
+            final int cacheGrowth = this.cacheGrowth;
+            final long cacheMaxBytes = this.cacheMaxBytes;
+            final boolean filterAllow = interfaceFilterAllow;
+            final String[] filterNames = interfaceFilterNames;
+            final int[] filterIndexes = interfaceFilterIndexes;
+            final boolean fastAnnounce = this.fastAnnounce;
+            final Startup startup = new Startup(() -> {
+                nativeSetFastAnnounce(fastAnnounce);
+                int err = nativeSetInterfaceFilter(filterAllow, filterNames, filterIndexes);
+                return err != 0 ? err : nativeInit(cacheSize, cacheGrowth, cacheMaxBytes);
+            });
+            startup.addListener(listener);
+            mStartup = startup;
+            mThread = new Thread() {
+                public void run() {
+                    Log.i(TAG, "init");
+                    startup.run();
+                    if (startup.error != 0) {
+                        Log.e(TAG, "error: " + startup.error);
+                        return;
+                    }
+                    Log.i(TAG, "start");
+                    int ret = nativeLoop();
+                    isReady = false;
+                    Log.i(TAG, "finish with code: " + ret);
+                }
+            };
+            mThread.setPriority(Thread.MAX_PRIORITY);
+            mThread.setName("DNS-SDEmbedded");
+            mThread.start();
+            return startup;
+        }
+    }
+
+    /** Duration of the last native initialization in nanoseconds, 0 if DNS-SD wasn't initialized yet. */
+    public long getInitTimeNanos() {
+        return initTimeNanos;
     }
 
     /**
-     * Exit from embedded DNS-SD loop. This method will stop DNS-SD after the delay (it makes possible to reuse already initialised DNS-SD thread).
+     * Exit from embedded DNS-SD loop. This method will stop DNS-SD after the delay given by {@link IdlePolicy}
+     * (it makes possible to reuse already initialised DNS-SD thread).
      *
      * Note: method isn't blocking, can be used from any thread.
      */
     public void exit() {
         synchronized (DNSSDEmbedded.class) {
+            isIdle = true;
+            handler.removeCallbacks(exitRunnable);
+            long idleTimeout = idlePolicy.onIdle(uptimeMillis());
+            if (idleTimeout == IdlePolicy.KEEP_ALIVE) {
+                Log.i(TAG, "keep alive");
+                return;
+            }
             Log.i(TAG, "post exit");
-            handler.postDelayed(DNSSDEmbedded::nativeExit, mStopTimerDelay);
+            handler.postDelayed(exitRunnable, idleTimeout);
+        }
+    }
+
+    /**
+     * Set policy that decides how long DNS-SD thread stays alive after the last operation stopped.
+     * Default policy keeps it for the stop timer delay passed to the constructor.
+     *
+     * @param idlePolicy idle policy
+     */
+    public void setIdlePolicy(IdlePolicy idlePolicy) {
+        if (idlePolicy == null) {
+            throw new IllegalArgumentException("idlePolicy should not be null");
         }
+        IdlePolicy previous = this.idlePolicy;
+        if (previous != null) {
+            previous.setOnChangedListener(null);
+        }
+        this.idlePolicy = idlePolicy;
+        idlePolicy.setOnChangedListener(idlePolicyChanged);
+        onIdlePolicyChanged();
+    }
+
+    public IdlePolicy getIdlePolicy() {
+        return idlePolicy;
     }
 
-    private void waitUntilStarted() {
+    /**
+     * Configure record cache of DNS-SD. Takes effect at the next start of DNS-SD thread.<P>
+     *
+     * When the cache is full it grows by the growth increment until it reaches the memory bound,
+     * after that records that don't answer active questions are evicted.
+     *
+     * @param initialSize number of records to allocate at start
+     * @param growth number of records to add every time the cache is full
+     * @param maxBytes upper bound of cache memory in bytes, 0 for no limit
+     */
+    public void setRecordCacheConfig(int initialSize, int growth, long maxBytes) {
+        if (initialSize <= 0 || growth <= 0 || maxBytes < 0) {
+            throw new IllegalArgumentException("Wrong cache config: " + initialSize + ", " + growth + ", " + maxBytes);
+        }
         synchronized (DNSSDEmbedded.class) {
-            while (!isStarted) {
-                try {
-                    DNSSDEmbedded.class.wait();
-                } catch (InterruptedException e) {
-                    Log.e(TAG, "waitUntilStarted exception: ", e);
-                }
+            cacheSize = initialSize;
+            cacheGrowth = growth;
+            cacheMaxBytes = maxBytes;
+        }
+    }
+
+    /**
+     * Restrict DNS-SD to the given network interfaces. Takes effect at the next start of DNS-SD thread.
+     *
+     * @param names interface names, e.g. "wlan0"
+     */
+    public void setInterfaceAllowList(String... names) {
+        setInterfaceFilter(true, names, new int[0]);
+    }
+
+    /**
+     * Exclude the given network interfaces (e.g. VPN tunnels or cellular) from DNS-SD.
+     * Takes effect at the next start of DNS-SD thread.
+     *
+     * @param names interface names, e.g. "tun0"
+     */
+    public void setInterfaceDenyList(String... names) {
+        setInterfaceFilter(false, names, new int[0]);
+    }
+
+    /**
+     * Restrict network interfaces used by DNS-SD. Takes effect at the next start of DNS-SD thread and
+     * applies every time DNS-SD sets up its interfaces after a network change.<P>
+     *
+     * Interfaces are matched by name or by index (see {@link DNSSD#getIfIndexForName(String)}).
+     * Names are preferred, because an interface gets a new index when it is recreated.
+     * An empty deny list removes the filter.
+     *
+     * @param allow true to use only the listed interfaces, false to use all but the listed interfaces
+     * @param names interface names
+     * @param indexes interface indexes
+     */
+    public void setInterfaceFilter(boolean allow, String[] names, int[] indexes) {
+        if (names.length + indexes.length > MAX_INTERFACE_FILTER) {
+            throw new IllegalArgumentException("Interface filter is limited to " + MAX_INTERFACE_FILTER + " entries");
+        }
+        for (String name : names) {
+            if (name == null) {
+                throw new IllegalArgumentException("Interface name should not be null");
+            }
+        }
+        synchronized (DNSSDEmbedded.class) {
+            interfaceFilterAllow = allow;
+            interfaceFilterNames = names.clone();
+            interfaceFilterIndexes = indexes.clone();
+        }
+    }
+
+    /**
+     * Shorten probing and announcement of registered records. Takes effect at the next start of DNS-SD thread.<P>
+     *
+     * Probe and announce intervals become eight times shorter, so a service is normally discoverable
+     * in a couple hundred milliseconds instead of about a second. The number of probes stays the same,
+     * so name conflicts are still detected, but it takes more multicast traffic in a shorter time.
+     * Use it on controlled networks, where names are unique by construction.
+     *
+     * @param enabled true to use short intervals, false for the standard mDNS schedule
+     */
+    public void setFastAnnounce(boolean enabled) {
+        synchronized (DNSSDEmbedded.class) {
+            fastAnnounce = enabled;
+        }
+    }
+
+    /** Whether probing and announcement use short intervals, see {@link #setFastAnnounce(boolean)}. */
+    public boolean isFastAnnounce() {
+        synchronized (DNSSDEmbedded.class) {
+            return fastAnnounce;
+        }
+    }
+
+    /**
+     * Get record cache counters of DNS-SD. If DNS-SD thread isn't running, counters of its last run are returned.
+     *
+     * @return record cache counters
+     */
+    public CacheStats getCacheStats() {
+        long[] stats = new long[CacheStats.SIZE];
+        nativeGetCacheStats(stats);
+        return new CacheStats(stats);
+    }
+
+    /**
+     * Get activity counters of DNS-SD core. If DNS-SD thread isn't running, counters of its last run are returned.
+     *
+     * @return activity counters
+     */
+    public Stats getStats() {
+        long[] stats = new long[Stats.SIZE];
+        long[] interfaceStats = new long[InterfaceStats.MAX_INTERFACES * InterfaceStats.SIZE];
+        int interfaces = nativeGetStats(stats, interfaceStats);
+        return new Stats(stats, interfaceStats, interfaces);
+    }
+
+    /** Number of times DNS-SD thread was started from scratch. */
+    public long getColdStartCount() {
+        synchronized (DNSSDEmbedded.class) {
+            return coldStartCount;
+        }
+    }
+
+    /** Number of times an idle DNS-SD thread was reused instead of starting a new one. */
+    public long getWarmStartCount() {
+        synchronized (DNSSDEmbedded.class) {
+            return warmStartCount;
+        }
+    }
+
+    private static long uptimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    private void onIdlePolicyChanged() {
+        synchronized (DNSSDEmbedded.class) {
+            if (isIdle && mThread != null && mThread.isAlive()) {
+                exit();
             }
         }
     }
@@ -120,16 +380,379 @@ public class DNSSDEmbedded extends DNSSD {
     @Override
     public void onServiceStarting() {
         super.onServiceStarting();
-        this.init();
-        serviceCount++;
+        synchronized (DNSSDEmbedded.class) {
+            if (serviceCount++ == 0) {
+                idlePolicy.onActive(uptimeMillis());
+            }
+            this.initAsync(null);
+        }
     }
 
     @Override
     public void onServiceStopped() {
         super.onServiceStopped();
-        serviceCount--;
-        if (serviceCount == 0) {
-            this.exit();
+        synchronized (DNSSDEmbedded.class) {
+            if (--serviceCount == 0) {
+                this.exit();
+            }
+        }
+    }
+
+    @Override
+    public DNSSDRegistration register(int flags, int ifIndex, String serviceName, String regType, String domain, String host, int port,
+                                      TXTRecord txtRecord, RegisterListener listener) throws DNSSDException {
+        // Registration handle manages records synchronously, so it needs the daemon right away
+        this.init();
+        return super.register(flags, ifIndex, serviceName, regType, domain, host, port, txtRecord, listener);
+    }
+
+    @Override
+    public DNSSDRecordRegistrar createRecordRegistrar(RegisterRecordListener listener) throws DNSSDException {
+        this.init();
+        return super.createRecordRegistrar(listener);
+    }
+
+    @Override
+    public DNSSDRegistrationGroup createRegistrationGroup(RegisterGroupListener listener) throws DNSSDException {
+        this.init();
+        return super.createRegistrationGroup(listener);
+    }
+
+    @Override
+    public DNSSDQueryGroup createQueryGroup() throws DNSSDException {
+        this.init();
+        return super.createQueryGroup();
+    }
+
+    @Override
+    public int reconfirmRecord(int flags, int ifIndex, String fullName, int rrtype, int rrclass, byte[] rdata) {
+        this.init();
+        return super.reconfirmRecord(flags, ifIndex, fullName, rrtype, rrclass, rdata);
+    }
+
+    @Override
+    DNSSDService startOperation(NativeOperation operation, BaseListener listener) throws DNSSDException {
+        synchronized (pendingServices) {
+            if (!isReady) {
+                PendingService service = new PendingService(operation, listener);
+                pendingServices.add(service);
+                return service;
+            }
+        }
+        return operation.start();
+    }
+
+    private void onInitialized(int error) {
+        List<PendingService> services;
+        synchronized (pendingServices) {
+            isReady = error == 0;
+            services = new ArrayList<>(pendingServices);
+            pendingServices.clear();
+        }
+        for (PendingService service : services) {
+            service.start(error);
+        }
+    }
+
+    /** Native initialization, completes when DNS-SD is ready or failed to start. */
+    private class Startup extends FutureTask<Integer> {
+
+        private final List<InitListener> listeners = new ArrayList<>();
+        private int error;
+        private long start;
+
+        Startup(Callable<Integer> init) {
+            super(init);
+        }
+
+        @Override
+        public void run() {
+            start = System.nanoTime();
+            super.run();
+        }
+
+        // Init time is recorded before the future completes, so it's there for whoever waits on it
+        @Override
+        protected void set(Integer result) {
+            initTimeNanos = System.nanoTime() - start;
+            super.set(result);
+        }
+
+        @Override
+        protected void setException(Throwable t) {
+            initTimeNanos = System.nanoTime() - start;
+            super.setException(t);
+        }
+
+        @Override
+        protected void done() {
+            try {
+                error = get();
+            } catch (Exception e) {
+                Log.e(TAG, "init exception: ", e);
+                error = DNSSDException.SERVICENOTRUNNING;
+            }
+            onInitialized(error);
+            List<InitListener> toNotify;
+            synchronized (listeners) {
+                toNotify = new ArrayList<>(listeners);
+                listeners.clear();
+            }
+            for (InitListener listener : toNotify) {
+                notify(listener);
+            }
+        }
+
+        void addListener(InitListener listener) {
+            if (listener == null) {
+                return;
+            }
+            synchronized (listeners) {
+                if (!isDone()) {
+                    listeners.add(listener);
+                    return;
+                }
+            }
+            notify(listener);
+        }
+
+        private void notify(final InitListener listener) {
+            final int error = this.error;
+            final long initTime = initTimeNanos;
+            handler.post(() -> listener.onInitialized(error, initTime));
+        }
+    }
+
+    /** Record cache counters, see {@link #getCacheStats()}. */
+    public static final class CacheStats {
+
+        static final int SIZE = 6;
+
+        private final long capacity;
+        private final long used;
+        private final long active;
+        private final long evicted;
+        private final long evictionPasses;
+        private final long growthsRefused;
+
+        CacheStats(long[] stats) {
+            capacity = stats[0];
+            used = stats[1];
+            active = stats[2];
+            evicted = stats[3];
+            evictionPasses = stats[4];
+            growthsRefused = stats[5];
+        }
+
+        /** Number of allocated cache entries. */
+        public long getCapacity() {
+            return capacity;
+        }
+
+        /** Number of occupied cache entries. */
+        public long getUsed() {
+            return used;
+        }
+
+        /** Number of cache entries that answer active questions. */
+        public long getActive() {
+            return active;
+        }
+
+        /** Number of cache entries evicted to make room for new records. */
+        public long getEvicted() {
+            return evicted;
+        }
+
+        /** Number of times the cache was full and unused entries were evicted. */
+        public long getEvictionPasses() {
+            return evictionPasses;
+        }
+
+        /** Number of times the cache reached its memory bound and wasn't grown. */
+        public long getGrowthsRefused() {
+            return growthsRefused;
+        }
+
+        @Override
+        public String toString() {
+            return "CacheStats{capacity=" + capacity + ", used=" + used + ", active=" + active + ", evicted=" + evicted
+                    + ", evictionPasses=" + evictionPasses + ", growthsRefused=" + growthsRefused + '}';
+        }
+    }
+
+    /** Activity counters of DNS-SD core, see {@link #getStats()}. */
+    public static final class Stats {
+
+        static final int SIZE = 8;
+
+        private final long cacheRecords;
+        private final long cacheHits;
+        private final long cacheMisses;
+        private final long knownAnswersSuppressed;
+        private final long queriesSuppressed;
+        private final long probesSent;
+        private final long announcementsSent;
+        private final long loopIterations;
+        private final List<InterfaceStats> interfaces;
+
+        Stats(long[] stats, long[] interfaceStats, int interfaceCount) {
+            cacheRecords = stats[0];
+            cacheHits = stats[1];
+            cacheMisses = stats[2];
+            knownAnswersSuppressed = stats[3];
+            queriesSuppressed = stats[4];
+            probesSent = stats[5];
+            announcementsSent = stats[6];
+            loopIterations = stats[7];
+            List<InterfaceStats> interfaces = new ArrayList<>(interfaceCount);
+            for (int i = 0; i < interfaceCount; i++) {
+                interfaces.add(new InterfaceStats(interfaceStats, i * InterfaceStats.SIZE));
+            }
+            this.interfaces = Collections.unmodifiableList(interfaces);
+        }
+
+        /** Number of records in the cache. */
+        public long getCacheRecords() {
+            return cacheRecords;
+        }
+
+        /** Number of new questions answered from the cache. */
+        public long getCacheHits() {
+            return cacheHits;
+        }
+
+        /** Number of new questions with no answer in the cache. */
+        public long getCacheMisses() {
+            return cacheMisses;
+        }
+
+        /** Number of answers not sent because they were in the querier's known-answer list. */
+        public long getKnownAnswersSuppressed() {
+            return knownAnswersSuppressed;
+        }
+
+        /** Number of questions not sent because another host asked them with our known answers. */
+        public long getQueriesSuppressed() {
+            return queriesSuppressed;
+        }
+
+        /** Number of probes sent for unique records. */
+        public long getProbesSent() {
+            return probesSent;
+        }
+
+        /** Number of record announcements sent. */
+        public long getAnnouncementsSent() {
+            return announcementsSent;
+        }
+
+        /** Number of event loop iterations. */
+        public long getLoopIterations() {
+            return loopIterations;
+        }
+
+        /** Traffic counters per interface. */
+        public List<InterfaceStats> getInterfaces() {
+            return interfaces;
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{cacheRecords=" + cacheRecords + ", cacheHits=" + cacheHits + ", cacheMisses=" + cacheMisses
+                    + ", knownAnswersSuppressed=" + knownAnswersSuppressed + ", queriesSuppressed=" + queriesSuppressed
+                    + ", probesSent=" + probesSent + ", announcementsSent=" + announcementsSent
+                    + ", loopIterations=" + loopIterations + ", interfaces=" + interfaces + '}';
+        }
+    }
+
+    /** Traffic counters of one network interface, see {@link Stats#getInterfaces()}. */
+    public static final class InterfaceStats {
+
+        static final int SIZE = 5;
+        static final int MAX_INTERFACES = 16;
+
+        private final int ifIndex;
+        private final long packetsSent;
+        private final long bytesSent;
+        private final long packetsReceived;
+        private final long bytesReceived;
+
+        InterfaceStats(long[] stats, int offset) {
+            ifIndex = (int) stats[offset];
+            packetsSent = stats[offset + 1];
+            bytesSent = stats[offset + 2];
+            packetsReceived = stats[offset + 3];
+            bytesReceived = stats[offset + 4];
+        }
+
+        /** OS interface index, 0 for unicast sockets. */
+        public int getIfIndex() {
+            return ifIndex;
+        }
+
+        public long getPacketsSent() {
+            return packetsSent;
+        }
+
+        public long getBytesSent() {
+            return bytesSent;
+        }
+
+        public long getPacketsReceived() {
+            return packetsReceived;
+        }
+
+        public long getBytesReceived() {
+            return bytesReceived;
+        }
+
+        @Override
+        public String toString() {
+            return "InterfaceStats{ifIndex=" + ifIndex + ", packetsSent=" + packetsSent + ", bytesSent=" + bytesSent
+                    + ", packetsReceived=" + packetsReceived + ", bytesReceived=" + bytesReceived + '}';
+        }
+    }
+
+    /** Operation started before DNS-SD was ready. */
+    private class PendingService implements DNSSDService {
+
+        private final NativeOperation operation;
+        private final BaseListener listener;
+        private DNSSDService service;
+        private boolean isStopped = false;
+
+        PendingService(NativeOperation operation, BaseListener listener) {
+            this.operation = operation;
+            this.listener = listener;
+        }
+
+        synchronized void start(int error) {
+            if (isStopped) {
+                return;
+            }
+            if (error != 0) {
+                listener.operationFailed(this, error);
+                return;
+            }
+            try {
+                service = operation.start();
+            } catch (DNSSDException e) {
+                listener.operationFailed(this, e.getErrorCode());
+            }
+        }
+
+        @Override
+        public void stop() {
+            synchronized (pendingServices) {
+                pendingServices.remove(this);
+            }
+            synchronized (this) {
+                isStopped = true;
+                if (service != null) {
+                    service.stop();
+                }
+            }
         }
     }
 }
@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2016 Andriy Druk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.druk.dnssd;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size ring buffer of the latest DNSSD events for post-mortem diagnostics.<P>
+ *
+ * All storage is allocated up front and writers never block: each event claims the next slot with a single
+ * atomic increment and publishes it with a per-slot sequence number, so the journal can stay always-on.
+ * A writer that laps another one still writing the same slot drops its event.
+ * Readers ({@link #snapshot()}, {@link #dump(PrintWriter)}) skip slots that are being overwritten.
+ */
+public final class DNSSDJournal {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    /** serviceFound of browse. */
+    public static final int SERVICE_FOUND = 1;
+    /** serviceLost of browse. */
+    public static final int SERVICE_LOST = 2;
+    /** serviceResolved of resolve, value is port. */
+    public static final int SERVICE_RESOLVED = 3;
+    /** queryAnswered of queryRecord, value is rrtype. */
+    public static final int QUERY_ANSWERED = 4;
+    /** operationFailed of any operation, flags is operation type (e.g. {@link DNSSDMetrics#BROWSE}), value is error code. */
+    public static final int OPERATION_FAILED = 5;
+
+    private static final long IN_PROGRESS = -1;
+    private static final long EMPTY = -2;
+
+    private final int mask;
+    private final AtomicLong nextSequence = new AtomicLong();
+    private final AtomicLongArray sequences;
+    // Atomic arrays order the fields against the sequence of their slot
+    private final AtomicLongArray timestamps;
+    private final AtomicIntegerArray kinds;
+    private final AtomicIntegerArray flags;
+    private final AtomicIntegerArray ifIndexes;
+    private final AtomicIntegerArray nameHashes;
+    private final AtomicIntegerArray values;
+
+    /**
+     * @param capacity number of latest events to keep, rounded up to a power of two.
+     */
+    public DNSSDJournal(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity should be positive: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        mask = size - 1;
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, EMPTY);
+        }
+        timestamps = new AtomicLongArray(size);
+        kinds = new AtomicIntegerArray(size);
+        flags = new AtomicIntegerArray(size);
+        ifIndexes = new AtomicIntegerArray(size);
+        nameHashes = new AtomicIntegerArray(size);
+        values = new AtomicIntegerArray(size);
+    }
+
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    void record(int kind, int flags, int ifIndex, int nameHash, int value) {
+        long sequence = nextSequence.getAndIncrement();
+        int slot = (int) sequence & mask;
+        long current;
+        do {
+            current = sequences.get(slot);
+            if (current == IN_PROGRESS || current > sequence) {
+                return; // Another writer owns the slot, its event is kept
+            }
+        } while (!sequences.compareAndSet(slot, current, IN_PROGRESS));
+        // The CAS above orders these stores after IN_PROGRESS, the set below publishes them
+        timestamps.lazySet(slot, System.nanoTime());
+        kinds.lazySet(slot, kind);
+        this.flags.lazySet(slot, flags);
+        ifIndexes.lazySet(slot, ifIndex);
+        nameHashes.lazySet(slot, nameHash);
+        values.lazySet(slot, value);
+        sequences.set(slot, sequence);
+    }
+
+    /** Copy recorded events, oldest first. */
+    public List<Entry> snapshot() {
+        long last = nextSequence.get();
+        long first = Math.max(0, last - getCapacity());
+        List<Entry> result = new ArrayList<>((int) (last - first));
+        for (long sequence = first; sequence < last; sequence++) {
+            int slot = (int) sequence & mask;
+            if (sequences.get(slot) != sequence) {
+                continue;
+            }
+            Entry entry = new Entry(sequence, timestamps.get(slot), kinds.get(slot), flags.get(slot), ifIndexes.get(slot),
+                    nameHashes.get(slot), values.get(slot));
+            // Writer could take the slot while we were reading it, then the slot isn't at this sequence anymore
+            if (sequences.get(slot) == sequence) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    /** Write recorded events, oldest first, one per line. */
+    public void dump(PrintWriter writer) {
+        for (Entry entry : snapshot()) {
+            writer.println(entry);
+        }
+        writer.flush();
+    }
+
+    /** FNV-1a hash of a name as delivered by the daemon. */
+    static int hash(byte[] name) {
+        if (name == null) {
+            return 0;
+        }
+        int hash = 0x811c9dc5;
+        for (byte b : name) {
+            hash ^= b & 0xff;
+            hash *= 0x01000193;
+        }
+        return hash;
+    }
+
+    /** One recorded event. */
+    public static final class Entry {
+
+        private final long sequence;
+        private final long timestampNanos;
+        private final int kind;
+        private final int flags;
+        private final int ifIndex;
+        private final int nameHash;
+        private final int value;
+
+        Entry(long sequence, long timestampNanos, int kind, int flags, int ifIndex, int nameHash, int value) {
+            this.sequence = sequence;
+            this.timestampNanos = timestampNanos;
+            this.kind = kind;
+            this.flags = flags;
+            this.ifIndex = ifIndex;
+            this.nameHash = nameHash;
+            this.value = value;
+        }
+
+        /** Number of the event since the journal was created. */
+        public long getSequence() {
+            return sequence;
+        }
+
+        /** {@link System#nanoTime()} of the event. */
+        public long getTimestampNanos() {
+            return timestampNanos;
+        }
+
+        /** Event kind, e.g. {@link #SERVICE_FOUND}. */
+        public int getKind() {
+            return kind;
+        }
+
+        public int getFlags() {
+            return flags;
+        }
+
+        public int getIfIndex() {
+            return ifIndex;
+        }
+
+        /** FNV-1a hash of service name (browse), full name (resolve and query) or the name operation was started with (failures). */
+        public int getNameHash() {
+            return nameHash;
+        }
+
+        /** Kind specific value, see kind constants. */
+        public int getValue() {
+            return value;
+        }
+
+        @Override
+        public String toString() {
+            return sequence + " " + timestampNanos + " " + kindName(kind) + " flags=" + flags + " ifIndex=" + ifIndex +
+                    " name=" + Integer.toHexString(nameHash) + " value=" + value;
+        }
+
+        private static String kindName(int kind) {
+            switch (kind) {
+                case SERVICE_FOUND:
+                    return "SERVICE_FOUND";
+                case SERVICE_LOST:
+                    return "SERVICE_LOST";
+                case SERVICE_RESOLVED:
+                    return "SERVICE_RESOLVED";
+                case QUERY_ANSWERED:
+                    return "QUERY_ANSWERED";
+                case OPERATION_FAILED:
+                    return "OPERATION_FAILED";
+                default:
+                    return String.valueOf(kind);
+            }
+        }
+    }
+}
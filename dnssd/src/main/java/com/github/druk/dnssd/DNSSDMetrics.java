@@ -0,0 +1,337 @@
+/*
+ * Copyright (C) 2016 Andriy Druk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.druk.dnssd;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters, gauges and latency histograms of a {@link DNSSD} instance.<P>
+ *
+ * Metrics are disabled by default, see {@link DNSSD#setMetricsEnabled(boolean)}. While disabled
+ * DNSSD doesn't create this object and operations don't take any timestamps.
+ * Use {@link #snapshot()} to export current values.
+ */
+public final class DNSSDMetrics {
+
+    /** Operation type of {@link DNSSD#browse}. */
+    public static final int BROWSE = 0;
+    /** Operation type of {@link DNSSD#resolve}. */
+    public static final int RESOLVE = 1;
+    /** Operation type of {@link DNSSD#register} and {@link DNSSD#createRegistrationGroup}. */
+    public static final int REGISTER = 2;
+    /** Operation type of {@link DNSSD#queryRecord}. */
+    public static final int QUERY = 3;
+    /** Operation type of {@link DNSSD#enumerateDomains}. */
+    public static final int ENUMERATE_DOMAINS = 4;
+    /** Operation type of {@link DNSSD#createRecordRegistrar}. */
+    public static final int RECORD_REGISTRAR = 5;
+
+    static final int OPERATION_TYPES = 6;
+
+    private static final long SECOND = 1000000000L;
+
+    private final long createdAt = System.nanoTime();
+    private final AtomicIntegerArray activeOperations = new AtomicIntegerArray(OPERATION_TYPES);
+    private final AtomicLong browseEvents = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final LatencyHistogram resolveLatency = new LatencyHistogram();
+    private final LatencyHistogram queryLatency = new LatencyHistogram();
+    private final LatencyHistogram multicastLockHoldTime = new LatencyHistogram();
+    private final Map<Integer, AtomicLong> failures = new HashMap<>();
+
+    // Browse events of the current and the previous second, guarded by this
+    private long rateSecond;
+    private long rateCurrent;
+    private long ratePrevious;
+
+    // Multicast lock holders, guarded by this
+    private int lockHolders;
+    private long lockAcquiredAt;
+
+    DNSSDMetrics() {
+    }
+
+    InternalDNSSDService.DnssdServiceListener trackOperation(InternalDNSSDService.DnssdServiceListener listener, int operationType) {
+        return new InternalDNSSDService.DnssdServiceListener() {
+            @Override
+            public void onServiceStarting() {
+                activeOperations.incrementAndGet(operationType);
+                listener.onServiceStarting();
+            }
+
+            @Override
+            public void onServiceStopped() {
+                activeOperations.decrementAndGet(operationType);
+                listener.onServiceStopped();
+            }
+        };
+    }
+
+    void browseEvent() {
+        browseEvents.incrementAndGet();
+        long second = System.nanoTime() / SECOND;
+        synchronized (this) {
+            if (second != rateSecond) {
+                ratePrevious = second == rateSecond + 1 ? rateCurrent : 0;
+                rateCurrent = 0;
+                rateSecond = second;
+            }
+            rateCurrent++;
+        }
+    }
+
+    void resolved(long startTime) {
+        resolveLatency.record(System.nanoTime() - startTime);
+    }
+
+    void queryAnswered(long startTime) {
+        queryLatency.record(System.nanoTime() - startTime);
+    }
+
+    void timeoutFired() {
+        timeouts.incrementAndGet();
+    }
+
+    void operationFailed(int errorCode) {
+        AtomicLong counter;
+        synchronized (failures) {
+            counter = failures.get(errorCode);
+            if (counter == null) {
+                counter = new AtomicLong();
+                failures.put(errorCode, counter);
+            }
+        }
+        counter.incrementAndGet();
+    }
+
+    synchronized void multicastLockAcquired() {
+        if (lockHolders++ == 0) {
+            lockAcquiredAt = System.nanoTime();
+        }
+    }
+
+    synchronized void multicastLockReleased() {
+        // Holders acquired before metrics were enabled aren't tracked
+        if (lockHolders == 0) {
+            return;
+        }
+        if (--lockHolders == 0) {
+            multicastLockHoldTime.record(System.nanoTime() - lockAcquiredAt);
+        }
+    }
+
+    /** Copy current values of all metrics. */
+    public Snapshot snapshot() {
+        long now = System.nanoTime();
+        int[] active = new int[OPERATION_TYPES];
+        for (int i = 0; i < OPERATION_TYPES; i++) {
+            active[i] = activeOperations.get(i);
+        }
+        Map<Integer, Long> failuresCopy = new HashMap<>();
+        synchronized (failures) {
+            for (Map.Entry<Integer, AtomicLong> entry : failures.entrySet()) {
+                failuresCopy.put(entry.getKey(), entry.getValue().get());
+            }
+        }
+        long browseRate;
+        boolean lockHeld;
+        synchronized (this) {
+            long second = now / SECOND;
+            browseRate = second == rateSecond ? ratePrevious : second == rateSecond + 1 ? rateCurrent : 0;
+            lockHeld = lockHolders > 0;
+        }
+        return new Snapshot(now - createdAt, active, InternalDNSSD.getServiceThreadCount(), browseEvents.get(), browseRate,
+                resolveLatency.snapshot(), queryLatency.snapshot(), timeouts.get(), Collections.unmodifiableMap(failuresCopy),
+                lockHeld, multicastLockHoldTime.snapshot());
+    }
+
+    /** Immutable copy of {@link DNSSDMetrics} values. */
+    public static final class Snapshot {
+
+        private final long uptimeNanos;
+        private final int[] activeOperations;
+        private final int serviceThreads;
+        private final long browseEvents;
+        private final long browseEventsPerSecond;
+        private final Latency resolveLatency;
+        private final Latency queryAnswerLatency;
+        private final long timeouts;
+        private final Map<Integer, Long> failures;
+        private final boolean multicastLockHeld;
+        private final Latency multicastLockHoldTime;
+
+        Snapshot(long uptimeNanos, int[] activeOperations, int serviceThreads, long browseEvents, long browseEventsPerSecond,
+                 Latency resolveLatency, Latency queryAnswerLatency, long timeouts, Map<Integer, Long> failures,
+                 boolean multicastLockHeld, Latency multicastLockHoldTime) {
+            this.uptimeNanos = uptimeNanos;
+            this.activeOperations = activeOperations;
+            this.serviceThreads = serviceThreads;
+            this.browseEvents = browseEvents;
+            this.browseEventsPerSecond = browseEventsPerSecond;
+            this.resolveLatency = resolveLatency;
+            this.queryAnswerLatency = queryAnswerLatency;
+            this.timeouts = timeouts;
+            this.failures = failures;
+            this.multicastLockHeld = multicastLockHeld;
+            this.multicastLockHoldTime = multicastLockHoldTime;
+        }
+
+        /** Time since metrics were enabled. */
+        public long getUptimeNanos() {
+            return uptimeNanos;
+        }
+
+        /** Number of started and not yet stopped operations of the type, e.g. {@link #BROWSE}. */
+        public int getActiveOperations(int operationType) {
+            return activeOperations[operationType];
+        }
+
+        /** Number of started and not yet stopped operations of all types. */
+        public int getActiveOperations() {
+            int result = 0;
+            for (int count : activeOperations) {
+                result += count;
+            }
+            return result;
+        }
+
+        /** Number of alive threads that read results of native operations (0 when the daemon delivers callbacks itself). */
+        public int getServiceThreads() {
+            return serviceThreads;
+        }
+
+        /** Total number of serviceFound and serviceLost events. */
+        public long getBrowseEvents() {
+            return browseEvents;
+        }
+
+        /** Number of browse events during the last complete second. */
+        public long getBrowseEventsPerSecond() {
+            return browseEventsPerSecond;
+        }
+
+        /** Time from the start of resolve to serviceResolved. */
+        public Latency getResolveLatency() {
+            return resolveLatency;
+        }
+
+        /** Time from the start of queryRecord to its first answer. */
+        public Latency getQueryAnswerLatency() {
+            return queryAnswerLatency;
+        }
+
+        /** Number of resolve and queryRecord operations stopped by timeout. */
+        public long getTimeouts() {
+            return timeouts;
+        }
+
+        /** Number of operationFailed callbacks by error code, see {@link DNSSDException}. */
+        public Map<Integer, Long> getFailures() {
+            return failures;
+        }
+
+        /** Whether any operation holds a multicast lock lease at the moment. */
+        public boolean isMulticastLockHeld() {
+            return multicastLockHeld;
+        }
+
+        /** Time multicast lock was requested by operations: from the first lease till the last release, without idle grace period. */
+        public Latency getMulticastLockHoldTime() {
+            return multicastLockHoldTime;
+        }
+
+        @Override
+        public String toString() {
+            return "Snapshot{" +
+                    "uptimeNanos=" + uptimeNanos +
+                    ", activeOperations=" + getActiveOperations() +
+                    ", serviceThreads=" + serviceThreads +
+                    ", browseEvents=" + browseEvents +
+                    ", browseEventsPerSecond=" + browseEventsPerSecond +
+                    ", resolveLatency=" + resolveLatency +
+                    ", queryAnswerLatency=" + queryAnswerLatency +
+                    ", timeouts=" + timeouts +
+                    ", failures=" + failures +
+                    ", multicastLockHeld=" + multicastLockHeld +
+                    ", multicastLockHoldTime=" + multicastLockHoldTime +
+                    '}';
+        }
+    }
+
+    /** Distribution of recorded durations. Percentiles are upper bounds of power-of-two microsecond buckets. */
+    public static final class Latency {
+
+        private final long count;
+        private final long totalNanos;
+        private final long maxNanos;
+        private final long[] buckets;
+
+        Latency(long count, long totalNanos, long maxNanos, long[] buckets) {
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+            this.buckets = buckets;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMeanNanos() {
+            return count == 0 ? 0 : totalNanos / count;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        /** Approximate percentile, <code>percentile</code> in range (0, 100]. */
+        public long getPercentileNanos(double percentile) {
+            long total = 0;
+            for (long bucket : buckets) {
+                total += bucket;
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(total * percentile / 100);
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank) {
+                    return Math.min((2L << i) * 1000, maxNanos);
+                }
+            }
+            return maxNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "Latency{" +
+                    "count=" + count +
+                    ", meanNanos=" + getMeanNanos() +
+                    ", p50Nanos=" + getPercentileNanos(50) +
+                    ", p99Nanos=" + getPercentileNanos(99) +
+                    ", maxNanos=" + maxNanos +
+                    '}';
+        }
+    }
+}
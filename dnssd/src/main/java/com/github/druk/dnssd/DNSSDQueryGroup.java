@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2016 Andriy Druk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.druk.dnssd;
+
+/**
+ * Runs long-lived queries over one daemon connection, see {@link DNSSD#createQueryGroup()}.<P>
+ *
+ * Regular {@link DNSSD#queryRecord} opens a connection and starts a thread for every query. Queries of a group
+ * share the connection and the thread of the group, so watching the SRV, TXT and address records of a service
+ * costs one socket instead of four. Each query is still a separate operation for multicast lock and metrics.<P>
+ *
+ * {@link #stop()} stops every query of the group and closes the connection.
+ */
+public interface DNSSDQueryGroup extends DNSSDService {
+
+    /**
+     * Query for an arbitrary DNS record over the connection of the group, with the parameters of
+     * {@link DNSSD#queryRecord(int, int, String, int, int, QueryListener)}. If the connection of the group fails,
+     * every query of the group is reported to its listener with {@link QueryListener#operationFailed}.
+     *
+     * @return A {@link DNSSDService} that controls this query only. Stopping it doesn't affect other queries.
+     * The listener is called with this same instance.
+     * @throws DNSSDException if the query can't be started or the group is stopped
+     */
+    DNSSDService queryRecord(int flags, int ifIndex, String serviceName, int rrtype, int rrclass, QueryListener listener)
+            throws DNSSDException;
+}
@@ -0,0 +1,330 @@
+/*
+ * Copyright (C) 2016 Andriy Druk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.druk.dnssd;
+
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Records native callbacks of browse, resolve and queryRecord operations of all DNSSD instances
+ * into a compact binary stream that can be played back later with {@link DNSSDReplayer}.<P>
+ *
+ * Stream format: magic, version, then a sequence of operation and callback records. Operation
+ * records hold an id, a type and the key used to match the operation on replay. Callback records
+ * hold the operation id, the offset from the start of the operation in nanoseconds and the
+ * callback arguments as delivered by the daemon.
+ */
+public final class DNSSDRecorder {
+
+    static final int MAGIC = 0x444e5352; // "DNSR"
+    static final int VERSION = 1;
+
+    static final int TAG_OPERATION = 1;
+    static final int TAG_CALLBACK = 2;
+
+    private static final String TAG = "DNSSDRecorder";
+
+    private final DataOutputStream out;
+    private final long startTime = System.nanoTime();
+    private final AtomicInteger ids = new AtomicInteger();
+    private final InternalDNSSD original;
+    private final RecordingDNSSD recording;
+    private boolean isFailed = false;
+
+    private DNSSDRecorder(OutputStream out) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(out));
+        this.out.writeInt(MAGIC);
+        this.out.writeByte(VERSION);
+        this.original = InternalDNSSD.getInstance();
+        this.recording = new RecordingDNSSD(original);
+        InternalDNSSD.setInstance(recording);
+    }
+
+    /**
+     * Start recording callbacks of operations started after this call.
+     *
+     * @param out stream for recorded data, it is closed by {@link #stop()}
+     */
+    public static DNSSDRecorder start(OutputStream out) throws IOException {
+        return new DNSSDRecorder(out);
+    }
+
+    /** Stop recording and close the stream. Callbacks of operations that are still running are not recorded anymore. */
+    public void stop() throws IOException {
+        InternalDNSSD.setInstance(original);
+        synchronized (this) {
+            isFailed = true;
+            out.close();
+        }
+    }
+
+    static String browseKey(String regType, String domain) {
+        return "browse " + regType + " " + (domain != null ? domain : "");
+    }
+
+    static String resolveKey(String serviceName, String regType, String domain) {
+        return "resolve " + serviceName + " " + regType + " " + (domain != null ? domain : "");
+    }
+
+    static String queryKey(String serviceName, int rrtype, int rrclass) {
+        return "query " + serviceName + " " + rrtype + " " + rrclass;
+    }
+
+    private int operation(int type, String key, long operationStart) {
+        int id = ids.incrementAndGet();
+        synchronized (this) {
+            if (isFailed) {
+                return id;
+            }
+            try {
+                out.writeByte(TAG_OPERATION);
+                out.writeInt(id);
+                out.writeByte(type);
+                out.writeLong(operationStart - startTime);
+                out.writeUTF(key);
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+        return id;
+    }
+
+    private void callbackHeader(int id, long operationStart, int kind) throws IOException {
+        out.writeByte(TAG_CALLBACK);
+        out.writeInt(id);
+        out.writeLong(System.nanoTime() - operationStart);
+        out.writeByte(kind);
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private synchronized void browseEvent(int id, long operationStart, int kind, int flags, int ifIndex, byte[] serviceName, byte[] regType, byte[] domain) {
+        if (isFailed) {
+            return;
+        }
+        try {
+            callbackHeader(id, operationStart, kind);
+            out.writeInt(flags);
+            out.writeInt(ifIndex);
+            writeBytes(serviceName);
+            writeBytes(regType);
+            writeBytes(domain);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private synchronized void resolved(int id, long operationStart, int flags, int ifIndex, byte[] fullName, byte[] hostName, int port, TXTRecord txtRecord) {
+        if (isFailed) {
+            return;
+        }
+        try {
+            callbackHeader(id, operationStart, DNSSDJournal.SERVICE_RESOLVED);
+            out.writeInt(flags);
+            out.writeInt(ifIndex);
+            writeBytes(fullName);
+            writeBytes(hostName);
+            out.writeShort(port);
+            writeBytes(txtRecord != null ? txtRecord.getRawBytes() : new byte[0]);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private synchronized void queryAnswered(int id, long operationStart, int flags, int ifIndex, byte[] fullName, int rrtype, int rrclass, byte[] rdata, int ttl) {
+        if (isFailed) {
+            return;
+        }
+        try {
+            callbackHeader(id, operationStart, DNSSDJournal.QUERY_ANSWERED);
+            out.writeInt(flags);
+            out.writeInt(ifIndex);
+            writeBytes(fullName);
+            out.writeShort(rrtype);
+            out.writeShort(rrclass);
+            writeBytes(rdata);
+            out.writeInt(ttl);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private synchronized void operationFailed(int id, long operationStart, int errorCode) {
+        if (isFailed) {
+            return;
+        }
+        try {
+            callbackHeader(id, operationStart, DNSSDJournal.OPERATION_FAILED);
+            out.writeInt(errorCode);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private void fail(IOException e) {
+        Log.e(TAG, "Recording failed: ", e);
+        isFailed = true;
+    }
+
+    /** Wraps listeners of recorded operations and delegates everything to the original implementation. */
+    private class RecordingDNSSD extends InternalDNSSD {
+
+        private final InternalDNSSD delegate;
+
+        RecordingDNSSD(InternalDNSSD delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        protected void _init(String lib) {
+            delegate._init(lib);
+        }
+
+        @Override
+        protected DNSSDService _makeBrowser(int flags, int ifIndex, String regType, String domain, final InternalBrowseListener listener) throws DNSSDException {
+            final long operationStart = System.nanoTime();
+            final int id = operation(DNSSDMetrics.BROWSE, browseKey(regType, domain), operationStart);
+            return delegate._makeBrowser(flags, ifIndex, regType, domain, new InternalBrowseListener() {
+                @Override
+                public void serviceFound(DNSSDService browser, int flags, int ifIndex, byte[] serviceName, byte[] regType, byte[] domain) {
+                    browseEvent(id, operationStart, DNSSDJournal.SERVICE_FOUND, flags, ifIndex, serviceName, regType, domain);
+                    listener.serviceFound(browser, flags, ifIndex, serviceName, regType, domain);
+                }
+
+                @Override
+                public void serviceLost(DNSSDService browser, int flags, int ifIndex, byte[] serviceName, byte[] regType, byte[] domain) {
+                    browseEvent(id, operationStart, DNSSDJournal.SERVICE_LOST, flags, ifIndex, serviceName, regType, domain);
+                    listener.serviceLost(browser, flags, ifIndex, serviceName, regType, domain);
+                }
+
+                @Override
+                public void operationFailed(DNSSDService service, int errorCode) {
+                    DNSSDRecorder.this.operationFailed(id, operationStart, errorCode);
+                    listener.operationFailed(service, errorCode);
+                }
+            });
+        }
+
+        @Override
+        protected DNSSDService _resolve(int flags, int ifIndex, String serviceName, String regType, String domain, final InternalResolveListener listener) throws DNSSDException {
+            final long operationStart = System.nanoTime();
+            final int id = operation(DNSSDMetrics.RESOLVE, resolveKey(serviceName, regType, domain), operationStart);
+            return delegate._resolve(flags, ifIndex, serviceName, regType, domain, new InternalResolveListener() {
+                @Override
+                public void serviceResolved(DNSSDService resolver, int flags, int ifIndex, byte[] fullName, byte[] hostName, int port, TXTRecord txtRecord) {
+                    resolved(id, operationStart, flags, ifIndex, fullName, hostName, port, txtRecord);
+                    listener.serviceResolved(resolver, flags, ifIndex, fullName, hostName, port, txtRecord);
+                }
+
+                @Override
+                public void operationFailed(DNSSDService service, int errorCode) {
+                    DNSSDRecorder.this.operationFailed(id, operationStart, errorCode);
+                    listener.operationFailed(service, errorCode);
+                }
+            });
+        }
+
+        @Override
+        protected DNSSDRegistration _register(int flags, int ifIndex, String serviceName, String regType, String domain, String host, int port,
+                                              TXTRecord txtRecord, InternalRegisterListener listener) throws DNSSDException {
+            return delegate._register(flags, ifIndex, serviceName, regType, domain, host, port, txtRecord, listener);
+        }
+
+        @Override
+        protected DNSSDRecordRegistrar _createRecordRegistrar(RegisterRecordListener listener) throws DNSSDException {
+            return delegate._createRecordRegistrar(listener);
+        }
+
+        @Override
+        protected DNSSDService _createRegistrationGroup(BaseListener listener) throws DNSSDException {
+            return delegate._createRegistrationGroup(listener);
+        }
+
+        @Override
+        protected DNSSDRegistration[] _registerAll(DNSSDService group, RegistrationRequest[] requests, InternalRegisterListener[] listeners,
+                                                   int[] errors) throws DNSSDException {
+            return delegate._registerAll(group, requests, listeners, errors);
+        }
+
+        @Override
+        protected DNSSDService _queryRecord(int flags, int ifIndex, String serviceName, int rrtype, int rrclass, final InternalQueryListener listener) throws DNSSDException {
+            return delegate._queryRecord(flags, ifIndex, serviceName, rrtype, rrclass, recordingListener(serviceName, rrtype, rrclass, listener));
+        }
+
+        @Override
+        protected DNSSDService _createQueryGroup(BaseListener listener) throws DNSSDException {
+            return delegate._createQueryGroup(listener);
+        }
+
+        @Override
+        protected DNSSDService _queryRecord(DNSSDService group, int flags, int ifIndex, String serviceName, int rrtype, int rrclass,
+                                            InternalQueryListener listener) throws DNSSDException {
+            return delegate._queryRecord(group, flags, ifIndex, serviceName, rrtype, rrclass, recordingListener(serviceName, rrtype, rrclass, listener));
+        }
+
+        private InternalQueryListener recordingListener(String serviceName, int rrtype, int rrclass, final InternalQueryListener listener) {
+            final long operationStart = System.nanoTime();
+            final int id = operation(DNSSDMetrics.QUERY, queryKey(serviceName, rrtype, rrclass), operationStart);
+            return new InternalQueryListener() {
+                @Override
+                public void queryAnswered(DNSSDService query, int flags, int ifIndex, byte[] fullName, int rrtype, int rrclass, byte[] rdata, int ttl) {
+                    DNSSDRecorder.this.queryAnswered(id, operationStart, flags, ifIndex, fullName, rrtype, rrclass, rdata, ttl);
+                    listener.queryAnswered(query, flags, ifIndex, fullName, rrtype, rrclass, rdata, ttl);
+                }
+
+                @Override
+                public void operationFailed(DNSSDService service, int errorCode) {
+                    DNSSDRecorder.this.operationFailed(id, operationStart, errorCode);
+                    listener.operationFailed(service, errorCode);
+                }
+            };
+        }
+
+        @Override
+        protected DNSSDService _enumerateDomains(int flags, int ifIndex, InternalDomainListener listener) throws DNSSDException {
+            return delegate._enumerateDomains(flags, ifIndex, listener);
+        }
+
+        @Override
+        protected String _constructFullName(String serviceName, String regType, String domain) throws DNSSDException {
+            return delegate._constructFullName(serviceName, regType, domain);
+        }
+
+        @Override
+        protected int _reconfirmRecord(int flags, int ifIndex, String fullName, int rrtype, int rrclass, byte[] rdata) {
+            return delegate._reconfirmRecord(flags, ifIndex, fullName, rrtype, rrclass, rdata);
+        }
+
+        @Override
+        protected String _getNameForIfIndex(int ifIndex) {
+            return delegate._getNameForIfIndex(ifIndex);
+        }
+
+        @Override
+        protected int _getIfIndexForName(String ifName) {
+            return delegate._getIfIndexForName(ifName);
+        }
+    }
+}
@@ -16,6 +16,8 @@
 
 package com.github.druk.dnssd;
 
+import java.util.List;
+
 /**	A tracking object for a registration created by {@link InternalDNSSD#register}. */
 
 public interface	DNSSDRegistration extends DNSSDService {
@@ -50,5 +52,19 @@ public interface	DNSSDRegistration extends DNSSDService {
 					invalidated and may not be used further.
 	*/
 	DNSRecord addRecord(int flags, int rrType, byte[] rData, int ttl) throws DNSSDException;
+
+	/** Add, update and remove records of a registered service with one call.<P>
+		The operations cross into native code once, but the daemon still takes them one request at a
+		time, so each operation costs a round trip to the daemon like {@link #addRecord}. They are applied
+		in order and independently of each other: if the daemon rejects one, the others are still applied.<P>
+
+		@param	operations
+					Changes to apply. Records to update or remove must belong to this registration.
+		<P>
+		@return		A result per operation, in the order of operations, with its record and error code.
+
+		@throws DNSSDException if a record belongs to another registration, in which case nothing is applied.
+	*/
+	List<RecordResult> applyRecords(List<RecordOperation> operations) throws DNSSDException;
 } 
 
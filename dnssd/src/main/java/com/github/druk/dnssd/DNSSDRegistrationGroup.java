@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2016 Andriy Druk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.druk.dnssd;
+
+import java.util.List;
+
+/**
+ * Registers many services over one daemon connection, see {@link DNSSD#createRegistrationGroup(RegisterGroupListener)}.<P>
+ *
+ * Regular {@link DNSSD#register} opens a connection and starts a thread for every service, which doesn't scale
+ * to thousands of services. Services of a group share the connection and the thread of the group, and the group
+ * counts as a single operation for multicast lock and metrics.<P>
+ *
+ * {@link #stop()} deregisters every service of the group and closes the connection.
+ */
+public interface DNSSDRegistrationGroup extends DNSSDService {
+
+    /**
+     * Register a service over the connection of the group. Results are reported to the {@link RegisterGroupListener}
+     * of the group.
+     *
+     * @return A {@link DNSSDRegistration} that controls this service only. Stopping it doesn't affect other services.
+     * @throws DNSSDException if the service can't be registered or the group is stopped
+     */
+    DNSSDRegistration register(RegistrationRequest request) throws DNSSDException;
+
+    /**
+     * Register services in one batch. The embedded daemon takes the whole batch at once instead of handling
+     * services one by one. Services that can't be registered are reported to
+     * {@link RegisterGroupListener#operationFailed} and counted as failed.
+     *
+     * @return registrations in the order of requests
+     * @throws DNSSDException if the group is stopped
+     */
+    List<DNSSDRegistration> registerAll(List<RegistrationRequest> requests) throws DNSSDException;
+
+    /** Number of services waiting for registration result. */
+    int getPendingCount();
+
+    /** Number of currently registered services. */
+    int getRegisteredCount();
+
+    /** Number of services that failed to register since the group was created. */
+    int getFailedCount();
+}
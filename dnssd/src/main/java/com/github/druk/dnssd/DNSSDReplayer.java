@@ -0,0 +1,364 @@
+/*
+ * Copyright (C) 2016 Andriy Druk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.druk.dnssd;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plays back callbacks captured by {@link DNSSDRecorder} to all DNSSD instances (and so to RxDNSSD wrappers)
+ * without touching the network.<P>
+ *
+ * Every browse, resolve and queryRecord operation started while the replayer is installed takes the next
+ * recorded operation with the same arguments and receives its callbacks with the recorded offsets divided
+ * by speed. Operations without a recording never receive callbacks. Other operations use the
+ * implementation that was installed before.
+ */
+public final class DNSSDReplayer {
+
+    /** Recorded timing. */
+    public static final double REAL_TIME = 1;
+
+    /** Deliver all callbacks immediately, preserving their order. */
+    public static final double AS_FAST_AS_POSSIBLE = Double.POSITIVE_INFINITY;
+
+    private static final String TAG = "DNSSDReplayer";
+
+    private final Map<String, Queue<RecordedOperation>> operations;
+    private final double speed;
+    private final ScheduledThreadPoolExecutor executor;
+    private final InternalDNSSD original;
+
+    private DNSSDReplayer(Map<String, Queue<RecordedOperation>> operations, double speed) {
+        this.operations = operations;
+        this.speed = speed;
+        this.executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, TAG);
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.original = InternalDNSSD.getInstance();
+        InternalDNSSD.setInstance(new ReplayDNSSD(original));
+    }
+
+    /**
+     * Read a recording and install the replayer.
+     *
+     * @param in recorded data, the stream is read to the end and closed
+     * @param speed playback speed: {@link #REAL_TIME}, <code>10</code> for ten times faster, or {@link #AS_FAST_AS_POSSIBLE}
+     */
+    public static DNSSDReplayer start(InputStream in, double speed) throws IOException {
+        if (!(speed > 0)) {
+            throw new IllegalArgumentException("speed should be positive: " + speed);
+        }
+        return new DNSSDReplayer(read(in), speed);
+    }
+
+    /** Uninstall the replayer and drop callbacks that weren't delivered yet. */
+    public void stop() {
+        InternalDNSSD.setInstance(original);
+        executor.shutdownNow();
+    }
+
+    /** Number of recorded operations that weren't started yet. */
+    public int getPendingOperations() {
+        int result = 0;
+        synchronized (operations) {
+            for (Queue<RecordedOperation> queue : operations.values()) {
+                result += queue.size();
+            }
+        }
+        return result;
+    }
+
+    private static Map<String, Queue<RecordedOperation>> read(InputStream stream) throws IOException {
+        Map<String, Queue<RecordedOperation>> result = new HashMap<>();
+        Map<Integer, RecordedOperation> byId = new HashMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(stream))) {
+            if (in.readInt() != DNSSDRecorder.MAGIC) {
+                throw new IOException("Not a DNSSD recording");
+            }
+            int version = in.readUnsignedByte();
+            if (version != DNSSDRecorder.VERSION) {
+                throw new IOException("Unsupported recording version: " + version);
+            }
+            while (true) {
+                int tag;
+                try {
+                    tag = in.readUnsignedByte();
+                } catch (EOFException e) {
+                    break;
+                }
+                int id = in.readInt();
+                if (tag == DNSSDRecorder.TAG_OPERATION) {
+                    in.readUnsignedByte(); // type is a part of the key
+                    in.readLong();
+                    RecordedOperation operation = new RecordedOperation();
+                    byId.put(id, operation);
+                    String key = in.readUTF();
+                    Queue<RecordedOperation> queue = result.get(key);
+                    if (queue == null) {
+                        queue = new LinkedList<>();
+                        result.put(key, queue);
+                    }
+                    queue.add(operation);
+                } else if (tag == DNSSDRecorder.TAG_CALLBACK) {
+                    RecordedOperation operation = byId.get(id);
+                    if (operation == null) {
+                        throw new IOException("Callback of unknown operation: " + id);
+                    }
+                    operation.callbacks.add(RecordedCallback.read(in));
+                } else {
+                    throw new IOException("Unknown record: " + tag);
+                }
+            }
+        }
+        return result;
+    }
+
+    private RecordedOperation poll(String key) {
+        RecordedOperation operation;
+        synchronized (operations) {
+            Queue<RecordedOperation> queue = operations.get(key);
+            operation = queue != null ? queue.poll() : null;
+        }
+        if (operation == null) {
+            Log.w(TAG, "No recording for " + key);
+        }
+        return operation;
+    }
+
+    private static class RecordedOperation {
+        final List<RecordedCallback> callbacks = new ArrayList<>();
+    }
+
+    private static class RecordedCallback {
+        long offset;
+        int kind;
+        int flags;
+        int ifIndex;
+        byte[] name;
+        byte[] secondName;
+        byte[] data;
+        int value;
+        int rrclass;
+        int ttl;
+
+        static RecordedCallback read(DataInputStream in) throws IOException {
+            RecordedCallback callback = new RecordedCallback();
+            callback.offset = in.readLong();
+            callback.kind = in.readUnsignedByte();
+            switch (callback.kind) {
+                case DNSSDJournal.SERVICE_FOUND:
+                case DNSSDJournal.SERVICE_LOST:
+                    callback.flags = in.readInt();
+                    callback.ifIndex = in.readInt();
+                    callback.name = readBytes(in);
+                    callback.secondName = readBytes(in);
+                    callback.data = readBytes(in);
+                    break;
+                case DNSSDJournal.SERVICE_RESOLVED:
+                    callback.flags = in.readInt();
+                    callback.ifIndex = in.readInt();
+                    callback.name = readBytes(in);
+                    callback.secondName = readBytes(in);
+                    callback.value = in.readUnsignedShort();
+                    callback.data = readBytes(in);
+                    break;
+                case DNSSDJournal.QUERY_ANSWERED:
+                    callback.flags = in.readInt();
+                    callback.ifIndex = in.readInt();
+                    callback.name = readBytes(in);
+                    callback.value = in.readUnsignedShort();
+                    callback.rrclass = in.readUnsignedShort();
+                    callback.data = readBytes(in);
+                    callback.ttl = in.readInt();
+                    break;
+                case DNSSDJournal.OPERATION_FAILED:
+                    callback.value = in.readInt();
+                    break;
+                default:
+                    throw new IOException("Unknown callback: " + callback.kind);
+            }
+            return callback;
+        }
+
+        private static byte[] readBytes(DataInputStream in) throws IOException {
+            byte[] result = new byte[in.readUnsignedShort()];
+            in.readFully(result);
+            return result;
+        }
+
+        void deliver(DNSSDService service, BaseListener listener) {
+            switch (kind) {
+                case DNSSDJournal.SERVICE_FOUND:
+                    ((InternalBrowseListener) listener).serviceFound(service, flags, ifIndex, name, secondName, data);
+                    break;
+                case DNSSDJournal.SERVICE_LOST:
+                    ((InternalBrowseListener) listener).serviceLost(service, flags, ifIndex, name, secondName, data);
+                    break;
+                case DNSSDJournal.SERVICE_RESOLVED:
+                    ((InternalResolveListener) listener).serviceResolved(service, flags, ifIndex, name, secondName, value, new TXTRecord(data));
+                    break;
+                case DNSSDJournal.QUERY_ANSWERED:
+                    ((InternalQueryListener) listener).queryAnswered(service, flags, ifIndex, name, value, rrclass, data, ttl);
+                    break;
+                default:
+                    listener.operationFailed(service, value);
+                    break;
+            }
+        }
+    }
+
+    private class ReplayService implements DNSSDService {
+
+        private final BaseListener listener;
+        private final List<ScheduledFuture<?>> futures = new ArrayList<>();
+        private boolean isStopped = false;
+
+        ReplayService(RecordedOperation operation, BaseListener listener) {
+            this.listener = listener;
+            if (operation == null) {
+                return;
+            }
+            synchronized (this) {
+                for (final RecordedCallback callback : operation.callbacks) {
+                    long delay = speed == AS_FAST_AS_POSSIBLE ? 0 : (long) (callback.offset / speed);
+                    futures.add(executor.schedule(() -> deliver(callback), delay, TimeUnit.NANOSECONDS));
+                }
+            }
+        }
+
+        private synchronized void deliver(RecordedCallback callback) {
+            if (!isStopped) {
+                callback.deliver(this, listener);
+            }
+        }
+
+        @Override
+        public synchronized void stop() {
+            isStopped = true;
+            for (ScheduledFuture<?> future : futures) {
+                future.cancel(false);
+            }
+            futures.clear();
+        }
+    }
+
+    /** Serves recorded operations and delegates everything else to the original implementation. */
+    private class ReplayDNSSD extends InternalDNSSD {
+
+        private final InternalDNSSD delegate;
+
+        ReplayDNSSD(InternalDNSSD delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        protected void _init(String lib) {
+            // Nothing to load, callbacks come from the recording
+        }
+
+        @Override
+        protected DNSSDService _makeBrowser(int flags, int ifIndex, String regType, String domain, InternalBrowseListener listener) {
+            return new ReplayService(poll(DNSSDRecorder.browseKey(regType, domain)), listener);
+        }
+
+        @Override
+        protected DNSSDService _resolve(int flags, int ifIndex, String serviceName, String regType, String domain, InternalResolveListener listener) {
+            return new ReplayService(poll(DNSSDRecorder.resolveKey(serviceName, regType, domain)), listener);
+        }
+
+        @Override
+        protected DNSSDRegistration _register(int flags, int ifIndex, String serviceName, String regType, String domain, String host, int port,
+                                              TXTRecord txtRecord, InternalRegisterListener listener) throws DNSSDException {
+            return delegate._register(flags, ifIndex, serviceName, regType, domain, host, port, txtRecord, listener);
+        }
+
+        @Override
+        protected DNSSDRecordRegistrar _createRecordRegistrar(RegisterRecordListener listener) throws DNSSDException {
+            return delegate._createRecordRegistrar(listener);
+        }
+
+        @Override
+        protected DNSSDService _createRegistrationGroup(BaseListener listener) throws DNSSDException {
+            return delegate._createRegistrationGroup(listener);
+        }
+
+        @Override
+        protected DNSSDRegistration[] _registerAll(DNSSDService group, RegistrationRequest[] requests, InternalRegisterListener[] listeners,
+                                                   int[] errors) throws DNSSDException {
+            return delegate._registerAll(group, requests, listeners, errors);
+        }
+
+        @Override
+        protected DNSSDService _queryRecord(int flags, int ifIndex, String serviceName, int rrtype, int rrclass, InternalQueryListener listener) {
+            return new ReplayService(poll(DNSSDRecorder.queryKey(serviceName, rrtype, rrclass)), listener);
+        }
+
+        @Override
+        protected DNSSDService _createQueryGroup(BaseListener listener) throws DNSSDException {
+            return delegate._createQueryGroup(listener);
+        }
+
+        // Replayed queries don't need the connection of the group, they're stopped with the group by DNSSDQueryGroup
+        @Override
+        protected DNSSDService _queryRecord(DNSSDService group, int flags, int ifIndex, String serviceName, int rrtype, int rrclass,
+                                            InternalQueryListener listener) {
+            return _queryRecord(flags, ifIndex, serviceName, rrtype, rrclass, listener);
+        }
+
+        @Override
+        protected DNSSDService _enumerateDomains(int flags, int ifIndex, InternalDomainListener listener) throws DNSSDException {
+            return delegate._enumerateDomains(flags, ifIndex, listener);
+        }
+
+        @Override
+        protected String _constructFullName(String serviceName, String regType, String domain) throws DNSSDException {
+            return delegate._constructFullName(serviceName, regType, domain);
+        }
+
+        @Override
+        protected int _reconfirmRecord(int flags, int ifIndex, String fullName, int rrtype, int rrclass, byte[] rdata) {
+            return delegate._reconfirmRecord(flags, ifIndex, fullName, rrtype, rrclass, rdata);
+        }
+
+        @Override
+        protected String _getNameForIfIndex(int ifIndex) {
+            return delegate._getNameForIfIndex(ifIndex);
+        }
+
+        @Override
+        protected int _getIfIndexForName(String ifName) {
+            return delegate._getIfIndexForName(ifName);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2016 Andriy Druk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.druk.dnssd;
+
+/**
+ * {@link IdlePolicy} that keeps the daemon alive for a fixed time after the last operation stopped.
+ */
+public final class FixedIdlePolicy implements IdlePolicy {
+
+    private final long idleTimeout;
+
+    /**
+     * @param idleTimeout time in milliseconds to keep the daemon alive, or {@link #KEEP_ALIVE}
+     */
+    public FixedIdlePolicy(long idleTimeout) {
+        if (idleTimeout < 0 && idleTimeout != KEEP_ALIVE) {
+            throw new IllegalArgumentException("idleTimeout should not be negative: " + idleTimeout);
+        }
+        this.idleTimeout = idleTimeout;
+    }
+
+    @Override
+    public void onActive(long uptimeMillis) {
+    }
+
+    @Override
+    public long onIdle(long uptimeMillis) {
+        return idleTimeout;
+    }
+
+    @Override
+    public void setOnChangedListener(Runnable callback) {
+    }
+}
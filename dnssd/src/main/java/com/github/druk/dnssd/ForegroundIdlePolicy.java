@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2016 Andriy Druk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.druk.dnssd;
+
+import android.app.Activity;
+import android.app.Application;
+import android.content.Context;
+import android.os.Bundle;
+
+/**
+ * {@link IdlePolicy} that keeps the daemon alive while any activity of the app is started and stops it
+ * after the background timeout otherwise.<P>
+ *
+ * Create it on the main thread, activities started before that aren't counted.
+ */
+public final class ForegroundIdlePolicy implements IdlePolicy, Application.ActivityLifecycleCallbacks {
+
+    private final long backgroundIdleTimeout;
+
+    private int startedActivities = 0;
+    private Runnable callback;
+
+    /**
+     * @param context any context of the app
+     * @param backgroundIdleTimeout time in milliseconds to keep the daemon alive in background
+     */
+    public ForegroundIdlePolicy(Context context, long backgroundIdleTimeout) {
+        this(backgroundIdleTimeout);
+        ((Application) context.getApplicationContext()).registerActivityLifecycleCallbacks(this);
+    }
+
+    ForegroundIdlePolicy(long backgroundIdleTimeout) {
+        if (backgroundIdleTimeout < 0) {
+            throw new IllegalArgumentException("backgroundIdleTimeout should not be negative: " + backgroundIdleTimeout);
+        }
+        this.backgroundIdleTimeout = backgroundIdleTimeout;
+    }
+
+    @Override
+    public void onActive(long uptimeMillis) {
+    }
+
+    @Override
+    public synchronized long onIdle(long uptimeMillis) {
+        return startedActivities > 0 ? KEEP_ALIVE : backgroundIdleTimeout;
+    }
+
+    @Override
+    public synchronized void setOnChangedListener(Runnable callback) {
+        this.callback = callback;
+    }
+
+    /** Whether any activity of the app is started. */
+    public synchronized boolean isForeground() {
+        return startedActivities > 0;
+    }
+
+    @Override
+    public void onActivityStarted(Activity activity) {
+        Runnable changed;
+        synchronized (this) {
+            changed = startedActivities++ == 0 ? callback : null;
+        }
+        if (changed != null) {
+            changed.run();
+        }
+    }
+
+    @Override
+    public void onActivityStopped(Activity activity) {
+        Runnable changed;
+        synchronized (this) {
+            if (startedActivities == 0) {
+                return;
+            }
+            changed = --startedActivities == 0 ? callback : null;
+        }
+        if (changed != null) {
+            changed.run();
+        }
+    }
+
+    @Override
+    public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+    }
+
+    @Override
+    public void onActivityResumed(Activity activity) {
+    }
+
+    @Override
+    public void onActivityPaused(Activity activity) {
+    }
+
+    @Override
+    public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+    }
+
+    @Override
+    public void onActivityDestroyed(Activity activity) {
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2016 Andriy Druk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.druk.dnssd;
+
+/**
+ * Decides how long the embedded daemon stays alive after the last operation stopped,
+ * see {@link DNSSDEmbedded#setIdlePolicy(IdlePolicy)}.<P>
+ *
+ * A warm daemon keeps its record cache and interface state, so the next operation doesn't pay for
+ * mDNS initialization, interface probing and cache warm-up again.
+ */
+public interface IdlePolicy {
+
+    /** Idle timeout that keeps the daemon alive until the policy reports a change. */
+    long KEEP_ALIVE = -1;
+
+    /**
+     * Called when the first operation starts after the daemon was idle or stopped.
+     *
+     * @param uptimeMillis current monotonic time in milliseconds
+     */
+    void onActive(long uptimeMillis);
+
+    /**
+     * Called when the last operation stopped and every time the policy reported a change while idle.
+     *
+     * @param uptimeMillis current monotonic time in milliseconds
+     * @return time in milliseconds to keep the daemon alive, or {@link #KEEP_ALIVE}
+     */
+    long onIdle(long uptimeMillis);
+
+    /**
+     * Set callback the policy runs when the idle timeout may have changed (e.g. app went to background).
+     *
+     * @param callback callback to run, null to clear it
+     */
+    void setOnChangedListener(Runnable callback);
+}
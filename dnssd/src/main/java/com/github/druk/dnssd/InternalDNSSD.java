@@ -22,6 +22,12 @@
 
 package com.github.druk.dnssd;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
 // I don't want to change Apple source code
 //CHECKSTYLE:OFF
 
@@ -287,6 +293,34 @@ abstract class InternalDNSSD
 	throws DNSSDException
 	{ return getInstance()._createRecordRegistrar( listener); }
 
+	/** Create a group of registrations sharing one daemon connection.<P>
+		@param	listener
+					This object will get called if the shared connection fails.
+		<P>
+		@return		A {@link DNSSDService} to pass to {@link #registerAll}.
+					Stopping it stops every registration of the group.
+	*/
+	public static DNSSDService	createRegistrationGroup( BaseListener listener)
+	throws DNSSDException
+	{ return getInstance()._createRegistrationGroup( listener); }
+
+	/** Register services over the connection of a group created by {@link #createRegistrationGroup}.<P>
+		@param	requests
+					Parameters of the services, see {@link #register(int, int, String, String, String, String, int, TXTRecord, InternalRegisterListener)}.
+		<P>
+		@param	listeners
+					Listener of every request.
+		<P>
+		@param	errors
+					Receives the error of every request that couldn't be started, 0 for the started ones.
+		<P>
+		@return		Registrations in the order of requests, null for the ones that couldn't be started.
+	*/
+	public static DNSSDRegistration[]	registerAll( DNSSDService group, RegistrationRequest[] requests,
+									InternalRegisterListener[] listeners, int[] errors)
+	throws DNSSDException
+	{ return getInstance()._registerAll( group, requests, listeners, errors); }
+
 	/** Query for an arbitrary DNS record.<P>
 		@param	flags
 					Possible values are: MORE_COMING.
@@ -322,6 +356,25 @@ abstract class InternalDNSSD
 	throws DNSSDException
 	{ return getInstance()._queryRecord( flags, ifIndex, serviceName, rrtype, rrclass, listener); }
 
+	/** Create a group of queries sharing one daemon connection.<P>
+		@param	listener
+					This object will get called if the shared connection fails.
+		<P>
+		@return		A {@link DNSSDService} to pass to {@link #queryRecord(DNSSDService, int, int, String, int, int, InternalQueryListener)}.
+					Stopping it stops every query of the group.
+	*/
+	public static DNSSDService	createQueryGroup( BaseListener listener)
+	throws DNSSDException
+	{ return getInstance()._createQueryGroup( listener); }
+
+	/** Query for an arbitrary DNS record over the connection of a group created by {@link #createQueryGroup}.<P>
+		Parameters are the same as of {@link #queryRecord(int, int, String, int, int, InternalQueryListener)}.
+	*/
+	public static DNSSDService	queryRecord( DNSSDService group, int flags, int ifIndex, String serviceName, int rrtype,
+										int rrclass, InternalQueryListener listener)
+	throws DNSSDException
+	{ return getInstance()._queryRecord( group, flags, ifIndex, serviceName, rrtype, rrclass, listener); }
+
 	/** Asynchronously enumerate domains available for browsing and registration.<P>
 	
 		Currently, the only domain returned is "local.", but other domains will be returned in future.<P>
@@ -431,6 +484,14 @@ abstract class InternalDNSSD
 	public static int		getIfIndexForName( String ifName)
 	{ return getInstance()._getIfIndexForName( ifName); }
 
+	/** Create the exception DNSSD operations throw for a daemon error code, e.g. {@link DNSSDException#BAD_PARAM}. */
+	static DNSSDException	newException( int errorCode)
+	{ return new AppleDNSSDException( errorCode); }
+
+	/** Return the number of live service threads, one per running operation or connection group. */
+	static int				getServiceThreadCount()
+	{ return AppleService.getThreadCount(); }
+
 	protected InternalDNSSD() {}	// prevent direct instantiation
 
 	/** Return the single instance of DNSSD. */
@@ -458,10 +519,24 @@ abstract class InternalDNSSD
 	abstract protected DNSSDRecordRegistrar	_createRecordRegistrar( RegisterRecordListener listener)
 	throws DNSSDException;
 
+	abstract protected DNSSDService	_createRegistrationGroup( BaseListener listener)
+	throws DNSSDException;
+
+	abstract protected DNSSDRegistration[]	_registerAll( DNSSDService group, RegistrationRequest[] requests,
+									InternalRegisterListener[] listeners, int[] errors)
+	throws DNSSDException;
+
 	abstract protected DNSSDService	_queryRecord( int flags, int ifIndex, String serviceName, int rrtype,
 										int rrclass, InternalQueryListener listener)
 	throws DNSSDException;
 
+	abstract protected DNSSDService	_createQueryGroup( BaseListener listener)
+	throws DNSSDException;
+
+	abstract protected DNSSDService	_queryRecord( DNSSDService group, int flags, int ifIndex, String serviceName, int rrtype,
+										int rrclass, InternalQueryListener listener)
+	throws DNSSDException;
+
 	abstract protected DNSSDService	_enumerateDomains( int flags, int ifIndex, InternalDomainListener listener)
 	throws DNSSDException;
 
@@ -475,7 +550,15 @@ abstract class InternalDNSSD
 
 	abstract protected int			_getIfIndexForName( String ifName);
 
-	protected static InternalDNSSD fInstance;
+	protected static volatile InternalDNSSD fInstance;
+
+	/* Replace the implementation used by all DNSSD instances, returns the previous one. Used by DNSSDRecorder and DNSSDReplayer. */
+	static synchronized InternalDNSSD	setInstance( InternalDNSSD instance)
+	{
+		InternalDNSSD previous = fInstance;
+		fInstance = instance;
+		return previous;
+	}
 
 	static
 	{
@@ -588,6 +671,19 @@ class	AppleDNSSD extends InternalDNSSD
 		return new AppleRecordRegistrar( listener);
 	}
 
+	protected DNSSDService	_createRegistrationGroup( BaseListener listener)
+	throws DNSSDException
+	{
+		return new AppleRegistrationGroup( listener);
+	}
+
+	protected DNSSDRegistration[]	_registerAll( DNSSDService group, RegistrationRequest[] requests,
+									InternalRegisterListener[] clients, int[] errors)
+	throws DNSSDException
+	{
+		return ((AppleRegistrationGroup) group).registerAll( requests, clients, errors);
+	}
+
 	protected DNSSDService		_queryRecord( int flags, int ifIndex, String serviceName, int rrtype,
 										int rrclass, InternalQueryListener client)
 	throws DNSSDException
@@ -595,6 +691,19 @@ class	AppleDNSSD extends InternalDNSSD
 		return new AppleQuery( flags, ifIndex, serviceName, rrtype, rrclass, client);
 	}
 
+	protected DNSSDService		_createQueryGroup( BaseListener listener)
+	throws DNSSDException
+	{
+		return new AppleQueryGroup( listener);
+	}
+
+	protected DNSSDService		_queryRecord( DNSSDService group, int flags, int ifIndex, String serviceName, int rrtype,
+										int rrclass, InternalQueryListener client)
+	throws DNSSDException
+	{
+		return new AppleQuery( (AppleQueryGroup) group, flags, ifIndex, serviceName, rrtype, rrclass, client);
+	}
+
 	protected DNSSDService		_enumerateDomains( int flags, int ifIndex, InternalDomainListener listener)
 	throws DNSSDException
 	{
@@ -646,7 +755,18 @@ class	AppleService implements DNSSDService, Runnable
 {
 	public					AppleService(BaseListener listener)	{ fNativeContext = 0; fListener = listener; }
 
-	public void				stop() { this.HaltOperation(); }
+	public void				stop() { this.halt(); }
+
+	// With AUTO_CALLBACKS there's no service thread for the monitor to guard. Callbacks run with the daemon
+	// lock held, so halting is serialized by that lock instead: holding the monitor while waiting for it
+	// could deadlock with a callback that stops the same operation.
+	protected void			halt()
+	{
+		if (AppleDNSSD.hasAutoCallbacks)
+			this.HaltOperationLocked();
+		else
+			this.HaltOperation();
+	}
 
 	/* Block until data arrives, or one second passes. Returns 1 if data present, 0 otherwise. */
 	protected native int	BlockForData();
@@ -656,6 +776,8 @@ class	AppleService implements DNSSDService, Runnable
 
 	protected synchronized native void HaltOperation();
 
+	protected native void	HaltOperationLocked();
+
 	protected void			ThrowOnErr( int rc) throws DNSSDException
 	{
 		if (rc != 0)
@@ -664,7 +786,25 @@ class	AppleService implements DNSSDService, Runnable
 
 	protected long	/* warning */	fNativeContext;		// Private storage for native side
 
+	private static final AtomicInteger	fThreadCount = new AtomicInteger();
+
+	/* Number of alive service threads, reported by DNSSDMetrics. */
+	static int				getThreadCount() { return fThreadCount.get(); }
+
 	public void		run()
+	{
+		fThreadCount.incrementAndGet();
+		try
+		{
+			this.serviceLoop();
+		}
+		finally
+		{
+			fThreadCount.decrementAndGet();
+		}
+	}
+
+	private void	serviceLoop()
 	{
 		while ( true )
 		{
@@ -779,11 +919,29 @@ class	AppleRegistration extends AppleService implements DNSSDRegistration
 	throws DNSSDException
 	{
 		super(client);
+		fGroup = null;
 		this.ThrowOnErr( this.BeginRegister( ifIndex, flags, serviceName, regType, domain, host, port, txtRecord));
 		if (!AppleDNSSD.hasAutoCallbacks)
 			new Thread(this).start();
 	}
 
+	public			AppleRegistration( AppleRegistrationGroup group, int flags, int ifIndex, String serviceName, String regType,
+								String domain, String host, int port, byte[] txtRecord, InternalRegisterListener client)
+	throws DNSSDException
+	{
+		super(client);
+		fGroup = group;
+		group.begin( this, ifIndex, flags, serviceName, regType, domain, host, port, txtRecord);
+	}
+
+	public void		stop()
+	{
+		if (fGroup != null)
+			fGroup.remove( this);
+		else
+			this.halt();
+	}
+
 	public DNSRecord	addRecord( int flags, int rrType, byte[] rData, int ttl)
 	throws DNSSDException
 	{
@@ -799,12 +957,212 @@ class	AppleRegistration extends AppleService implements DNSSDRegistration
 		return new AppleDNSRecord( this);	// A record with ref 0 is understood to be primary TXT record
 	}
 
+	// Records of other registrations are rejected up front, their DNSRecordRef belongs to another connection.
+	public List<RecordResult>	applyRecords( List<RecordOperation> operations)
+	throws DNSSDException
+	{
+		RecordOperation[]	batch = operations.toArray( new RecordOperation[ operations.size()]);
+		AppleDNSRecord[]	records = new AppleDNSRecord[ batch.length];
+		int[]				errors = new int[ batch.length];
+		for ( int i = 0; i < batch.length; i++)
+		{
+			if (batch[i].getKind() == RecordOperation.ADD)
+				records[i] = new AppleDNSRecord( this);
+			else if (batch[i].getRecord() instanceof AppleDNSRecord && ((AppleDNSRecord) batch[i].getRecord()).fOwner == this)
+				records[i] = (AppleDNSRecord) batch[i].getRecord();
+			else
+				throw new AppleDNSSDException( DNSSDException.BAD_PARAM);
+		}
+
+		this.ApplyRecords( batch, records, errors);
+
+		List<RecordResult>	results = new ArrayList<RecordResult>( batch.length);
+		for ( int i = 0; i < batch.length; i++)
+		{
+			DNSRecord	record = batch[i].getKind() == RecordOperation.ADD && errors[i] != 0 ? null : records[i];
+			results.add( new RecordResult( batch[i], record, errors[i]));
+		}
+		return results;
+	}
+
 	// Sets fNativeContext. Returns non-zero on error.
 	protected native int	BeginRegister( int ifIndex, int flags, String serviceName, String regType,
 											String domain, String host, int port, byte[] txtRecord);
 
+	// Sets fNativeContext. Returns non-zero on error.
+	protected native int	BeginSharedRegister( AppleRegistrationGroup group, int ifIndex, int flags, String serviceName,
+											String regType, String domain, String host, int port, byte[] txtRecord);
+
 	// Sets fNativeContext. Returns non-zero on error.
 	protected native int	AddRecord( int flags, int rrType, byte[] rData, int ttl, AppleDNSRecord destObj);
+
+	// Applies ops one after another, each as its own request to the daemon. Sets fRecord of every added
+	// record and the error code of every rejected operation in errors.
+	protected native void	ApplyRecords( RecordOperation[] ops, AppleDNSRecord[] destObjs, int[] errors);
+
+	protected final AppleRegistrationGroup	fGroup;		// Owner of the shared connection, or null
+}
+
+// Operations of a group share one daemon connection and one service thread. The shared connection
+// dispatches the replies of all members, so they are started and stopped synchronized on the group,
+// the same way serviceLoop() guards ProcessResults(). With AUTO_CALLBACKS the daemon lock serializes native
+// calls and the group only keeps track of its members.
+abstract class	AppleServiceGroup<T extends AppleService> extends AppleService
+{
+	// Starts a member on its own connection, or on the shared one of the group.
+	interface	Starter
+	{
+		int			start( boolean shared);
+	}
+
+	public			AppleServiceGroup( BaseListener listener)
+	{
+		super(listener);
+	}
+
+	// Called last by subclass constructors, the service thread may report to fListener right away
+	protected void	connect()
+	throws DNSSDException
+	{
+		// With AUTO_CALLBACKS every operation already runs on the daemon's thread, there's no connection to share
+		if (!AppleDNSSD.hasAutoCallbacks)
+		{
+			this.ThrowOnErr( this.CreateConnection());
+			new Thread(this).start();
+		}
+	}
+
+	public void		stop()
+	{
+		List<T>	members;
+		synchronized (this)
+		{
+			fStopped = true;
+			members = new ArrayList<>( fMembers);
+			fMembers.clear();
+			if (!AppleDNSSD.hasAutoCallbacks)
+			{
+				// Deallocating the connection frees its members, so they must be halted first
+				for (T member : members)
+					member.HaltOperation();
+				this.HaltOperation();
+				return;
+			}
+		}
+		for (T member : members)
+			member.halt();
+	}
+
+	protected void	add( T member, Starter starter)
+	throws DNSSDException
+	{
+		if (AppleDNSSD.hasAutoCallbacks)
+		{
+			this.ThrowOnErr( this.isStopped() ? DNSSDException.BAD_STATE : starter.start( false));
+			synchronized (this)
+			{
+				if (!fStopped)
+				{
+					fMembers.add( member);
+					return;
+				}
+			}
+			member.halt();	// The group was stopped meanwhile
+			this.ThrowOnErr( DNSSDException.BAD_STATE);
+		}
+		synchronized (this)
+		{
+			if (fStopped)
+				this.ThrowOnErr( DNSSDException.BAD_STATE);
+			this.ThrowOnErr( starter.start( true));
+			fMembers.add( member);
+		}
+	}
+
+	void			remove( T member)
+	{
+		synchronized (this)
+		{
+			fMembers.remove( member);
+			if (!AppleDNSSD.hasAutoCallbacks)
+			{
+				member.HaltOperation();
+				return;
+			}
+		}
+		member.halt();
+	}
+
+	private synchronized boolean	isStopped() { return fStopped; }
+
+	// Sets fNativeContext. Returns non-zero on error.
+	protected native int	CreateConnection();
+
+	protected final Set<T>	fMembers = new HashSet<>();	// Guarded by this
+	private boolean			fStopped;		// Guarded by this
+}
+
+class	AppleRegistrationGroup extends AppleServiceGroup<AppleRegistration>
+{
+	public			AppleRegistrationGroup( BaseListener listener)
+	throws DNSSDException
+	{
+		super(listener);
+		this.connect();
+	}
+
+	AppleRegistration[]	registerAll( RegistrationRequest[] requests, InternalRegisterListener[] clients, int[] errors)
+	{
+		AppleRegistration[]	registrations = new AppleRegistration[requests.length];
+
+		// Keep the daemon locked, so its event loop takes the batch at once instead of running after every service
+		if (AppleDNSSD.hasAutoCallbacks)
+			this.LockDaemon();
+		try
+		{
+			for (int i = 0; i < requests.length; i++)
+			{
+				RegistrationRequest	request = requests[i];
+				TXTRecord			txtRecord = request.getTxtRecord();
+				try
+				{
+					registrations[i] = new AppleRegistration( this, request.getFlags(), request.getIfIndex(), request.getServiceName(),
+											request.getRegType(), request.getDomain(), request.getHost(), request.getPort(),
+											( txtRecord != null) ? txtRecord.getRawBytes() : null, clients[i]);
+				}
+				catch (DNSSDException e)
+				{
+					errors[i] = e.getErrorCode();
+				}
+			}
+		}
+		finally
+		{
+			if (AppleDNSSD.hasAutoCallbacks)
+				this.UnlockDaemon();
+		}
+		return registrations;
+	}
+
+	void			begin( final AppleRegistration registration, final int ifIndex, final int flags, final String serviceName,
+								final String regType, final String domain, final String host, final int port, final byte[] txtRecord)
+	throws DNSSDException
+	{
+		this.add( registration, new Starter()
+		{
+			public int	start( boolean shared)
+			{
+				return shared ? registration.BeginSharedRegister( AppleRegistrationGroup.this, ifIndex, flags, serviceName,
+										regType, domain, host, port, txtRecord)
+						: registration.BeginRegister( ifIndex, flags, serviceName, regType, domain, host, port, txtRecord);
+			}
+		});
+	}
+
+	// Hold and release the embedded daemon's lock, see mDNSPlatformLock(). Calls may nest on one thread.
+	protected native void	LockDaemon();
+
+	protected native void	UnlockDaemon();
 }
 
 class	AppleRecordRegistrar extends AppleService implements DNSSDRecordRegistrar
@@ -843,13 +1201,77 @@ class	AppleQuery extends AppleService
 	throws DNSSDException
 	{
 		super(client);
+		fGroup = null;
 		this.ThrowOnErr( this.CreateQuery( flags, ifIndex, serviceName, rrtype, rrclass));
 		if (!AppleDNSSD.hasAutoCallbacks)
 			new Thread(this).start();
 	}
 
+	public			AppleQuery( AppleQueryGroup group, int flags, int ifIndex, String serviceName, int rrtype,
+										int rrclass, InternalQueryListener client)
+	throws DNSSDException
+	{
+		super(client);
+		fGroup = group;
+		group.begin( this, flags, ifIndex, serviceName, rrtype, rrclass);
+	}
+
+	public void		stop()
+	{
+		if (fGroup != null)
+			fGroup.remove( this);
+		else
+			this.halt();
+	}
+
 	// Sets fNativeContext. Returns non-zero on error.
 	protected native int	CreateQuery( int flags, int ifIndex, String serviceName, int rrtype, int rrclass);
+
+	// Sets fNativeContext. Returns non-zero on error.
+	protected native int	CreateSharedQuery( AppleQueryGroup group, int flags, int ifIndex, String serviceName,
+											int rrtype, int rrclass);
+
+	protected final AppleQueryGroup	fGroup;		// Owner of the shared connection, or null
+}
+
+// Queries of a group share one daemon connection and one service thread, see AppleServiceGroup.
+// If the connection fails every query of the group is reported failed.
+class	AppleQueryGroup extends AppleServiceGroup<AppleQuery>
+{
+	public			AppleQueryGroup( final BaseListener listener)
+	throws DNSSDException
+	{
+		super(null);
+		fListener = new BaseListener()
+		{
+			public void	operationFailed( DNSSDService service, int errorCode)
+			{
+				AppleQuery[]	queries;
+				synchronized (AppleQueryGroup.this)
+				{
+					queries = fMembers.toArray( new AppleQuery[fMembers.size()]);
+				}
+				for (AppleQuery query : queries)
+					query.fListener.operationFailed( query, errorCode);
+				listener.operationFailed( service, errorCode);
+			}
+		};
+		this.connect();
+	}
+
+	void			begin( final AppleQuery query, final int flags, final int ifIndex, final String serviceName, final int rrtype,
+								final int rrclass)
+	throws DNSSDException
+	{
+		this.add( query, new Starter()
+		{
+			public int	start( boolean shared)
+			{
+				return shared ? query.CreateSharedQuery( AppleQueryGroup.this, flags, ifIndex, serviceName, rrtype, rrclass)
+						: query.CreateQuery( flags, ifIndex, serviceName, rrtype, rrclass);
+			}
+		});
+	}
 }
 
 class	AppleDomainEnum extends AppleService
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2016 Andriy Druk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.druk.dnssd;
+
+import java.util.HashSet;
+import java.util.Set;
+
+class InternalDNSSDQueryGroup implements DNSSDQueryGroup {
+
+    /** Starts a query of the group, the caller wraps it the same way as a standalone query. */
+    interface Starter {
+        DNSSDService queryRecord(DNSSDService group, int flags, int ifIndex, String serviceName, int rrtype, int rrclass,
+                                 QueryListener listener) throws DNSSDException;
+    }
+
+    final private Starter starter;
+    final private DNSSDService originalGroup;
+
+    // Guarded by this
+    private final Set<DNSSDService> queries = new HashSet<>();
+    private boolean isStopped = false;
+
+    InternalDNSSDQueryGroup(Starter starter) throws DNSSDException {
+        this.starter = starter;
+        this.originalGroup = InternalDNSSD.createQueryGroup(new BaseListener() {
+            @Override
+            public void operationFailed(DNSSDService service, int errorCode) {
+                // Every query of the group is reported failed by the native group
+            }
+        });
+    }
+
+    @Override
+    public DNSSDService queryRecord(int flags, int ifIndex, String serviceName, int rrtype, int rrclass, QueryListener listener)
+            throws DNSSDException {
+        synchronized (this) {
+            if (isStopped) {
+                throw InternalDNSSD.newException(DNSSDException.BAD_STATE);
+            }
+        }
+        final GroupQuery groupQuery = new GroupQuery(listener);
+        final DNSSDService query = starter.queryRecord(originalGroup, flags, ifIndex, serviceName, rrtype, rrclass, groupQuery);
+        boolean isQueryStopped;
+        synchronized (this) {
+            isQueryStopped = groupQuery.isStopped;
+            if (!isStopped && !isQueryStopped) {
+                queries.add(query);
+                groupQuery.query = query;
+                return groupQuery;
+            }
+        }
+        query.stop(); // The group or the query itself from its listener was stopped meanwhile
+        if (isQueryStopped) {
+            return groupQuery;
+        }
+        throw InternalDNSSD.newException(DNSSDException.BAD_STATE);
+    }
+
+    @Override
+    public void stop() {
+        DNSSDService[] stopped;
+        synchronized (this) {
+            isStopped = true;
+            stopped = queries.toArray(new DNSSDService[queries.size()]);
+            queries.clear();
+        }
+        // Queries first, they release their multicast lock leases and metrics
+        for (DNSSDService query : stopped) {
+            query.stop();
+        }
+        originalGroup.stop();
+    }
+
+    /** Handle of a query in the group, its listener is called with the handle like for a standalone query. */
+    private class GroupQuery implements DNSSDService, QueryListener {
+
+        private final QueryListener listener;
+
+        // Guarded by the group
+        private DNSSDService query;
+        private boolean isStopped = false;
+
+        GroupQuery(QueryListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void queryAnswered(DNSSDService query, int flags, int ifIndex, String fullName, int rrtype, int rrclass,
+                                  byte[] rdata, int ttl) {
+            listener.queryAnswered(this, flags, ifIndex, fullName, rrtype, rrclass, rdata, ttl);
+        }
+
+        @Override
+        public void operationFailed(DNSSDService service, int errorCode) {
+            listener.operationFailed(this, errorCode);
+        }
+
+        @Override
+        public void stop() {
+            DNSSDService query;
+            synchronized (InternalDNSSDQueryGroup.this) {
+                isStopped = true;
+                query = this.query;
+                if (query == null) {
+                    return; // Still starting, queryRecord stops it
+                }
+                queries.remove(query);
+            }
+            query.stop();
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.github.druk.dnssd;
 
+import java.util.List;
+
 class InternalDNSSDRegistration implements DNSSDRegistration {
 
     final private InternalDNSSDService.DnssdServiceListener listener;
@@ -21,6 +23,11 @@ class InternalDNSSDRegistration implements DNSSDRegistration {
         return originalDNSSDService.addRecord(flags, rrType, rData, ttl);
     }
 
+    @Override
+    public List<RecordResult> applyRecords(List<RecordOperation> operations) throws DNSSDException {
+        return originalDNSSDService.applyRecords(operations);
+    }
+
     @Override
     public void stop() {
         originalDNSSDService.stop();
@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2016 Andriy Druk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.druk.dnssd;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+
+class InternalDNSSDRegistrationGroup implements DNSSDRegistrationGroup {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int PENDING = 0;
+    private static final int REGISTERED = 1;
+    private static final int FAILED = 2;
+    private static final int STOPPED = 3;
+
+    /** Receiver of group events, the caller is responsible for delivering them to the client listener. */
+    interface Reporter {
+        void serviceRegistered(DNSSDRegistration registration, int flags, String serviceName, String regType, String domain);
+
+        void operationFailed(DNSSDService service, String serviceName, int errorCode);
+
+        void groupRegistered(DNSSDRegistrationGroup group, int registered, int failed);
+    }
+
+    final private InternalDNSSDService.DnssdServiceListener listener;
+    final private Reporter reporter;
+    final private DNSSDService originalGroup;
+
+    // Guarded by this
+    private boolean isStopped = false;
+    private int pending;
+    private int registered;
+    private int failed;
+
+    InternalDNSSDRegistrationGroup(InternalDNSSDService.DnssdServiceListener listener, final Reporter reporter) throws DNSSDException {
+        this.listener = listener;
+        this.reporter = reporter;
+        this.originalGroup = InternalDNSSD.createRegistrationGroup(new BaseListener() {
+            @Override
+            public void operationFailed(DNSSDService service, int errorCode) {
+                reporter.operationFailed(InternalDNSSDRegistrationGroup.this, null, errorCode);
+            }
+        });
+    }
+
+    @Override
+    public DNSSDRegistration register(RegistrationRequest request) throws DNSSDException {
+        int[] errors = new int[1];
+        Member member = start(new RegistrationRequest[]{request}, errors)[0];
+        if (errors[0] != DNSSDException.NO_ERROR) {
+            member.settle(STOPPED);
+            throw InternalDNSSD.newException(errors[0]);
+        }
+        return member;
+    }
+
+    @Override
+    public List<DNSSDRegistration> registerAll(List<RegistrationRequest> requests) throws DNSSDException {
+        RegistrationRequest[] array = requests.toArray(new RegistrationRequest[requests.size()]);
+        int[] errors = new int[array.length];
+        Member[] members = start(array, errors);
+        for (int i = 0; i < members.length; i++) {
+            if (errors[i] != DNSSDException.NO_ERROR) {
+                members[i].operationFailed(members[i], errors[i]);
+            }
+        }
+        return Arrays.<DNSSDRegistration>asList(members);
+    }
+
+    private Member[] start(RegistrationRequest[] requests, int[] errors) throws DNSSDException {
+        Member[] members = new Member[requests.length];
+        for (int i = 0; i < requests.length; i++) {
+            members[i] = new Member(requests[i].getServiceName());
+        }
+        synchronized (this) {
+            if (isStopped) {
+                throw InternalDNSSD.newException(DNSSDException.BAD_STATE);
+            }
+            pending += members.length;
+        }
+        DNSSDRegistration[] registrations;
+        try {
+            registrations = InternalDNSSD.registerAll(originalGroup, requests, members, errors);
+        } catch (DNSSDException | RuntimeException e) {
+            for (Member member : members) {
+                member.settle(STOPPED);
+            }
+            throw e;
+        }
+        for (int i = 0; i < members.length; i++) {
+            members[i].registration = registrations[i];
+        }
+        return members;
+    }
+
+    @Override
+    public synchronized int getPendingCount() {
+        return pending;
+    }
+
+    @Override
+    public synchronized int getRegisteredCount() {
+        return registered;
+    }
+
+    @Override
+    public synchronized int getFailedCount() {
+        return failed;
+    }
+
+    @Override
+    public void stop() {
+        originalGroup.stop();
+        synchronized (this) {
+            if (!isStopped) {
+                listener.onServiceStopped();
+                isStopped = true;
+                pending = 0;
+                registered = 0;
+            }
+        }
+    }
+
+    /** A service of the group, tracks its own state to keep the group counters. */
+    private class Member implements DNSSDRegistration, InternalRegisterListener {
+
+        private final String serviceName;
+        private volatile DNSSDRegistration registration;
+        private int state = PENDING; // Guarded by the group
+
+        Member(String serviceName) {
+            this.serviceName = serviceName;
+        }
+
+        /** Move to a new state, return true if it was the last pending service of the group. */
+        boolean settle(int newState) {
+            InternalDNSSDRegistrationGroup group = InternalDNSSDRegistrationGroup.this;
+            synchronized (group) {
+                if (group.isStopped || state == STOPPED) {
+                    return false;
+                }
+                if (state == PENDING) {
+                    pending--;
+                } else if (state == REGISTERED) {
+                    registered--;
+                }
+                if (newState == REGISTERED) {
+                    registered++;
+                } else if (newState == FAILED) {
+                    failed++;
+                }
+                boolean settled = state == PENDING && pending == 0;
+                state = newState;
+                return settled;
+            }
+        }
+
+        @Override
+        public void serviceRegistered(DNSSDRegistration registration, int flags, byte[] serviceName, byte[] regType, byte[] domain) {
+            boolean settled = settle(REGISTERED);
+            reporter.serviceRegistered(this, flags, new String(serviceName, UTF_8), new String(regType, UTF_8), new String(domain, UTF_8));
+            if (settled) {
+                reportGroupRegistered();
+            }
+        }
+
+        @Override
+        public void operationFailed(DNSSDService service, int errorCode) {
+            boolean settled = settle(FAILED);
+            reporter.operationFailed(this, serviceName, errorCode);
+            if (settled) {
+                reportGroupRegistered();
+            }
+        }
+
+        @Override
+        public DNSRecord getTXTRecord() throws DNSSDException {
+            return started().getTXTRecord();
+        }
+
+        @Override
+        public DNSRecord addRecord(int flags, int rrType, byte[] rData, int ttl) throws DNSSDException {
+            return started().addRecord(flags, rrType, rData, ttl);
+        }
+
+        @Override
+        public List<RecordResult> applyRecords(List<RecordOperation> operations) throws DNSSDException {
+            return started().applyRecords(operations);
+        }
+
+        private DNSSDRegistration started() throws DNSSDException {
+            DNSSDRegistration registration = this.registration;
+            if (registration == null) {
+                throw InternalDNSSD.newException(DNSSDException.BAD_STATE);
+            }
+            return registration;
+        }
+
+        @Override
+        public void stop() {
+            DNSSDRegistration registration = this.registration;
+            if (registration != null) {
+                registration.stop();
+            }
+            if (settle(STOPPED)) {
+                reportGroupRegistered();
+            }
+        }
+    }
+
+    private void reportGroupRegistered() {
+        int registered;
+        int failed;
+        synchronized (this) {
+            registered = this.registered;
+            failed = this.failed;
+        }
+        reporter.groupRegistered(this, registered, failed);
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2016 Andriy Druk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.druk.dnssd;
+
+/**
+ * Holds multicast lock for DNSSD operations, see {@link DNSSD#setMulticastLockManager(MulticastLockManager)}.<P>
+ *
+ * Every started operation takes a lease with {@link #acquire()} and returns it with {@link #release()}.
+ * Implementation decides when the underlying lock is really acquired and released.
+ */
+public interface MulticastLockManager {
+
+    /** Take a lease, the lock is held until the lease is released. */
+    void acquire();
+
+    /** Return a lease taken by {@link #acquire()}. */
+    void release();
+
+    /** Whether the underlying lock is held at the moment. */
+    boolean isHeld();
+
+    /** Number of times the underlying lock was acquired. */
+    long getAcquireCount();
+
+    /** Number of times the underlying lock was released. */
+    long getReleaseCount();
+}
@@ -45,6 +45,7 @@ public class NSType {
     public final static int DNAME = 39;	    /* Non-terminal DNAME  (for IPv6) */
     public final static int SINK = 40;		/* Kitchen sink  (experimentatl) */
     public final static int OPT = 41;		    /* EDNS0 option  (meta-RR) */
+    public final static int NSEC = 47;	    /* Next secure  (RFC 4034) */
     public final static int TKEY = 249;	    /* Transaction key */
     public final static int TSIG = 250;	    /* Transaction signature. */
     public final static int IXFR = 251;	    /* Incremental zone transfer. */
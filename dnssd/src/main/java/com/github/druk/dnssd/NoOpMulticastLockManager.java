@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2016 Andriy Druk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.druk.dnssd;
+
+/**
+ * {@link MulticastLockManager} that never touches Wi-Fi, for plain JVM (tests, benchmarks) and networks without
+ * multicast filtering.
+ */
+public final class NoOpMulticastLockManager implements MulticastLockManager {
+
+    @Override
+    public void acquire() {
+    }
+
+    @Override
+    public void release() {
+    }
+
+    @Override
+    public boolean isHeld() {
+        return false;
+    }
+
+    @Override
+    public long getAcquireCount() {
+        return 0;
+    }
+
+    @Override
+    public long getReleaseCount() {
+        return 0;
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2016 Andriy Druk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.druk.dnssd;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Reports stages of one DNSSD operation to a {@link TraceSink}. */
+class OperationTrace {
+
+    private static final AtomicLong ids = new AtomicLong();
+
+    private final TraceSink sink;
+    private final long id;
+    private final int operationType;
+    private volatile boolean isReplied = false;
+
+    OperationTrace(TraceSink sink, int operationType) {
+        this.sink = sink;
+        this.id = ids.incrementAndGet();
+        this.operationType = operationType;
+        mark(TraceSink.CREATED);
+    }
+
+    void mark(int stage) {
+        sink.onTrace(id, operationType, stage, System.nanoTime());
+    }
+
+    void reply() {
+        if (!isReplied) {
+            isReplied = true;
+            mark(TraceSink.FIRST_REPLY);
+        }
+    }
+
+    Runnable callback(final Runnable runnable) {
+        mark(TraceSink.CALLBACK_POSTED);
+        return () -> {
+            mark(TraceSink.CALLBACK_RUNNING);
+            runnable.run();
+            mark(TraceSink.CALLBACK_EXECUTED);
+        };
+    }
+
+    InternalDNSSDService.DnssdServiceListener track(final InternalDNSSDService.DnssdServiceListener listener) {
+        return new InternalDNSSDService.DnssdServiceListener() {
+            @Override
+            public void onServiceStarting() {
+                listener.onServiceStarting();
+            }
+
+            @Override
+            public void onServiceStopped() {
+                mark(TraceSink.STOPPED);
+                listener.onServiceStopped();
+            }
+        };
+    }
+}
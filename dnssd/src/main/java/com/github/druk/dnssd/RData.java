@@ -0,0 +1,587 @@
+/*
+ * Copyright (C) 2016 Andriy Druk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.druk.dnssd;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.Charset;
+
+/**
+ * Flyweight decoders of record data, as passed to {@link QueryListener#queryAnswered}.<P>
+ *
+ * A decoder is created once with {@link #forType} and pointed at every answer with {@link #wrap}. Accessors read
+ * fields straight out of the wrapped array: numbers, address bytes, TXT key lookups and NSEC type checks don't
+ * allocate, and strings are only built when asked for. Names are rendered the way the daemon renders them,
+ * escaped like {@link DNSName#constructFullName} does. A decoder isn't thread-safe, and the wrapped array must not
+ * change while it's wrapped.
+ */
+public abstract class RData {
+
+    // Longest name in wire format, RFC 1035 section 3.1
+    private static final int MAX_NAME = 255;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    byte[] data;
+
+    RData() {
+    }
+
+    /**
+     * Create a decoder for records of a type.
+     *
+     * @param rrtype One of {@link NSType#A}, {@link NSType#AAAA}, {@link NSType#SRV}, {@link NSType#PTR},
+     *               {@link NSType#TXT}, {@link NSType#HINFO} or {@link NSType#NSEC}.
+     * @return A new decoder, or null if the type isn't supported.
+     */
+    public static RData forType(int rrtype) {
+        switch (rrtype) {
+            case NSType.A:
+                return new A();
+            case NSType.AAAA:
+                return new AAAA();
+            case NSType.SRV:
+                return new SRV();
+            case NSType.PTR:
+                return new PTR();
+            case NSType.TXT:
+                return new TXT();
+            case NSType.HINFO:
+                return new HINFO();
+            case NSType.NSEC:
+                return new NSEC();
+            default:
+                return null;
+        }
+    }
+
+    /** @return Record type of this decoder, one of {@link NSType} constants. */
+    public abstract int getType();
+
+    /**
+     * Point the decoder at record data.
+     *
+     * @return This decoder.
+     * @throws IllegalArgumentException if rdata is malformed for the type of this decoder.
+     */
+    public RData wrap(byte[] rdata) {
+        if (rdata == null || !isValid(rdata)) {
+            throw new IllegalArgumentException("Malformed rdata of type " + getType());
+        }
+        data = rdata;
+        return this;
+    }
+
+    /** @return Length of the wrapped record data. */
+    public int length() {
+        return data.length;
+    }
+
+    abstract boolean isValid(byte[] rdata);
+
+    /** Address of an A or AAAA record. */
+    public abstract static class Address extends RData {
+
+        /** @return Byte of the address, as an unsigned value. */
+        public int byteAt(int index) {
+            if (index >= data.length) {
+                throw new IndexOutOfBoundsException();
+            }
+            return data[index] & 0xFF;
+        }
+
+        /** Copy the address to dst at offset. */
+        public void copyTo(byte[] dst, int offset) {
+            System.arraycopy(data, 0, dst, offset, data.length);
+        }
+
+        /** @return The address as a new {@link InetAddress}. */
+        public InetAddress toInetAddress() {
+            try {
+                return InetAddress.getByAddress(data.clone());
+            } catch (UnknownHostException e) {
+                throw new IllegalStateException(e); // Can't happen, length is checked by wrap()
+            }
+        }
+    }
+
+    /** IPv4 address record, RFC 1035 section 3.4.1. */
+    public static final class A extends Address {
+
+        @Override
+        public int getType() {
+            return NSType.A;
+        }
+
+        @Override
+        public A wrap(byte[] rdata) {
+            super.wrap(rdata);
+            return this;
+        }
+
+        /** @return The address as a big-endian int. */
+        public int getAddress() {
+            return readInt(data, 0);
+        }
+
+        @Override
+        boolean isValid(byte[] rdata) {
+            return rdata.length == 4;
+        }
+    }
+
+    /** IPv6 address record, RFC 3596. */
+    public static final class AAAA extends Address {
+
+        @Override
+        public int getType() {
+            return NSType.AAAA;
+        }
+
+        @Override
+        public AAAA wrap(byte[] rdata) {
+            super.wrap(rdata);
+            return this;
+        }
+
+        /** @return The upper 64 bits of the address. */
+        public long getHigh() {
+            return ((long) readInt(data, 0) << 32) | (readInt(data, 4) & 0xFFFFFFFFL);
+        }
+
+        /** @return The lower 64 bits of the address. */
+        public long getLow() {
+            return ((long) readInt(data, 8) << 32) | (readInt(data, 12) & 0xFFFFFFFFL);
+        }
+
+        /** @return True for a link-local (fe80::/10) address, which needs the interface index to be reachable. */
+        public boolean isLinkLocal() {
+            return (data[0] & 0xFF) == 0xFE && (data[1] & 0xC0) == 0x80;
+        }
+
+        @Override
+        boolean isValid(byte[] rdata) {
+            return rdata.length == 16;
+        }
+    }
+
+    /** Service location record, RFC 2782. */
+    public static final class SRV extends RData {
+
+        @Override
+        public int getType() {
+            return NSType.SRV;
+        }
+
+        @Override
+        public SRV wrap(byte[] rdata) {
+            super.wrap(rdata);
+            return this;
+        }
+
+        public int getPriority() {
+            return readShort(data, 0);
+        }
+
+        public int getWeight() {
+            return readShort(data, 2);
+        }
+
+        public int getPort() {
+            return readShort(data, 4);
+        }
+
+        /** @return Host name of the target. */
+        public String getTarget() {
+            return appendName(data, 6, new StringBuilder(data.length)).toString();
+        }
+
+        /** Append the host name of the target to sb. */
+        public StringBuilder appendTarget(StringBuilder sb) {
+            return appendName(data, 6, sb);
+        }
+
+        /** @return True if the target is name, ignoring case and the trailing dot. */
+        public boolean targetEquals(String name) {
+            return nameEquals(data, 6, name);
+        }
+
+        @Override
+        boolean isValid(byte[] rdata) {
+            return rdata.length > 6 && nameEnd(rdata, 6) == rdata.length;
+        }
+    }
+
+    /** Domain name pointer record, RFC 1035 section 3.3.12. */
+    public static final class PTR extends RData {
+
+        @Override
+        public int getType() {
+            return NSType.PTR;
+        }
+
+        @Override
+        public PTR wrap(byte[] rdata) {
+            super.wrap(rdata);
+            return this;
+        }
+
+        public String getName() {
+            return appendName(data, 0, new StringBuilder(data.length)).toString();
+        }
+
+        /** Append the name to sb. */
+        public StringBuilder appendName(StringBuilder sb) {
+            return RData.appendName(data, 0, sb);
+        }
+
+        /** @return True if the pointer is name, ignoring case and the trailing dot. */
+        public boolean nameEquals(String name) {
+            return RData.nameEquals(data, 0, name);
+        }
+
+        @Override
+        boolean isValid(byte[] rdata) {
+            return nameEnd(rdata, 0) == rdata.length;
+        }
+    }
+
+    /**
+     * Text record, RFC 6763 section 6. Entries are <code>key=value</code> strings, keys are matched ignoring case.
+     * Lookups scan the record, which is fine for the short records DNS-SD uses.
+     */
+    public static final class TXT extends RData {
+
+        @Override
+        public int getType() {
+            return NSType.TXT;
+        }
+
+        @Override
+        public TXT wrap(byte[] rdata) {
+            super.wrap(rdata);
+            return this;
+        }
+
+        /** @return Number of non-empty entries. */
+        public int size() {
+            int count = 0;
+            for (int i = 0; i < data.length; i += 1 + (data[i] & 0xFF)) {
+                if (data[i] != 0) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        /** @return Index of the entry with key, or -1. */
+        public int indexOf(String key) {
+            int index = 0;
+            for (int i = 0; i < data.length; i += 1 + (data[i] & 0xFF)) {
+                if (data[i] == 0) {
+                    continue;
+                }
+                if (keyEquals(i, key)) {
+                    return index;
+                }
+                index++;
+            }
+            return -1;
+        }
+
+        public boolean contains(String key) {
+            return indexOf(key) >= 0;
+        }
+
+        public String getKey(int index) {
+            int offset = offsetOf(index);
+            return decode(data, offset + 1, separator(offset));
+        }
+
+        /** @return Value of the entry at index, or null if it has no '='. */
+        public String getValue(int index) {
+            int offset = offsetOf(index);
+            int separator = separator(offset);
+            int end = offset + 1 + (data[offset] & 0xFF);
+            return separator < end ? decode(data, separator + 1, end) : null;
+        }
+
+        /** @return Value of the entry with key, or null if there is no such entry or it has no value. */
+        public String getValue(String key) {
+            int index = indexOf(key);
+            return index >= 0 ? getValue(index) : null;
+        }
+
+        /** @return Length of the value of the entry at index in bytes, or -1 if it has no '='. */
+        public int getValueLength(int index) {
+            int offset = offsetOf(index);
+            int separator = separator(offset);
+            int end = offset + 1 + (data[offset] & 0xFF);
+            return separator < end ? end - separator - 1 : -1;
+        }
+
+        private int offsetOf(int index) {
+            if (index >= 0) {
+                for (int i = 0; i < data.length; i += 1 + (data[i] & 0xFF)) {
+                    if (data[i] != 0 && index-- == 0) {
+                        return i;
+                    }
+                }
+            }
+            throw new IndexOutOfBoundsException();
+        }
+
+        // Index of the first '=' of the entry at offset, or its end if there's none
+        private int separator(int offset) {
+            int end = offset + 1 + (data[offset] & 0xFF);
+            for (int i = offset + 1; i < end; i++) {
+                if (data[i] == '=') {
+                    return i;
+                }
+            }
+            return end;
+        }
+
+        private boolean keyEquals(int offset, String key) {
+            int end = offset + 1 + (data[offset] & 0xFF);
+            int i = offset + 1;
+            for (int k = 0; k < key.length(); k++, i++) {
+                if (i >= end || data[i] == '=' || toLower(data[i] & 0xFF) != toLower(key.charAt(k))) {
+                    return false;
+                }
+            }
+            return i == end || data[i] == '=';
+        }
+
+        @Override
+        boolean isValid(byte[] rdata) {
+            return stringsEnd(rdata, 0, Integer.MAX_VALUE) == rdata.length;
+        }
+    }
+
+    /** Host information record, RFC 1035 section 3.3.2. */
+    public static final class HINFO extends RData {
+
+        @Override
+        public int getType() {
+            return NSType.HINFO;
+        }
+
+        @Override
+        public HINFO wrap(byte[] rdata) {
+            super.wrap(rdata);
+            return this;
+        }
+
+        public String getCpu() {
+            return decode(data, 1, 1 + (data[0] & 0xFF));
+        }
+
+        public String getOs() {
+            int offset = 1 + (data[0] & 0xFF);
+            return decode(data, offset + 1, offset + 1 + (data[offset] & 0xFF));
+        }
+
+        @Override
+        boolean isValid(byte[] rdata) {
+            return rdata.length > 0 && 1 + (rdata[0] & 0xFF) < rdata.length && stringsEnd(rdata, 0, 2) == rdata.length;
+        }
+    }
+
+    /** Next secure record, RFC 4034 section 4. mDNS uses it to assert which types a name doesn't have. */
+    public static final class NSEC extends RData {
+
+        @Override
+        public int getType() {
+            return NSType.NSEC;
+        }
+
+        @Override
+        public NSEC wrap(byte[] rdata) {
+            super.wrap(rdata);
+            return this;
+        }
+
+        public String getNextName() {
+            return appendName(data, 0, new StringBuilder(data.length)).toString();
+        }
+
+        /** @return True if the type bitmap has rrtype. */
+        public boolean hasType(int rrtype) {
+            int window = rrtype >> 8;
+            int bit = rrtype & 0xFF;
+            for (int i = nameEnd(data, 0); i < data.length; i += 2 + (data[i + 1] & 0xFF)) {
+                if ((data[i] & 0xFF) == window) {
+                    int index = i + 2 + (bit >> 3);
+                    return index < i + 2 + (data[i + 1] & 0xFF) && (data[index] & (0x80 >> (bit & 7))) != 0;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        boolean isValid(byte[] rdata) {
+            int i = nameEnd(rdata, 0);
+            if (i < 0) {
+                return false;
+            }
+            while (i < rdata.length) {
+                int length = i + 1 < rdata.length ? rdata[i + 1] & 0xFF : 0;
+                if (length < 1 || length > 32 || i + 2 + length > rdata.length) {
+                    return false;
+                }
+                i += 2 + length;
+            }
+            return true;
+        }
+    }
+
+    static int readShort(byte[] data, int offset) {
+        return ((data[offset] & 0xFF) << 8) | (data[offset + 1] & 0xFF);
+    }
+
+    static int readInt(byte[] data, int offset) {
+        return (readShort(data, offset) << 16) | readShort(data, offset + 2);
+    }
+
+    // Offset after count character-strings starting at offset (fewer if data ends first), or -1 if one overruns
+    static int stringsEnd(byte[] data, int offset, int count) {
+        int i = offset;
+        for (int n = 0; n < count && i < data.length; n++) {
+            i += 1 + (data[i] & 0xFF);
+        }
+        return i <= data.length ? i : -1;
+    }
+
+    // Offset after an uncompressed name in wire format starting at offset, or -1 if it's malformed
+    static int nameEnd(byte[] data, int offset) {
+        int i = offset;
+        while (i < data.length && i - offset < MAX_NAME) {
+            int length = data[i] & 0xFF;
+            if (length == 0) {
+                return i + 1;
+            }
+            if (length > 63) {
+                return -1; // Compression pointer or an extended label type, the daemon never hands them out
+            }
+            i += 1 + length;
+        }
+        return -1;
+    }
+
+    // Same escaping as ConvertDomainNameToCString of DNSCommon.c: dots and backslashes are prefixed
+    // with a backslash, control characters and space become \ddd. The root is a single dot.
+    static StringBuilder appendName(byte[] data, int offset, StringBuilder sb) {
+        int i = offset;
+        if (data[i] == 0) {
+            return sb.append('.');
+        }
+        while (data[i] != 0) {
+            int end = i + 1 + (data[i] & 0xFF);
+            for (int j = i + 1; j < end; ) {
+                int c = data[j] & 0xFF;
+                if (c >= 0x80) {
+                    j = appendUtf8(data, j, end, sb);
+                    continue;
+                }
+                if (c == '.' || c == '\\') {
+                    sb.append('\\').append((char) c);
+                } else if (c <= ' ') {
+                    sb.append('\\').append((char) ('0' + c / 100)).append((char) ('0' + (c / 10) % 10)).append((char) ('0' + c % 10));
+                } else {
+                    sb.append((char) c);
+                }
+                j++;
+            }
+            sb.append('.');
+            i = end;
+        }
+        return sb;
+    }
+
+    // Compares without building the name, names with non-ASCII labels fall back to appendName()
+    static boolean nameEquals(byte[] data, int offset, String name) {
+        int n = 0;
+        int i = offset;
+        while (data[i] != 0) {
+            int end = i + 1 + (data[i] & 0xFF);
+            for (int j = i + 1; j < end; j++) {
+                int c = data[j] & 0xFF;
+                if (c >= 0x80) {
+                    String rendered = appendName(data, offset, new StringBuilder(data.length)).toString();
+                    return rendered.regionMatches(true, 0, name, 0, name.length()) &&
+                            (rendered.length() == name.length() || rendered.length() == name.length() + 1);
+                }
+                if (c == '.' || c == '\\') {
+                    if (n + 1 >= name.length() || name.charAt(n) != '\\' || name.charAt(n + 1) != c) {
+                        return false;
+                    }
+                    n += 2;
+                } else if (c <= ' ') {
+                    if (n + 3 >= name.length() || name.charAt(n) != '\\' || name.charAt(n + 1) != '0' + c / 100 ||
+                            name.charAt(n + 2) != '0' + (c / 10) % 10 || name.charAt(n + 3) != '0' + c % 10) {
+                        return false;
+                    }
+                    n += 4;
+                } else {
+                    if (n >= name.length() || toLower(c) != toLower(name.charAt(n))) {
+                        return false;
+                    }
+                    n++;
+                }
+            }
+            i = end;
+            if (n < name.length() && name.charAt(n) == '.') {
+                n++;
+            } else if (n != name.length() || data[i] != 0) {
+                return false;
+            }
+        }
+        return n == name.length() || (i == offset && name.equals("."));
+    }
+
+    static String decode(byte[] data, int start, int end) {
+        return new String(data, start, end - start, UTF_8);
+    }
+
+    // Decode one UTF-8 sequence at i, malformed input becomes U+FFFD. Returns the index after the sequence.
+    private static int appendUtf8(byte[] data, int i, int end, StringBuilder sb) {
+        int c = data[i] & 0xFF;
+        int length = c >= 0xF0 ? 4 : c >= 0xE0 ? 3 : c >= 0xC0 ? 2 : 1;
+        if (length == 1 || i + length > end) {
+            sb.append('\uFFFD');
+            return i + 1;
+        }
+        int codePoint = c & (0x3F >> (length - 1));
+        for (int k = 1; k < length; k++) {
+            int next = data[i + k] & 0xFF;
+            if ((next & 0xC0) != 0x80) {
+                sb.append('\uFFFD');
+                return i + k;
+            }
+            codePoint = (codePoint << 6) | (next & 0x3F);
+        }
+        if (codePoint > Character.MAX_CODE_POINT) {
+            sb.append('\uFFFD');
+        } else {
+            sb.appendCodePoint(codePoint);
+        }
+        return i + length;
+    }
+
+    private static int toLower(int c) {
+        return c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c;
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2016 Andriy Druk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.druk.dnssd;
+
+/**
+ * A change to the records of a registered service, applied together by {@link DNSSDRegistration#applyRecords}.
+ * The parameters have the same meaning as the parameters of {@link DNSSDRegistration#addRecord},
+ * {@link DNSRecord#update} and {@link DNSRecord#remove}.
+ */
+public final class RecordOperation {
+
+    public static final int ADD = 0;
+    public static final int UPDATE = 1;
+    public static final int REMOVE = 2;
+
+    private final int kind;
+    private final DNSRecord record;
+    private final int flags;
+    private final int rrType;
+    private final byte[] rData;
+    private final int ttl;
+
+    private RecordOperation(int kind, DNSRecord record, int flags, int rrType, byte[] rData, int ttl) {
+        this.kind = kind;
+        this.record = record;
+        this.flags = flags;
+        this.rrType = rrType;
+        this.rData = rData;
+        this.ttl = ttl;
+    }
+
+    /** Add a record to the service, like {@link DNSSDRegistration#addRecord}. */
+    public static RecordOperation add(int flags, int rrType, byte[] rData, int ttl) {
+        return new RecordOperation(ADD, null, flags, rrType, rData, ttl);
+    }
+
+    /** Update a record of the service, like {@link DNSRecord#update}. */
+    public static RecordOperation update(DNSRecord record, int flags, byte[] rData, int ttl) {
+        return new RecordOperation(UPDATE, record, flags, 0, rData, ttl);
+    }
+
+    /** Remove a record added to the service, like {@link DNSRecord#remove}. */
+    public static RecordOperation remove(DNSRecord record) {
+        return new RecordOperation(REMOVE, record, 0, 0, null, 0);
+    }
+
+    /** One of {@link #ADD}, {@link #UPDATE} or {@link #REMOVE}. */
+    public int getKind() {
+        return kind;
+    }
+
+    /** Record to update or remove, null for {@link #ADD}. */
+    public DNSRecord getRecord() {
+        return record;
+    }
+
+    public int getFlags() {
+        return flags;
+    }
+
+    public int getRrType() {
+        return rrType;
+    }
+
+    public byte[] getRData() {
+        return rData;
+    }
+
+    public int getTtl() {
+        return ttl;
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2016 Andriy Druk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.druk.dnssd;
+
+/**
+ * Result of a {@link RecordOperation} applied by {@link DNSSDRegistration#applyRecords}.
+ */
+public final class RecordResult {
+
+    private final RecordOperation operation;
+    private final DNSRecord record;
+    private final int errorCode;
+
+    RecordResult(RecordOperation operation, DNSRecord record, int errorCode) {
+        this.operation = operation;
+        this.record = record;
+        this.errorCode = errorCode;
+    }
+
+    public RecordOperation getOperation() {
+        return operation;
+    }
+
+    /** The new record of an add, the target record of an update or a remove. Null if an add was rejected. */
+    public DNSRecord getRecord() {
+        return record;
+    }
+
+    /** 0 if the daemon applied the operation, otherwise one of the {@link DNSSDException} error codes. */
+    public int getErrorCode() {
+        return errorCode;
+    }
+
+    public boolean isSuccess() {
+        return errorCode == 0;
+    }
+}
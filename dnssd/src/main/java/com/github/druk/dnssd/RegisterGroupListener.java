@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2016 Andriy Druk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.druk.dnssd;
+
+/**
+ * Listener of a {@link DNSSDRegistrationGroup}.<P>
+ *
+ * {@link #serviceRegistered} and {@link #operationFailed} are called for every service of the group,
+ * {@link #groupRegistered} reports the group as a whole.
+ */
+public interface RegisterGroupListener extends RegisterListener {
+
+    /**
+     * Called when no registration of the group is pending anymore, i.e. every service added so far
+     * was either registered or failed. Called again after each following batch settles.
+     *
+     * @param group the registration group
+     * @param registered number of currently registered services
+     * @param failed number of services that failed to register since the group was created
+     */
+    void groupRegistered(DNSSDRegistrationGroup group, int registered, int failed);
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2016 Andriy Druk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.druk.dnssd;
+
+/**
+ * Parameters of a service registered through a {@link DNSSDRegistrationGroup}. They have the same meaning
+ * as the parameters of {@link DNSSD#register}.
+ */
+public final class RegistrationRequest {
+
+    private final int flags;
+    private final int ifIndex;
+    private final String serviceName;
+    private final String regType;
+    private final String domain;
+    private final String host;
+    private final int port;
+    private final TXTRecord txtRecord;
+
+    public RegistrationRequest(int flags, int ifIndex, String serviceName, String regType, String domain, String host, int port,
+                               TXTRecord txtRecord) {
+        this.flags = flags;
+        this.ifIndex = ifIndex;
+        this.serviceName = serviceName;
+        this.regType = regType;
+        this.domain = domain;
+        this.host = host;
+        this.port = port;
+        this.txtRecord = txtRecord;
+    }
+
+    /** Request with default flags, ifIndex, domain, host and txtRecord. */
+    public RegistrationRequest(String serviceName, String regType, int port) {
+        this(0, 0, serviceName, regType, null, null, port, null);
+    }
+
+    public int getFlags() {
+        return flags;
+    }
+
+    public int getIfIndex() {
+        return ifIndex;
+    }
+
+    public String getServiceName() {
+        return serviceName;
+    }
+
+    public String getRegType() {
+        return regType;
+    }
+
+    public String getDomain() {
+        return domain;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public TXTRecord getTxtRecord() {
+        return txtRecord;
+    }
+}
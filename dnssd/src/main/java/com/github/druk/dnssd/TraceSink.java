@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2016 Andriy Druk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.druk.dnssd;
+
+/**
+ * Receiver of per-operation tracing events, see {@link DNSSD#setTraceSink(TraceSink)}.<P>
+ *
+ * Timestamps are {@link System#nanoTime()} values, so the difference between two stages of one
+ * operation shows where the time went: daemon, JNI callback, Handler queue or listener.<P>
+ *
+ * Note: events are delivered synchronously from the calling thread, the daemon callback thread and
+ * the Handler thread, so implementation should be thread-safe and fast.
+ */
+public interface TraceSink {
+
+    /** Operation was requested, before native start. */
+    int CREATED = 0;
+    /** Native start call returned. */
+    int STARTED = 1;
+    /** First result of the operation was read from the daemon (ProcessResults or daemon callback thread). */
+    int FIRST_REPLY = 2;
+    /** Listener callback is about to be posted to the Handler. */
+    int CALLBACK_POSTED = 3;
+    /** Posted callback was taken from the Handler queue, listener is about to be called. */
+    int CALLBACK_RUNNING = 4;
+    /** Listener callback returned. */
+    int CALLBACK_EXECUTED = 5;
+    /** Operation was stopped. */
+    int STOPPED = 6;
+
+    /**
+     * Called for each stage of a traced operation.
+     *
+     * @param operationId unique id of the operation within the process
+     * @param operationType type of the operation, e.g. {@link DNSSDMetrics#RESOLVE}
+     * @param stage one of the stage constants, e.g. {@link #FIRST_REPLY}
+     * @param timestampNanos {@link System#nanoTime()} of the event
+     */
+    void onTrace(long operationId, int operationType, int stage, long timestampNanos);
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2016 Andriy Druk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.druk.dnssd;
+
+import android.content.Context;
+import android.net.wifi.WifiManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+/**
+ * {@link MulticastLockManager} backed by {@link WifiManager.MulticastLock}.<P>
+ *
+ * The lock is acquired once when the first lease is taken and kept while any lease is active. After the last
+ * lease is released the lock stays held for the idle grace period, so a burst of short operations (e.g. resolves)
+ * doesn't toggle the Wi-Fi multicast filter and make a binder call per operation.
+ */
+public final class WifiMulticastLockManager implements MulticastLockManager {
+
+    private static final String TAG = "DNSSD";
+    private static final String MULTICAST_LOCK_NAME = "com.github.druk.dnssd.DNSSD";
+
+    private final Context context;
+    private final Handler handler;
+    private final long idleGracePeriod;
+    private final Runnable releaseRunnable = this::releaseIfIdle;
+
+    private WifiManager.MulticastLock multicastLock;
+    private int leases = 0;
+    private boolean isHeld = false;
+    private long acquireCount = 0;
+    private long releaseCount = 0;
+
+    /**
+     * @param context application context
+     * @param idleGracePeriod time in milliseconds to keep the lock after the last lease is released, 0 to release immediately
+     */
+    public WifiMulticastLockManager(Context context, long idleGracePeriod) {
+        this(context.getApplicationContext(), new Handler(Looper.getMainLooper()), idleGracePeriod);
+    }
+
+    WifiMulticastLockManager(Context context, Handler handler, long idleGracePeriod) {
+        if (idleGracePeriod < 0) {
+            throw new IllegalArgumentException("idleGracePeriod should not be negative: " + idleGracePeriod);
+        }
+        this.context = context;
+        this.handler = handler;
+        this.idleGracePeriod = idleGracePeriod;
+    }
+
+    @Override
+    public synchronized void acquire() {
+        leases++;
+        if (isHeld) {
+            handler.removeCallbacks(releaseRunnable);
+            return;
+        }
+        if (multicastLock == null) {
+            WifiManager wifi = (WifiManager) context.getSystemService(Context.WIFI_SERVICE);
+            if (wifi == null) {
+                Log.wtf(TAG, "Can't get WIFI Service");
+                return;
+            }
+            multicastLock = wifi.createMulticastLock(MULTICAST_LOCK_NAME);
+            multicastLock.setReferenceCounted(false);
+        }
+        multicastLock.acquire();
+        isHeld = true;
+        acquireCount++;
+    }
+
+    @Override
+    public synchronized void release() {
+        if (leases == 0) {
+            Log.wtf(TAG, "Multicast lock doesn't exist");
+            return;
+        }
+        if (--leases == 0 && isHeld) {
+            if (idleGracePeriod == 0) {
+                releaseIfIdle();
+            } else {
+                handler.postDelayed(releaseRunnable, idleGracePeriod);
+            }
+        }
+    }
+
+    private synchronized void releaseIfIdle() {
+        if (leases == 0 && isHeld) {
+            multicastLock.release();
+            isHeld = false;
+            releaseCount++;
+        }
+    }
+
+    @Override
+    public synchronized boolean isHeld() {
+        return isHeld;
+    }
+
+    @Override
+    public synchronized long getAcquireCount() {
+        return acquireCount;
+    }
+
+    @Override
+    public synchronized long getReleaseCount() {
+        return releaseCount;
+    }
+}
@@ -8,6 +8,7 @@ commonSources := \
 commonFlags := \
     -O2 -g \
     -fno-strict-aliasing \
+    -fwrapv \
     -D_GNU_SOURCE \
     -DHAVE_IPV6 \
     -DHAVE_LINUX \
@@ -61,7 +62,8 @@ LOCAL_CFLAGS += $(commonFlags) \
                 -DUNICAST_DISABLED \
                 -DMDNS_VERSIONSTR_NODTS=1 \
                 -DAUTO_CALLBACKS=1 \
-                -DEMBEDDED
+                -DEMBEDDED \
+                -DUSES_EPOLL=1
 
 LOCAL_EXPORT_C_INCLUDE_DIRS := external/mdnsresponder/mDNSShared
 
@@ -83,7 +83,9 @@ static DWORD	if_nametoindex( const char * nameStr );
 
 #include "mDNSEmbeddedAPI.h"
 #include "mDNSPosix.h"
+#ifdef __ANDROID__
 #include <android/log.h>
+#endif
 
 enum {
 	kInterfaceVersionOne = 1,
@@ -100,6 +102,7 @@ struct	OpContext
 	jobject			ClientObj;
 	jmethodID		Callback;
 	jmethodID		Callback2;
+	OpContext		*Primary;		// Connection shared with kDNSServiceFlagsShareConnection, or NULL
 };
 
 
@@ -109,14 +112,28 @@ struct	OpContext
 #endif
 
 #ifdef EMBEDDED
-int init();
+#define CACHE_STATS_COUNT 6
+#define STATS_COUNT 8
+#define INTERFACE_STATS_FIELDS 5
+#define MAX_INTERFACES 16
+#define MAX_INTERFACE_FILTER 32
+
+int init(int cacheSize, int cacheGrowth, long long cacheMaxBytes);
 int loop();
 void stopLoop();
-
-JNIEXPORT jint JNICALL Java_com_github_druk_dnssd_DNSSDEmbedded_nativeInit( JNIEnv *pEnv, jclass cls)
+void getCacheStats(long long *stats);
+void getStats(long long *stats);
+int getInterfaceStats(long long *stats, int max);
+int setInterfaceFilter(int allow, const char **names, int nameCount, const int *indexes, int indexCount);
+void setFastAnnounce(int enabled);
+void lockDaemon();
+void unlockDaemon();
+
+JNIEXPORT jint JNICALL Java_com_github_druk_dnssd_DNSSDEmbedded_nativeInit( JNIEnv *pEnv, jclass cls,
+							jint cacheSize, jint cacheGrowth, jlong cacheMaxBytes)
 {
 	pLoopEnv = pEnv;
-  	return init();
+  	return init(cacheSize, cacheGrowth, cacheMaxBytes);
 }
 
 JNIEXPORT jint JNICALL Java_com_github_druk_dnssd_DNSSDEmbedded_nativeLoop( JNIEnv *pEnv, jclass cls)
@@ -128,6 +145,46 @@ JNIEXPORT void JNICALL Java_com_github_druk_dnssd_DNSSDEmbedded_nativeExit( JNIE
 {
 	stopLoop();
 }
+
+JNIEXPORT void JNICALL Java_com_github_druk_dnssd_DNSSDEmbedded_nativeSetFastAnnounce( JNIEnv *pEnv, jclass cls, jboolean enabled)
+{
+	setFastAnnounce( enabled);
+}
+
+JNIEXPORT void JNICALL Java_com_github_druk_dnssd_DNSSDEmbedded_nativeGetCacheStats( JNIEnv *pEnv, jclass cls, jlongArray stats)
+{
+	long long	values[CACHE_STATS_COUNT];
+	jlong		result[CACHE_STATS_COUNT];
+	int			i;
+
+	if ( (*pEnv)->GetArrayLength( pEnv, stats) < CACHE_STATS_COUNT)
+		return;
+	getCacheStats( values);
+	for ( i = 0; i < CACHE_STATS_COUNT; i++)
+		result[i] = values[i];
+	(*pEnv)->SetLongArrayRegion( pEnv, stats, 0, CACHE_STATS_COUNT, result);
+}
+
+JNIEXPORT jint JNICALL Java_com_github_druk_dnssd_DNSSDEmbedded_nativeGetStats( JNIEnv *pEnv, jclass cls,
+							jlongArray stats, jlongArray interfaceStats)
+{
+	long long	values[MAX_INTERFACES * INTERFACE_STATS_FIELDS];
+	jlong		result[MAX_INTERFACES * INTERFACE_STATS_FIELDS];
+	int			count, i;
+
+	if ( (*pEnv)->GetArrayLength( pEnv, stats) < STATS_COUNT)
+		return 0;
+	getStats( values);
+	for ( i = 0; i < STATS_COUNT; i++)
+		result[i] = values[i];
+	(*pEnv)->SetLongArrayRegion( pEnv, stats, 0, STATS_COUNT, result);
+
+	count = getInterfaceStats( values, (*pEnv)->GetArrayLength( pEnv, interfaceStats) / INTERFACE_STATS_FIELDS);
+	for ( i = 0; i < count * INTERFACE_STATS_FIELDS; i++)
+		result[i] = values[i];
+	(*pEnv)->SetLongArrayRegion( pEnv, interfaceStats, 0, count * INTERFACE_STATS_FIELDS, result);
+	return count;
+}
 #endif
 
 JNIEXPORT jint JNICALL Java_com_github_druk_dnssd_AppleDNSSD_InitLibrary( JNIEnv *pEnv, jclass cls, 
@@ -174,6 +231,42 @@ static void			SafeReleaseUTFChars( JNIEnv *pEnv, jstring str, const char *buff)
 		(*pEnv)->ReleaseStringUTFChars( pEnv, str, buff);
 }
 
+#ifdef EMBEDDED
+JNIEXPORT jint JNICALL Java_com_github_druk_dnssd_DNSSDEmbedded_nativeSetInterfaceFilter( JNIEnv *pEnv, jclass cls,
+							jboolean allow, jobjectArray names, jintArray indexes)
+{
+	jstring		nameStrings[MAX_INTERFACE_FILTER];
+	const char	*nameChars[MAX_INTERFACE_FILTER];
+	jint		*indexValues;
+	jint		nameCount = (*pEnv)->GetArrayLength( pEnv, names);
+	jint		indexCount = (*pEnv)->GetArrayLength( pEnv, indexes);
+	int			err, i;
+
+	if ( nameCount + indexCount > MAX_INTERFACE_FILTER)
+		return kDNSServiceErr_BadParam;
+
+	for ( i = 0; i < nameCount; i++)
+	{
+		nameStrings[i] = (jstring) (*pEnv)->GetObjectArrayElement( pEnv, names, i);
+		nameChars[i] = SafeGetUTFChars( pEnv, nameStrings[i]);
+		if ( nameChars[i] == NULL)
+			nameChars[i] = "";
+	}
+	indexValues = (*pEnv)->GetIntArrayElements( pEnv, indexes, NULL);
+
+	err = setInterfaceFilter( allow, nameChars, nameCount, indexValues, indexCount);
+
+	(*pEnv)->ReleaseIntArrayElements( pEnv, indexes, indexValues, JNI_ABORT);
+	for ( i = 0; i < nameCount; i++)
+	{
+		if ( nameStrings[i] != NULL)
+			SafeReleaseUTFChars( pEnv, nameStrings[i], nameChars[i]);
+		(*pEnv)->DeleteLocalRef( pEnv, nameStrings[i]);
+	}
+	return err;
+}
+#endif
+
 
 #if AUTO_CALLBACKS
 static void	SetupCallbackState( JNIEnv **ppEnv)
@@ -219,6 +312,7 @@ static OpContext	*NewContext( JNIEnv *pEnv, jobject owner,
 								(*pEnv)->GetObjectClass( pEnv, pContext->ClientObj),
 								callbackName, callbackSig);
 		pContext->Callback2 = NULL;		// not always used
+		pContext->Primary = NULL;
 	}
 
 	return pContext;
@@ -235,7 +329,7 @@ static void			ReportError( JNIEnv *pEnv, jobject target, jobject service, DNSSer
 	(*pEnv)->CallVoidMethod( pEnv, target, opFailed, service, err);
 }
 
-JNIEXPORT void JNICALL Java_com_github_druk_dnssd_AppleService_HaltOperation( JNIEnv *pEnv, jobject pThis)
+static void			HaltContext( JNIEnv *pEnv, jobject pThis)
 /* Deallocate the dns_sd service browser and set the Java object's fNativeContext field to 0. */
 {
 	jclass			cls = (*pEnv)->GetObjectClass( pEnv, pThis);
@@ -258,6 +352,23 @@ JNIEXPORT void JNICALL Java_com_github_druk_dnssd_AppleService_HaltOperation( JN
 	}
 }
 
+JNIEXPORT void JNICALL Java_com_github_druk_dnssd_AppleService_HaltOperation( JNIEnv *pEnv, jobject pThis)
+{
+	HaltContext( pEnv, pThis);
+}
+
+JNIEXPORT void JNICALL Java_com_github_druk_dnssd_AppleService_HaltOperationLocked( JNIEnv *pEnv, jobject pThis)
+/* Same as HaltOperation(), serialized with other callers and with callbacks by the daemon lock. */
+{
+#ifdef EMBEDDED
+	lockDaemon();
+	HaltContext( pEnv, pThis);
+	unlockDaemon();
+#else
+	HaltContext( pEnv, pThis);
+#endif
+}
+
 
 JNIEXPORT jint JNICALL Java_com_github_druk_dnssd_AppleService_BlockForData( JNIEnv *pEnv, jobject pThis)
 /* Block until data arrives, or one second passes. Returns 1 if data present, 0 otherwise. */
@@ -515,6 +626,9 @@ static void DNSSD_API	ServiceRegisterReply( DNSServiceRef sdRef _UNUSED, DNSServ
 {
 	OpContext		*pContext = (OpContext*) context;
 
+	// Replies of a shared connection are read by ProcessResults() of the primary context
+	if ( pContext->Primary != NULL)
+		pContext->Env = pContext->Primary->Env;
 	SetupCallbackState( &pContext->Env);
 
 	if ( pContext->ClientObj != NULL && pContext->Callback != NULL)
@@ -540,9 +654,10 @@ static void DNSSD_API	ServiceRegisterReply( DNSServiceRef sdRef _UNUSED, DNSServ
 	TeardownCallbackState();
 }
 
-JNIEXPORT jint JNICALL Java_com_github_druk_dnssd_AppleRegistration_BeginRegister( JNIEnv *pEnv, jobject pThis,
+static DNSServiceErrorType	StartRegister( JNIEnv *pEnv, jobject pThis, OpContext *pPrimary,
 							jint ifIndex, jint flags, jstring serviceName, jstring regType,
 							jstring domain, jstring host, jint port, jbyteArray txtRecord)
+// Register a service, over the connection of pPrimary if it's not NULL.
 {
 	//syslog(LOG_ERR, "BR");
 	jclass					cls = (*pEnv)->GetObjectClass( pEnv, pThis);
@@ -577,6 +692,13 @@ JNIEXPORT jint JNICALL Java_com_github_druk_dnssd_AppleRegistration_BeginRegiste
 		pBytes = txtRecord ? (*pEnv)->GetByteArrayElements( pEnv, txtRecord, NULL) : NULL;
 		numBytes = txtRecord ? (*pEnv)->GetArrayLength( pEnv, txtRecord) : 0;
 
+		if ( pPrimary != NULL)
+		{
+			pContext->ServiceRef = pPrimary->ServiceRef;
+			pContext->Primary = pPrimary;
+			flags |= kDNSServiceFlagsShareConnection;
+		}
+
 		err = DNSServiceRegister( &pContext->ServiceRef, flags, ifIndex, servStr, regStr,  
 								domainStr, hostStr, portBits,
 								numBytes, pBytes, ServiceRegisterReply, pContext);
@@ -599,6 +721,79 @@ JNIEXPORT jint JNICALL Java_com_github_druk_dnssd_AppleRegistration_BeginRegiste
 	return err;
 }
 
+JNIEXPORT jint JNICALL Java_com_github_druk_dnssd_AppleRegistration_BeginRegister( JNIEnv *pEnv, jobject pThis,
+							jint ifIndex, jint flags, jstring serviceName, jstring regType,
+							jstring domain, jstring host, jint port, jbyteArray txtRecord)
+{
+	return StartRegister( pEnv, pThis, NULL, ifIndex, flags, serviceName, regType, domain, host, port, txtRecord);
+}
+
+// Returns the context of the shared connection of an AppleServiceGroup, or NULL if the group is stopped.
+static OpContext	*GetGroupContext( JNIEnv *pEnv, jobject group)
+{
+	jclass					cls = (*pEnv)->GetObjectClass( pEnv, group);
+	jfieldID				contextField = (*pEnv)->GetFieldID( pEnv, cls, "fNativeContext", "J");
+	OpContext				*pPrimary = NULL;
+
+	if ( contextField != 0)
+		pPrimary = (OpContext*) (long) (*pEnv)->GetLongField(pEnv, group, contextField);
+	if ( pPrimary == NULL || pPrimary->ServiceRef == NULL)
+		return NULL;
+	return pPrimary;
+}
+
+JNIEXPORT jint JNICALL Java_com_github_druk_dnssd_AppleRegistration_BeginSharedRegister( JNIEnv *pEnv, jobject pThis,
+							jobject group, jint ifIndex, jint flags, jstring serviceName, jstring regType,
+							jstring domain, jstring host, jint port, jbyteArray txtRecord)
+{
+	OpContext				*pPrimary = GetGroupContext( pEnv, group);
+
+	if ( pPrimary == NULL)
+		return kDNSServiceErr_BadState;
+
+	return StartRegister( pEnv, pThis, pPrimary, ifIndex, flags, serviceName, regType, domain, host, port, txtRecord);
+}
+
+JNIEXPORT jint JNICALL Java_com_github_druk_dnssd_AppleServiceGroup_CreateConnection( JNIEnv *pEnv, jobject pThis)
+{
+	jclass					cls = (*pEnv)->GetObjectClass( pEnv, pThis);
+	jfieldID				contextField = (*pEnv)->GetFieldID( pEnv, cls, "fNativeContext", "J");
+	OpContext				*pContext = NULL;
+	DNSServiceErrorType		err = kDNSServiceErr_NoError;
+
+	if ( contextField != 0)
+		pContext = NewContext( pEnv, pThis, "operationFailed", "(Lcom/github/druk/dnssd/DNSSDService;I)V");
+	else
+		err = kDNSServiceErr_BadParam;
+
+	if ( pContext != NULL)
+	{
+		err = DNSServiceCreateConnection( &pContext->ServiceRef);
+		if ( err == kDNSServiceErr_NoError)
+		{
+			(*pEnv)->SetLongField(pEnv, pThis, contextField, (long) pContext);
+		}
+	}
+	else
+		err = kDNSServiceErr_NoMemory;
+
+	return err;
+}
+
+JNIEXPORT void JNICALL Java_com_github_druk_dnssd_AppleRegistrationGroup_LockDaemon( JNIEnv *pEnv _UNUSED, jobject pThis _UNUSED)
+{
+#ifdef EMBEDDED
+	lockDaemon();
+#endif
+}
+
+JNIEXPORT void JNICALL Java_com_github_druk_dnssd_AppleRegistrationGroup_UnlockDaemon( JNIEnv *pEnv _UNUSED, jobject pThis _UNUSED)
+{
+#ifdef EMBEDDED
+	unlockDaemon();
+#endif
+}
+
 JNIEXPORT jint JNICALL Java_com_github_druk_dnssd_AppleRegistration_AddRecord( JNIEnv *pEnv, jobject pThis,
 							jint flags, jint rrType, jbyteArray rData, jint ttl, jobject destObj)
 {
@@ -808,6 +1003,98 @@ JNIEXPORT jint JNICALL Java_com_github_druk_dnssd_AppleRecordRegistrar_RegisterR
 	return err;
 }
 
+// Values of RecordOperation.getKind()
+#define	RECORD_OP_ADD		0
+#define	RECORD_OP_UPDATE	1
+#define	RECORD_OP_REMOVE	2
+
+// Applies record operations to a registration, one after another like AddRecord(), Update() and Remove().
+// destObjs holds the new record of an add and the target record of an update or a remove.
+JNIEXPORT void JNICALL Java_com_github_druk_dnssd_AppleRegistration_ApplyRecords( JNIEnv *pEnv, jobject pThis,
+							jobjectArray ops, jobjectArray destObjs, jintArray errors)
+{
+	jclass					cls = (*pEnv)->GetObjectClass( pEnv, pThis);
+	jfieldID				contextField = (*pEnv)->GetFieldID( pEnv, cls, "fNativeContext", "J");
+	OpContext				*pContext = NULL;
+	jsize					count = (*pEnv)->GetArrayLength( pEnv, ops);
+	jint					*pErrors = (*pEnv)->GetIntArrayElements( pEnv, errors, NULL);
+	jfieldID				kindField = NULL, flagsField = NULL, rrTypeField = NULL, rDataField = NULL, ttlField = NULL;
+	jfieldID				recField = NULL;
+	jsize					i;
+
+	if ( contextField != 0)
+		pContext = (OpContext*) (long) (*pEnv)->GetLongField(pEnv, pThis, contextField);
+
+	for ( i = 0; i < count; i++)
+	{
+		jobject		op = (*pEnv)->GetObjectArrayElement( pEnv, ops, i);
+		jobject		destObj = (*pEnv)->GetObjectArrayElement( pEnv, destObjs, i);
+
+		if ( pContext == NULL || pContext->ServiceRef == NULL || op == NULL || destObj == NULL)
+			pErrors[i] = kDNSServiceErr_BadParam;
+		else
+		{
+			jbyteArray		rData;
+			jbyte			*pBytes = NULL;
+			jsize			numBytes = 0;
+			jint			kind;
+			DNSRecordRef	recRef;
+
+			if ( recField == NULL)
+			{
+				jclass	opCls = (*pEnv)->GetObjectClass( pEnv, op);
+				jclass	recCls = (*pEnv)->GetObjectClass( pEnv, destObj);
+				kindField = (*pEnv)->GetFieldID( pEnv, opCls, "kind", "I");
+				flagsField = (*pEnv)->GetFieldID( pEnv, opCls, "flags", "I");
+				rrTypeField = (*pEnv)->GetFieldID( pEnv, opCls, "rrType", "I");
+				rDataField = (*pEnv)->GetFieldID( pEnv, opCls, "rData", "[B");
+				ttlField = (*pEnv)->GetFieldID( pEnv, opCls, "ttl", "I");
+				recField = (*pEnv)->GetFieldID( pEnv, recCls, "fRecord", "J");
+				(*pEnv)->DeleteLocalRef( pEnv, opCls);
+				(*pEnv)->DeleteLocalRef( pEnv, recCls);
+			}
+
+			kind = (*pEnv)->GetIntField( pEnv, op, kindField);
+			recRef = (DNSRecordRef) (long) (*pEnv)->GetLongField(pEnv, destObj, recField);
+			rData = (jbyteArray) (*pEnv)->GetObjectField( pEnv, op, rDataField);
+			if ( rData != NULL)
+			{
+				pBytes = (*pEnv)->GetByteArrayElements( pEnv, rData, NULL);
+				numBytes = (*pEnv)->GetArrayLength( pEnv, rData);
+			}
+
+			// Each call waits for the daemon's error code, the system daemon drops a connection that gets
+			// the next request before it answered the previous one
+			if ( kind == RECORD_OP_ADD)
+			{
+				pErrors[i] = DNSServiceAddRecord( pContext->ServiceRef, &recRef,
+										(*pEnv)->GetIntField( pEnv, op, flagsField),
+										(*pEnv)->GetIntField( pEnv, op, rrTypeField),
+										numBytes, pBytes, (*pEnv)->GetIntField( pEnv, op, ttlField));
+				if ( pErrors[i] == kDNSServiceErr_NoError)
+					(*pEnv)->SetLongField(pEnv, destObj, recField, (long) recRef);
+			}
+			else if ( kind == RECORD_OP_UPDATE)
+				pErrors[i] = DNSServiceUpdateRecord( pContext->ServiceRef, recRef,
+										(*pEnv)->GetIntField( pEnv, op, flagsField),
+										numBytes, pBytes, (*pEnv)->GetIntField( pEnv, op, ttlField));
+			else if ( kind == RECORD_OP_REMOVE)
+				pErrors[i] = DNSServiceRemoveRecord( pContext->ServiceRef, recRef,
+										(*pEnv)->GetIntField( pEnv, op, flagsField));
+			else
+				pErrors[i] = kDNSServiceErr_BadParam;
+
+			if ( pBytes != NULL)
+				(*pEnv)->ReleaseByteArrayElements( pEnv, rData, pBytes, JNI_ABORT);
+			(*pEnv)->DeleteLocalRef( pEnv, rData);
+		}
+
+		(*pEnv)->DeleteLocalRef( pEnv, op);
+		(*pEnv)->DeleteLocalRef( pEnv, destObj);
+	}
+
+	(*pEnv)->ReleaseIntArrayElements( pEnv, errors, pErrors, 0);
+}
 
 static void DNSSD_API	ServiceQueryReply( DNSServiceRef sdRef _UNUSED, DNSServiceFlags flags, uint32_t interfaceIndex,
 								DNSServiceErrorType errorCode, const char *serviceName,
@@ -818,6 +1105,9 @@ static void DNSSD_API	ServiceQueryReply( DNSServiceRef sdRef _UNUSED, DNSService
 	jbyteArray		rDataObj;
 	jbyte			*pBytes;
 
+	// Replies of a shared connection are read by ProcessResults() of the primary context
+	if ( pContext->Primary != NULL)
+		pContext->Env = pContext->Primary->Env;
 	SetupCallbackState( &pContext->Env);
 
 	if ( pContext->ClientObj != NULL && pContext->Callback != NULL && 
@@ -843,8 +1133,9 @@ static void DNSSD_API	ServiceQueryReply( DNSServiceRef sdRef _UNUSED, DNSService
 	TeardownCallbackState();
 }
 
-JNIEXPORT jint JNICALL Java_com_github_druk_dnssd_AppleQuery_CreateQuery( JNIEnv *pEnv, jobject pThis,
+static DNSServiceErrorType	StartQuery( JNIEnv *pEnv, jobject pThis, OpContext *pPrimary,
 							jint flags, jint ifIndex, jstring serviceName, jint rrtype, jint rrclass)
+// Query a record, over the connection of pPrimary if it's not NULL.
 {
 	jclass					cls = (*pEnv)->GetObjectClass( pEnv, pThis);
 	jfieldID				contextField = (*pEnv)->GetFieldID( pEnv, cls, "fNativeContext", "J");
@@ -861,6 +1152,13 @@ JNIEXPORT jint JNICALL Java_com_github_druk_dnssd_AppleQuery_CreateQuery( JNIEnv
 	{
 		const char	*servStr = SafeGetUTFChars( pEnv, serviceName);
 
+		if ( pPrimary != NULL)
+		{
+			pContext->ServiceRef = pPrimary->ServiceRef;
+			pContext->Primary = pPrimary;
+			flags |= kDNSServiceFlagsShareConnection;
+		}
+
 		err = DNSServiceQueryRecord( &pContext->ServiceRef, flags, ifIndex, servStr,
 									rrtype, rrclass, ServiceQueryReply, pContext);
 		if ( err == kDNSServiceErr_NoError)
@@ -876,6 +1174,23 @@ JNIEXPORT jint JNICALL Java_com_github_druk_dnssd_AppleQuery_CreateQuery( JNIEnv
 	return err;
 }
 
+JNIEXPORT jint JNICALL Java_com_github_druk_dnssd_AppleQuery_CreateQuery( JNIEnv *pEnv, jobject pThis,
+							jint flags, jint ifIndex, jstring serviceName, jint rrtype, jint rrclass)
+{
+	return StartQuery( pEnv, pThis, NULL, flags, ifIndex, serviceName, rrtype, rrclass);
+}
+
+JNIEXPORT jint JNICALL Java_com_github_druk_dnssd_AppleQuery_CreateSharedQuery( JNIEnv *pEnv, jobject pThis,
+							jobject group, jint flags, jint ifIndex, jstring serviceName, jint rrtype, jint rrclass)
+{
+	OpContext				*pPrimary = GetGroupContext( pEnv, group);
+
+	if ( pPrimary == NULL)
+		return kDNSServiceErr_BadState;
+
+	return StartQuery( pEnv, pThis, pPrimary, flags, ifIndex, serviceName, rrtype, rrclass);
+}
+
 
 static void DNSSD_API	DomainEnumReply( DNSServiceRef sdRef _UNUSED, DNSServiceFlags flags, uint32_t interfaceIndex,
 								DNSServiceErrorType errorCode, const char *replyDomain, void *context)
@@ -594,6 +594,15 @@ mDNSlocal void AnswerAllLocalQuestionsWithLocalAuthRecord(mDNS *const m, AuthRec
 											(X) & kDNSRecordTypeUnique           ? DefaultProbeIntervalForTypeUnique    : \
 											(X) & kDNSRecordTypeActiveUniqueMask ? DefaultAnnounceIntervalForTypeUnique : 0)
 
+// In fast announce mode (m->FastAnnounce) the probe and announce intervals, and the minimum gap between
+// two packets, are divided by eight. The number of probes and announcements stays the same, so name conflicts are still detected,
+// but a service is normally announced ~125ms after being registered instead of one second.
+#define FastAnnounceDivisor 8
+#define ProbeIntervalForTypeUnique(M)    (DefaultProbeIntervalForTypeUnique    / ((M)->FastAnnounce ? FastAnnounceDivisor : 1))
+#define AnnounceIntervalForTypeUnique(M) (DefaultAnnounceIntervalForTypeUnique / ((M)->FastAnnounce ? FastAnnounceDivisor : 1))
+#define APIntervalForRecordType(M,X)     (DefaultAPIntervalForRecordType(X)    / ((M)->FastAnnounce ? FastAnnounceDivisor : 1))
+#define SendSuppressionInterval(M)       (((mDNSPlatformOneSecond+9)/10)       / ((M)->FastAnnounce ? FastAnnounceDivisor : 1))
+
 #define TimeToAnnounceThisRecord(RR,time) ((RR)->AnnounceCount && (time) - ((RR)->LastAPTime + (RR)->ThisAPInterval) >= 0)
 #define TimeToSendThisRecord(RR,time) ((TimeToAnnounceThisRecord(RR,time) || (RR)->ImmedAnswer) && ResourceRecordIsValidAnswer(RR))
 #define TicksTTL(RR) ((mDNSs32)(RR)->resrec.rroriginalttl * mDNSPlatformOneSecond)
@@ -700,7 +709,7 @@ mDNSlocal void SetNextAnnounceProbeTime(mDNS *const m, const AuthRecord *const r
 mDNSlocal void InitializeLastAPTime(mDNS *const m, AuthRecord *const rr)
 	{
 	// For reverse-mapping Sleep Proxy PTR records, probe interval is one second
-	rr->ThisAPInterval = rr->AddressProxy.type ? mDNSPlatformOneSecond : DefaultAPIntervalForRecordType(rr->resrec.RecordType);
+	rr->ThisAPInterval = rr->AddressProxy.type ? mDNSPlatformOneSecond : APIntervalForRecordType(m, rr->resrec.RecordType);
 
 	// * If this is a record type that's going to probe, then we use the m->SuppressProbes time.
 	// * Otherwise, if it's not going to probe, but m->SuppressProbes is set because we have other
@@ -724,7 +733,7 @@ mDNSlocal void InitializeLastAPTime(mDNS *const m, AuthRecord *const rr)
 			// 1/4 second wait; probe
 			// 1/4 second wait; probe
 			// 1/4 second wait; announce (i.e. service is normally announced exactly one second after being registered)
-			m->SuppressProbes = NonZeroTime(m->timenow + DefaultProbeIntervalForTypeUnique/2 + mDNSRandom(DefaultProbeIntervalForTypeUnique/2));
+			m->SuppressProbes = NonZeroTime(m->timenow + ProbeIntervalForTypeUnique(m)/2 + mDNSRandom(ProbeIntervalForTypeUnique(m)/2));
 
 			// If we already have a *probe* scheduled to go out sooner, then use that time to get better aggregation
 			if (m->SuppressProbes - m->NextScheduledProbe >= 0)
@@ -750,13 +759,13 @@ mDNSlocal void InitializeLastAPTime(mDNS *const m, AuthRecord *const rr)
 					m->NextScheduledQuery - m->timenow,
 					m->SuppressSending,
 					m->SuppressSending    - m->timenow);
-				m->SuppressProbes = NonZeroTime(m->timenow + DefaultProbeIntervalForTypeUnique/2 + mDNSRandom(DefaultProbeIntervalForTypeUnique/2));
+				m->SuppressProbes = NonZeroTime(m->timenow + ProbeIntervalForTypeUnique(m)/2 + mDNSRandom(ProbeIntervalForTypeUnique(m)/2));
 				}
 			}
 		rr->LastAPTime = m->SuppressProbes - rr->ThisAPInterval;
 		}
 	else if (m->SuppressProbes && m->SuppressProbes - m->timenow >= 0)
-		rr->LastAPTime = m->SuppressProbes - rr->ThisAPInterval + DefaultProbeIntervalForTypeUnique * DefaultProbeCountForTypeUnique + rr->ThisAPInterval / 2;
+		rr->LastAPTime = m->SuppressProbes - rr->ThisAPInterval + ProbeIntervalForTypeUnique(m) * DefaultProbeCountForTypeUnique + rr->ThisAPInterval / 2;
 	else
 		rr->LastAPTime = m->timenow - rr->ThisAPInterval;
 
@@ -2208,6 +2217,7 @@ mDNSlocal void SendResponses(mDNS *const m)
 			if (TimeToAnnounceThisRecord(rr, m->timenow + rr->ThisAPInterval/2))
 				{
 				rr->AnnounceCount--;
+				m->Stats.AnnouncementsSent++;
 				if (rr->resrec.RecordType != kDNSRecordTypeDeregistering)
 					rr->ThisAPInterval *= 2;
 				rr->LastAPTime = m->timenow;
@@ -2421,7 +2431,7 @@ mDNSlocal void SendResponses(mDNS *const m)
 
 			if (intf->IPv4Available) mDNSSendDNSMessage(m, &m->omsg, responseptr, intf->InterfaceID, mDNSNULL, &AllDNSLinkGroup_v4, MulticastDNSPort, mDNSNULL, mDNSNULL);
 			if (intf->IPv6Available) mDNSSendDNSMessage(m, &m->omsg, responseptr, intf->InterfaceID, mDNSNULL, &AllDNSLinkGroup_v6, MulticastDNSPort, mDNSNULL, mDNSNULL);
-			if (!m->SuppressSending) m->SuppressSending = NonZeroTime(m->timenow + (mDNSPlatformOneSecond+9)/10);
+			if (!m->SuppressSending) m->SuppressSending = NonZeroTime(m->timenow + SendSuppressionInterval(m));
 			if (++pktcount >= 1000) { LogMsg("SendResponses exceeded loop limit %d: giving up", pktcount); break; }
 			// There might be more things to send on this interface, so go around one more time and try again.
 			}
@@ -3032,6 +3042,7 @@ mDNSlocal void SendQueries(mDNS *const m)
 				if (ar->ProbeCount > DefaultProbeCountForTypeUnique)
 					ar->ProbeCount = DefaultProbeCountForTypeUnique;
 				ar->ProbeCount--;
+				m->Stats.ProbesSent++;
 				SetNextAnnounceProbeTime(m, ar);
 				if (ar->ProbeCount == 0)
 					{
@@ -3058,8 +3069,8 @@ mDNSlocal void SendQueries(mDNS *const m)
 				{
 				if (!ar->Acknowledged) AcknowledgeRecord(m, ar);	// Defensive, just in case it got missed somehow
 				ar->resrec.RecordType     = kDNSRecordTypeVerified;
-				ar->ThisAPInterval = DefaultAnnounceIntervalForTypeUnique;
-				ar->LastAPTime     = m->timenow - DefaultAnnounceIntervalForTypeUnique;
+				ar->ThisAPInterval = AnnounceIntervalForTypeUnique(m);
+				ar->LastAPTime     = m->timenow - AnnounceIntervalForTypeUnique(m);
 				SetNextAnnounceProbeTime(m, ar);
 				}
 			}
@@ -3097,6 +3108,7 @@ mDNSlocal void SendQueries(mDNS *const m)
 						q->qname.c, DNSTypeName(q->qtype), queryptr - m->omsg.data, queryptr + answerforecast - m->omsg.data);
 
 					// If we're suppressing this question, or we successfully put it, update its SendQNow state
+					if (SuppressOnThisInterface(q->DupSuppress, intf)) m->Stats.QueriesSuppressed++;
 					if (SuppressOnThisInterface(q->DupSuppress, intf) ||
 						BuildQuestion(m, &m->omsg, &queryptr, q, &kalistptr, &answerforecast))
 						{
@@ -3198,7 +3210,7 @@ mDNSlocal void SendQueries(mDNS *const m)
 				m->omsg.h.numAuthorities, m->omsg.h.numAuthorities == 1 ? "" : "s", intf->InterfaceID);
 			if (intf->IPv4Available) mDNSSendDNSMessage(m, &m->omsg, queryptr, intf->InterfaceID, mDNSNULL, &AllDNSLinkGroup_v4, MulticastDNSPort, mDNSNULL, mDNSNULL);
 			if (intf->IPv6Available) mDNSSendDNSMessage(m, &m->omsg, queryptr, intf->InterfaceID, mDNSNULL, &AllDNSLinkGroup_v6, MulticastDNSPort, mDNSNULL, mDNSNULL);
-			if (!m->SuppressSending) m->SuppressSending = NonZeroTime(m->timenow + (mDNSPlatformOneSecond+9)/10);
+			if (!m->SuppressSending) m->SuppressSending = NonZeroTime(m->timenow + SendSuppressionInterval(m));
 			if (++pktcount >= 1000)
 				{ LogMsg("SendQueries exceeded loop limit %d: giving up", pktcount); break; }
 			// There might be more records left in the known answer list, or more questions to send
@@ -3926,6 +3938,8 @@ mDNSlocal void AnswerNewQuestion(mDNS *const m)
 				}
 			else if (RRTypeIsAddressType(rr->resrec.rrtype) && RRTypeIsAddressType(q->qtype))
 				ShouldQueryImmediately = mDNSfalse;
+		if (AnsweredFromCache) m->Stats.CacheHits++;
+		else                   m->Stats.CacheMisses++;
 		}
 	// We don't use LogInfo for this "Question deleted" message because it happens so routinely that
 	// it's not remotely remarkable, and therefore unlikely to be of much help tracking down bugs.
@@ -4092,6 +4106,8 @@ mDNSlocal CacheEntity *GetCacheEntity(mDNS *const m, const CacheGroup *const Pre
 				else ReleaseCacheGroup(m, cp);
 				}
 			}
+		m->rrcache_recycled += oldtotalused - m->rrcache_totalused;
+		m->rrcache_recyclepasses++;
 		LogInfo("GetCacheEntity recycled %d records to reduce cache from %d to %d",
 			oldtotalused - m->rrcache_totalused, oldtotalused, m->rrcache_totalused);
 		}
@@ -5940,7 +5956,7 @@ mDNSlocal mDNSu8 *ProcessQuery(mDNS *const m, const DNSMessage *const query, con
 			// See if this Known-Answer suppresses any of our currently planned answers
 			for (rr=ResponseRecords; rr; rr=rr->NextResponse)
 				if (MustSendRecord(rr) && ShouldSuppressKnownAnswer(&m->rec.r, rr))
-					{ rr->NR_AnswerTo = mDNSNULL; rr->NR_AdditionalTo = mDNSNULL; }
+					{ rr->NR_AnswerTo = mDNSNULL; rr->NR_AdditionalTo = mDNSNULL; m->Stats.KnownAnswersSuppressed++; }
 	
 			// See if this Known-Answer suppresses any previously scheduled answers (for multi-packet KA suppression)
 			for (rr=m->ResourceRecords; rr; rr=rr->next)
@@ -5948,6 +5964,7 @@ mDNSlocal mDNSu8 *ProcessQuery(mDNS *const m, const DNSMessage *const query, con
 				// If we're planning to send this answer on this interface, and only on this interface, then allow KA suppression
 				if (rr->ImmedAnswer == InterfaceID && ShouldSuppressKnownAnswer(&m->rec.r, rr))
 					{
+					m->Stats.KnownAnswersSuppressed++;
 					if (srcaddr->type == mDNSAddrType_IPv4)
 						{
 						if (mDNSSameIPv4Address(rr->v4Requester, srcaddr->ip.v4)) rr->v4Requester = zerov4Addr;
@@ -10677,6 +10694,9 @@ mDNSexport mStatus mDNS_Init(mDNS *const m, mDNS_PlatformSupport *const p,
 	m->rrcache_totalused       = 0;
 	m->rrcache_active          = 0;
 	m->rrcache_report          = 10;
+	m->rrcache_recycled        = 0;
+	m->rrcache_recyclepasses   = 0;
+	mDNSPlatformMemZero(&m->Stats, sizeof(m->Stats));
 	m->rrcache_free            = mDNSNULL;
 
 	for (slot = 0; slot < CACHE_HASH_SLOTS; slot++)
@@ -1779,6 +1779,18 @@ enum		// Bit flags -- i.e. values should be 1, 2, 4, 8, etc.
 	mDNS_KnownBug_LossySyslog       = 2		// <rdar://problem/6561888>
 	};
 
+// Activity counters of mDNSCore, reset by mDNS_Init
+typedef struct
+	{
+	mDNSu32 CacheHits;					// New questions answered from the cache
+	mDNSu32 CacheMisses;				// New questions with no answer in the cache
+	mDNSu32 KnownAnswersSuppressed;		// Answers not sent because they were in the querier's known-answer list
+	mDNSu32 QueriesSuppressed;			// Questions not sent because another host asked them with our known answers
+	mDNSu32 ProbesSent;
+	mDNSu32 AnnouncementsSent;
+	mDNSu32 LoopIterations;				// Iterations of the platform event loop
+	} mDNSStats;
+
 enum
 	{
 	SleepState_Awake = 0,
@@ -1858,6 +1870,10 @@ struct mDNS_struct
 	mDNSu32 rrcache_totalused;			// Number of cache entries currently occupied
 	mDNSu32 rrcache_active;				// Number of cache entries currently occupied by records that answer active questions
 	mDNSu32 rrcache_report;
+	mDNSu32 rrcache_recycled;			// Number of cache entries evicted to make room for new records
+	mDNSu32 rrcache_recyclepasses;		// Number of times the cache was full and unused entries were evicted
+	mDNSStats Stats;
+	mDNSBool FastAnnounce;				// Shorter probe and announce intervals; set before mDNS_Init, which leaves it unchanged
 	CacheEntity *rrcache_free;
 	CacheGroup *rrcache_hash[CACHE_HASH_SLOTS];
 	mDNSs32  rrcache_nextcheck[CACHE_HASH_SLOTS];
@@ -64,7 +64,40 @@ static domainname DynDNSZone;                // Default wide-area zone for servi
 static domainname DynDNSHostname;
 
 #define RR_CACHE_SIZE 500
+#ifdef EMBEDDED
+// Cache storage is configured by the app and allocated in chunks, which are freed when the loop exits
+typedef struct CacheChunk CacheChunk;
+struct CacheChunk
+	{
+	CacheChunk *next;
+	CacheEntity storage[];
+	};
+static CacheChunk *gCacheChunks = mDNSNULL;
+static mDNSu32 gCacheGrowth = RR_CACHE_SIZE;
+static mDNSu32 gCacheLimit = 0;				// Upper bound of cache entries, 0 for no limit
+static mDNSu32 gCacheGrowRefused = 0;		// Number of times the cache reached its limit and wasn't grown
+
+mDNSlocal CacheEntity *AllocCacheStorage(mDNSu32 numrecords)
+	{
+	CacheChunk *chunk = malloc(sizeof(CacheChunk) + sizeof(CacheEntity) * numrecords);
+	if (!chunk) return mDNSNULL;
+	chunk->next = gCacheChunks;
+	gCacheChunks = chunk;
+	return chunk->storage;
+	}
+
+mDNSlocal void FreeCacheStorage(void)
+	{
+	while (gCacheChunks)
+		{
+		CacheChunk *chunk = gCacheChunks;
+		gCacheChunks = chunk->next;
+		free(chunk);
+		}
+	}
+#else
 static CacheEntity gRRCache[RR_CACHE_SIZE];
+#endif
 static mDNS_PlatformSupport PlatformStorage;
 
 int stopNow = 0;
@@ -87,8 +120,18 @@ mDNSlocal void mDNS_StatusCallback(mDNS *const m, mStatus result)
 	else if (result == mStatus_GrowCache)
 		{
 		// Allocate another chunk of cache storage
+#ifdef EMBEDDED
+		mDNSu32 numrecords = gCacheGrowth;
+		CacheEntity *storage = mDNSNULL;
+		if (gCacheLimit && m->rrcache_size + numrecords > gCacheLimit)
+			numrecords = gCacheLimit > m->rrcache_size ? gCacheLimit - m->rrcache_size : 0;
+		if (numrecords) storage = AllocCacheStorage(numrecords);
+		if (storage) mDNS_GrowCache(m, storage, numrecords);
+		else gCacheGrowRefused++;	// mDNSCore evicts unused records instead
+#else
 		CacheEntity *storage = malloc(sizeof(CacheEntity) * RR_CACHE_SIZE);
 		if (storage) mDNS_GrowCache(m, storage, RR_CACHE_SIZE);
+#endif
 		}
 	}
 
@@ -194,8 +237,13 @@ int main(int argc, char **argv)
 
 	LogMsg("%s starting", mDNSResponderVersionString);
 
+#ifdef EMBEDDED
+	err = mDNS_Init(&mDNSStorage, &PlatformStorage, AllocCacheStorage(RR_CACHE_SIZE), RR_CACHE_SIZE, mDNS_Init_AdvertiseLocalAddresses, 
+					mDNS_StatusCallback, mDNS_Init_NoInitCallbackContext); 
+#else
 	err = mDNS_Init(&mDNSStorage, &PlatformStorage, gRRCache, RR_CACHE_SIZE, mDNS_Init_AdvertiseLocalAddresses, 
 					mDNS_StatusCallback, mDNS_Init_NoInitCallbackContext); 
+#endif
 
 #ifndef EMBEDDED
 	if (mStatus_NoError == err)		
@@ -247,13 +295,29 @@ int main(int argc, char **argv)
 	}
 
 #ifdef EMBEDDED	
-int init()
+int init(int cacheSize, int cacheGrowth, long long cacheMaxBytes)
 	{
 	mStatus					err;
+	CacheEntity				*storage;
 
 	LogMsg("%s starting", mDNSResponderVersionString);
 
-	err = mDNS_Init(&mDNSStorage, &PlatformStorage, gRRCache, RR_CACHE_SIZE, mDNS_Init_AdvertiseLocalAddresses, 
+	if (cacheSize <= 0) cacheSize = RR_CACHE_SIZE;
+	gCacheGrowth = cacheGrowth > 0 ? cacheGrowth : RR_CACHE_SIZE;
+	gCacheLimit = 0;
+	if (cacheMaxBytes > 0)
+		{
+		long long limit = cacheMaxBytes / (long long)sizeof(CacheEntity);
+		gCacheLimit = limit < 1 ? 1 : limit > 0x7FFFFFFF ? 0x7FFFFFFF : (mDNSu32)limit;
+		if ((mDNSu32)cacheSize > gCacheLimit) cacheSize = gCacheLimit;
+		}
+	gCacheGrowRefused = 0;
+
+	FreeCacheStorage();		// Left by previous failed start
+	storage = AllocCacheStorage(cacheSize);
+	if (!storage) return mStatus_NoMemoryErr;
+
+	err = mDNS_Init(&mDNSStorage, &PlatformStorage, storage, cacheSize, mDNS_Init_AdvertiseLocalAddresses, 
 					mDNS_StatusCallback, mDNS_Init_NoInitCallbackContext); 
  
 	return err;
@@ -268,6 +332,7 @@ int loop(){
 	LogMsg("%s stopping", mDNSResponderVersionString);
 
 	mDNS_Close(&mDNSStorage);
+	FreeCacheStorage();
  
  #if MDNS_DEBUGMSGS > 0
 	printf("mDNSResponder exiting normally with %ld\n", err);
@@ -276,10 +341,72 @@ int loop(){
 	return err;
 }	
 
+void getCacheStats(long long *stats)
+{
+	stats[0] = mDNSStorage.rrcache_size;
+	stats[1] = mDNSStorage.rrcache_totalused;
+	stats[2] = mDNSStorage.rrcache_active;
+	stats[3] = mDNSStorage.rrcache_recycled;
+	stats[4] = mDNSStorage.rrcache_recyclepasses;
+	stats[5] = gCacheGrowRefused;
+}
+
+void getStats(long long *stats)
+{
+	stats[0] = mDNSStorage.rrcache_totalused;
+	stats[1] = mDNSStorage.Stats.CacheHits;
+	stats[2] = mDNSStorage.Stats.CacheMisses;
+	stats[3] = mDNSStorage.Stats.KnownAnswersSuppressed;
+	stats[4] = mDNSStorage.Stats.QueriesSuppressed;
+	stats[5] = mDNSStorage.Stats.ProbesSent;
+	stats[6] = mDNSStorage.Stats.AnnouncementsSent;
+	stats[7] = mDNSStorage.Stats.LoopIterations;
+}
+
+// Takes effect at the next init()
+void setFastAnnounce(int enabled)
+{
+	mDNSStorage.FastAnnounce = enabled ? mDNStrue : mDNSfalse;
+}
+
+int setInterfaceFilter(int allow, const char **names, int nameCount, const int *indexes, int indexCount)
+{
+	return mDNSPosixSetInterfaceFilter(allow ? mDNStrue : mDNSfalse, names, nameCount, indexes, indexCount);
+}
+
+// Writes 5 values per interface: index, packets sent, bytes sent, packets received, bytes received
+int getInterfaceStats(long long *stats, int max)
+{
+	PosixInterfaceStats	interfaces[MAX_INTERFACE_STATS];
+	int					count, i;
+
+	count = mDNSPosixGetInterfaceStats(interfaces, max < MAX_INTERFACE_STATS ? max : MAX_INTERFACE_STATS);
+	for (i = 0; i < count; i++)
+		{
+		stats[i * 5 + 0] = interfaces[i].index;
+		stats[i * 5 + 1] = interfaces[i].packetsSent;
+		stats[i * 5 + 2] = interfaces[i].bytesSent;
+		stats[i * 5 + 3] = interfaces[i].packetsReceived;
+		stats[i * 5 + 4] = interfaces[i].bytesReceived;
+		}
+	return count;
+}
+
 void stopLoop()
 {
 	stopNow = 1;
 }
+
+// Serialize a client call with the event loop and the callbacks it delivers, see mDNSPlatformLock
+void lockDaemon()
+{
+	mDNSPlatformLock(&mDNSStorage);
+}
+
+void unlockDaemon()
+{
+	mDNSPlatformUnlock(&mDNSStorage);
+}
 #endif
 
 //		uds_daemon support		////////////////////////////////////////////////////////////
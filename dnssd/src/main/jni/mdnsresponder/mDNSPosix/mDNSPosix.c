@@ -62,9 +62,17 @@
 #include <net/if.h>
 #endif // USES_NETLINK
 
+#ifdef EMBEDDED
+#include <pthread.h>
+#endif
+
 #include "mDNSUNP.h"
 #include "GenLinkedList.h"
 
+#if USES_EPOLL
+#include <sys/epoll.h>
+#endif
+
 // Disallow SO_REUSEPORT on Android because we use >3.9 kernel headers to build binaries targeted to 3.4.x.
 #ifdef __ANDROID__
 #undef SO_REUSEPORT
@@ -107,6 +115,77 @@ static int num_registered_interfaces = 0;
 static int num_pkts_accepted = 0;
 static int num_pkts_rejected = 0;
 
+// ***************************************************************************
+// Traffic counters
+
+static PosixInterfaceStats gInterfaceStats[MAX_INTERFACE_STATS];
+static int gInterfaceStatsCount = 0;
+
+mDNSlocal PosixInterfaceStats *InterfaceStatsForIndex(int index)
+	{
+	int i;
+	for (i = 0; i < gInterfaceStatsCount; i++)
+		if (gInterfaceStats[i].index == index) return &gInterfaceStats[i];
+	if (gInterfaceStatsCount == MAX_INTERFACE_STATS) return NULL;
+	gInterfaceStats[gInterfaceStatsCount].index = index;
+	return &gInterfaceStats[gInterfaceStatsCount++];
+	}
+
+mDNSexport int mDNSPosixGetInterfaceStats(PosixInterfaceStats *stats, int max)
+	{
+	int count = gInterfaceStatsCount < max ? gInterfaceStatsCount : max;
+	memcpy(stats, gInterfaceStats, count * sizeof(*stats));
+	return count;
+	}
+
+// ***************************************************************************
+// Interface filter
+
+typedef struct
+	{
+	char	name[IFI_NAME];				// Empty when the entry matches by index
+	int		index;
+	} PosixInterfaceFilterEntry;
+
+static mDNSBool						gInterfaceFilterAllow = mDNSfalse;
+static PosixInterfaceFilterEntry	gInterfaceFilter[MAX_INTERFACE_FILTER];
+static int							gInterfaceFilterCount = 0;
+
+mDNSexport mStatus mDNSPosixSetInterfaceFilter(mDNSBool allow, const char *const *names, int nameCount, const int *indexes, int indexCount)
+	{
+	int i;
+
+	if (nameCount < 0 || indexCount < 0 || nameCount + indexCount > MAX_INTERFACE_FILTER) return mStatus_BadParamErr;
+	gInterfaceFilterCount = 0;
+	for (i = 0; i < nameCount; i++)
+		{
+		PosixInterfaceFilterEntry *entry = &gInterfaceFilter[gInterfaceFilterCount++];
+		strncpy(entry->name, names[i], sizeof(entry->name));
+		entry->name[sizeof(entry->name)-1] = 0;
+		entry->index = 0;
+		}
+	for (i = 0; i < indexCount; i++)
+		{
+		PosixInterfaceFilterEntry *entry = &gInterfaceFilter[gInterfaceFilterCount++];
+		entry->name[0] = 0;
+		entry->index = indexes[i];
+		}
+	gInterfaceFilterAllow = allow;
+	return mStatus_NoError;
+	}
+
+mDNSlocal mDNSBool InterfaceAllowedByFilter(const char *name, int index)
+	{
+	int i;
+	for (i = 0; i < gInterfaceFilterCount; i++)
+		{
+		const PosixInterfaceFilterEntry *entry = &gInterfaceFilter[i];
+		if (entry->name[0] ? strcmp(entry->name, name) == 0 : entry->index == index)
+			return gInterfaceFilterAllow;
+		}
+	return !gInterfaceFilterAllow;
+	}
+
 // ***************************************************************************
 // Functions
 
@@ -114,6 +193,86 @@ int gMDNSPlatformPosixVerboseLevel = 0;
 
 #define PosixErrorToStatus(errNum) ((errNum) == 0 ? mStatus_NoError : mStatus_UnknownErr)
 
+#if USES_EPOLL
+// ***************************************************************************
+// epoll registration
+
+// Sockets and event sources are registered with epoll once, when they are opened, and stay registered
+// until they are closed, so an iteration of the event loop doesn't depend on the number of descriptors.
+// The fd-indexed table maps ready descriptors back to their owners.
+typedef struct
+	{
+	mDNSBool				InUse;
+	PosixNetworkInterface	*Intf;			// Owner of a multicast socket, NULL for unicast sockets and event sources
+	PosixEventSource		*Source;		// Event source, NULL for sockets
+	} PosixEpollTarget;
+
+#define EPOLL_MAX_EVENTS 32
+
+static int					gEpollFD = -1;
+static PosixEpollTarget		*gEpollTargets = NULL;
+static int					gEpollTargetsSize = 0;
+
+mDNSlocal mStatus EpollAdd(int fd, PosixNetworkInterface *intf, PosixEventSource *source)
+	{
+	struct epoll_event event;
+
+	if (fd < 0) return mStatus_BadParamErr;
+	if (gEpollFD == -1)
+		{
+		gEpollFD = epoll_create(EPOLL_MAX_EVENTS);		// Size is only a hint
+		if (gEpollFD == -1) return mStatus_UnknownErr;
+		(void) fcntl(gEpollFD, F_SETFD, FD_CLOEXEC);
+		}
+	if (fd >= gEpollTargetsSize)
+		{
+		int size = gEpollTargetsSize ? gEpollTargetsSize : 64;
+		PosixEpollTarget *targets;
+		while (size <= fd) size *= 2;
+		targets = (PosixEpollTarget*) realloc(gEpollTargets, size * sizeof(*targets));
+		if (targets == NULL) return mStatus_NoMemoryErr;
+		mDNSPlatformMemZero(targets + gEpollTargetsSize, (size - gEpollTargetsSize) * sizeof(*targets));
+		gEpollTargets     = targets;
+		gEpollTargetsSize = size;
+		}
+
+	mDNSPlatformMemZero(&event, sizeof event);
+	event.events  = EPOLLIN;
+	event.data.fd = fd;
+	if (epoll_ctl(gEpollFD, EPOLL_CTL_ADD, fd, &event) != 0)
+		{
+		LogMsg("EpollAdd: epoll_ctl failed for fd %d: %d (%s)", fd, errno, strerror(errno));
+		return mStatus_UnknownErr;
+		}
+	gEpollTargets[fd].InUse  = mDNStrue;
+	gEpollTargets[fd].Intf   = intf;
+	gEpollTargets[fd].Source = source;
+	return mStatus_NoError;
+	}
+
+// Must be called before the descriptor is closed
+mDNSlocal void EpollRemove(int fd)
+	{
+	struct epoll_event event;		// Kernels before 2.6.9 require a non-NULL event even for EPOLL_CTL_DEL
+
+	if (fd < 0 || fd >= gEpollTargetsSize || !gEpollTargets[fd].InUse) return;
+	mDNSPlatformMemZero(&event, sizeof event);
+	(void) epoll_ctl(gEpollFD, EPOLL_CTL_DEL, fd, &event);
+	gEpollTargets[fd].InUse  = mDNSfalse;
+	gEpollTargets[fd].Intf   = NULL;
+	gEpollTargets[fd].Source = NULL;
+	}
+
+mDNSlocal void EpollClose(void)
+	{
+	if (gEpollFD != -1) close(gEpollFD);
+	gEpollFD = -1;
+	free(gEpollTargets);
+	gEpollTargets     = NULL;
+	gEpollTargetsSize = 0;
+	}
+#endif // USES_EPOLL
+
 mDNSlocal void SockAddrTomDNSAddr(const struct sockaddr *const sa, mDNSAddr *ipAddr, mDNSIPPort *ipPort)
 	{
 	switch (sa->sa_family)
@@ -204,7 +363,12 @@ mDNSexport mStatus mDNSPlatformSendUDP(const mDNS *const m, const void *const ms
 	if (sendingsocket >= 0)
 		err = sendto(sendingsocket, msg, (char*)end - (char*)msg, 0, (struct sockaddr *)&to, GET_SA_LEN(to));
 
-	if      (err > 0) err = 0;
+	if      (err > 0)
+		{
+		PosixInterfaceStats *stats = InterfaceStatsForIndex(thisIntf ? thisIntf->index : 0);
+		if (stats) { stats->packetsSent++; stats->bytesSent += err; }
+		err = 0;
+		}
 	else if (err < 0)
 		{
 		static int MessageCount = 0;
@@ -322,8 +486,12 @@ mDNSlocal void SocketDataReady(mDNS *const m, PosixNetworkInterface *intf, int s
 		}
 
 	if (packetLen >= 0)
+		{
+		PosixInterfaceStats *stats = InterfaceStatsForIndex(intf ? intf->index : 0);
+		if (stats) { stats->packetsReceived++; stats->bytesReceived += packetLen; }
 		mDNSCoreReceive(m, &packet, (mDNSu8 *)&packet + packetLen,
 			&senderAddr, senderPort, &destAddr, MulticastDNSPort, InterfaceID);
+		}
 	}
 
 mDNSexport TCPSocket *mDNSPlatformTCPSocket(mDNS * const m, TCPSocketFlags flags, mDNSIPPort * port)
@@ -505,7 +673,7 @@ mDNSexport int ParseDNSServers(mDNS *m, const char *filePath)
 	{
 	char line[256];
 	char nameserver[16];
-	char keyword[10];
+	char keyword[11];
 	int  numOfServers = 0;
 	FILE *fp = fopen(filePath, "r");
 	if (fp == NULL) return -1;
@@ -589,12 +757,18 @@ mDNSlocal void FreePosixNetworkInterface(PosixNetworkInterface *intf)
 	if (intf->intfName != NULL)        free((void *)intf->intfName);
 	if (intf->multicastSocket4 != -1)
 		{
+#if USES_EPOLL
+		EpollRemove(intf->multicastSocket4);
+#endif
 		int ipv4_closed = close(intf->multicastSocket4);
 		assert(ipv4_closed == 0);
 		}
 #if HAVE_IPV6
 	if (intf->multicastSocket6 != -1)
 		{
+#if USES_EPOLL
+		EpollRemove(intf->multicastSocket6);
+#endif
 		int ipv6_closed = close(intf->multicastSocket6);
 		assert(ipv6_closed == 0);
 		}
@@ -901,10 +1075,20 @@ mDNSlocal int SetupOneInterface(mDNS *const m, struct sockaddr *intfAddr, struct
 	if (err == 0)
 		{
 		if (alias->multicastSocket4 == -1 && intfAddr->sa_family == AF_INET)
+			{
 			err = SetupSocket(intfAddr, MulticastDNSPort, intf->index, &alias->multicastSocket4);
+#if USES_EPOLL
+			if (err == 0) err = EpollAdd(alias->multicastSocket4, alias, NULL);
+#endif
+			}
 #if HAVE_IPV6
 		else if (alias->multicastSocket6 == -1 && intfAddr->sa_family == AF_INET6)
+			{
 			err = SetupSocket(intfAddr, MulticastDNSPort, intf->index, &alias->multicastSocket6);
+#if USES_EPOLL
+			if (err == 0) err = EpollAdd(alias->multicastSocket6, alias, NULL);
+#endif
+			}
 #endif
 		}
 
@@ -965,7 +1149,9 @@ mDNSlocal int SetupInterfaceList(mDNS *const m)
 #endif
 				) &&  (i->ifi_flags & IFF_UP) && !(i->ifi_flags & IFF_POINTOPOINT))
 				{
-				if (i->ifi_flags & IFF_LOOPBACK)
+				if (!InterfaceAllowedByFilter(i->ifi_name, i->ifi_index))
+					debugf("SetupInterfaceList: %s/%d skipped by interface filter", i->ifi_name, i->ifi_index);
+				else if (i->ifi_flags & IFF_LOOPBACK)
 					{
 					if (firstLoopback == NULL)
 						firstLoopback = i;
@@ -1219,6 +1405,46 @@ mDNSlocal mStatus WatchForInterfaceChange(mDNS *const m)
 	return err;
 	}
 
+#ifdef EMBEDDED
+// In the embedded daemon, client threads call the mDNS API while the event loop thread waits for events.
+// As mDNS_Execute describes for multi-threaded platforms, mDNSPlatformUnlock wakes the event loop, so it
+// handles new operations right away instead of at its next timer. A pipe keeps the wakeup pending
+// if it's sent before the event loop starts waiting.
+static int			gWakeupPipe[2] = { -1, -1 };
+static pthread_t	gEventLoopThread;
+static mDNSBool		gEventLoopThreadKnown = mDNSfalse;
+
+mDNSlocal void WakeupCallback(int fd, short filter, void *context)
+	{
+	char buf[64];
+	(void) filter;	// Unused
+	(void) context;	// Unused
+	while (read(fd, buf, sizeof(buf)) > 0)
+		continue;
+	}
+
+mDNSlocal mStatus OpenWakeupPipe(void)
+	{
+	if (pipe(gWakeupPipe) != 0)
+		return mStatus_UnknownErr;
+	fcntl(gWakeupPipe[0], F_SETFL, fcntl(gWakeupPipe[0], F_GETFL) | O_NONBLOCK);
+	fcntl(gWakeupPipe[1], F_SETFL, fcntl(gWakeupPipe[1], F_GETFL) | O_NONBLOCK);
+	return mDNSPosixAddFDToEventLoop(gWakeupPipe[0], WakeupCallback, NULL);
+	}
+
+mDNSlocal void CloseWakeupPipe(void)
+	{
+	if (gWakeupPipe[0] != -1)
+		{
+		mDNSPosixRemoveFDFromEventLoop(gWakeupPipe[0]);
+		close(gWakeupPipe[0]);
+		close(gWakeupPipe[1]);
+		gWakeupPipe[0] = gWakeupPipe[1] = -1;
+		}
+	gEventLoopThreadKnown = mDNSfalse;
+	}
+#endif
+
 // Test to see if we're the first client running on UDP port 5353, by trying to bind to 5353 without using SO_REUSEPORT.
 // If we fail, someone else got here first. That's not a big problem; we can share the port for multicast responses --
 // we just need to be aware that we shouldn't expect to successfully receive unicast UDP responses.
@@ -1246,6 +1472,9 @@ mDNSexport mStatus mDNSPlatformInit(mDNS *const m)
 
 	if (mDNSPlatformInit_CanReceiveUnicast()) m->CanReceiveUnicastOn5353 = mDNStrue;
 
+	gInterfaceStatsCount = 0;
+	mDNSPlatformMemZero(gInterfaceStats, sizeof(gInterfaceStats));
+
 	// Tell mDNS core the names of this machine.
 
 	// Set up the nice label
@@ -1263,10 +1492,16 @@ mDNSexport mStatus mDNSPlatformInit(mDNS *const m)
 	sa.sa_family = AF_INET;
 	m->p->unicastSocket4 = -1;
 	if (err == mStatus_NoError) err = SetupSocket(&sa, zeroIPPort, 0, &m->p->unicastSocket4);
+#if USES_EPOLL
+	if (err == mStatus_NoError) err = EpollAdd(m->p->unicastSocket4, NULL, NULL);
+#endif
 #if HAVE_IPV6
 	sa.sa_family = AF_INET6;
 	m->p->unicastSocket6 = -1;
 	if (err == mStatus_NoError) err = SetupSocket(&sa, zeroIPPort, 0, &m->p->unicastSocket6);
+#if USES_EPOLL
+	if (err == mStatus_NoError) err = EpollAdd(m->p->unicastSocket6, NULL, NULL);
+#endif
 #endif
 
 	// Tell mDNS core about the network interfaces on this machine.
@@ -1288,6 +1523,10 @@ mDNSexport mStatus mDNSPlatformInit(mDNS *const m)
 			}
 		}
 
+#ifdef EMBEDDED
+	if (err == mStatus_NoError) err = OpenWakeupPipe();
+#endif
+
 	// We don't do asynchronous initialization on the Posix platform, so by the time
 	// we get here the setup will already have succeeded or failed.  If it succeeded,
 	// we should just call mDNSCoreInitComplete() immediately.
@@ -1302,9 +1541,15 @@ mDNSexport mStatus mDNSPlatformInit(mDNS *const m)
 mDNSexport void mDNSPlatformClose(mDNS *const m)
 	{
 	assert(m != NULL);
+#ifdef EMBEDDED
+	CloseWakeupPipe();
+#endif
 	ClearInterfaceList(m);
 	if (m->p->unicastSocket4 != -1)
 		{
+#if USES_EPOLL
+			EpollRemove(m->p->unicastSocket4);
+#endif
 			int ipv4_closed = close(m->p->unicastSocket4);
 			if (ipv4_closed != 0) {
 				LogMsg("error: ipv4 close failed");
@@ -1313,11 +1558,17 @@ mDNSexport void mDNSPlatformClose(mDNS *const m)
 #if HAVE_IPV6
 	if (m->p->unicastSocket6 != -1)
 		{
+#if USES_EPOLL
+			EpollRemove(m->p->unicastSocket6);
+#endif
 			int ipv6_closed = close(m->p->unicastSocket6);
 			if (ipv6_closed != 0) {
 				LogMsg("error: ipv6 close failed");
 			}
 		}
+#endif
+#if USES_EPOLL
+	EpollClose();
 #endif
 	}
 
@@ -1334,20 +1585,51 @@ mDNSexport mStatus mDNSPlatformPosixRefreshInterfaceList(mDNS *const m)
 #endif
 
 // On the Posix platform, locking is a no-op because we only ever enter
-// mDNS core on the main thread.
+// mDNS core on the main thread. The embedded daemon only uses unlock to wake the event loop.
+
+#ifdef EMBEDDED
+// Client threads of the embedded daemon call the mDNS API concurrently with the event loop thread, so the
+// lock is a real mutex. It's recursive because callbacks, which run with the lock held, may call the API again.
+static pthread_mutex_t	gPlatformLock;
+static pthread_once_t	gPlatformLockOnce = PTHREAD_ONCE_INIT;
+
+mDNSlocal void InitPlatformLock(void)
+	{
+	pthread_mutexattr_t attr;
+	pthread_mutexattr_init(&attr);
+	pthread_mutexattr_settype(&attr, PTHREAD_MUTEX_RECURSIVE);
+	pthread_mutex_init(&gPlatformLock, &attr);
+	pthread_mutexattr_destroy(&attr);
+	}
+#endif
 
 // mDNS core calls this routine when it wants to prevent
 // the platform from reentering mDNS core code.
 mDNSexport void    mDNSPlatformLock   (const mDNS *const m)
 	{
 	(void) m;	// Unused
+#ifdef EMBEDDED
+	pthread_once(&gPlatformLockOnce, InitPlatformLock);
+	pthread_mutex_lock(&gPlatformLock);
+#endif
 	}
 
 // mDNS core calls this routine when it release the lock taken by
 // mDNSPlatformLock and allow the platform to reenter mDNS core code.
 mDNSexport void    mDNSPlatformUnlock (const mDNS *const m)
 	{
+#ifdef EMBEDDED
+	// Wake the event loop when a client thread leaves mDNS core
+	if (m->mDNS_busy == 0 && gWakeupPipe[1] != -1 &&
+		!(gEventLoopThreadKnown && pthread_equal(pthread_self(), gEventLoopThread)))
+		{
+		char c = 0;
+		(void) write(gWakeupPipe[1], &c, 1);	// A full pipe already has a wakeup pending
+		}
+	pthread_mutex_unlock(&gPlatformLock);
+#else
 	(void) m;	// Unused
+#endif
 	}
 
 #if COMPILER_LIKES_PRAGMA_MARK
@@ -1472,13 +1754,38 @@ mDNSlocal void mDNSPosixAddToFDSet(int *nfds, fd_set *readfds, int s)
 	FD_SET(s, readfds);
 	}
 
-mDNSexport void mDNSPosixGetFDSet(mDNS *m, int *nfds, fd_set *readfds, struct timeval *timeout)
+// Calls mDNS_Execute() and reduces timeout to the time remaining to the next scheduled event
+mDNSlocal void ExecuteAndGetTimeout(mDNS *m, struct timeval *timeout)
 	{
 	mDNSs32 ticks;
 	struct timeval interval;
 
+	mDNSs32 nextevent;
+
+#ifdef EMBEDDED
+	gEventLoopThread = pthread_self();
+	gEventLoopThreadKnown = mDNStrue;
+#endif
+
 	// 1. Call mDNS_Execute() to let mDNSCore do what it needs to do
-	mDNSs32 nextevent = mDNS_Execute(m);
+	nextevent = mDNS_Execute(m);
+
+	// 2. Calculate the time remaining to the next scheduled event (in struct timeval format)
+	ticks = nextevent - mDNS_TimeNow(m);
+	if (ticks < 1) ticks = 1;
+	interval.tv_sec  = ticks >> 10;						// The high 22 bits are seconds
+	interval.tv_usec = ((ticks & 0x3FF) * 15625) / 16;	// The low 10 bits are 1024ths
+
+	// 3. If client's proposed timeout is more than what we want, then reduce it
+	if (timeout->tv_sec > interval.tv_sec ||
+		(timeout->tv_sec == interval.tv_sec && timeout->tv_usec > interval.tv_usec))
+		*timeout = interval;
+	}
+
+mDNSexport void mDNSPosixGetFDSet(mDNS *m, int *nfds, fd_set *readfds, struct timeval *timeout)
+	{
+	// 1. Let mDNSCore do what it needs to do and calculate the timeout
+	ExecuteAndGetTimeout(m, timeout);
 
 	// 2. Build our list of active file descriptors
 	PosixNetworkInterface *info = (PosixNetworkInterface *)(m->HostInterfaces);
@@ -1494,17 +1801,6 @@ mDNSexport void mDNSPosixGetFDSet(mDNS *m, int *nfds, fd_set *readfds, struct ti
 #endif
 		info = (PosixNetworkInterface *)(info->coreIntf.next);
 		}
-
-	// 3. Calculate the time remaining to the next scheduled event (in struct timeval format)
-	ticks = nextevent - mDNS_TimeNow(m);
-	if (ticks < 1) ticks = 1;
-	interval.tv_sec  = ticks >> 10;						// The high 22 bits are seconds
-	interval.tv_usec = ((ticks & 0x3FF) * 15625) / 16;	// The low 10 bits are 1024ths
-
-	// 4. If client's proposed timeout is more than what we want, then reduce it
-	if (timeout->tv_sec > interval.tv_sec ||
-		(timeout->tv_sec == interval.tv_sec && timeout->tv_usec > interval.tv_usec))
-		*timeout = interval;
 	}
 
 mDNSexport void mDNSPosixProcessFDSet(mDNS *const m, fd_set *readfds)
@@ -1564,7 +1860,11 @@ mStatus mDNSPosixAddFDToEventLoop(int fd, mDNSPosixEventCallback callback, void
 	if (gEventSources.LinkOffset == 0)
 		InitLinkedList(&gEventSources, offsetof(PosixEventSource, Next));
 
+#if USES_EPOLL
+	if (fd < 0)
+#else
 	if (fd >= (int) FD_SETSIZE || fd < 0)
+#endif
 		return mStatus_UnsupportedErr;
 	if (callback == NULL)
 		return mStatus_BadParamErr;
@@ -1577,8 +1877,17 @@ mStatus mDNSPosixAddFDToEventLoop(int fd, mDNSPosixEventCallback callback, void
 	newSource->Context = context;
 	newSource->fd = fd;
 
+#if USES_EPOLL
+	if (EpollAdd(fd, NULL, newSource) != mStatus_NoError)
+		{
+		free(newSource);
+		return mStatus_UnknownErr;
+		}
+	AddToTail(&gEventSources, newSource);
+#else
 	AddToTail(&gEventSources, newSource);
 	FD_SET(fd, &gEventFDs);
+#endif
 
 	DetermineMaxEventFD();
 
@@ -1594,7 +1903,11 @@ mStatus mDNSPosixRemoveFDFromEventLoop(int fd)
 		{
 		if (fd == iSource->fd)
 			{
+#if USES_EPOLL
+			EpollRemove(fd);
+#else
 			FD_CLR(fd, &gEventFDs);
+#endif
 			RemoveFromList(&gEventSources, iSource);
 			free(iSource);
 			DetermineMaxEventFD();
@@ -1642,12 +1955,65 @@ mStatus mDNSPosixIgnoreSignalInEventLoop(int signum)
 
 // Do a single pass through the attendent event sources and dispatch any found to their callbacks.
 // Return as soon as internal timeout expires, or a signal we're listening for is received.
+#if USES_EPOLL
+mStatus mDNSPosixRunEventLoopOnce(mDNS *m, const struct timeval *pTimeout, 
+									sigset_t *pSignalsReceived, mDNSBool *pDataDispatched)
+	{
+	struct epoll_event	events[EPOLL_MAX_EVENTS];
+	struct timeval		timeout = *pTimeout;
+	int					timeoutMs, numReady = 0, i;
+
+	m->Stats.LoopIterations++;
+
+	ExecuteAndGetTimeout(m, &timeout);
+	timeoutMs = timeout.tv_sec * 1000 + (timeout.tv_usec + 999) / 1000;
+
+	if (gEpollFD != -1)
+		numReady = epoll_wait(gEpollFD, events, EPOLL_MAX_EVENTS, timeoutMs);
+	else
+		(void) select(0, (fd_set*) NULL, (fd_set*) NULL, (fd_set*) NULL, &timeout);
+
+	// If any data appeared, invoke its callback
+	if (numReady > 0)
+		{
+		// Process wire data first. Descriptors closed by a callback are no longer InUse and are skipped.
+		for (i = 0; i < numReady; i++)
+			{
+			int fd = events[i].data.fd;
+			if (fd < gEpollTargetsSize && gEpollTargets[fd].InUse && !gEpollTargets[fd].Source)
+				SocketDataReady(m, gEpollTargets[fd].Intf, fd);
+			}
+		for (i = 0; i < numReady; i++)
+			{
+			int fd = events[i].data.fd;
+			if (fd < gEpollTargetsSize && gEpollTargets[fd].InUse && gEpollTargets[fd].Source)
+				{
+				PosixEventSource *iSource = gEpollTargets[fd].Source;
+				iSource->Callback(iSource->fd, 0, iSource->Context);
+				break;	// in case callback removed event sources; the rest stay ready for the next pass
+				}
+			}
+		*pDataDispatched = mDNStrue;
+		}
+	else
+		*pDataDispatched = mDNSfalse;
+
+	(void) sigprocmask(SIG_BLOCK, &gEventSignalSet, (sigset_t*) NULL);
+	*pSignalsReceived = gEventSignals;
+	sigemptyset(&gEventSignals);
+	(void) sigprocmask(SIG_UNBLOCK, &gEventSignalSet, (sigset_t*) NULL);
+
+	return mStatus_NoError;
+	}
+#else
 mStatus mDNSPosixRunEventLoopOnce(mDNS *m, const struct timeval *pTimeout, 
 									sigset_t *pSignalsReceived, mDNSBool *pDataDispatched)
 	{
 	fd_set			listenFDs = gEventFDs;
 	int				fdMax = 0, numReady;
 	struct timeval	timeout = *pTimeout;
+
+	m->Stats.LoopIterations++;
 	
 	// Include the sockets that are listening to the wire in our select() set
 	mDNSPosixGetFDSet(m, &fdMax, &listenFDs, &timeout);	// timeout may get modified
@@ -1683,3 +2049,4 @@ mStatus mDNSPosixRunEventLoopOnce(mDNS *m, const struct timeval *pTimeout,
 
 	return mStatus_NoError;
 	}
+#endif // USES_EPOLL
@@ -62,6 +62,29 @@ struct mDNS_PlatformSupport_struct
 #define uDNS_SERVERS_FILE "/etc/resolv.conf"
 extern int ParseDNSServers(mDNS *m, const char *filePath);
 extern mStatus mDNSPlatformPosixRefreshInterfaceList(mDNS *const m);
+
+// Traffic counters of one interface. Counters are kept by OS interface index, so they
+// survive interface list refreshes; the IPv4 and IPv6 sockets of an interface share them.
+typedef struct
+	{
+	int                index;			// OS interface index, 0 for the unicast sockets
+	mDNSu32            packetsSent;
+	mDNSu32            packetsReceived;
+	unsigned long long bytesSent;
+	unsigned long long bytesReceived;
+	} PosixInterfaceStats;
+
+#define MAX_INTERFACE_STATS 16
+
+// Copies up to max interface counters to stats, returns number of copied entries
+extern int mDNSPosixGetInterfaceStats(PosixInterfaceStats *stats, int max);
+
+#define MAX_INTERFACE_FILTER 32
+
+// Restricts interfaces used by mDNS to the listed ones (allow is true) or to all but the listed ones (allow is false).
+// Interfaces are matched by name or by index. An empty deny list clears the filter.
+// The filter applies to interfaces set up after the call, i.e. from the next interface list refresh.
+extern mStatus mDNSPosixSetInterfaceFilter(mDNSBool allow, const char *const *names, int nameCount, const int *indexes, int indexCount);
     // See comment in implementation.
 
 // Call mDNSPosixGetFDSet before calling select(), to update the parameters
@@ -322,38 +322,59 @@ DNSServiceErrorType DNSServiceAddRecord
 	return(kDNSServiceErr_Unsupported);
 	}
 
-DNSServiceErrorType DNSServiceUpdateRecord
+DNSServiceErrorType DNSServiceRemoveRecord
 	(
-	DNSServiceRef                       sdRef,
-	DNSRecordRef                        RecordRef,     /* may be NULL */
-	DNSServiceFlags                     flags,
-	uint16_t                            rdlen,
-	const void                          *rdata,
-	uint32_t                            ttl
+	DNSServiceRef                 sdRef,
+	DNSRecordRef                  RecordRef,
+	DNSServiceFlags               flags
 	)
 	{
 	(void)sdRef;		// Unused
 	(void)RecordRef;	// Unused
 	(void)flags;		// Unused
-	(void)rdlen;		// Unused
-	(void)rdata;		// Unused
-	(void)ttl;			// Unused
 	return(kDNSServiceErr_Unsupported);
 	}
+#endif
+
+mDNSlocal void UpdateCallback(mDNS *const m, AuthRecord *const rr, RData *oldrd, mDNSu16 oldrdlen)
+	{
+	(void)m;		// Unused
+	(void)oldrdlen;	// Unused
+	if (oldrd != &rr->rdatastorage) mDNSPlatformMemFree(oldrd);
+	}
 
-DNSServiceErrorType DNSServiceRemoveRecord
+// Records can't be added, so the only record to update is the primary TXT record (RecordRef NULL)
+DNSServiceErrorType DNSServiceUpdateRecord
 	(
-	DNSServiceRef                 sdRef,
-	DNSRecordRef                  RecordRef,
-	DNSServiceFlags               flags
+	DNSServiceRef                       sdRef,
+	DNSRecordRef                        RecordRef,     /* may be NULL */
+	DNSServiceFlags                     flags,
+	uint16_t                            rdlen,
+	const void                          *rdata,
+	uint32_t                            ttl
 	)
 	{
-	(void)sdRef;		// Unused
-	(void)RecordRef;	// Unused
+	mDNS_DirectOP_Register *x = (mDNS_DirectOP_Register*)sdRef;
+	const mDNSu16 size = rdlen > sizeof(RDataBody) ? rdlen : sizeof(RDataBody);
+	RData *newrd;
+	mStatus err;
 	(void)flags;		// Unused
-	return(kDNSServiceErr_Unsupported);
+
+	if (!x || x->disposefn != DNSServiceRegisterDispose) return(kDNSServiceErr_BadReference);
+	if (RecordRef) return(kDNSServiceErr_Unsupported);
+
+	newrd = (RData *)mDNSPlatformMemAllocate(sizeof(RData) - sizeof(RDataBody) + size);
+	if (!newrd) return(kDNSServiceErr_NoMemory);
+	newrd->MaxRDLength = size;
+	mDNSPlatformMemCopy(&newrd->u, rdata, rdlen);
+
+	// Same as update_record() in uds_daemon.c, a TXT record must have at least one <character-string>
+	if (rdlen == 0) { rdlen = 1; newrd->u.txt.c[0] = 0; }
+
+	err = mDNS_Update(&mDNSStorage, &x->s.RR_TXT, ttl, rdlen, newrd, UpdateCallback);
+	if (err) mDNSPlatformMemFree(newrd);
+	return(err);
 	}
-#endif
 
 //*************************************************************************************************************
 // Browse for services
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2016 Andriy Druk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.druk.dnssd;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class DNSNameTest {
+
+    @Test
+    public void test_construct_full_name() throws DNSSDException {
+        Assert.assertEquals("Dr\\.\\032Pepper._http._tcp.local.", DNSName.constructFullName("Dr. Pepper", "_http._tcp", "local"));
+        Assert.assertEquals("a\\\\b._ipp._UDP.local.", DNSName.constructFullName("a\\b", "_ipp._UDP.", "local."));
+        Assert.assertEquals("_http._tcp.apple.com.", DNSName.constructFullName(null, "_http._tcp", "apple.com"));
+        Assert.assertEquals("_http._tcp.apple.com.", DNSName.constructFullName("", "_http._tcp", "apple.com"));
+        Assert.assertEquals("\\001x._http._tcp.a\\..", DNSName.constructFullName("\u0001x", "_http._tcp", "a\\."));
+    }
+
+    @Test
+    public void test_construct_full_name_bad_param() {
+        assertBadParam("name", "_http", "local.");
+        assertBadParam("name", "_http._tcpx", "local.");
+        assertBadParam("name", null, "local.");
+        assertBadParam("name", "_http._tcp", "");
+        assertBadParam("name", "_http._tcp", null);
+        assertBadParam(new String(new char[1000]).replace('\0', 'a'), "_http._tcp", "local.");
+    }
+
+    @Test
+    public void test_unescape() {
+        Assert.assertEquals("Dr. Pepper", DNSName.unescape("Dr\\.\\032Pepper"));
+        Assert.assertEquals("a\\b", DNSName.unescape("a\\\\b"));
+        Assert.assertEquals("plain", DNSName.unescape("plain"));
+    }
+
+    @Test
+    public void test_split_labels() {
+        Assert.assertEquals(Arrays.asList("Dr. Pepper", "_http", "_tcp", "local"), DNSName.splitLabels("Dr\\.\\032Pepper._http._tcp.local."));
+        Assert.assertEquals(Arrays.asList("a", "b"), DNSName.splitLabels("a.b"));
+        Assert.assertEquals(Collections.emptyList(), DNSName.splitLabels(""));
+    }
+
+    private static void assertBadParam(String serviceName, String regType, String domain) {
+        try {
+            DNSName.constructFullName(serviceName, regType, domain);
+            Assert.fail();
+        } catch (DNSSDException e) {
+            Assert.assertEquals(DNSSDException.BAD_PARAM, e.getErrorCode());
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2016 Andriy Druk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.druk.dnssd;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class DNSSDAdmissionTest {
+
+    DNSSDAdmission admission = new DNSSDAdmission();
+    List<String> started = new ArrayList<>();
+    List<DNSSDService> services = new ArrayList<>();
+
+    @Test
+    public void test_unlimited_by_default() throws DNSSDException {
+        for (int i = 0; i < 100; i++) {
+            admit("op" + i);
+        }
+        Assert.assertEquals(100, started.size());
+        Assert.assertEquals(100, admission.getRunning(DNSSDMetrics.QUERY));
+        services.get(0).stop();
+        services.get(0).stop();
+        Assert.assertEquals(99, admission.getRunning(DNSSDMetrics.QUERY));
+    }
+
+    @Test
+    public void test_queue() throws DNSSDException {
+        admission.setLimit(DNSSDMetrics.QUERY, 2, DNSSDAdmission.QUEUE);
+        DNSSDService a = admit("a");
+        admit("b");
+        DNSSDService c = admit("c");
+        admit("d");
+        admit("e");
+        Assert.assertEquals("[a, b]", started.toString());
+        Assert.assertEquals(3, admission.getQueueDepth(DNSSDMetrics.QUERY));
+        Assert.assertEquals(3, admission.getMaxQueueDepth(DNSSDMetrics.QUERY));
+
+        // Stopping a queued operation costs nothing
+        c.stop();
+        Assert.assertEquals(2, admission.getQueueDepth(DNSSDMetrics.QUERY));
+        a.stop();
+        Assert.assertEquals("[a, b, d]", started.toString());
+        Assert.assertEquals(2, admission.getRunning(DNSSDMetrics.QUERY));
+
+        admission.setLimit(DNSSDMetrics.QUERY, 3, DNSSDAdmission.QUEUE);
+        Assert.assertEquals("[a, b, d, e]", started.toString());
+        Assert.assertEquals(0, admission.getQueueDepth(DNSSDMetrics.QUERY));
+        Assert.assertEquals(2, admission.getWaitTime(DNSSDMetrics.QUERY).getCount());
+        Assert.assertEquals(0, admission.getRunning(DNSSDMetrics.BROWSE));
+    }
+
+    @Test
+    public void test_reject() throws DNSSDException {
+        admission.setLimit(DNSSDMetrics.RESOLVE, 1, DNSSDAdmission.REJECT);
+        DNSSDService first = admission.admit(DNSSDMetrics.RESOLVE, () -> start("first"), mock(BaseListener.class));
+        try {
+            admission.admit(DNSSDMetrics.RESOLVE, () -> start("second"), mock(BaseListener.class));
+            Assert.fail();
+        } catch (DNSSDException e) {
+            Assert.assertEquals(DNSSDException.REFUSED, e.getErrorCode());
+        }
+        Assert.assertEquals(1, admission.getRejected(DNSSDMetrics.RESOLVE));
+        first.stop();
+        admission.admit(DNSSDMetrics.RESOLVE, () -> start("third"), mock(BaseListener.class));
+        Assert.assertEquals("[first, third]", started.toString());
+    }
+
+    @Test
+    public void test_queued_start_failure() throws DNSSDException {
+        admission.setLimit(DNSSDMetrics.QUERY, 1, DNSSDAdmission.QUEUE);
+        DNSSDService first = admit("first");
+        BaseListener listener = mock(BaseListener.class);
+        DNSSDService failing = admission.admit(DNSSDMetrics.QUERY, () -> {
+            throw new AppleDNSSDException(DNSSDException.NO_MEMORY);
+        }, listener);
+        admit("last");
+
+        first.stop();
+        verify(listener).operationFailed(any(DNSSDService.class), eq(DNSSDException.NO_MEMORY));
+        Assert.assertEquals("[first, last]", started.toString());
+        Assert.assertEquals(1, admission.getRunning(DNSSDMetrics.QUERY));
+        failing.stop();
+        Assert.assertEquals(1, admission.getRunning(DNSSDMetrics.QUERY));
+    }
+
+    @Test
+    public void test_queued_start_failure_while_stopping() throws Exception {
+        admission.setLimit(DNSSDMetrics.QUERY, 1, DNSSDAdmission.QUEUE);
+        DNSSDService first = admit("first");
+        BaseListener listener = mock(BaseListener.class);
+        DNSSDService[] failing = new DNSSDService[1];
+        Thread stopper = new Thread(() -> failing[0].stop());
+        failing[0] = admission.admit(DNSSDMetrics.QUERY, () -> {
+            // stop() marks the operation stopped, then waits for the failing start to return
+            stopper.start();
+            while (stopper.getState() != Thread.State.BLOCKED) {
+                Thread.yield();
+            }
+            throw new AppleDNSSDException(DNSSDException.NO_MEMORY);
+        }, listener);
+        admit("last");
+
+        first.stop();
+        stopper.join();
+        verify(listener, never()).operationFailed(any(DNSSDService.class), anyInt());
+        Assert.assertEquals("[first, last]", started.toString());
+        Assert.assertEquals(1, admission.getRunning(DNSSDMetrics.QUERY));
+        services.get(1).stop();
+        Assert.assertEquals(0, admission.getRunning(DNSSDMetrics.QUERY));
+    }
+
+    private DNSSDService admit(String name) throws DNSSDException {
+        DNSSDService service = admission.admit(DNSSDMetrics.QUERY, () -> start(name), mock(BaseListener.class));
+        services.add(service);
+        return service;
+    }
+
+    private DNSSDService start(String name) {
+        started.add(name);
+        return mock(DNSSDService.class);
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2016 Andriy Druk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.druk.dnssd;
+
+import android.content.Context;
+import android.os.Handler;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.core.classloader.annotations.SuppressStaticInitializationFor;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.powermock.reflect.Whitebox;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.support.membermodification.MemberMatcher.method;
+import static org.powermock.api.support.membermodification.MemberModifier.replace;
+import static org.powermock.api.support.membermodification.MemberModifier.suppress;
+
+/**
+ * Operations started while {@link DNSSDEmbedded} is initializing. Only the native methods are replaced, so
+ * the startup thread and its queue of pending operations run for real.
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({DNSSDEmbedded.class, InternalDNSSD.class})
+@SuppressStaticInitializationFor("com.github.druk.dnssd.InternalDNSSD")
+public class DNSSDEmbeddedStartupTest {
+
+    private static final int TIMEOUT = 5000;
+    private static final int INIT_ERROR = DNSSDException.SERVICENOTRUNNING;
+
+    private final CountDownLatch initStarted = new CountDownLatch(1);
+    private final CountDownLatch initFinished = new CountDownLatch(1);
+    private final CountDownLatch loopFinished = new CountDownLatch(1);
+    private volatile int initError = 0;
+
+    private DNSSDEmbedded mDNSSDEmbedded;
+    private DNSSDService mockService;
+
+    @Before
+    public void setup() throws Exception {
+        mockStatic(InternalDNSSD.class);
+        mockService = mock(DNSSDService.class);
+        PowerMockito.when(InternalDNSSD.browse(anyInt(), anyInt(), anyString(), anyString(), any(InternalBrowseListener.class)))
+                .thenReturn(mockService);
+
+        replace(method(DNSSDEmbedded.class, "nativeInit")).with((proxy, method, args) -> {
+            initStarted.countDown();
+            initFinished.await();
+            return initError;
+        });
+        replace(method(DNSSDEmbedded.class, "nativeLoop")).with((proxy, method, args) -> {
+            loopFinished.await();
+            return 0;
+        });
+        suppress(method(DNSSDEmbedded.class, "nativeSetFastAnnounce"));
+        suppress(method(DNSSDEmbedded.class, "nativeSetInterfaceFilter"));
+        suppress(method(DNSSDEmbedded.class, "nativeExit"));
+
+        Context context = mock(Context.class);
+        mDNSSDEmbedded = new DNSSDEmbedded(context, TIMEOUT);
+        mDNSSDEmbedded.setMulticastLockManager(new NoOpMulticastLockManager());
+        // Run callbacks and init listeners right away
+        Handler handler = mock(Handler.class);
+        doAnswer(invocation -> {
+            ((Runnable) invocation.getArguments()[0]).run();
+            return true;
+        }).when(handler).post(any(Runnable.class));
+        Whitebox.setInternalState(mDNSSDEmbedded, "handler", handler, DNSSD.class);
+        Whitebox.setInternalState(mDNSSDEmbedded, "handler", handler, DNSSDEmbedded.class);
+    }
+
+    @After
+    public void tearDown() {
+        initFinished.countDown();
+        loopFinished.countDown();
+    }
+
+    @Test
+    public void initAsync() throws Exception {
+        initError = INIT_ERROR;
+        initFinished.countDown();
+        assertEquals(INIT_ERROR, (int) mDNSSDEmbedded.initAsync(null).get(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertTrue(mDNSSDEmbedded.getInitTimeNanos() > 0);
+    }
+
+    @Test
+    public void queuedOperationStartsWhenReady() throws Exception {
+        DNSSDService service = mDNSSDEmbedded.browse("_http._tcp", mock(BrowseListener.class));
+        assertTrue(initStarted.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        PowerMockito.verifyStatic(InternalDNSSD.class, never());
+        InternalDNSSD.browse(anyInt(), anyInt(), anyString(), anyString(), any(InternalBrowseListener.class));
+
+        awaitInitialized();
+        PowerMockito.verifyStatic(InternalDNSSD.class);
+        InternalDNSSD.browse(anyInt(), anyInt(), anyString(), anyString(), any(InternalBrowseListener.class));
+
+        service.stop();
+        verify(mockService).stop();
+    }
+
+    @Test
+    public void queuedOperationFailsWithInitError() throws Exception {
+        initError = INIT_ERROR;
+        BrowseListener listener = mock(BrowseListener.class);
+        DNSSDService service = mDNSSDEmbedded.browse("_http._tcp", listener);
+
+        awaitInitialized();
+        verify(listener, timeout(TIMEOUT)).operationFailed(any(DNSSDService.class), eq(INIT_ERROR));
+        PowerMockito.verifyStatic(InternalDNSSD.class, never());
+        InternalDNSSD.browse(anyInt(), anyInt(), anyString(), anyString(), any(InternalBrowseListener.class));
+        service.stop();
+    }
+
+    @Test
+    public void operationStoppedBeforeReadyNeverStarts() throws Exception {
+        BrowseListener listener = mock(BrowseListener.class);
+        DNSSDService service = mDNSSDEmbedded.browse("_http._tcp", listener);
+        service.stop();
+
+        awaitInitialized();
+        PowerMockito.verifyStatic(InternalDNSSD.class, never());
+        InternalDNSSD.browse(anyInt(), anyInt(), anyString(), anyString(), any(InternalBrowseListener.class));
+        verify(listener, never()).operationFailed(any(DNSSDService.class), anyInt());
+    }
+
+    /** Finish native initialization and wait until pending operations were handled. */
+    private void awaitInitialized() throws InterruptedException {
+        CountDownLatch initialized = new CountDownLatch(1);
+        mDNSSDEmbedded.initAsync((error, initTimeNanos) -> initialized.countDown());
+        initFinished.countDown();
+        assertTrue(initialized.await(TIMEOUT, TimeUnit.MILLISECONDS));
+    }
+}
@@ -11,6 +11,8 @@ import org.powermock.api.mockito.PowerMockito;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
 import static org.mockito.Mockito.after;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
@@ -37,17 +39,17 @@ public class DNSSDEmbeddedTest {
     public void init() throws InterruptedException {
         mDNSSDEmbedded.init();
         PowerMockito.verifyStatic(DNSSDEmbedded.class);
-        DNSSDEmbedded.nativeInit();
+        DNSSDEmbedded.nativeInit(anyInt(), anyInt(), anyLong());
         PowerMockito.verifyStatic(DNSSDEmbedded.class, timeout(TIMEOUT));
         DNSSDEmbedded.nativeLoop();
     }
 
     @Test
     public void initWithError() throws InterruptedException {
-        PowerMockito.when(DNSSDEmbedded.nativeInit()).thenReturn(-1);
+        PowerMockito.when(DNSSDEmbedded.nativeInit(anyInt(), anyInt(), anyLong())).thenReturn(-1);
         mDNSSDEmbedded.init();
         PowerMockito.verifyStatic(DNSSDEmbedded.class);
-        DNSSDEmbedded.nativeInit();
+        DNSSDEmbedded.nativeInit(anyInt(), anyInt(), anyLong());
         PowerMockito.verifyStatic(DNSSDEmbedded.class, after(TIMEOUT).never());
         DNSSDEmbedded.nativeLoop();
     }
@@ -63,7 +65,7 @@ public class DNSSDEmbeddedTest {
     public void cancelStopTimer() throws InterruptedException {
         mDNSSDEmbedded.init();
         PowerMockito.verifyStatic(DNSSDEmbedded.class);
-        DNSSDEmbedded.nativeInit();
+        DNSSDEmbedded.nativeInit(anyInt(), anyInt(), anyLong());
         PowerMockito.verifyStatic(DNSSDEmbedded.class, timeout(TIMEOUT));
         DNSSDEmbedded.nativeLoop();
         mDNSSDEmbedded.exit();
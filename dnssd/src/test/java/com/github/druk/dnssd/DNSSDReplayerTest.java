@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2016 Andriy Druk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.druk.dnssd;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+public class DNSSDReplayerTest {
+
+    private static final byte[] SERVICE_NAME = "serviceName".getBytes();
+    private static final byte[] REG_TYPE = "_http._tcp.".getBytes();
+    private static final byte[] DOMAIN = "local.".getBytes();
+
+    private InternalDNSSD original;
+    private InternalDNSSD network;
+
+    @Before
+    public void setup() throws DNSSDException {
+        network = mock(InternalDNSSD.class);
+        doAnswer(invocation -> {
+            InternalBrowseListener listener = invocation.getArgument(4);
+            listener.serviceFound(null, 0, 1, SERVICE_NAME, REG_TYPE, DOMAIN);
+            listener.operationFailed(null, DNSSDException.SERVICENOTRUNNING);
+            return mock(DNSSDService.class);
+        }).when(network)._makeBrowser(anyInt(), anyInt(), anyString(), anyString(), any(InternalBrowseListener.class));
+        original = InternalDNSSD.setInstance(network);
+    }
+
+    @After
+    public void tearDown() {
+        InternalDNSSD.setInstance(original);
+    }
+
+    @Test
+    public void test_record_and_replay() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DNSSDRecorder recorder = DNSSDRecorder.start(out);
+        InternalDNSSD.browse(0, 0, "_http._tcp.", "local.", mock(InternalBrowseListener.class));
+        recorder.stop();
+
+        DNSSDReplayer replayer = DNSSDReplayer.start(new ByteArrayInputStream(out.toByteArray()), DNSSDReplayer.AS_FAST_AS_POSSIBLE);
+        InternalBrowseListener listener = mock(InternalBrowseListener.class);
+        InternalDNSSD.browse(0, 0, "_http._tcp.", "local.", listener);
+        verify(listener, timeout(1000)).serviceFound(any(DNSSDService.class), eq(0), eq(1), eq(SERVICE_NAME), eq(REG_TYPE), eq(DOMAIN));
+        verify(listener, timeout(1000)).operationFailed(any(DNSSDService.class), eq(DNSSDException.SERVICENOTRUNNING));
+        replayer.stop();
+    }
+
+    @Test
+    public void test_replay_unknown_operation() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DNSSDRecorder.start(out).stop();
+
+        DNSSDReplayer replayer = DNSSDReplayer.start(new ByteArrayInputStream(out.toByteArray()), DNSSDReplayer.REAL_TIME);
+        InternalBrowseListener listener = mock(InternalBrowseListener.class);
+        InternalDNSSD.browse(0, 0, "_http._tcp.", "local.", listener);
+        replayer.stop();
+        verifyNoInteractions(listener);
+    }
+
+    @Test(expected = IOException.class)
+    public void test_replay_not_a_recording() throws Exception {
+        DNSSDReplayer.start(new ByteArrayInputStream(new byte[] {1, 2, 3, 4, 5}), DNSSDReplayer.REAL_TIME);
+    }
+}
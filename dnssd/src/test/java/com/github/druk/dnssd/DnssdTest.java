@@ -24,6 +24,7 @@ import org.powermock.api.mockito.PowerMockito;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.core.classloader.annotations.SuppressStaticInitializationFor;
 import org.powermock.modules.junit4.PowerMockRunner;
+import org.powermock.reflect.Whitebox;
 
 import android.annotation.TargetApi;
 import android.content.Context;
@@ -35,7 +36,11 @@ import android.util.Log;
 import java.net.Inet4Address;
 import java.net.Inet6Address;
 import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import static org.mockito.Matchers.any;
@@ -44,12 +49,16 @@ import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.support.membermodification.MemberMatcher.method;
+import static org.powermock.api.support.membermodification.MemberModifier.replace;
 
 @RunWith(PowerMockRunner.class)
-@PrepareForTest({InternalDNSSD.class, InetAddress.class, Inet4Address.class, Inet6Address.class})
+@PrepareForTest({InternalDNSSD.class, AppleRegistration.class, InetAddress.class, Inet4Address.class, Inet6Address.class})
 @SuppressStaticInitializationFor("com.github.druk.dnssd.InternalDNSSD")
 @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
 public class DnssdTest {
@@ -83,6 +92,7 @@ public class DnssdTest {
         mockService = mock(DNSSDService.class);
         mockStatic(InetAddress.class);
         mockStatic(InternalDNSSD.class);
+        PowerMockito.when(InternalDNSSD.newException(anyInt())).thenCallRealMethod();
         mockDNSSDServiceListener = mock(InternalDNSSDService.DnssdServiceListener.class);
         Handler mockedHandler = mock(Handler.class);
         doAnswer(invocation -> {
@@ -187,6 +197,136 @@ public class DnssdTest {
         verify(resolveListener).operationFailed(any(DNSSDService.class), eq(0));
     }
 
+    @Test
+    public void test_registration_group_registered() throws DNSSDException {
+        PowerMockito.when(InternalDNSSD.createRegistrationGroup(any(BaseListener.class))).thenReturn(mockService);
+        PowerMockito.when(InternalDNSSD.registerAll(eq(mockService), any(RegistrationRequest[].class), any(InternalRegisterListener[].class),
+                any(int[].class))).thenReturn(new DNSSDRegistration[]{mock(DNSSDRegistration.class), mock(DNSSDRegistration.class)});
+        RegisterGroupListener groupListener = mock(RegisterGroupListener.class);
+        DNSSDRegistrationGroup group = mDNSSD.createRegistrationGroup(groupListener);
+        List<DNSSDRegistration> registrations = group.registerAll(Arrays.asList(
+                new RegistrationRequest(SERVICE_NAME_STRING, REG_TYPE_STRING, PORT),
+                new RegistrationRequest("otherName", REG_TYPE_STRING, PORT)));
+        verify(mockDNSSDServiceListener).onServiceStarting();
+        Assert.assertEquals(2, group.getPendingCount());
+
+        ArgumentCaptor<InternalRegisterListener[]> propertiesCaptor = ArgumentCaptor.forClass(InternalRegisterListener[].class);
+        PowerMockito.verifyStatic(InternalDNSSD.class);
+        InternalDNSSD.registerAll(eq(mockService), any(RegistrationRequest[].class), propertiesCaptor.capture(), any(int[].class));
+        propertiesCaptor.getValue()[0].serviceRegistered(mock(DNSSDRegistration.class), FLAGS, SERVICE_NAME, REG_TYPE, DOMAIN);
+        verify(groupListener).serviceRegistered(registrations.get(0), FLAGS, SERVICE_NAME_STRING, REG_TYPE_STRING, DOMAIN_STRING);
+        verify(groupListener, never()).groupRegistered(any(DNSSDRegistrationGroup.class), anyInt(), anyInt());
+
+        propertiesCaptor.getValue()[1].operationFailed(mock(DNSSDService.class), DNSSDException.NAME_CONFLICT);
+        verify(groupListener).operationFailed(registrations.get(1), DNSSDException.NAME_CONFLICT);
+        verify(groupListener).groupRegistered(group, 1, 1);
+        Assert.assertEquals(0, group.getPendingCount());
+        Assert.assertEquals(1, group.getRegisteredCount());
+        Assert.assertEquals(1, group.getFailedCount());
+    }
+
+    @Test
+    public void test_registration_group_start_failure() throws DNSSDException {
+        PowerMockito.when(InternalDNSSD.createRegistrationGroup(any(BaseListener.class))).thenReturn(mockService);
+        PowerMockito.when(InternalDNSSD.registerAll(eq(mockService), any(RegistrationRequest[].class), any(InternalRegisterListener[].class),
+                any(int[].class))).thenAnswer(invocation -> {
+            ((int[]) invocation.getArguments()[3])[0] = DNSSDException.BAD_PARAM;
+            return new DNSSDRegistration[1];
+        });
+        RegisterGroupListener groupListener = mock(RegisterGroupListener.class);
+        DNSSDRegistrationGroup group = mDNSSD.createRegistrationGroup(groupListener);
+        try {
+            group.register(new RegistrationRequest(SERVICE_NAME_STRING, REG_TYPE_STRING, PORT));
+            Assert.fail();
+        } catch (DNSSDException e) {
+            Assert.assertEquals(DNSSDException.BAD_PARAM, e.getErrorCode());
+        }
+        Assert.assertEquals(0, group.getPendingCount());
+        Assert.assertEquals(0, group.getFailedCount());
+
+        List<DNSSDRegistration> registrations = group.registerAll(Arrays.asList(new RegistrationRequest(SERVICE_NAME_STRING, REG_TYPE_STRING, PORT)));
+        verify(groupListener).operationFailed(registrations.get(0), DNSSDException.BAD_PARAM);
+        verify(groupListener).groupRegistered(group, 0, 1);
+        registrations.get(0).stop();
+    }
+
+    @Test
+    public void test_registration_group_stop() throws DNSSDException {
+        PowerMockito.when(InternalDNSSD.createRegistrationGroup(any(BaseListener.class))).thenReturn(mockService);
+        PowerMockito.when(InternalDNSSD.registerAll(eq(mockService), any(RegistrationRequest[].class), any(InternalRegisterListener[].class),
+                any(int[].class))).thenReturn(new DNSSDRegistration[]{mock(DNSSDRegistration.class)});
+        DNSSDRegistrationGroup group = mDNSSD.createRegistrationGroup(mock(RegisterGroupListener.class));
+        group.register(new RegistrationRequest(SERVICE_NAME_STRING, REG_TYPE_STRING, PORT));
+        group.stop();
+        group.stop();
+        verify(mockService, times(2)).stop();
+        verify(mockDNSSDServiceListener).onServiceStopped();
+        Assert.assertEquals(0, group.getPendingCount());
+        try {
+            group.register(new RegistrationRequest(SERVICE_NAME_STRING, REG_TYPE_STRING, PORT));
+            Assert.fail();
+        } catch (DNSSDException e) {
+            Assert.assertEquals(DNSSDException.BAD_STATE, e.getErrorCode());
+        }
+    }
+
+    @Test
+    public void test_registration_group_apply_records() throws DNSSDException {
+        DNSSDRegistration registration = mock(DNSSDRegistration.class);
+        DNSRecord record = mock(DNSRecord.class);
+        PowerMockito.when(InternalDNSSD.createRegistrationGroup(any(BaseListener.class))).thenReturn(mockService);
+        PowerMockito.when(InternalDNSSD.registerAll(eq(mockService), any(RegistrationRequest[].class), any(InternalRegisterListener[].class),
+                any(int[].class))).thenReturn(new DNSSDRegistration[]{registration});
+        List<RecordOperation> operations = Arrays.asList(RecordOperation.add(0, 10, new byte[]{1}, 120),
+                RecordOperation.update(record, 0, new byte[]{2}, 120), RecordOperation.remove(record));
+        List<RecordResult> results = Arrays.asList(new RecordResult(operations.get(0), record, 0),
+                new RecordResult(operations.get(1), record, 0), new RecordResult(operations.get(2), record, 0));
+        when(registration.applyRecords(operations)).thenReturn(results);
+        DNSSDRegistrationGroup group = mDNSSD.createRegistrationGroup(mock(RegisterGroupListener.class));
+        DNSSDRegistration member = group.register(new RegistrationRequest(SERVICE_NAME_STRING, REG_TYPE_STRING, PORT));
+        Assert.assertEquals(3, member.applyRecords(operations).size());
+        verify(registration).applyRecords(operations);
+        Assert.assertEquals(RecordOperation.ADD, operations.get(0).getKind());
+        Assert.assertNull(operations.get(0).getRecord());
+        Assert.assertEquals(RecordOperation.REMOVE, operations.get(2).getKind());
+        Assert.assertNull(operations.get(2).getRData());
+    }
+
+    @Test
+    public void test_apply_records_results() throws Exception {
+        AppleRegistration registration = Whitebox.newInstance(AppleRegistration.class);
+        Whitebox.setInternalState(registration, "fNativeContext", 1L);
+        AppleDNSRecord record = new AppleDNSRecord(registration);
+        // Native side rejects the first add and applies the rest
+        replace(method(AppleRegistration.class, "ApplyRecords")).with((proxy, method, args) -> {
+            AppleDNSRecord[] records = (AppleDNSRecord[]) args[1];
+            int[] errors = (int[]) args[2];
+            errors[0] = DNSSDException.NO_MEMORY;
+            records[2].fRecord = 2;
+            return null;
+        });
+        List<RecordOperation> operations = Arrays.asList(RecordOperation.add(0, 10, new byte[]{1}, 120),
+                RecordOperation.update(record, 0, new byte[]{2}, 120), RecordOperation.add(0, 10, new byte[]{3}, 120));
+
+        List<RecordResult> results = registration.applyRecords(operations);
+        Assert.assertEquals(3, results.size());
+        Assert.assertFalse(results.get(0).isSuccess());
+        Assert.assertEquals(DNSSDException.NO_MEMORY, results.get(0).getErrorCode());
+        Assert.assertNull(results.get(0).getRecord());
+        Assert.assertTrue(results.get(1).isSuccess());
+        Assert.assertSame(record, results.get(1).getRecord());
+        Assert.assertTrue(results.get(2).isSuccess());
+        Assert.assertSame(operations.get(2), results.get(2).getOperation());
+        Assert.assertEquals(2, ((AppleDNSRecord) results.get(2).getRecord()).fRecord);
+
+        try {
+            registration.applyRecords(Collections.singletonList(RecordOperation.remove(mock(DNSRecord.class))));
+            Assert.fail();
+        } catch (DNSSDException e) {
+            Assert.assertEquals(DNSSDException.BAD_PARAM, e.getErrorCode());
+        }
+    }
+
     @Test
     public void test_query_ipv4_records_start_daemon() throws DNSSDException {
         PowerMockito.when(InternalDNSSD.queryRecord(anyInt(), anyInt(), anyString(), eq(1), eq(1), any(InternalQueryListener.class))).thenReturn(mockService);
@@ -224,6 +364,206 @@ public class DnssdTest {
         verify(queryListener).operationFailed(any(DNSSDService.class), eq(0));
     }
 
+    @Test
+    public void test_query_group() throws DNSSDException {
+        DNSSDService mockGroup = mock(DNSSDService.class);
+        DNSSDService mockQuery = mock(DNSSDService.class);
+        PowerMockito.when(InternalDNSSD.createQueryGroup(any(BaseListener.class))).thenReturn(mockGroup);
+        PowerMockito.when(InternalDNSSD.queryRecord(eq(mockGroup), anyInt(), anyInt(), anyString(), anyInt(), anyInt(), any(InternalQueryListener.class)))
+                .thenReturn(mockQuery);
+        ArgumentCaptor<InternalQueryListener> propertiesCaptor = ArgumentCaptor.forClass(InternalQueryListener.class);
+
+        QueryListener queryListener = mock(QueryListener.class);
+        DNSSDQueryGroup group = mDNSSD.createQueryGroup();
+        DNSSDService first = group.queryRecord(FLAGS, IF_INDEX, SERVICE_NAME_STRING, 33, 1, queryListener);
+        group.queryRecord(FLAGS, IF_INDEX, SERVICE_NAME_STRING, 16, 1, queryListener);
+        verify(mockDNSSDServiceListener, times(2)).onServiceStarting();
+
+        PowerMockito.verifyStatic(InternalDNSSD.class, times(2));
+        InternalDNSSD.queryRecord(eq(mockGroup), anyInt(), anyInt(), anyString(), anyInt(), anyInt(), propertiesCaptor.capture());
+        propertiesCaptor.getAllValues().get(0).queryAnswered(mockQuery, FLAGS, IF_INDEX, SERVICE_NAME, 33, 1, new byte[0], 120);
+        verify(queryListener).queryAnswered(eq(first), eq(FLAGS), eq(IF_INDEX), eq(SERVICE_NAME_STRING), eq(33), eq(1),
+                eq(new byte[0]), eq(120));
+
+        first.stop();
+        verify(mockQuery).stop();
+        verify(mockDNSSDServiceListener).onServiceStopped();
+        group.stop();
+        verify(mockQuery, times(2)).stop();
+        verify(mockGroup).stop();
+        verify(mockDNSSDServiceListener, times(2)).onServiceStopped();
+        try {
+            group.queryRecord(FLAGS, IF_INDEX, SERVICE_NAME_STRING, 33, 1, queryListener);
+            Assert.fail();
+        } catch (DNSSDException e) {
+            Assert.assertEquals(DNSSDException.BAD_STATE, e.getErrorCode());
+        }
+    }
+
+    @Test
+    public void test_admission() throws DNSSDException {
+        PowerMockito.when(InternalDNSSD.browse(anyInt(), anyInt(), anyString(), anyString(), any(InternalBrowseListener.class))).thenReturn(mockService);
+        PowerMockito.when(InternalDNSSD.resolve(anyInt(), anyInt(), anyString(), anyString(), anyString(), any(InternalResolveListener.class))).thenReturn(mockService);
+        DNSSDAdmission admission = new DNSSDAdmission();
+        admission.setLimit(DNSSDMetrics.BROWSE, 1, DNSSDAdmission.QUEUE);
+        admission.setLimit(DNSSDMetrics.RESOLVE, 1, DNSSDAdmission.REJECT);
+        DNSSD.setAdmission(admission);
+        try {
+            DNSSDService first = mDNSSD.browse(REG_TYPE_STRING, mock(BrowseListener.class));
+            mDNSSD.browse(REG_TYPE_STRING, mock(BrowseListener.class));
+            PowerMockito.verifyStatic(InternalDNSSD.class, times(1));
+            InternalDNSSD.browse(anyInt(), anyInt(), anyString(), anyString(), any(InternalBrowseListener.class));
+            Assert.assertEquals(1, admission.getQueueDepth(DNSSDMetrics.BROWSE));
+
+            first.stop();
+            PowerMockito.verifyStatic(InternalDNSSD.class, times(2));
+            InternalDNSSD.browse(anyInt(), anyInt(), anyString(), anyString(), any(InternalBrowseListener.class));
+            Assert.assertEquals(0, admission.getQueueDepth(DNSSDMetrics.BROWSE));
+            Assert.assertEquals(1, admission.getWaitTime(DNSSDMetrics.BROWSE).getCount());
+
+            mDNSSD.resolve(FLAGS, IF_INDEX, SERVICE_NAME_STRING, REG_TYPE_STRING, DOMAIN_STRING, mock(ResolveListener.class));
+            try {
+                mDNSSD.resolve(FLAGS, IF_INDEX, SERVICE_NAME_STRING, REG_TYPE_STRING, DOMAIN_STRING, mock(ResolveListener.class));
+                Assert.fail();
+            } catch (DNSSDException e) {
+                Assert.assertEquals(DNSSDException.REFUSED, e.getErrorCode());
+            }
+            Assert.assertEquals(1, admission.getRejected(DNSSDMetrics.RESOLVE));
+            verify(mockDNSSDServiceListener, times(4)).onServiceStarting();
+            verify(mockDNSSDServiceListener, times(2)).onServiceStopped();
+        } finally {
+            DNSSD.setAdmission(null);
+        }
+    }
+
+    @Test
+    public void test_metrics_disabled_by_default() {
+        Assert.assertNull(mDNSSD.getMetrics());
+    }
+
+    @Test
+    public void test_metrics_browse() throws DNSSDException {
+        mDNSSD.setMetricsEnabled(true);
+        PowerMockito.when(InternalDNSSD.browse(anyInt(), anyInt(), anyString(), anyString(), any(InternalBrowseListener.class))).thenReturn(mockService);
+        DNSSDService service = mDNSSD.browse(REG_TYPE_STRING, mock(BrowseListener.class));
+        Assert.assertEquals(1, mDNSSD.getMetrics().snapshot().getActiveOperations(DNSSDMetrics.BROWSE));
+
+        ArgumentCaptor<InternalBrowseListener> propertiesCaptor = ArgumentCaptor.forClass(InternalBrowseListener.class);
+        PowerMockito.verifyStatic(InternalDNSSD.class);
+        InternalDNSSD.browse(anyInt(), anyInt(), anyString(), anyString(), propertiesCaptor.capture());
+        propertiesCaptor.getValue().serviceFound(mockService, FLAGS, IF_INDEX, SERVICE_NAME, REG_TYPE, DOMAIN);
+        propertiesCaptor.getValue().serviceLost(mockService, FLAGS, IF_INDEX, SERVICE_NAME, REG_TYPE, DOMAIN);
+        propertiesCaptor.getValue().operationFailed(mockService, DNSSDException.SERVICENOTRUNNING);
+        service.stop();
+
+        DNSSDMetrics.Snapshot snapshot = mDNSSD.getMetrics().snapshot();
+        Assert.assertEquals(0, snapshot.getActiveOperations());
+        Assert.assertEquals(2, snapshot.getBrowseEvents());
+        Assert.assertEquals(Long.valueOf(1), snapshot.getFailures().get(DNSSDException.SERVICENOTRUNNING));
+        verify(mockDNSSDServiceListener).onServiceStopped();
+    }
+
+    @Test
+    public void test_metrics_resolve_latency() throws DNSSDException {
+        mDNSSD.setMetricsEnabled(true);
+        PowerMockito.when(InternalDNSSD.resolve(anyInt(), anyInt(), anyString(), anyString(), anyString(), any(InternalResolveListener.class))).thenReturn(mockService);
+        mDNSSD.resolve(FLAGS, IF_INDEX, SERVICE_NAME_STRING, REG_TYPE_STRING, DOMAIN_STRING, mock(ResolveListener.class));
+
+        ArgumentCaptor<InternalResolveListener> propertiesCaptor = ArgumentCaptor.forClass(InternalResolveListener.class);
+        PowerMockito.verifyStatic(InternalDNSSD.class);
+        InternalDNSSD.resolve(anyInt(), anyInt(), anyString(), anyString(), anyString(), propertiesCaptor.capture());
+        propertiesCaptor.getValue().serviceResolved(mockService, FLAGS, IF_INDEX, SERVICE_NAME, HOSTNAME, PORT, new TXTRecord());
+
+        DNSSDMetrics.Snapshot snapshot = mDNSSD.getMetrics().snapshot();
+        Assert.assertEquals(1, snapshot.getResolveLatency().getCount());
+        Assert.assertEquals(0, snapshot.getActiveOperations(DNSSDMetrics.RESOLVE));
+    }
+
+    @Test
+    public void test_trace_browse() throws DNSSDException {
+        final List<Integer> stages = new ArrayList<>();
+        mDNSSD.setTraceSink((operationId, operationType, stage, timestampNanos) -> stages.add(stage));
+        PowerMockito.when(InternalDNSSD.browse(anyInt(), anyInt(), anyString(), anyString(), any(InternalBrowseListener.class))).thenReturn(mockService);
+        DNSSDService service = mDNSSD.browse(REG_TYPE_STRING, mock(BrowseListener.class));
+
+        ArgumentCaptor<InternalBrowseListener> propertiesCaptor = ArgumentCaptor.forClass(InternalBrowseListener.class);
+        PowerMockito.verifyStatic(InternalDNSSD.class);
+        InternalDNSSD.browse(anyInt(), anyInt(), anyString(), anyString(), propertiesCaptor.capture());
+        propertiesCaptor.getValue().serviceFound(mockService, FLAGS, IF_INDEX, SERVICE_NAME, REG_TYPE, DOMAIN);
+        service.stop();
+
+        Assert.assertEquals(Arrays.asList(TraceSink.CREATED, TraceSink.STARTED, TraceSink.FIRST_REPLY, TraceSink.CALLBACK_POSTED,
+                TraceSink.CALLBACK_RUNNING, TraceSink.CALLBACK_EXECUTED, TraceSink.STOPPED), stages);
+    }
+
+    @Test
+    public void test_journal_browse() throws DNSSDException {
+        PowerMockito.when(InternalDNSSD.browse(anyInt(), anyInt(), anyString(), anyString(), any(InternalBrowseListener.class))).thenReturn(mockService);
+        mDNSSD.browse(REG_TYPE_STRING, mock(BrowseListener.class));
+
+        ArgumentCaptor<InternalBrowseListener> propertiesCaptor = ArgumentCaptor.forClass(InternalBrowseListener.class);
+        PowerMockito.verifyStatic(InternalDNSSD.class);
+        InternalDNSSD.browse(anyInt(), anyInt(), anyString(), anyString(), propertiesCaptor.capture());
+        propertiesCaptor.getValue().serviceFound(mockService, FLAGS, IF_INDEX, SERVICE_NAME, REG_TYPE, DOMAIN);
+        propertiesCaptor.getValue().operationFailed(mockService, DNSSDException.UNKNOWN);
+
+        List<DNSSDJournal.Entry> entries = mDNSSD.getJournal().snapshot();
+        Assert.assertEquals(2, entries.size());
+        Assert.assertEquals(DNSSDJournal.SERVICE_FOUND, entries.get(0).getKind());
+        Assert.assertEquals(DNSSDJournal.hash(SERVICE_NAME), entries.get(0).getNameHash());
+        Assert.assertEquals(DNSSDJournal.OPERATION_FAILED, entries.get(1).getKind());
+        Assert.assertEquals(DNSSDMetrics.BROWSE, entries.get(1).getFlags());
+        Assert.assertEquals(DNSSDException.UNKNOWN, entries.get(1).getValue());
+    }
+
+    @Test
+    public void test_journal_keeps_latest_events() {
+        DNSSDJournal journal = new DNSSDJournal(3);
+        Assert.assertEquals(4, journal.getCapacity());
+        for (int i = 0; i < 10; i++) {
+            journal.record(DNSSDJournal.QUERY_ANSWERED, 0, 0, 0, i);
+        }
+        List<DNSSDJournal.Entry> entries = journal.snapshot();
+        Assert.assertEquals(4, entries.size());
+        Assert.assertEquals(6, entries.get(0).getValue());
+        Assert.assertEquals(9, entries.get(3).getValue());
+    }
+
+    @Test
+    public void test_journal_concurrent_snapshot_is_consistent() throws InterruptedException {
+        final DNSSDJournal journal = new DNSSDJournal(4);
+        Thread[] writers = new Thread[4];
+        for (int w = 0; w < writers.length; w++) {
+            writers[w] = new Thread(() -> {
+                for (int i = 0; i < 100000; i++) {
+                    journal.record(DNSSDJournal.QUERY_ANSWERED, i, i, i, i);
+                }
+            });
+            writers[w].start();
+        }
+        boolean running = true;
+        while (running) {
+            running = false;
+            for (Thread writer : writers) {
+                running |= writer.isAlive();
+            }
+            for (DNSSDJournal.Entry entry : journal.snapshot()) {
+                Assert.assertEquals(entry.getValue(), entry.getFlags());
+                Assert.assertEquals(entry.getValue(), entry.getIfIndex());
+                Assert.assertEquals(entry.getValue(), entry.getNameHash());
+            }
+        }
+    }
+
+    @Test
+    public void test_latency_histogram_buckets() {
+        Assert.assertEquals(0, LatencyHistogram.bucketOf(0));
+        Assert.assertEquals(0, LatencyHistogram.bucketOf(1));
+        Assert.assertEquals(1, LatencyHistogram.bucketOf(2));
+        Assert.assertEquals(10, LatencyHistogram.bucketOf(1024));
+        Assert.assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucketOf(Long.MAX_VALUE));
+    }
+
     @Test
     public void test_txt_record_parse_empty() {
         TXTRecord record = new TXTRecord();
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2016 Andriy Druk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.druk.dnssd;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+public class IdlePolicyTest {
+
+    @Test
+    public void adaptiveStartsWithMinTimeout() {
+        AdaptiveIdlePolicy policy = new AdaptiveIdlePolicy(5000, 60000);
+        policy.onActive(0);
+        assertEquals(5000, policy.onIdle(1000));
+        assertEquals(-1, policy.getAverageGap());
+    }
+
+    @Test
+    public void adaptiveCoversBurstGaps() {
+        AdaptiveIdlePolicy policy = new AdaptiveIdlePolicy(5000, 60000);
+        long now = 0;
+        for (int i = 0; i < 10; i++) {
+            policy.onActive(now);
+            now += 1000;
+            policy.onIdle(now);
+            now += 20000;
+        }
+        assertEquals(20000, policy.getAverageGap());
+        assertEquals(30000, policy.onIdle(now));
+    }
+
+    @Test
+    public void adaptiveGivesUpOnLongGaps() {
+        AdaptiveIdlePolicy policy = new AdaptiveIdlePolicy(5000, 60000);
+        policy.onIdle(0);
+        policy.onActive(50000);
+        assertEquals(5000, policy.onIdle(51000));
+    }
+
+    @Test
+    public void foregroundKeepsAlive() {
+        AtomicInteger changes = new AtomicInteger();
+        ForegroundIdlePolicy policy = new ForegroundIdlePolicy(3000);
+        policy.setOnChangedListener(changes::incrementAndGet);
+        assertEquals(3000, policy.onIdle(0));
+
+        policy.onActivityStarted(null);
+        policy.onActivityStarted(null);
+        assertEquals(IdlePolicy.KEEP_ALIVE, policy.onIdle(0));
+        policy.onActivityStopped(null);
+        assertEquals(IdlePolicy.KEEP_ALIVE, policy.onIdle(0));
+        policy.onActivityStopped(null);
+        assertEquals(3000, policy.onIdle(0));
+        assertEquals(2, changes.get());
+    }
+}
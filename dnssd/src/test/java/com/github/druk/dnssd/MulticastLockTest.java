@@ -2,19 +2,25 @@ package com.github.druk.dnssd;
 
 import android.content.Context;
 import android.net.wifi.WifiManager;
+import android.os.Handler;
 
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.powermock.api.mockito.PowerMockito;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.powermock.api.mockito.PowerMockito.mockStatic;
@@ -49,6 +55,46 @@ public class MulticastLockTest {
         testDNSSD(embedded);
     }
 
+    @Test
+    public void testGracePeriod() {
+        Handler handler = mock(Handler.class);
+        WifiMulticastLockManager manager = new WifiMulticastLockManager(context, handler, 1000);
+        manager.acquire();
+        manager.acquire();
+        manager.release();
+        manager.release();
+        verify(multicastLock, times(1)).acquire();
+        verify(multicastLock, never()).release();
+
+        ArgumentCaptor<Runnable> releaseCaptor = ArgumentCaptor.forClass(Runnable.class);
+        verify(handler).postDelayed(releaseCaptor.capture(), eq(1000L));
+        manager.acquire();
+        manager.release();
+        releaseCaptor.getValue().run();
+        verify(multicastLock, times(1)).acquire();
+        verify(multicastLock).release();
+        Assert.assertFalse(manager.isHeld());
+        Assert.assertEquals(1, manager.getAcquireCount());
+        Assert.assertEquals(1, manager.getReleaseCount());
+    }
+
+    @Test
+    public void testReplaceManagerWithRunningOperation() throws DNSSDException {
+        DNSSD dnssd = new DNSSDBindable(context);
+        PowerMockito.when(InternalDNSSD.enumerateDomains(anyInt(), anyInt(), any(InternalDomainListener.class))).thenReturn(mock(DNSSDService.class));
+        DNSSDService service = dnssd.enumerateDomains(DNSSD.BROWSE_DOMAINS, 0, mock(DomainListener.class));
+        verify(multicastLock).acquire();
+
+        MulticastLockManager manager = mock(MulticastLockManager.class);
+        dnssd.setMulticastLockManager(manager);
+        verify(manager).acquire();
+        verify(multicastLock).release();
+
+        service.stop();
+        verify(manager).release();
+        verify(multicastLock).release();
+    }
+
     private void testDNSSD(DNSSD dnssd) throws DNSSDException {
         PowerMockito.when(InternalDNSSD.enumerateDomains(anyInt(), anyInt(), any(InternalDomainListener.class))).thenReturn(mock(DNSSDService.class));
         DomainListener listener = mock(DomainListener.class);
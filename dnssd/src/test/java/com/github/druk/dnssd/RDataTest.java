@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2016 Andriy Druk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.druk.dnssd;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RDataTest {
+
+    // Wire format name of "Dr. Pepper.local."
+    private static final byte[] NAME = {10, 'D', 'r', '.', ' ', 'P', 'e', 'p', 'p', 'e', 'r', 5, 'l', 'o', 'c', 'a', 'l', 0};
+
+    @Test
+    public void test_srv() {
+        byte[] rdata = new byte[6 + NAME.length];
+        rdata[0] = 0;
+        rdata[1] = 10;
+        rdata[2] = 1;
+        rdata[3] = 2;
+        rdata[4] = (byte) 0xC3;
+        rdata[5] = 0x50;
+        System.arraycopy(NAME, 0, rdata, 6, NAME.length);
+        RData.SRV srv = ((RData.SRV) RData.forType(NSType.SRV)).wrap(rdata);
+        Assert.assertEquals(10, srv.getPriority());
+        Assert.assertEquals(258, srv.getWeight());
+        Assert.assertEquals(50000, srv.getPort());
+        Assert.assertEquals("Dr\\.\\032Pepper.local.", srv.getTarget());
+        Assert.assertTrue(srv.targetEquals("dr\\.\\032pepper.LOCAL"));
+        Assert.assertTrue(srv.targetEquals("Dr\\.\\032Pepper.local."));
+        Assert.assertFalse(srv.targetEquals("Dr\\.\\032Pepper"));
+        Assert.assertFalse(srv.targetEquals("Dr\\.\\032Pepper.local.com."));
+    }
+
+    @Test
+    public void test_ptr_root_and_utf8() {
+        RData.PTR ptr = (RData.PTR) RData.forType(NSType.PTR);
+        Assert.assertEquals(".", ptr.wrap(new byte[]{0}).getName());
+        Assert.assertTrue(ptr.nameEquals("."));
+        byte[] utf8 = {4, 'c', (byte) 0xC3, (byte) 0xA9, 'u', 0};
+        Assert.assertEquals("c\u00e9u.", ptr.wrap(utf8).getName());
+        Assert.assertTrue(ptr.nameEquals("c\u00e9u"));
+    }
+
+    @Test
+    public void test_addresses() {
+        RData.A a = ((RData.A) RData.forType(NSType.A)).wrap(new byte[]{(byte) 192, (byte) 168, 1, 2});
+        Assert.assertEquals(0xC0A80102, a.getAddress());
+        Assert.assertEquals(168, a.byteAt(1));
+        RData.AAAA aaaa = ((RData.AAAA) RData.forType(NSType.AAAA)).wrap(new byte[]{(byte) 0xFE, (byte) 0x80, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1});
+        Assert.assertTrue(aaaa.isLinkLocal());
+        Assert.assertEquals(0xFE80000000000000L, aaaa.getHigh());
+        Assert.assertEquals(1L, aaaa.getLow());
+    }
+
+    @Test
+    public void test_txt() {
+        byte[] rdata = {7, 'p', 'a', 't', 'h', '=', '/', 'x', 0, 3, 'k', 'e', 'y', 6, 'e', 'm', 'p', 't', 'y', '='};
+        RData.TXT txt = ((RData.TXT) RData.forType(NSType.TXT)).wrap(rdata);
+        Assert.assertEquals(3, txt.size());
+        Assert.assertEquals(0, txt.indexOf("PATH"));
+        Assert.assertEquals("/x", txt.getValue("path"));
+        Assert.assertEquals("key", txt.getKey(1));
+        Assert.assertNull(txt.getValue(1));
+        Assert.assertEquals(-1, txt.getValueLength(1));
+        Assert.assertEquals("", txt.getValue("empty"));
+        Assert.assertEquals(-1, txt.indexOf("pat"));
+        Assert.assertFalse(txt.contains("missing"));
+        Assert.assertEquals(0, txt.wrap(new byte[]{0}).size());
+    }
+
+    @Test
+    public void test_hinfo_and_nsec() {
+        RData.HINFO hinfo = ((RData.HINFO) RData.forType(NSType.HINFO)).wrap(new byte[]{3, 'A', 'R', 'M', 5, 'L', 'i', 'n', 'u', 'x'});
+        Assert.assertEquals("ARM", hinfo.getCpu());
+        Assert.assertEquals("Linux", hinfo.getOs());
+        // Next name "a.", window 0 with A (1) and AAAA (28)
+        byte[] nsec = {1, 'a', 0, 0, 4, 0x40, 0, 0, 0x08};
+        RData.NSEC record = ((RData.NSEC) RData.forType(NSType.NSEC)).wrap(nsec);
+        Assert.assertEquals("a.", record.getNextName());
+        Assert.assertTrue(record.hasType(NSType.A));
+        Assert.assertTrue(record.hasType(NSType.AAAA));
+        Assert.assertFalse(record.hasType(NSType.SRV));
+        Assert.assertFalse(record.hasType(NSType.TXT));
+    }
+
+    @Test
+    public void test_malformed() {
+        Assert.assertNull(RData.forType(NSType.MX));
+        assertMalformed(NSType.A, new byte[3]);
+        assertMalformed(NSType.SRV, new byte[]{0, 0, 0, 0, 0, 0, 3, 'a', 0});
+        assertMalformed(NSType.PTR, new byte[]{(byte) 0xC0, 12});
+        assertMalformed(NSType.TXT, new byte[]{5, 'a'});
+        assertMalformed(NSType.HINFO, new byte[]{1, 'a'});
+        assertMalformed(NSType.NSEC, new byte[]{0, 0, 33});
+    }
+
+    private static void assertMalformed(int rrtype, byte[] rdata) {
+        try {
+            RData.forType(rrtype).wrap(rdata);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+}
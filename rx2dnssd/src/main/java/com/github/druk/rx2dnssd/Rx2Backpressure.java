@@ -0,0 +1,301 @@
+/*
+ * Copyright (C) 2016 Andriy Druk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.druk.rx2dnssd;
+
+import androidx.annotation.NonNull;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.reactivex.BackpressureOverflowStrategy;
+import io.reactivex.BackpressureStrategy;
+import io.reactivex.Flowable;
+import io.reactivex.FlowableOnSubscribe;
+import io.reactivex.FlowableSubscriber;
+import io.reactivex.FlowableTransformer;
+import io.reactivex.exceptions.Exceptions;
+import io.reactivex.functions.Function;
+
+/**
+ * What a {@link Flowable} of {@link Rx2Dnssd} does with events its subscriber hasn't requested yet.<P>
+ *
+ * DNSSD pushes events as the daemon reports them, a busy browse or a continuous query can outpace a slow subscriber.
+ * {@link #buffer()} keeps all of them, the others keep memory bounded: {@link #bounded(int)} and
+ * {@link #dropOldest(int)} drop events over a capacity, {@link #latestPerKey(Function)} keeps only the newest event
+ * per key, so the final state of every service instance is still delivered. {@link #getDropped()} counts the events
+ * that were dropped or replaced, use one instance per call to count them per call.<P>
+ *
+ * It's also a {@link FlowableTransformer}, for other sources.
+ */
+public final class Rx2Backpressure<T> implements FlowableTransformer<T, T> {
+
+    private static final int BUFFER = 0;
+    private static final int BOUNDED = 1;
+    private static final int DROP_OLDEST = 2;
+    private static final int LATEST_PER_KEY = 3;
+
+    private static final Rx2Backpressure<Object> UNBOUNDED = new Rx2Backpressure<>(BUFFER, 0, null);
+
+    private final int mode;
+    private final int capacity;
+    private final Function<? super T, ?> key;
+    private final AtomicLong dropped = new AtomicLong();
+
+    private Rx2Backpressure(int mode, int capacity, Function<? super T, ?> key) {
+        this.mode = mode;
+        this.capacity = capacity;
+        this.key = key;
+    }
+
+    /** Buffer all events without a limit, the default of {@link Rx2Dnssd}. */
+    @SuppressWarnings("unchecked")
+    @NonNull
+    public static <T> Rx2Backpressure<T> buffer() {
+        return (Rx2Backpressure<T>) UNBOUNDED;
+    }
+
+    /**
+     * Buffer up to <code>capacity</code> events. On overflow the newest buffered event is dropped to make room.
+     */
+    @NonNull
+    public static <T> Rx2Backpressure<T> bounded(int capacity) {
+        return new Rx2Backpressure<>(BOUNDED, checkCapacity(capacity), null);
+    }
+
+    /** Buffer up to <code>capacity</code> events. On overflow the oldest buffered event is dropped. */
+    @NonNull
+    public static <T> Rx2Backpressure<T> dropOldest(int capacity) {
+        return new Rx2Backpressure<>(DROP_OLDEST, checkCapacity(capacity), null);
+    }
+
+    /**
+     * Keep only the newest pending event of each key, e.g. of each service instance. Pending keys are delivered in
+     * the order they first became pending, so a busy key can't starve the others.
+     *
+     * @param key Key of an event, compared with equals.
+     */
+    @NonNull
+    public static <T> Rx2Backpressure<T> latestPerKey(@NonNull Function<? super T, ?> key) {
+        return new Rx2Backpressure<>(LATEST_PER_KEY, 0, key);
+    }
+
+    /**
+     * Keep only the newest pending state of each service instance. Services are equal by interface, name, type and
+     * domain, so a lost service replaces its pending found event and the other way round.
+     */
+    @NonNull
+    public static Rx2Backpressure<BonjourService> latestPerService() {
+        return latestPerKey(bs -> bs);
+    }
+
+    /** @return Number of events dropped on overflow or replaced by a newer event of their key. */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    @Override
+    public Publisher<T> apply(Flowable<T> upstream) {
+        switch (mode) {
+            case BOUNDED:
+                return upstream.onBackpressureBuffer(capacity, dropped::incrementAndGet, BackpressureOverflowStrategy.DROP_LATEST);
+            case DROP_OLDEST:
+                return upstream.onBackpressureBuffer(capacity, dropped::incrementAndGet, BackpressureOverflowStrategy.DROP_OLDEST);
+            case LATEST_PER_KEY:
+                return upstream.lift(downstream -> new LatestPerKeySubscriber<>(downstream, key, dropped));
+            default:
+                return upstream.onBackpressureBuffer();
+        }
+    }
+
+    /** Create a source with this strategy, without the buffer of the emitter when the strategy has its own. */
+    Flowable<T> create(FlowableOnSubscribe<T> source) {
+        if (mode == BUFFER) {
+            return Flowable.create(source, BackpressureStrategy.BUFFER);
+        }
+        return Flowable.create(source, BackpressureStrategy.MISSING).compose(this);
+    }
+
+    private static int checkCapacity(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        return capacity;
+    }
+
+    /** Requests everything from upstream and holds the newest unrequested event per key. */
+    private static final class LatestPerKeySubscriber<T> extends AtomicInteger implements FlowableSubscriber<T>, Subscription {
+
+        private static final long serialVersionUID = -4374254357587925164L;
+
+        private final Subscriber<? super T> downstream;
+        private final Function<? super T, ?> key;
+        private final AtomicLong dropped;
+        private final AtomicLong requested = new AtomicLong();
+
+        // Guarded by itself
+        private final Map<Object, T> pending = new LinkedHashMap<>();
+
+        private Subscription upstream;
+        private volatile boolean done;
+        private volatile boolean cancelled;
+        private Throwable error;
+
+        LatestPerKeySubscriber(Subscriber<? super T> downstream, Function<? super T, ?> key, AtomicLong dropped) {
+            this.downstream = downstream;
+            this.key = key;
+            this.dropped = dropped;
+        }
+
+        @Override
+        public void onSubscribe(Subscription s) {
+            upstream = s;
+            downstream.onSubscribe(this);
+            s.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(T t) {
+            if (done) {
+                return;
+            }
+            Object k;
+            try {
+                k = key.apply(t);
+            } catch (Throwable e) {
+                Exceptions.throwIfFatal(e);
+                upstream.cancel();
+                onError(e);
+                return;
+            }
+            synchronized (pending) {
+                if (pending.put(k, t) != null) {
+                    dropped.incrementAndGet();
+                }
+            }
+            drain();
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            error = t;
+            done = true;
+            drain();
+        }
+
+        @Override
+        public void onComplete() {
+            done = true;
+            drain();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                upstream.cancel();
+                onError(new IllegalArgumentException("n > 0 required but it was " + n));
+                return;
+            }
+            long r;
+            do {
+                r = requested.get();
+                if (r == Long.MAX_VALUE) {
+                    break;
+                }
+            } while (!requested.compareAndSet(r, r + n < 0 ? Long.MAX_VALUE : r + n));
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            if (!cancelled) {
+                cancelled = true;
+                upstream.cancel();
+                if (getAndIncrement() == 0) {
+                    clear();
+                }
+            }
+        }
+
+        private void drain() {
+            if (getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                long r = requested.get();
+                long e = 0;
+                while (true) {
+                    if (cancelled) {
+                        clear();
+                        return;
+                    }
+                    boolean d = done;
+                    // An error doesn't wait for pending events, completion delivers them first
+                    if (d && error != null) {
+                        clear();
+                        downstream.onError(error);
+                        return;
+                    }
+                    T value = e != r ? poll() : null;
+                    if (value == null) {
+                        if (d && isEmpty()) {
+                            downstream.onComplete();
+                            return;
+                        }
+                        break;
+                    }
+                    downstream.onNext(value);
+                    e++;
+                }
+                if (e != 0 && r != Long.MAX_VALUE) {
+                    requested.addAndGet(-e);
+                }
+                missed = addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private T poll() {
+            synchronized (pending) {
+                Iterator<T> iterator = pending.values().iterator();
+                if (!iterator.hasNext()) {
+                    return null;
+                }
+                T value = iterator.next();
+                iterator.remove();
+                return value;
+            }
+        }
+
+        private boolean isEmpty() {
+            synchronized (pending) {
+                return pending.isEmpty();
+            }
+        }
+
+        private void clear() {
+            synchronized (pending) {
+                pending.clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright (C) 2016 Andriy Druk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.druk.rx2dnssd;
+
+import com.github.druk.dnssd.BrowseListener;
+import com.github.druk.dnssd.DNSSD;
+import com.github.druk.dnssd.DNSSDException;
+import com.github.druk.dnssd.DNSSDService;
+import com.github.druk.dnssd.NSClass;
+import com.github.druk.dnssd.NSType;
+import com.github.druk.dnssd.QueryListener;
+import com.github.druk.dnssd.ResolveListener;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.FlowableEmitter;
+import io.reactivex.Scheduler;
+import io.reactivex.disposables.Disposable;
+
+/**
+ * Browse, resolve and address queries of {@link Rx2Dnssd#discover} in one operation. Every found instance runs
+ * through a small state machine that fills one builder and emits the service once, when both address families
+ * answered or the address window after the first answer passed. Lost instances are emitted as they're reported,
+ * if they were emitted before.
+ */
+class Rx2Discovery implements BrowseListener, DNSSDService {
+
+    private static final int RESOLVING = 0;
+    private static final int QUERYING = 1;
+    private static final int DONE = 2;
+
+    private final DNSSD dnssd;
+    private final String regType;
+    private final String domain;
+    private final FlowableEmitter<? super BonjourService> emitter;
+    private final long window;
+    private final TimeUnit unit;
+    private final Scheduler.Worker worker;
+
+    // Guarded by this. Emissions happen with the lock held, so callbacks of the handler and of the worker are serialized
+    private final Map<BonjourService, Instance> instances = new HashMap<>();
+    private DNSSDService browser;
+    private boolean stopped;
+
+    Rx2Discovery(DNSSD dnssd, String regType, String domain, FlowableEmitter<? super BonjourService> emitter,
+                 long window, TimeUnit unit, Scheduler scheduler) {
+        this.dnssd = dnssd;
+        this.regType = regType;
+        this.domain = domain;
+        this.emitter = emitter;
+        this.window = window;
+        this.unit = unit;
+        this.worker = scheduler.createWorker();
+    }
+
+    synchronized DNSSDService start() throws DNSSDException {
+        browser = dnssd.browse(0, DNSSD.ALL_INTERFACES, regType, domain, this);
+        return this;
+    }
+
+    // Native callbacks only post to the DNSSD handler, so stopping operations with the lock held can't deadlock
+    @Override
+    public void stop() {
+        synchronized (this) {
+            stopped = true;
+            if (browser != null) {
+                browser.stop();
+                browser = null;
+            }
+            for (Instance instance : instances.values()) {
+                instance.stop();
+            }
+            instances.clear();
+        }
+        worker.dispose();
+    }
+
+    @Override
+    public synchronized void serviceFound(DNSSDService browser, int flags, int ifIndex, String serviceName, String regType, String domain) {
+        if (stopped || emitter.isCancelled()) {
+            return;
+        }
+        BonjourService.Builder builder = new BonjourService.Builder(flags, ifIndex, serviceName, regType, domain);
+        BonjourService service = builder.build();
+        if (instances.containsKey(service)) {
+            return;
+        }
+        Instance instance = new Instance(builder, service);
+        instances.put(service, instance);
+        instance.resolve();
+    }
+
+    @Override
+    public synchronized void serviceLost(DNSSDService browser, int flags, int ifIndex, String serviceName, String regType, String domain) {
+        if (stopped || emitter.isCancelled()) {
+            return;
+        }
+        BonjourService service = new BonjourService.Builder(flags | BonjourService.LOST, ifIndex, serviceName, regType, domain).build();
+        Instance instance = instances.remove(service);
+        if (instance == null) {
+            return;
+        }
+        boolean emitted = instance.state == DONE;
+        instance.stop();
+        if (emitted) {
+            emitter.onNext(service);
+        }
+    }
+
+    @Override
+    public void operationFailed(DNSSDService service, int errorCode) {
+        if (emitter.isCancelled()) {
+            return;
+        }
+        emitter.tryOnError(new RuntimeException("DNSSD browse error: " + errorCode));
+    }
+
+    private class Instance implements ResolveListener, QueryListener, Runnable {
+
+        private final BonjourService.Builder builder;
+        private final BonjourService service;
+
+        // Guarded by the discovery
+        private int state = RESOLVING;
+        private DNSSDService resolver;
+        private DNSSDService inet4Query;
+        private DNSSDService inet6Query;
+        private boolean inet4Answered;
+        private boolean inet6Answered;
+        private Disposable deadline;
+
+        Instance(BonjourService.Builder builder, BonjourService service) {
+            this.builder = builder;
+            this.service = service;
+        }
+
+        void resolve() {
+            try {
+                resolver = dnssd.resolve(service.getFlags(), service.getIfIndex(), service.getServiceName(), service.getRegType(),
+                        service.getDomain(), this);
+            } catch (DNSSDException e) {
+                emitter.tryOnError(e);
+                return;
+            }
+            // DNSSD stops a resolve without an answer after its timeout and doesn't report it, start it again then
+            deadline = worker.schedule(this, DNSSD.DNSSD_DEFAULT_TIMEOUT, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void serviceResolved(DNSSDService resolver, int flags, int ifIndex, String fullName, String hostName, int port,
+                                    Map<String, String> txtRecord) {
+            synchronized (Rx2Discovery.this) {
+                // An answer of a resolve that was restarted after its timeout is stale
+                if (state != RESOLVING || resolver != this.resolver || emitter.isCancelled()) {
+                    return;
+                }
+                state = QUERYING;
+                this.resolver = null; // DNSSD stops a resolve after the answer
+                deadline.dispose();
+                builder.hostname(hostName).port(port).dnsRecords(txtRecord);
+                try {
+                    inet4Query = dnssd.queryRecord(0, service.getIfIndex(), hostName, NSType.A, NSClass.IN, false, this);
+                    inet6Query = dnssd.queryRecord(0, service.getIfIndex(), hostName, NSType.AAAA, NSClass.IN, false, this);
+                } catch (DNSSDException e) {
+                    emitter.tryOnError(e);
+                    return;
+                }
+                // Without any address the service is still emitted, after the timeout of a regular query
+                deadline = worker.schedule(this, DNSSD.DNSSD_DEFAULT_TIMEOUT, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        @Override
+        public void queryAnswered(DNSSDService query, int flags, int ifIndex, String fullName, int rrtype, int rrclass, byte[] rdata, int ttl) {
+            synchronized (Rx2Discovery.this) {
+                if (state != QUERYING || (flags & DNSSD.ADD) == 0 || emitter.isCancelled()) {
+                    return;
+                }
+                boolean first = !inet4Answered && !inet6Answered;
+                try {
+                    builder.inetAddress(InetAddress.getByAddress(rdata));
+                } catch (UnknownHostException e) {
+                    emitter.tryOnError(e);
+                    return;
+                }
+                if (rrtype == NSType.A) {
+                    inet4Answered = true;
+                } else {
+                    inet6Answered = true;
+                }
+                if (inet4Answered && inet6Answered) {
+                    run();
+                } else if (first) {
+                    // The other family usually comes in the same response, don't wait long for a host that has none
+                    deadline.dispose();
+                    deadline = worker.schedule(this, window, unit);
+                }
+            }
+        }
+
+        /** Restart a resolve that timed out or emit the service with the addresses known so far. */
+        @Override
+        public void run() {
+            synchronized (Rx2Discovery.this) {
+                if (state == DONE || emitter.isCancelled()) {
+                    return;
+                }
+                if (state == RESOLVING) {
+                    resolver.stop();
+                    resolve();
+                    return;
+                }
+                stop();
+                emitter.onNext(builder.build());
+            }
+        }
+
+        @Override
+        public void operationFailed(DNSSDService service, int errorCode) {
+            synchronized (Rx2Discovery.this) {
+                if (state == DONE || emitter.isCancelled()) {
+                    return;
+                }
+                String operation = state == RESOLVING ? "resolve" : "queryRecord";
+                emitter.tryOnError(new RuntimeException("DNSSD " + operation + " error: " + errorCode));
+            }
+        }
+
+        void stop() {
+            state = DONE;
+            if (resolver != null) {
+                resolver.stop();
+                resolver = null;
+            }
+            if (inet4Query != null) {
+                inet4Query.stop();
+                inet6Query.stop();
+                inet4Query = null;
+                inet6Query = null;
+            }
+            if (deadline != null) {
+                deadline.dispose();
+                deadline = null;
+            }
+        }
+    }
+}
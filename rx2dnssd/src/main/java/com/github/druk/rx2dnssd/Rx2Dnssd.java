@@ -18,15 +18,23 @@ package com.github.druk.rx2dnssd;
 import androidx.annotation.NonNull;
 
 import com.github.druk.dnssd.DNSSD;
+import com.github.druk.dnssd.NSType;
+import com.github.druk.dnssd.RData;
+
+import java.util.concurrent.TimeUnit;
 
 import io.reactivex.Flowable;
 import io.reactivex.FlowableTransformer;
+import io.reactivex.Scheduler;
 
 /**
  * RxDnssd is reactive wrapper for {@link DNSSD}
  */
 public interface Rx2Dnssd {
 
+    /** Default time {@link #discover(String, String)} waits for the second address family, in milliseconds. */
+    long DEFAULT_ADDRESS_WINDOW_MS = 200;
+
     /**
      * Browse for instances of a service.<P>
      *
@@ -42,6 +50,18 @@ public interface Rx2Dnssd {
     @NonNull
     Flowable<BonjourService> browse(@NonNull final String regType, @NonNull final String domain);
 
+    /**
+     * Browse for instances of a service, see {@link #browse(String, String)}.
+     *
+     * @param regType      The registration type being browsed for followed by the protocol, e.g. "_ftp._tcp".
+     * @param domain       Domain to browse in.
+     * @param backpressure What to do with events the subscriber hasn't requested yet, e.g.
+     *                     {@link Rx2Backpressure#latestPerService()}.
+     * @return A {@link Flowable} that represents the active browse operation.
+     */
+    @NonNull
+    Flowable<BonjourService> browse(@NonNull String regType, @NonNull String domain, @NonNull Rx2Backpressure<BonjourService> backpressure);
+
     /**
      * Resolve a {@link Flowable} to a target host name, port number, and txt record.<P>
      * <p>
@@ -57,6 +77,17 @@ public interface Rx2Dnssd {
     @NonNull
     FlowableTransformer<BonjourService, BonjourService> resolve();
 
+    /**
+     * Resolve services like {@link #resolve()}, with at most {@link Rx2ResolveScheduler}'s limit of resolves at once.
+     * The others wait in the scheduler's priority queue and cost nothing when cancelled before they start, a lost
+     * service cancels its pending resolve.
+     *
+     * @param scheduler Scheduler that bounds and orders the resolves, it may be shared with other chains.
+     * @return A {@link FlowableTransformer} that transform not resolved object to resolved.
+     */
+    @NonNull
+    FlowableTransformer<BonjourService, BonjourService> resolve(@NonNull Rx2ResolveScheduler scheduler);
+
     /**
      * Query ipv4 and ipv6 addresses
      *
@@ -122,6 +153,115 @@ public interface Rx2Dnssd {
     @NonNull
     Flowable<BonjourService> queryTXTRecords(BonjourService bs);
 
+    /**
+     * Query records of any name and type supported by {@link RData#forType}. Answers are decoded by one
+     * flyweight decoder per subscription and mapped to emitted values, so only the mapper decides what's allocated.
+     *
+     * @param ifIndex  Interface to query on, or 0 for all interfaces.
+     * @param fullName Full domain name of the records, e.g. a service name from
+     *                 {@link com.github.druk.dnssd.DNSSD#constructFullName} or a host name.
+     * @param rrtype   Record type, one of {@link NSType} constants supported by {@link RData#forType}.
+     * @param mapper   Maps the decoder of an answer to a value. It gets removals too.
+     * @return A {@link Flowable} of mapped answers. It fails with {@link IllegalArgumentException} for an
+     * unsupported type or malformed record data.
+     */
+    @NonNull
+    <D extends RData, T> Flowable<T> queryRecord(int ifIndex, @NonNull String fullName, int rrtype, @NonNull Rx2RecordMapper<D, T> mapper);
+
+    /**
+     * Query records of any name and type, see {@link #queryRecord(int, String, int, Rx2RecordMapper)}.
+     *
+     * @param backpressure What to do with answers the subscriber hasn't requested yet.
+     */
+    @NonNull
+    <D extends RData, T> Flowable<T> queryRecord(int ifIndex, @NonNull String fullName, int rrtype, @NonNull Rx2RecordMapper<D, T> mapper,
+                                                 @NonNull Rx2Backpressure<T> backpressure);
+
+    /**
+     * Browse, resolve and query addresses in one operation, the fused form of
+     * {@code browse(regType, domain).compose(resolve()).compose(queryIPRecords())}. Every found service is emitted
+     * once, resolved and with its addresses, instead of once per step. Addresses of the second family are awaited
+     * for {@link #DEFAULT_ADDRESS_WINDOW_MS} ms after the first one, on the computation scheduler. A resolve that
+     * times out is started again, and only services that were emitted are emitted again when they're lost.
+     *
+     * @param regType The registration type being browsed for followed by the protocol, e.g. "_ftp._tcp".
+     * @param domain  Domain to browse in.
+     * @return A {@link Flowable} of resolved services and of lost ones.
+     */
+    @NonNull
+    Flowable<BonjourService> discover(@NonNull String regType, @NonNull String domain);
+
+    /**
+     * Browse, resolve and query addresses in one operation, see {@link #discover(String, String)}.
+     *
+     * @param regType   The registration type being browsed for followed by the protocol, e.g. "_ftp._tcp".
+     * @param domain    Domain to browse in.
+     * @param window    How long to wait for the addresses of the second family after the first one.
+     * @param unit      Time unit of the window.
+     * @param scheduler Scheduler of the address window.
+     * @return A {@link Flowable} of resolved services and of lost ones.
+     */
+    @NonNull
+    Flowable<BonjourService> discover(@NonNull String regType, @NonNull String domain, long window, @NonNull TimeUnit unit,
+                                      @NonNull Scheduler scheduler);
+
+    /**
+     * Keep a service instance up to date. SRV, TXT and address records are queried over one shared daemon connection
+     * and merged into one {@link BonjourService}, which is emitted whenever its host name, port, TXT records or
+     * addresses change. Addresses are removed when their records expire or say goodbye. A goodbye of the SRV record
+     * emits the service as lost, the watch goes on in case it comes back.
+     *
+     * @param bs Service found by {@link #browse}.
+     * @return A {@link Flowable} of the service states, disposing it stops all queries.
+     */
+    @NonNull
+    Flowable<BonjourService> watch(@NonNull BonjourService bs);
+
+    /**
+     * Keep a service instance up to date, see {@link #watch(BonjourService)}.
+     *
+     * @param bs           Service found by {@link #browse}.
+     * @param backpressure What to do with states the subscriber hasn't requested yet, e.g.
+     *                     {@link Rx2Backpressure#latestPerService()} to skip to the newest one.
+     */
+    @NonNull
+    Flowable<BonjourService> watch(@NonNull BonjourService bs, @NonNull Rx2Backpressure<BonjourService> backpressure);
+
+    /**
+     * Feed a balancer with the SRV records of browsed services. Each found service is queried for its SRV
+     * records, a lost one is removed from the balancer together with its endpoints.
+     *
+     * @param balancer Balancer to keep up to date.
+     * @return A {@link FlowableTransformer} from browsed services to added, updated and lost endpoints.
+     */
+    @NonNull
+    FlowableTransformer<BonjourService, Rx2SrvBalancer.Endpoint> balance(@NonNull Rx2SrvBalancer balancer);
+
     @NonNull
     Flowable<BonjourService> register(@NonNull final BonjourService bs);
+
+    /**
+     * Register a service and get a handle to update its TXT records in place, without re-registering.
+     * Updates are coalesced within {@link Rx2Registration#DEFAULT_DEBOUNCE_MS} on the computation scheduler.
+     *
+     * @param bs Service to register.
+     * @return A {@link Flowable} that emits the handle when the service is registered, and again if it is renamed
+     * after a name conflict. Disposing it unregisters the service.
+     */
+    @NonNull
+    Flowable<Rx2Registration> registration(@NonNull final BonjourService bs);
+
+    /**
+     * Register a service and get a handle to update its TXT records in place, without re-registering.
+     *
+     * @param bs        Service to register.
+     * @param debounce  Window in which TXT updates are coalesced into one record update.
+     * @param unit      Time unit of the window.
+     * @param scheduler Scheduler that publishes the coalesced updates.
+     * @return A {@link Flowable} that emits the handle when the service is registered, and again if it is renamed
+     * after a name conflict. Disposing it unregisters the service.
+     */
+    @NonNull
+    Flowable<Rx2Registration> registration(@NonNull final BonjourService bs, long debounce, @NonNull TimeUnit unit,
+                                           @NonNull Scheduler scheduler);
 }
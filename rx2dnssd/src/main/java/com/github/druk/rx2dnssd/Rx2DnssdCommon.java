@@ -1,22 +1,26 @@
 package com.github.druk.rx2dnssd;
 
+import com.github.druk.dnssd.DNSName;
 import com.github.druk.dnssd.DNSSD;
 import com.github.druk.dnssd.DNSSDException;
 import com.github.druk.dnssd.DNSSDService;
 import com.github.druk.dnssd.NSClass;
 import com.github.druk.dnssd.NSType;
+import com.github.druk.dnssd.RData;
 import com.github.druk.dnssd.TXTRecord;
 
 import androidx.annotation.NonNull;
 
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
-import io.reactivex.BackpressureStrategy;
 import io.reactivex.Flowable;
 import io.reactivex.FlowableEmitter;
 import io.reactivex.FlowableOnSubscribe;
 import io.reactivex.FlowableTransformer;
+import io.reactivex.Scheduler;
 import io.reactivex.functions.Action;
+import io.reactivex.schedulers.Schedulers;
 
 abstract class Rx2DnssdCommon implements Rx2Dnssd {
 
@@ -46,9 +50,16 @@ abstract class Rx2DnssdCommon implements Rx2Dnssd {
     @Override
     //TODO: Finbugs: new DNSSDServiceCreator<BonjourService> should be a static class (Performance issue ???)
     public Flowable<BonjourService> browse(@NonNull final String regType, @NonNull final String domain) {
+        return browse(regType, domain, Rx2Backpressure.buffer());
+    }
+
+    @NonNull
+    @Override
+    public Flowable<BonjourService> browse(@NonNull final String regType, @NonNull final String domain,
+                                           @NonNull final Rx2Backpressure<BonjourService> backpressure) {
         return createFlowable(emitter ->
                 mDNSSD.browse(0, DNSSD.ALL_INTERFACES, regType, domain,
-                        new Rx2BrowseListener(emitter)));
+                        new Rx2BrowseListener(emitter)), backpressure);
     }
 
     /**
@@ -70,12 +81,33 @@ abstract class Rx2DnssdCommon implements Rx2Dnssd {
             if ((bs.getFlags() & BonjourService.LOST) == BonjourService.LOST) {
                 return Flowable.just(bs);
             }
-            return createFlowable(emitter ->
-                    mDNSSD.resolve(bs.getFlags(), bs.getIfIndex(), bs.getServiceName(), bs.getRegType(), bs.getDomain(),
-                            new Rx2ResolveListener(emitter, bs)));
+            return resolveService(bs);
         });
     }
 
+    @NonNull
+    @Override
+    public FlowableTransformer<BonjourService, BonjourService> resolve(@NonNull final Rx2ResolveScheduler scheduler) {
+        // Services are equal regardless of flags, so switchMap cancels a pending resolve when its instance is lost.
+        // A group ends with its LOST event and every instance needs its own group, so flatMap is not bounded.
+        return flowable -> flowable
+                .groupBy(bs -> bs)
+                .flatMap(group -> group
+                        .takeUntil(bs -> (bs.getFlags() & BonjourService.LOST) == BonjourService.LOST)
+                        .switchMap(bs -> {
+                            if ((bs.getFlags() & BonjourService.LOST) == BonjourService.LOST) {
+                                return Flowable.just(bs);
+                            }
+                            return scheduler.schedule(bs, resolveService(bs));
+                        }), Integer.MAX_VALUE);
+    }
+
+    private Flowable<BonjourService> resolveService(BonjourService bs) {
+        return createFlowable(emitter ->
+                mDNSSD.resolve(bs.getFlags(), bs.getIfIndex(), bs.getServiceName(), bs.getRegType(), bs.getDomain(),
+                        new Rx2ResolveListener(emitter, bs)));
+    }
+
     /**
      * Query ipv4 and ipv6 addresses
      *
@@ -222,6 +254,67 @@ abstract class Rx2DnssdCommon implements Rx2Dnssd {
                 new Rx2QueryListener(subscriber, new BonjourService.Builder(bs), false)));
     }
 
+    @NonNull
+    @Override
+    public <D extends RData, T> Flowable<T> queryRecord(int ifIndex, @NonNull String fullName, int rrtype, @NonNull Rx2RecordMapper<D, T> mapper) {
+        return queryRecord(ifIndex, fullName, rrtype, mapper, Rx2Backpressure.buffer());
+    }
+
+    @NonNull
+    @Override
+    public <D extends RData, T> Flowable<T> queryRecord(int ifIndex, @NonNull String fullName, int rrtype, @NonNull Rx2RecordMapper<D, T> mapper,
+                                                        @NonNull Rx2Backpressure<T> backpressure) {
+        if (RData.forType(rrtype) == null) {
+            return Flowable.error(new IllegalArgumentException("Unsupported type of record: " + rrtype));
+        }
+        return createFlowable(emitter -> {
+            // Checked by the caller's choice of mapper, a mismatch fails in map() with ClassCastException
+            @SuppressWarnings("unchecked")
+            D decoder = (D) RData.forType(rrtype);
+            return mDNSSD.queryRecord(0, ifIndex, fullName, rrtype, NSClass.IN, false, new Rx2RecordListener<>(emitter, decoder, mapper));
+        }, backpressure);
+    }
+
+    @NonNull
+    @Override
+    public Flowable<BonjourService> discover(@NonNull final String regType, @NonNull final String domain) {
+        return discover(regType, domain, DEFAULT_ADDRESS_WINDOW_MS, TimeUnit.MILLISECONDS, Schedulers.computation());
+    }
+
+    @NonNull
+    @Override
+    public Flowable<BonjourService> discover(@NonNull final String regType, @NonNull final String domain, final long window,
+                                             @NonNull final TimeUnit unit, @NonNull final Scheduler scheduler) {
+        return createFlowable(emitter -> new Rx2Discovery(mDNSSD, regType, domain, emitter, window, unit, scheduler).start());
+    }
+
+    @NonNull
+    @Override
+    public Flowable<BonjourService> watch(@NonNull final BonjourService bs) {
+        return watch(bs, Rx2Backpressure.buffer());
+    }
+
+    @NonNull
+    @Override
+    public Flowable<BonjourService> watch(@NonNull final BonjourService bs, @NonNull final Rx2Backpressure<BonjourService> backpressure) {
+        return createFlowable(emitter -> new Rx2ServiceWatcher(mDNSSD, bs, emitter).start(), backpressure);
+    }
+
+    @NonNull
+    @Override
+    public FlowableTransformer<BonjourService, Rx2SrvBalancer.Endpoint> balance(@NonNull final Rx2SrvBalancer balancer) {
+        // switchMap cancels the SRV query of an instance when it's lost and the group ends with it,
+        // every instance queries SRV records in its own group so flatMap is not bounded
+        return flowable -> flowable
+                .groupBy(bs -> DNSName.constructFullName(bs.getServiceName(), bs.getRegType(), bs.getDomain()))
+                .flatMap(group -> group
+                        .takeUntil(BonjourService::isLost)
+                        .switchMap(bs -> bs.isLost()
+                                ? Flowable.fromIterable(balancer.removeInstance(group.getKey()))
+                                : queryRecord(bs.getIfIndex(), group.getKey(), NSType.SRV, balancer.srvMapper(group.getKey()))),
+                        Integer.MAX_VALUE);
+    }
+
     @NonNull
     @Override
     public Flowable<BonjourService> register(@NonNull final BonjourService bs) {
@@ -230,6 +323,21 @@ abstract class Rx2DnssdCommon implements Rx2Dnssd {
                         createTxtRecord(bs.getTxtRecords()), new Rx2RegisterListener(emitter)));
     }
 
+    @NonNull
+    @Override
+    public Flowable<Rx2Registration> registration(@NonNull final BonjourService bs) {
+        return registration(bs, Rx2Registration.DEFAULT_DEBOUNCE_MS, TimeUnit.MILLISECONDS, Schedulers.computation());
+    }
+
+    @NonNull
+    @Override
+    public Flowable<Rx2Registration> registration(@NonNull final BonjourService bs, long debounce, @NonNull TimeUnit unit,
+                                                  @NonNull Scheduler scheduler) {
+        return createFlowable(emitter ->
+                mDNSSD.register(bs.getFlags(), bs.getIfIndex(), bs.getServiceName(), bs.getRegType(), bs.getDomain(), null, bs.getPort(),
+                        createTxtRecord(bs.getTxtRecords()), new Rx2RegistrationListener(emitter, bs, debounce, unit, scheduler)));
+    }
+
     @SuppressWarnings("PMD.SignatureDeclareThrowsException")
     private static class DNSSDServiceAction<T> implements FlowableOnSubscribe<T>, Action {
 
@@ -265,12 +373,16 @@ abstract class Rx2DnssdCommon implements Rx2Dnssd {
     }
 
     private <T> Flowable<T> createFlowable(DNSSDServiceCreator<T> creator) {
+        return createFlowable(creator, Rx2Backpressure.buffer());
+    }
+
+    private <T> Flowable<T> createFlowable(DNSSDServiceCreator<T> creator, Rx2Backpressure<T> backpressure) {
         DNSSDServiceAction<T> action = new DNSSDServiceAction<>(creator);
-        return Flowable.create(action, BackpressureStrategy.BUFFER)
+        return backpressure.create(action)
                 .doFinally(action);
     }
 
-    private static TXTRecord createTxtRecord(Map<String, String> records) {
+    static TXTRecord createTxtRecord(Map<String, String> records) {
         TXTRecord txtRecord = new TXTRecord();
         for (Map.Entry<String, String> entry : records.entrySet()) {
             txtRecord.set(entry.getKey(), entry.getValue());
@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2016 Andriy Druk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.druk.rx2dnssd;
+
+import com.github.druk.dnssd.DNSSDService;
+import com.github.druk.dnssd.QueryListener;
+import com.github.druk.dnssd.RData;
+
+import io.reactivex.FlowableEmitter;
+
+class Rx2RecordListener<D extends RData, T> implements QueryListener {
+
+    private final FlowableEmitter<? super T> emitter;
+    private final D decoder;
+    private final Rx2RecordMapper<D, T> mapper;
+
+    Rx2RecordListener(FlowableEmitter<? super T> emitter, D decoder, Rx2RecordMapper<D, T> mapper) {
+        this.emitter = emitter;
+        this.decoder = decoder;
+        this.mapper = mapper;
+    }
+
+    @Override
+    public void queryAnswered(DNSSDService query, int flags, int ifIndex, String fullName, int rrtype, int rrclass, byte[] rdata, int ttl) {
+        if (emitter.isCancelled()) {
+            return;
+        }
+        T value;
+        try {
+            decoder.wrap(rdata);
+            value = mapper.map(decoder, flags, ifIndex, ttl);
+        } catch (Exception e) {
+            emitter.tryOnError(e);
+            return;
+        }
+        if (value != null) {
+            emitter.onNext(value);
+        }
+    }
+
+    @Override
+    public void operationFailed(DNSSDService service, int errorCode) {
+        if (emitter.isCancelled()) {
+            return;
+        }
+        emitter.onError(new RuntimeException("DNSSD queryRecord error: " + errorCode));
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2016 Andriy Druk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.druk.rx2dnssd;
+
+import com.github.druk.dnssd.RData;
+
+/**
+ * Maps an answer of {@link Rx2Dnssd#queryRecord} to the value it emits.
+ *
+ * @param <D> Decoder of the queried record type, e.g. {@link RData.SRV} for {@link com.github.druk.dnssd.NSType#SRV}.
+ * @param <T> Type of emitted values.
+ */
+public interface Rx2RecordMapper<D extends RData, T> {
+
+    /**
+     * @param rdata   Decoder wrapping the answer. It's reused for the next answer, so don't keep it.
+     * @param flags   Flags of the answer, {@link com.github.druk.dnssd.DNSSD#ADD} is clear if the record was removed.
+     * @param ifIndex Interface the answer was received on.
+     * @param ttl     Time to live of the record, in seconds.
+     * @return Value to emit, or null to skip the answer.
+     */
+    T map(D rdata, int flags, int ifIndex, int ttl) throws Exception;
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2016 Andriy Druk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.druk.rx2dnssd;
+
+import com.github.druk.dnssd.DNSRecord;
+import com.github.druk.dnssd.DNSSDException;
+import com.github.druk.dnssd.DNSSDRegistration;
+
+import androidx.annotation.NonNull;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.FlowableEmitter;
+import io.reactivex.Scheduler;
+
+/**
+ * Handle of a registered service, emitted by {@link Rx2Dnssd#registration(BonjourService)}.<P>
+ *
+ * TXT updates are published through the primary TXT record of the registration, so peers see the new
+ * TXT record without a goodbye and a new probe. Updates made within the debounce window are coalesced into
+ * one {@link DNSRecord#update}. The handle is valid until the registration {@link io.reactivex.Flowable} is
+ * disposed, later updates are ignored.
+ */
+public final class Rx2Registration {
+
+    /**
+     * Default debounce window. A responder announces a changed record at most once per second
+     * (RFC 6762 section 6.2), so faster updates wouldn't reach peers anyway.
+     */
+    public static final long DEFAULT_DEBOUNCE_MS = 1000;
+
+    private final DNSRecord txtRecord;
+    private final FlowableEmitter<? super Rx2Registration> emitter;
+    private final Scheduler.Worker worker;
+    private final long debounce;
+    private final TimeUnit unit;
+    private volatile BonjourService service;
+
+    // Guarded by this. Flush holds the lock over DNSRecord.update() so it never races with stop()
+    private Map<String, String> published;
+    private Map<String, String> pending;
+    private boolean stopped;
+    private long updateCount;
+
+    Rx2Registration(DNSSDRegistration registration, BonjourService service, FlowableEmitter<? super Rx2Registration> emitter,
+                    long debounce, TimeUnit unit, Scheduler scheduler) throws DNSSDException {
+        this.txtRecord = registration.getTXTRecord();
+        this.service = service;
+        this.emitter = emitter;
+        this.debounce = debounce;
+        this.unit = unit;
+        this.worker = scheduler.createWorker();
+        this.published = service.getTxtRecords();
+    }
+
+    /**
+     * @return The registered service with its name after conflict resolution and the last published TXT records.
+     */
+    @NonNull
+    public BonjourService getService() {
+        return service;
+    }
+
+    /**
+     * Replace all TXT records of the service. The update is published at the end of the debounce window,
+     * together with any other update made in the same window.
+     *
+     * @param txtRecords New TXT records.
+     */
+    public void updateTxtRecords(@NonNull Map<String, String> txtRecords) {
+        Map<String, String> update = new HashMap<>(txtRecords);
+        boolean schedule;
+        synchronized (this) {
+            if (stopped) {
+                return;
+            }
+            schedule = pending == null;
+            pending = update;
+        }
+        if (schedule) {
+            worker.schedule(this::flush, debounce, unit);
+        }
+    }
+
+    /**
+     * Set one TXT record of the service, keeping the others. The update is published at the end of the
+     * debounce window, together with any other update made in the same window.
+     *
+     * @param key   TXT record key.
+     * @param value TXT record value, or null to remove the key.
+     */
+    public void putTxtRecord(@NonNull String key, String value) {
+        boolean schedule;
+        synchronized (this) {
+            if (stopped) {
+                return;
+            }
+            schedule = pending == null;
+            if (schedule) {
+                pending = new HashMap<>(published);
+            }
+            if (value != null) {
+                pending.put(key, value);
+            } else {
+                pending.remove(key);
+            }
+        }
+        if (schedule) {
+            worker.schedule(this::flush, debounce, unit);
+        }
+    }
+
+    /**
+     * @return Number of {@link DNSRecord#update} calls made for this registration.
+     */
+    public synchronized long getUpdateCount() {
+        return updateCount;
+    }
+
+    synchronized void registered(BonjourService service) {
+        this.service = new BonjourService.Builder(service).dnsRecords(published).build();
+    }
+
+    void stop() {
+        synchronized (this) {
+            stopped = true;
+            pending = null;
+        }
+        worker.dispose();
+    }
+
+    private void flush() {
+        DNSSDException error = null;
+        synchronized (this) {
+            Map<String, String> txt = pending;
+            pending = null;
+            if (stopped || txt == null || txt.equals(published)) {
+                return;
+            }
+            try {
+                txtRecord.update(0, Rx2DnssdCommon.createTxtRecord(txt).getRawBytes(), 0);
+                updateCount++;
+                published = Collections.unmodifiableMap(txt);
+                service = new BonjourService.Builder(service).dnsRecords(published).build();
+            } catch (DNSSDException e) {
+                error = e;
+            }
+        }
+        if (error != null) {
+            emitter.tryOnError(error);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2016 Andriy Druk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.druk.rx2dnssd;
+
+import com.github.druk.dnssd.DNSSDException;
+import com.github.druk.dnssd.DNSSDRegistration;
+import com.github.druk.dnssd.DNSSDService;
+import com.github.druk.dnssd.RegisterListener;
+
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.FlowableEmitter;
+import io.reactivex.Scheduler;
+
+class Rx2RegistrationListener implements RegisterListener {
+    private final FlowableEmitter<? super Rx2Registration> emitter;
+    private final BonjourService bs;
+    private final long debounce;
+    private final TimeUnit unit;
+    private final Scheduler scheduler;
+    private Rx2Registration handle;
+
+    Rx2RegistrationListener(FlowableEmitter<? super Rx2Registration> emitter, BonjourService bs, long debounce, TimeUnit unit,
+                            Scheduler scheduler) {
+        this.emitter = emitter;
+        this.bs = bs;
+        this.debounce = debounce;
+        this.unit = unit;
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public void serviceRegistered(DNSSDRegistration registration, int flags, String serviceName, String regType, String domain) {
+        if (emitter.isCancelled()) {
+            return;
+        }
+        BonjourService service = new BonjourService.Builder(flags, bs.getIfIndex(), serviceName, regType, domain)
+                .port(bs.getPort()).dnsRecords(bs.getTxtRecords()).build();
+        // Called again with the new name if the service was renamed after a conflict
+        if (handle == null) {
+            try {
+                handle = new Rx2Registration(registration, service, emitter, debounce, unit, scheduler);
+            } catch (DNSSDException e) {
+                emitter.onError(e);
+                return;
+            }
+            emitter.setCancellable(handle::stop);
+        } else {
+            handle.registered(service);
+        }
+        emitter.onNext(handle);
+    }
+
+    @Override
+    public void operationFailed(DNSSDService service, int errorCode) {
+        if (emitter.isCancelled()) {
+            return;
+        }
+        emitter.onError(new RuntimeException("DNSSD register error: " + errorCode));
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2016 Andriy Druk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.druk.rx2dnssd;
+
+import com.github.druk.dnssd.DNSSD;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.reactivex.Completable;
+import io.reactivex.CompletableEmitter;
+import io.reactivex.CompletableOnSubscribe;
+import io.reactivex.Flowable;
+import io.reactivex.Scheduler;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * Limits how many resolves of {@link Rx2Dnssd#resolve(Rx2ResolveScheduler)} run at once.<P>
+ *
+ * Every resolve holds a native operation, with its thread and socket, until the answer comes. Resolves above the
+ * limit wait in a queue ordered by {@link Priority}, higher values first and in arrival order otherwise. A queued
+ * resolve that is cancelled, for example because its service was lost or the browse was disposed, never starts a
+ * native operation. A started resolve holds its slot until it answers, fails, is cancelled or reaches
+ * {@link DNSSD#DNSSD_DEFAULT_TIMEOUT}, after which DNSSD stops it without an answer.<P>
+ *
+ * One scheduler can be shared by several resolve chains to bound them together.
+ */
+public final class Rx2ResolveScheduler {
+
+    /** Default number of resolves that run at once. */
+    public static final int DEFAULT_MAX_IN_FLIGHT = 4;
+
+    private static final int QUEUED = 0;
+    private static final int RUNNING = 1;
+    private static final int DONE = 2;
+
+    /**
+     * Priority of a service waiting to be resolved, e.g. {@code bs -> isVisible(bs) ? 1 : 0}. It's evaluated when
+     * the resolve is queued and on {@link #reprioritize()}, with the scheduler locked, so it must be fast.
+     */
+    public interface Priority {
+        int of(@NonNull BonjourService service);
+    }
+
+    private final int maxInFlight;
+    private final Priority priority;
+    private final long timeout;
+    private final TimeUnit unit;
+    private final Scheduler scheduler;
+    private final AtomicInteger wip = new AtomicInteger();
+
+    // Guarded by this. Cancelled tasks stay in the queue until polled or compacted
+    private PriorityQueue<Task> queue = new PriorityQueue<>();
+    private long sequence;
+    private int queued;
+    private int inFlight;
+
+    public Rx2ResolveScheduler() {
+        this(DEFAULT_MAX_IN_FLIGHT, null);
+    }
+
+    /**
+     * @param maxInFlight Number of resolves that run at once.
+     */
+    public Rx2ResolveScheduler(int maxInFlight) {
+        this(maxInFlight, null);
+    }
+
+    /**
+     * @param maxInFlight Number of resolves that run at once.
+     * @param priority    Order of the queued resolves, or null to run them in arrival order.
+     */
+    public Rx2ResolveScheduler(int maxInFlight, @Nullable Priority priority) {
+        this(maxInFlight, priority, DNSSD.DNSSD_DEFAULT_TIMEOUT, TimeUnit.MILLISECONDS, Schedulers.computation());
+    }
+
+    Rx2ResolveScheduler(int maxInFlight, Priority priority, long timeout, TimeUnit unit, Scheduler scheduler) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be positive: " + maxInFlight);
+        }
+        this.maxInFlight = maxInFlight;
+        this.priority = priority;
+        this.timeout = timeout;
+        this.unit = unit;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Evaluate the priority of the queued resolves again, e.g. after the visible part of a list changed.
+     */
+    public void reprioritize() {
+        synchronized (this) {
+            List<Task> tasks = new ArrayList<>(queued);
+            for (Task task : queue) {
+                if (task.state == QUEUED) {
+                    task.priority = priorityOf(task.service);
+                    tasks.add(task);
+                }
+            }
+            queue = new PriorityQueue<>(Math.max(1, tasks.size()));
+            queue.addAll(tasks);
+        }
+    }
+
+    /** @return Number of resolves that run now. */
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /** @return Number of resolves waiting for a slot. */
+    public synchronized int getQueued() {
+        return queued;
+    }
+
+    /**
+     * Subscribe to the source once a slot is free.
+     *
+     * @param service Service of the resolve, used for its priority.
+     * @param source  Resolve of the service.
+     */
+    <T> Flowable<T> schedule(@NonNull BonjourService service, @NonNull Flowable<T> source) {
+        return Flowable.defer(() -> {
+            Task task = new Task(service);
+            return Completable.create(task)
+                    .andThen(source.takeUntil(Flowable.timer(timeout, unit, scheduler)))
+                    .doFinally(() -> finish(task));
+        });
+    }
+
+    private int priorityOf(BonjourService service) {
+        return priority != null ? priority.of(service) : 0;
+    }
+
+    private synchronized void enqueue(Task task) {
+        task.priority = priorityOf(task.service);
+        task.sequence = sequence++;
+        queue.add(task);
+        queued++;
+    }
+
+    private void finish(Task task) {
+        synchronized (this) {
+            if (task.state == QUEUED) {
+                task.state = DONE;
+                queued--;
+                if (queue.size() > 2 * queued + 16) {
+                    reprioritize(); // Drop cancelled tasks so a storm of them doesn't pile up
+                }
+                return;
+            }
+            if (task.state == DONE) {
+                return;
+            }
+            task.state = DONE;
+            inFlight--;
+        }
+        drain();
+    }
+
+    // A started resolve may fail synchronously and finish, so starts are looped here instead of recursing
+    private void drain() {
+        if (wip.getAndIncrement() != 0) {
+            return;
+        }
+        do {
+            Task task;
+            while ((task = poll()) != null) {
+                task.emitter.onComplete();
+            }
+        } while (wip.decrementAndGet() != 0);
+    }
+
+    private synchronized Task poll() {
+        while (inFlight < maxInFlight) {
+            Task task = queue.poll();
+            if (task == null) {
+                return null;
+            }
+            if (task.state == QUEUED) {
+                task.state = RUNNING;
+                queued--;
+                inFlight++;
+                return task;
+            }
+        }
+        return null;
+    }
+
+    private class Task implements CompletableOnSubscribe, Comparable<Task> {
+
+        private final BonjourService service;
+
+        // Guarded by the scheduler
+        private int state = QUEUED;
+        private int priority;
+        private long sequence;
+        private CompletableEmitter emitter;
+
+        Task(BonjourService service) {
+            this.service = service;
+        }
+
+        @Override
+        public void subscribe(CompletableEmitter emitter) {
+            this.emitter = emitter;
+            enqueue(this);
+            drain();
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            if (priority != other.priority) {
+                return priority > other.priority ? -1 : 1;
+            }
+            return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+        }
+    }
+}
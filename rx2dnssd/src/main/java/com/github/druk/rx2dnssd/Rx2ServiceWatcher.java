@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2016 Andriy Druk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.druk.rx2dnssd;
+
+import com.github.druk.dnssd.DNSName;
+import com.github.druk.dnssd.DNSSD;
+import com.github.druk.dnssd.DNSSDException;
+import com.github.druk.dnssd.DNSSDQueryGroup;
+import com.github.druk.dnssd.DNSSDService;
+import com.github.druk.dnssd.NSClass;
+import com.github.druk.dnssd.NSType;
+import com.github.druk.dnssd.QueryListener;
+import com.github.druk.dnssd.RData;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import io.reactivex.FlowableEmitter;
+
+/**
+ * State of a watched service instance, fed by SRV and TXT queries of the instance and A/AAAA queries of its
+ * target. All queries run on one {@link DNSSDQueryGroup}. The state is emitted only when a field changes and
+ * once the SRV record is known. A goodbye of the SRV record emits the service as lost.
+ */
+class Rx2ServiceWatcher implements QueryListener {
+
+    private final DNSSD dnssd;
+    private final BonjourService service;
+    private final FlowableEmitter<? super BonjourService> emitter;
+    private final RData.SRV srv = (RData.SRV) RData.forType(NSType.SRV);
+
+    // Guarded by this
+    private DNSSDQueryGroup group;
+    private DNSSDService inet4Query;
+    private DNSSDService inet6Query;
+    private String hostname;
+    private int port;
+    private byte[] txtRecord;
+    private Map<String, String> txtRecords = Collections.emptyMap();
+    private final List<InetAddress> inetAddresses = new ArrayList<>();
+    private boolean emitted;
+
+    Rx2ServiceWatcher(DNSSD dnssd, BonjourService service, FlowableEmitter<? super BonjourService> emitter) {
+        this.dnssd = dnssd;
+        this.service = service;
+        this.emitter = emitter;
+    }
+
+    /**
+     * Start the SRV and TXT queries.
+     *
+     * @return The query group, stopping it stops all queries of the watcher.
+     */
+    synchronized DNSSDService start() throws DNSSDException {
+        String fullName = DNSName.constructFullName(service.getServiceName(), service.getRegType(), service.getDomain());
+        group = dnssd.createQueryGroup();
+        try {
+            group.queryRecord(0, service.getIfIndex(), fullName, NSType.SRV, NSClass.IN, this);
+            group.queryRecord(0, service.getIfIndex(), fullName, NSType.TXT, NSClass.IN, this);
+        } catch (DNSSDException e) {
+            group.stop();
+            throw e;
+        }
+        return group;
+    }
+
+    @Override
+    public synchronized void queryAnswered(DNSSDService query, int flags, int ifIndex, String fullName, int rrtype, int rrclass,
+                                           byte[] rdata, int ttl) {
+        if (emitter.isCancelled()) {
+            return;
+        }
+        boolean add = (flags & DNSSD.ADD) != 0;
+        boolean changed;
+        try {
+            if (rrtype == NSType.SRV) {
+                changed = add ? srvAdded(rdata) : srvRemoved(rdata);
+            } else if (rrtype == NSType.TXT) {
+                changed = add ? txtAdded(rdata) : txtRemoved(rdata);
+            } else if (rrtype == NSType.A || rrtype == NSType.AAAA) {
+                // Answers of the address queries of a previous target may still be queued
+                changed = (query == inet4Query || query == inet6Query) && addressChanged(add, InetAddress.getByAddress(rdata));
+            } else {
+                throw new IllegalArgumentException("Unsupported type of record: " + rrtype);
+            }
+        } catch (DNSSDException | UnknownHostException | IllegalArgumentException e) {
+            emitter.tryOnError(e);
+            return;
+        }
+        if (changed && hostname != null) {
+            emitted = true;
+            emitter.onNext(build(service.getFlags()));
+        }
+    }
+
+    @Override
+    public void operationFailed(DNSSDService service, int errorCode) {
+        if (emitter.isCancelled()) {
+            return;
+        }
+        emitter.tryOnError(new RuntimeException("DNSSD queryRecord error: " + errorCode));
+    }
+
+    private boolean srvAdded(byte[] rdata) throws DNSSDException {
+        srv.wrap(rdata);
+        if (hostname != null && srv.targetEquals(hostname)) {
+            if (port == srv.getPort()) {
+                return false;
+            }
+            port = srv.getPort();
+            return true;
+        }
+        stopAddressQueries();
+        hostname = srv.getTarget();
+        port = srv.getPort();
+        inet4Query = group.queryRecord(0, service.getIfIndex(), hostname, NSType.A, NSClass.IN, this);
+        inet6Query = group.queryRecord(0, service.getIfIndex(), hostname, NSType.AAAA, NSClass.IN, this);
+        return true;
+    }
+
+    private boolean srvRemoved(byte[] rdata) {
+        srv.wrap(rdata);
+        if (hostname == null || port != srv.getPort() || !srv.targetEquals(hostname)) {
+            return false; // Goodbye of a record that was already replaced
+        }
+        stopAddressQueries();
+        hostname = null;
+        port = 0;
+        if (emitted) {
+            emitted = false;
+            emitter.onNext(build(service.getFlags() | BonjourService.LOST));
+        }
+        return false;
+    }
+
+    private boolean txtAdded(byte[] rdata) {
+        if (Arrays.equals(txtRecord, rdata)) {
+            return false;
+        }
+        txtRecord = rdata;
+        txtRecords = DNSSD.parseTXTRecords(rdata);
+        return true;
+    }
+
+    private boolean txtRemoved(byte[] rdata) {
+        // An in-place update adds the new record before or after the goodbye of the old one
+        if (!Arrays.equals(txtRecord, rdata)) {
+            return false;
+        }
+        txtRecord = null;
+        txtRecords = Collections.emptyMap();
+        return true;
+    }
+
+    private boolean addressChanged(boolean add, InetAddress address) {
+        if (add) {
+            if (inetAddresses.contains(address)) {
+                return false;
+            }
+            inetAddresses.add(address);
+            return true;
+        }
+        return inetAddresses.remove(address);
+    }
+
+    private void stopAddressQueries() {
+        if (inet4Query != null) {
+            inet4Query.stop();
+            inet6Query.stop();
+            inet4Query = null;
+            inet6Query = null;
+        }
+        inetAddresses.clear();
+    }
+
+    private BonjourService build(int flags) {
+        BonjourService.Builder builder = new BonjourService.Builder(flags, service.getIfIndex(), service.getServiceName(),
+                service.getRegType(), service.getDomain())
+                .hostname(hostname)
+                .port(port)
+                .dnsRecords(txtRecords);
+        for (InetAddress address : inetAddresses) {
+            builder.inetAddress(address);
+        }
+        return builder.build();
+    }
+}
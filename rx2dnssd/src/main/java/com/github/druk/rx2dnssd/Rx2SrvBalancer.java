@@ -0,0 +1,429 @@
+/*
+ * Copyright (C) 2016 Andriy Druk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.druk.rx2dnssd;
+
+import com.github.druk.dnssd.DNSSD;
+import com.github.druk.dnssd.RData;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Client side load balancer over the SRV records of discovered service instances.<P>
+ *
+ * Selection follows RFC 2782: only endpoints of the lowest priority are picked, in proportion to their SRV weight.
+ * The weight is divided by an exponentially weighted moving average of the connect latency reported with
+ * {@link #reportLatency}, so faster replicas get more traffic. Endpoints without samples are assumed to be as fast as
+ * the average of their priority group.<P>
+ *
+ * {@link #pick()} is O(1) and lock free: it reads an alias table that is rebuilt when endpoints change or when
+ * a latency average drifts more than {@link #REBUILD_DRIFT} from the value the table was built with.
+ * Endpoints are fed by {@link Rx2Dnssd#balance(Rx2SrvBalancer)} or by {@link #srvMapper(String)}.
+ */
+public final class Rx2SrvBalancer {
+
+    /** Default smoothing factor of the latency average, the weight of the newest sample. */
+    public static final double DEFAULT_ALPHA = 0.3;
+
+    /** Relative change of a latency average that makes the next report rebuild the alias table. */
+    public static final double REBUILD_DRIFT = 0.2;
+
+    // RFC 2782: weight 0 entries should have a very small chance of being selected when there are others
+    private static final double ZERO_WEIGHT = 0.01;
+
+    private static final Table EMPTY = new Table(new Endpoint[0], new double[0], new int[0]);
+
+    private final double alpha;
+    private final Random random;
+
+    // Guarded by this
+    private final Map<String, List<Endpoint>> instances = new HashMap<>();
+
+    private volatile Table table = EMPTY;
+
+    public Rx2SrvBalancer() {
+        this(DEFAULT_ALPHA);
+    }
+
+    /**
+     * @param alpha Smoothing factor of the latency average in (0, 1], the weight of the newest sample.
+     */
+    public Rx2SrvBalancer(double alpha) {
+        this(alpha, new Random());
+    }
+
+    Rx2SrvBalancer(double alpha, Random random) {
+        if (!(alpha > 0 && alpha <= 1)) {
+            throw new IllegalArgumentException("alpha must be in (0, 1]: " + alpha);
+        }
+        this.alpha = alpha;
+        this.random = random;
+    }
+
+    /**
+     * Pick an endpoint for a request.
+     *
+     * @return Endpoint of the lowest priority, chosen by weight and latency, or null if there are no endpoints.
+     */
+    @Nullable
+    public Endpoint pick() {
+        Table t = table;
+        int n = t.endpoints.length;
+        if (n == 0) {
+            return null;
+        }
+        int i = random.nextInt(n);
+        return random.nextDouble() < t.probability[i] ? t.endpoints[i] : t.endpoints[t.alias[i]];
+    }
+
+    /**
+     * Report how long it took to connect to an endpoint.
+     *
+     * @param endpoint Endpoint returned by {@link #pick()}.
+     * @param latency  Connect latency.
+     * @param unit     Time unit of the latency.
+     */
+    public void reportLatency(@NonNull Endpoint endpoint, long latency, @NonNull TimeUnit unit) {
+        double sample = Math.max(1, unit.toNanos(latency));
+        synchronized (this) {
+            endpoint.latency = endpoint.latency == 0 ? sample : endpoint.latency + alpha * (sample - endpoint.latency);
+            if (endpoint.lost) {
+                return;
+            }
+            double tabled = endpoint.tabledLatency;
+            if (tabled == 0 || Math.abs(endpoint.latency - tabled) > tabled * REBUILD_DRIFT) {
+                rebuild();
+            }
+        }
+    }
+
+    /**
+     * Add an endpoint, or update priority and weight of a known one.
+     *
+     * @return The endpoint of the instance with this target and port.
+     */
+    @NonNull
+    public Endpoint put(@NonNull String instance, @NonNull String target, int port, int priority, int weight) {
+        synchronized (this) {
+            List<Endpoint> endpoints = endpoints(instance);
+            for (Endpoint endpoint : endpoints) {
+                if (endpoint.port == port && endpoint.target.equals(target)) {
+                    return update(endpoint, priority, weight);
+                }
+            }
+            return add(endpoints, new Endpoint(instance, target, port, priority, weight));
+        }
+    }
+
+    /**
+     * Remove an endpoint.
+     *
+     * @return The removed endpoint, or null if it wasn't known.
+     */
+    @Nullable
+    public Endpoint remove(@NonNull String instance, @NonNull String target, int port) {
+        synchronized (this) {
+            List<Endpoint> endpoints = instances.get(instance);
+            if (endpoints != null) {
+                for (int i = 0; i < endpoints.size(); i++) {
+                    Endpoint endpoint = endpoints.get(i);
+                    if (endpoint.port == port && endpoint.target.equals(target)) {
+                        return remove(endpoints, i);
+                    }
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Remove all endpoints of a service instance, e.g. when it's lost.
+     *
+     * @return The removed endpoints.
+     */
+    @NonNull
+    public List<Endpoint> removeInstance(@NonNull String instance) {
+        synchronized (this) {
+            List<Endpoint> endpoints = instances.remove(instance);
+            if (endpoints == null) {
+                return Collections.emptyList();
+            }
+            for (Endpoint endpoint : endpoints) {
+                endpoint.lost = true;
+            }
+            rebuild();
+            return endpoints;
+        }
+    }
+
+    /**
+     * @return Snapshot of all endpoints, of every priority.
+     */
+    @NonNull
+    public List<Endpoint> getEndpoints() {
+        synchronized (this) {
+            List<Endpoint> result = new ArrayList<>();
+            for (List<Endpoint> endpoints : instances.values()) {
+                result.addAll(endpoints);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Mapper for {@link Rx2Dnssd#queryRecord} of the SRV records of one service instance, that keeps this
+     * balancer up to date. Known endpoints are matched without decoding the target name.
+     *
+     * @param instance Full name of the service instance.
+     * @return Mapper that emits added, updated and removed endpoints.
+     */
+    @NonNull
+    public Rx2RecordMapper<RData.SRV, Endpoint> srvMapper(@NonNull final String instance) {
+        return (srv, flags, ifIndex, ttl) -> {
+            synchronized (this) {
+                List<Endpoint> endpoints = instances.get(instance);
+                int size = endpoints == null ? 0 : endpoints.size();
+                for (int i = 0; i < size; i++) {
+                    Endpoint endpoint = endpoints.get(i);
+                    if (endpoint.port == srv.getPort() && srv.targetEquals(endpoint.target)) {
+                        return (flags & DNSSD.ADD) != 0 ? update(endpoint, srv.getPriority(), srv.getWeight()) : remove(endpoints, i);
+                    }
+                }
+                if ((flags & DNSSD.ADD) == 0) {
+                    return null;
+                }
+                return add(endpoints(instance), new Endpoint(instance, srv.getTarget(), srv.getPort(), srv.getPriority(), srv.getWeight()));
+            }
+        };
+    }
+
+    private List<Endpoint> endpoints(String instance) {
+        List<Endpoint> endpoints = instances.get(instance);
+        if (endpoints == null) {
+            endpoints = new ArrayList<>(1);
+            instances.put(instance, endpoints);
+        }
+        return endpoints;
+    }
+
+    private Endpoint add(List<Endpoint> endpoints, Endpoint endpoint) {
+        endpoints.add(endpoint);
+        rebuild();
+        return endpoint;
+    }
+
+    private Endpoint update(Endpoint endpoint, int priority, int weight) {
+        if (endpoint.priority != priority || endpoint.weight != weight) {
+            endpoint.priority = priority;
+            endpoint.weight = weight;
+            rebuild();
+        }
+        return endpoint;
+    }
+
+    private Endpoint remove(List<Endpoint> endpoints, int index) {
+        Endpoint endpoint = endpoints.remove(index);
+        endpoint.lost = true;
+        if (endpoints.isEmpty()) {
+            instances.remove(endpoint.instance);
+        }
+        rebuild();
+        return endpoint;
+    }
+
+    // Vose's alias method over the lowest priority group, O(n) per rebuild. Called with the lock held
+    private void rebuild() {
+        int priority = Integer.MAX_VALUE;
+        int n = 0;
+        for (List<Endpoint> endpoints : instances.values()) {
+            for (Endpoint endpoint : endpoints) {
+                if (endpoint.priority < priority) {
+                    priority = endpoint.priority;
+                    n = 0;
+                }
+                if (endpoint.priority == priority) {
+                    n++;
+                }
+            }
+        }
+        if (n == 0) {
+            table = EMPTY;
+            return;
+        }
+        Endpoint[] group = new Endpoint[n];
+        int k = 0;
+        double weightSum = 0;
+        double latencySum = 0;
+        int sampled = 0;
+        for (List<Endpoint> endpoints : instances.values()) {
+            for (Endpoint endpoint : endpoints) {
+                if (endpoint.priority == priority) {
+                    group[k++] = endpoint;
+                    weightSum += endpoint.weight;
+                    if (endpoint.latency != 0) {
+                        latencySum += endpoint.latency;
+                        sampled++;
+                    }
+                }
+            }
+        }
+        double defaultLatency = sampled == 0 ? 1 : latencySum / sampled;
+        double[] share = new double[n];
+        double total = 0;
+        for (int i = 0; i < n; i++) {
+            Endpoint endpoint = group[i];
+            double weight = weightSum == 0 ? 1 : endpoint.weight == 0 ? ZERO_WEIGHT : endpoint.weight;
+            endpoint.tabledLatency = endpoint.latency;
+            share[i] = weight / (endpoint.latency == 0 ? defaultLatency : endpoint.latency);
+            total += share[i];
+        }
+
+        double[] probability = new double[n];
+        int[] alias = new int[n];
+        int[] small = new int[n];
+        int[] large = new int[n];
+        int smallSize = 0;
+        int largeSize = 0;
+        for (int i = 0; i < n; i++) {
+            share[i] = share[i] * n / total;
+            if (share[i] < 1) {
+                small[smallSize++] = i;
+            } else {
+                large[largeSize++] = i;
+            }
+        }
+        while (smallSize > 0 && largeSize > 0) {
+            int s = small[--smallSize];
+            int l = large[--largeSize];
+            probability[s] = share[s];
+            alias[s] = l;
+            share[l] = share[l] + share[s] - 1;
+            if (share[l] < 1) {
+                small[smallSize++] = l;
+            } else {
+                large[largeSize++] = l;
+            }
+        }
+        // Leftovers are 1 up to rounding errors
+        while (largeSize > 0) {
+            probability[large[--largeSize]] = 1;
+        }
+        while (smallSize > 0) {
+            probability[small[--smallSize]] = 1;
+        }
+        table = new Table(group, probability, alias);
+    }
+
+    private static final class Table {
+        final Endpoint[] endpoints;
+        final double[] probability;
+        final int[] alias;
+
+        Table(Endpoint[] endpoints, double[] probability, int[] alias) {
+            this.endpoints = endpoints;
+            this.probability = probability;
+            this.alias = alias;
+        }
+    }
+
+    /**
+     * Target and port of a service instance, from one SRV record.
+     */
+    public static final class Endpoint {
+
+        private final String instance;
+        private final String target;
+        private final int port;
+
+        // Guarded by the balancer
+        private volatile int priority;
+        private volatile int weight;
+        private volatile double latency;
+        private volatile boolean lost;
+        private double tabledLatency;
+
+        Endpoint(String instance, String target, int port, int priority, int weight) {
+            this.instance = instance;
+            this.target = target;
+            this.port = port;
+            this.priority = priority;
+            this.weight = weight;
+        }
+
+        /**
+         * @return Full name of the service instance.
+         */
+        @NonNull
+        public String getInstance() {
+            return instance;
+        }
+
+        /**
+         * @return Host name of the target, with a trailing dot.
+         */
+        @NonNull
+        public String getTarget() {
+            return target;
+        }
+
+        public int getPort() {
+            return port;
+        }
+
+        public int getPriority() {
+            return priority;
+        }
+
+        public int getWeight() {
+            return weight;
+        }
+
+        /**
+         * @return Average connect latency in nanoseconds, or 0 if none was reported.
+         */
+        public long getLatency() {
+            return (long) latency;
+        }
+
+        /**
+         * @return true if the endpoint was removed from the balancer.
+         */
+        public boolean isLost() {
+            return lost;
+        }
+
+        @Override
+        public String toString() {
+            return "Endpoint{" +
+                    "instance='" + instance + '\'' +
+                    ", target='" + target + '\'' +
+                    ", port=" + port +
+                    ", priority=" + priority +
+                    ", weight=" + weight +
+                    ", latency=" + getLatency() +
+                    ", lost=" + lost +
+                    '}';
+        }
+    }
+}
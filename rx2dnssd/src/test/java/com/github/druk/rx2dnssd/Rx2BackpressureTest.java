@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2016 Andriy Druk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.druk.rx2dnssd;
+
+import org.junit.Test;
+
+import io.reactivex.Flowable;
+import io.reactivex.processors.PublishProcessor;
+import io.reactivex.subscribers.TestSubscriber;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class Rx2BackpressureTest {
+
+    PublishProcessor<String> source = PublishProcessor.create();
+
+    @Test
+    public void test_bounded() {
+        Rx2Backpressure<String> backpressure = Rx2Backpressure.bounded(2);
+        TestSubscriber<String> subscriber = source.compose(backpressure).test(0);
+        emit("a", "b", "c", "d");
+        subscriber.requestMore(10);
+        subscriber.assertValues("a", "d");
+        assertEquals(2, backpressure.getDropped());
+    }
+
+    @Test
+    public void test_drop_oldest() {
+        Rx2Backpressure<String> backpressure = Rx2Backpressure.dropOldest(2);
+        TestSubscriber<String> subscriber = source.compose(backpressure).test(0);
+        emit("a", "b", "c", "d");
+        subscriber.requestMore(10);
+        subscriber.assertValues("c", "d");
+        assertEquals(2, backpressure.getDropped());
+    }
+
+    @Test
+    public void test_latest_per_key() {
+        Rx2Backpressure<String> backpressure = Rx2Backpressure.latestPerKey(s -> s.charAt(0));
+        TestSubscriber<String> subscriber = source.compose(backpressure).test(1);
+        emit("a1", "b1", "a2", "c1", "b2", "a3");
+        subscriber.assertValues("a1");
+        assertEquals(2, backpressure.getDropped());
+
+        subscriber.requestMore(2);
+        subscriber.assertValues("a1", "b2", "a3");
+        source.onComplete();
+        subscriber.assertNotComplete();
+        subscriber.requestMore(1);
+        subscriber.assertValues("a1", "b2", "a3", "c1").assertComplete();
+    }
+
+    @Test
+    public void test_latest_per_service() {
+        BonjourService found = new BonjourService.Builder(0, 0, "name", "_http._tcp", "local.").build();
+        BonjourService lost = new BonjourService.Builder(BonjourService.LOST, 0, "name", "_http._tcp", "local.").build();
+        BonjourService other = new BonjourService.Builder(0, 0, "other", "_http._tcp", "local.").build();
+        TestSubscriber<BonjourService> subscriber = Flowable.just(found, other, lost).compose(Rx2Backpressure.latestPerService()).test(0);
+        subscriber.requestMore(2);
+        subscriber.assertValues(lost, other).assertComplete();
+        assertTrue(subscriber.values().get(0).isLost());
+    }
+
+    @Test
+    public void test_latest_per_key_error() {
+        TestSubscriber<String> subscriber = source.compose(Rx2Backpressure.<String>latestPerKey(s -> s)).test(0);
+        emit("a");
+        source.onError(new RuntimeException());
+        subscriber.assertNoValues().assertError(RuntimeException.class);
+    }
+
+    @Test
+    public void test_latest_per_key_cancel() {
+        TestSubscriber<String> subscriber = source.compose(Rx2Backpressure.<String>latestPerKey(s -> s)).test(0);
+        emit("a");
+        subscriber.dispose();
+        assertTrue(!source.hasSubscribers());
+    }
+
+    private void emit(String... values) {
+        for (String value : values) {
+            source.onNext(value);
+        }
+    }
+}
@@ -16,12 +16,18 @@
 package com.github.druk.rx2dnssd;
 
 import com.github.druk.dnssd.BrowseListener;
+import com.github.druk.dnssd.DNSRecord;
 import com.github.druk.dnssd.DNSSD;
 import com.github.druk.dnssd.DNSSDException;
+import com.github.druk.dnssd.DNSSDQueryGroup;
+import com.github.druk.dnssd.DNSSDRegistration;
 import com.github.druk.dnssd.DNSSDService;
 import com.github.druk.dnssd.NSType;
 import com.github.druk.dnssd.QueryListener;
+import com.github.druk.dnssd.RData;
+import com.github.druk.dnssd.RegisterListener;
 import com.github.druk.dnssd.ResolveListener;
+import com.github.druk.dnssd.TXTRecord;
 
 import org.junit.After;
 import org.junit.Before;
@@ -35,19 +41,29 @@ import java.net.Inet4Address;
 import java.net.Inet6Address;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import io.reactivex.Flowable;
 import io.reactivex.android.plugins.RxAndroidPlugins;
+import io.reactivex.processors.PublishProcessor;
 import io.reactivex.schedulers.Schedulers;
+import io.reactivex.schedulers.TestScheduler;
 import io.reactivex.subscribers.TestSubscriber;
 
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
 import static junit.framework.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -114,6 +130,26 @@ public class Rx2DnssdTest {
         verify(mockService).stop();
     }
 
+    @Test
+    public void test_browse_backpressure() throws Exception {
+        when(mockDNSSD.browse(anyInt(), anyInt(), anyString(), anyString(), any(BrowseListener.class))).thenReturn(mockService);
+        Rx2Backpressure<BonjourService> backpressure = Rx2Backpressure.latestPerService();
+        TestSubscriber<BonjourService> testSubscriber = rxDnssd.browse(REG_TYPE_STRING, DOMAIN_STRING, backpressure).test(0);
+
+        ArgumentCaptor<BrowseListener> propertiesCaptor = ArgumentCaptor.forClass(BrowseListener.class);
+        verify(mockDNSSD).browse(anyInt(), anyInt(), anyString(), anyString(), propertiesCaptor.capture());
+        for (int i = 0; i < 100; i++) {
+            propertiesCaptor.getValue().serviceFound(mockService, FLAGS, IF_INDEX, SERVICE_NAME, REG_TYPE, DOMAIN);
+            propertiesCaptor.getValue().serviceLost(mockService, FLAGS, IF_INDEX, SERVICE_NAME, REG_TYPE, DOMAIN);
+        }
+        assertEquals(199, backpressure.getDropped());
+        testSubscriber.requestMore(10);
+        assertServices(testSubscriber, lostBonjourService);
+        testSubscriber.assertValueCount(1);
+        testSubscriber.dispose();
+        verify(mockService).stop();
+    }
+
     @Test
     public void test_browse_found() throws Exception {
         when(mockDNSSD.browse(anyInt(), anyInt(), anyString(), anyString(), any(BrowseListener.class))).thenReturn(mockService);
@@ -297,6 +333,302 @@ public class Rx2DnssdTest {
         testSubscriber.assertComplete();
     }
 
+    @Test
+    public void test_query_record_srv() throws DNSSDException {
+        when(mockDNSSD.queryRecord(anyInt(), anyInt(), anyString(), anyInt(), anyInt(), any(Boolean.class), any(QueryListener.class)))
+                .thenReturn(mockService);
+        ArgumentCaptor<QueryListener> listenerCaptor = ArgumentCaptor.forClass(QueryListener.class);
+        TestSubscriber<String> testSubscriber = rxDnssd.<RData.SRV, String>queryRecord(IF_INDEX, "s._http._tcp.local.", NSType.SRV,
+                (srv, flags, ifIndex, ttl) -> (flags & DNSSD.ADD) != 0 ? srv.getTarget() + ":" + srv.getPort() : null).test();
+        verify(mockDNSSD).queryRecord(eq(0), eq(IF_INDEX), eq("s._http._tcp.local."), eq(NSType.SRV), eq(1), eq(false), listenerCaptor.capture());
+        byte[] rdata = {0, 0, 0, 0, 0x1F, (byte) 0x90, 4, 'h', 'o', 's', 't', 5, 'l', 'o', 'c', 'a', 'l', 0};
+        listenerCaptor.getValue().queryAnswered(mockService, DNSSD.ADD, IF_INDEX, "s._http._tcp.local.", NSType.SRV, 1, rdata, 120);
+        listenerCaptor.getValue().queryAnswered(mockService, 0, IF_INDEX, "s._http._tcp.local.", NSType.SRV, 1, rdata, 0);
+        testSubscriber.assertValues("host.local.:8080");
+        listenerCaptor.getValue().queryAnswered(mockService, DNSSD.ADD, IF_INDEX, "s._http._tcp.local.", NSType.SRV, 1, new byte[]{0}, 120);
+        testSubscriber.assertError(IllegalArgumentException.class);
+        verify(mockService).stop();
+    }
+
+    @Test
+    public void test_watch() throws Exception {
+        DNSSDQueryGroup mockGroup = mock(DNSSDQueryGroup.class);
+        when(mockDNSSD.createQueryGroup()).thenReturn(mockGroup);
+        when(mockGroup.queryRecord(anyInt(), anyInt(), anyString(), anyInt(), anyInt(), any(QueryListener.class))).thenReturn(mockService);
+        BonjourService service = new BonjourService.Builder(FLAGS, IF_INDEX, SERVICE_NAME, "_http._tcp", DOMAIN).build();
+        TestSubscriber<BonjourService> testSubscriber = rxDnssd.watch(service).test();
+
+        ArgumentCaptor<QueryListener> listenerCaptor = ArgumentCaptor.forClass(QueryListener.class);
+        verify(mockGroup).queryRecord(eq(0), eq(IF_INDEX), eq("serviceName._http._tcp.domain."), eq(NSType.SRV), eq(1), listenerCaptor.capture());
+        verify(mockGroup).queryRecord(eq(0), eq(IF_INDEX), eq("serviceName._http._tcp.domain."), eq(NSType.TXT), eq(1), any(QueryListener.class));
+        QueryListener listener = listenerCaptor.getValue();
+        byte[] txt = {5, 'a', '=', 'o', 'n', 'e'};
+        byte[] newTxt = {5, 'a', '=', 't', 'w', 'o'};
+        byte[] srv = {0, 0, 0, 0, 0x1F, (byte) 0x90, 4, 'h', 'o', 's', 't', 0};
+        byte[] address = {10, 0, 0, 1};
+
+        listener.queryAnswered(mockService, DNSSD.ADD, IF_INDEX, "", NSType.TXT, 1, txt, 120);
+        testSubscriber.assertNoValues();
+        listener.queryAnswered(mockService, DNSSD.ADD, IF_INDEX, "", NSType.SRV, 1, srv, 120);
+        verify(mockGroup).queryRecord(eq(0), eq(IF_INDEX), eq("host."), eq(NSType.A), eq(1), any(QueryListener.class));
+        verify(mockGroup).queryRecord(eq(0), eq(IF_INDEX), eq("host."), eq(NSType.AAAA), eq(1), any(QueryListener.class));
+        listener.queryAnswered(mockService, DNSSD.ADD, IF_INDEX, "", NSType.SRV, 1, srv, 120);
+        listener.queryAnswered(mockService, DNSSD.ADD, IF_INDEX, "", NSType.A, 1, address, 120);
+        listener.queryAnswered(mockService, DNSSD.ADD, IF_INDEX, "", NSType.A, 1, address, 120);
+        listener.queryAnswered(mockService, DNSSD.ADD, IF_INDEX, "", NSType.TXT, 1, newTxt, 120);
+        listener.queryAnswered(mockService, 0, IF_INDEX, "", NSType.TXT, 1, txt, 0);
+        listener.queryAnswered(mockService, 0, IF_INDEX, "", NSType.A, 1, address, 0);
+        listener.queryAnswered(mockService, 0, IF_INDEX, "", NSType.SRV, 1, srv, 0);
+
+        testSubscriber.assertValueCount(5);
+        BonjourService resolved = testSubscriber.values().get(0);
+        assertEquals("host.", resolved.getHostname());
+        assertEquals(8080, resolved.getPort());
+        assertEquals("one", resolved.getTxtRecords().get("a"));
+        assertTrue(resolved.getInetAddresses().isEmpty());
+        assertEquals(InetAddress.getByAddress(address), testSubscriber.values().get(1).getInet4Address());
+        assertEquals("two", testSubscriber.values().get(2).getTxtRecords().get("a"));
+        assertTrue(testSubscriber.values().get(3).getInetAddresses().isEmpty());
+        assertTrue(testSubscriber.values().get(4).isLost());
+        verify(mockService, times(2)).stop();
+
+        testSubscriber.dispose();
+        verify(mockGroup).stop();
+    }
+
+    @Test
+    public void test_watch_ignores_previous_target_addresses() throws Exception {
+        DNSSDQueryGroup mockGroup = mock(DNSSDQueryGroup.class);
+        DNSSDService oldInet4Query = mock(DNSSDService.class);
+        DNSSDService newInet4Query = mock(DNSSDService.class);
+        when(mockDNSSD.createQueryGroup()).thenReturn(mockGroup);
+        when(mockGroup.queryRecord(anyInt(), anyInt(), anyString(), anyInt(), anyInt(), any(QueryListener.class)))
+                .thenReturn(mockService, mockService, oldInet4Query, mockService, newInet4Query, mockService);
+        BonjourService service = new BonjourService.Builder(FLAGS, IF_INDEX, SERVICE_NAME, "_http._tcp", DOMAIN).build();
+        TestSubscriber<BonjourService> testSubscriber = rxDnssd.watch(service).test();
+
+        ArgumentCaptor<QueryListener> listenerCaptor = ArgumentCaptor.forClass(QueryListener.class);
+        verify(mockGroup).queryRecord(eq(0), eq(IF_INDEX), eq("serviceName._http._tcp.domain."), eq(NSType.SRV), eq(1), listenerCaptor.capture());
+        QueryListener listener = listenerCaptor.getValue();
+        byte[] srv = {0, 0, 0, 0, 0x1F, (byte) 0x90, 4, 'h', 'o', 's', 't', 0};
+        byte[] newSrv = {0, 0, 0, 0, 0x1F, (byte) 0x90, 5, 'o', 't', 'h', 'e', 'r', 0};
+        byte[] address = {10, 0, 0, 1};
+
+        listener.queryAnswered(mockService, DNSSD.ADD, IF_INDEX, "", NSType.SRV, 1, srv, 120);
+        listener.queryAnswered(mockService, DNSSD.ADD, IF_INDEX, "", NSType.SRV, 1, newSrv, 120);
+        verify(oldInet4Query).stop();
+        listener.queryAnswered(oldInet4Query, DNSSD.ADD, IF_INDEX, "", NSType.A, 1, address, 120);
+        testSubscriber.assertValueCount(2);
+        listener.queryAnswered(newInet4Query, DNSSD.ADD, IF_INDEX, "", NSType.A, 1, address, 120);
+        testSubscriber.assertValueCount(3);
+        assertEquals("other.", testSubscriber.values().get(2).getHostname());
+        assertEquals(InetAddress.getByAddress(address), testSubscriber.values().get(2).getInet4Address());
+        testSubscriber.dispose();
+    }
+
+    @Test
+    public void test_resolve_scheduled() throws DNSSDException {
+        when(mockDNSSD.resolve(anyInt(), anyInt(), anyString(), anyString(), anyString(), any(ResolveListener.class))).thenReturn(mockService);
+        Rx2ResolveScheduler scheduler = new Rx2ResolveScheduler(1);
+        BonjourService other = new BonjourService.Builder(FLAGS, IF_INDEX, "other", REG_TYPE, DOMAIN).build();
+        BonjourService third = new BonjourService.Builder(FLAGS, IF_INDEX, "third", REG_TYPE, DOMAIN).build();
+        PublishProcessor<BonjourService> browse = PublishProcessor.create();
+        TestSubscriber<BonjourService> testSubscriber = browse.compose(rxDnssd.resolve(scheduler)).test();
+        browse.onNext(bonjourService);
+        browse.onNext(other);
+        browse.onNext(third);
+        assertEquals(2, scheduler.getQueued());
+
+        browse.onNext(new BonjourService.Builder(BonjourService.LOST, IF_INDEX, "other", REG_TYPE, DOMAIN).build());
+        assertEquals(1, scheduler.getQueued());
+        ArgumentCaptor<ResolveListener> captor = ArgumentCaptor.forClass(ResolveListener.class);
+        verify(mockDNSSD).resolve(eq(FLAGS), eq(IF_INDEX), eq(SERVICE_NAME), eq(REG_TYPE), eq(DOMAIN), captor.capture());
+        captor.getValue().serviceResolved(mockService, FLAGS, IF_INDEX, SERVICE_NAME, HOSTNAME, PORT, new HashMap<>(0));
+        verify(mockService).stop();
+
+        verify(mockDNSSD, never()).resolve(anyInt(), anyInt(), eq("other"), anyString(), anyString(), any(ResolveListener.class));
+        verify(mockDNSSD).resolve(eq(FLAGS), eq(IF_INDEX), eq("third"), eq(REG_TYPE), eq(DOMAIN), any(ResolveListener.class));
+        assertEquals(1, scheduler.getInFlight());
+        testSubscriber.assertValueCount(2);
+        assertTrue(testSubscriber.values().get(0).isLost());
+        assertEquals(HOSTNAME, testSubscriber.values().get(1).getHostname());
+
+        testSubscriber.dispose();
+        verify(mockService, times(2)).stop();
+        assertEquals(0, scheduler.getInFlight());
+    }
+
+    @Test
+    public void test_resolve_scheduled_many_instances() throws DNSSDException {
+        when(mockDNSSD.resolve(anyInt(), anyInt(), anyString(), anyString(), anyString(), any(ResolveListener.class))).thenReturn(mockService);
+        int count = 200;
+        Rx2ResolveScheduler scheduler = new Rx2ResolveScheduler(count);
+        PublishProcessor<BonjourService> browse = PublishProcessor.create();
+        TestSubscriber<BonjourService> testSubscriber = browse.compose(rxDnssd.resolve(scheduler)).test();
+        for (int i = 0; i < count; i++) {
+            browse.onNext(new BonjourService.Builder(FLAGS, IF_INDEX, "instance" + i, REG_TYPE, DOMAIN).build());
+        }
+        verify(mockDNSSD, times(count)).resolve(anyInt(), anyInt(), anyString(), anyString(), anyString(), any(ResolveListener.class));
+        assertEquals(count, scheduler.getInFlight());
+
+        for (int i = 0; i < count; i++) {
+            browse.onNext(new BonjourService.Builder(BonjourService.LOST, IF_INDEX, "instance" + i, REG_TYPE, DOMAIN).build());
+        }
+        verify(mockService, times(count)).stop();
+        assertEquals(0, scheduler.getInFlight());
+        testSubscriber.assertValueCount(count);
+
+        // Instances found again after they were lost are resolved again
+        for (int i = 0; i < count; i++) {
+            browse.onNext(new BonjourService.Builder(FLAGS, IF_INDEX, "instance" + i, REG_TYPE, DOMAIN).build());
+        }
+        verify(mockDNSSD, times(2 * count)).resolve(anyInt(), anyInt(), anyString(), anyString(), anyString(), any(ResolveListener.class));
+        testSubscriber.dispose();
+    }
+
+    @Test
+    public void test_discover() throws Exception {
+        DNSSDService mockQuery = mock(DNSSDService.class);
+        when(mockDNSSD.browse(anyInt(), anyInt(), anyString(), anyString(), any(BrowseListener.class))).thenReturn(mockService);
+        when(mockDNSSD.resolve(anyInt(), anyInt(), anyString(), anyString(), anyString(), any(ResolveListener.class))).thenReturn(mockService);
+        when(mockDNSSD.queryRecord(anyInt(), anyInt(), anyString(), anyInt(), anyInt(), any(Boolean.class), any(QueryListener.class)))
+                .thenReturn(mockQuery);
+        TestScheduler scheduler = new TestScheduler();
+        TestSubscriber<BonjourService> testSubscriber = rxDnssd.discover(REG_TYPE, DOMAIN, 100, TimeUnit.MILLISECONDS, scheduler).test();
+
+        ArgumentCaptor<BrowseListener> browseCaptor = ArgumentCaptor.forClass(BrowseListener.class);
+        verify(mockDNSSD).browse(eq(0), eq(DNSSD.ALL_INTERFACES), eq(REG_TYPE), eq(DOMAIN), browseCaptor.capture());
+        BrowseListener browseListener = browseCaptor.getValue();
+        browseListener.serviceFound(mockService, FLAGS, IF_INDEX, SERVICE_NAME, REG_TYPE, DOMAIN);
+        browseListener.serviceFound(mockService, FLAGS, IF_INDEX, SERVICE_NAME, REG_TYPE, DOMAIN);
+
+        ArgumentCaptor<ResolveListener> resolveCaptor = ArgumentCaptor.forClass(ResolveListener.class);
+        verify(mockDNSSD).resolve(eq(FLAGS), eq(IF_INDEX), eq(SERVICE_NAME), eq(REG_TYPE), eq(DOMAIN), resolveCaptor.capture());
+        resolveCaptor.getValue().serviceResolved(mockService, FLAGS, IF_INDEX, SERVICE_NAME, HOSTNAME, PORT, new HashMap<>(0));
+        testSubscriber.assertNoValues();
+
+        ArgumentCaptor<QueryListener> queryCaptor = ArgumentCaptor.forClass(QueryListener.class);
+        verify(mockDNSSD).queryRecord(eq(0), eq(IF_INDEX), eq(HOSTNAME), eq(NSType.A), eq(1), eq(false), queryCaptor.capture());
+        verify(mockDNSSD).queryRecord(eq(0), eq(IF_INDEX), eq(HOSTNAME), eq(NSType.AAAA), eq(1), eq(false), any(QueryListener.class));
+        QueryListener queryListener = queryCaptor.getValue();
+        queryListener.queryAnswered(mockQuery, DNSSD.ADD, IF_INDEX, HOSTNAME, NSType.A, 1, inet4Address.getAddress(), 120);
+        scheduler.advanceTimeBy(99, TimeUnit.MILLISECONDS);
+        testSubscriber.assertNoValues();
+        queryListener.queryAnswered(mockQuery, DNSSD.ADD, IF_INDEX, HOSTNAME, NSType.AAAA, 1, inet6Address.getAddress(), 120);
+        assertServices(testSubscriber, resolvedBonjourServiceWithBothIp);
+        verify(mockQuery, times(2)).stop();
+        scheduler.advanceTimeBy(DNSSD.DNSSD_DEFAULT_TIMEOUT, TimeUnit.MILLISECONDS);
+        testSubscriber.assertValueCount(1);
+
+        browseListener.serviceLost(mockService, FLAGS, IF_INDEX, SERVICE_NAME, REG_TYPE, DOMAIN);
+        browseListener.serviceFound(mockService, FLAGS, IF_INDEX, SERVICE_NAME, REG_TYPE, DOMAIN);
+        verify(mockDNSSD, times(2)).resolve(eq(FLAGS), eq(IF_INDEX), eq(SERVICE_NAME), eq(REG_TYPE), eq(DOMAIN), resolveCaptor.capture());
+        resolveCaptor.getValue().serviceResolved(mockService, FLAGS, IF_INDEX, SERVICE_NAME, HOSTNAME, PORT, new HashMap<>(0));
+        verify(mockDNSSD, times(2)).queryRecord(eq(0), eq(IF_INDEX), eq(HOSTNAME), eq(NSType.A), eq(1), eq(false), queryCaptor.capture());
+        queryCaptor.getValue().queryAnswered(mockQuery, DNSSD.ADD, IF_INDEX, HOSTNAME, NSType.A, 1, inet4Address.getAddress(), 120);
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        assertServices(testSubscriber, resolvedBonjourServiceWithBothIp, lostBonjourService, resolvedBonjourServiceWithIpv4);
+        verify(mockQuery, times(4)).stop();
+
+        browseListener.serviceFound(mockService, FLAGS, IF_INDEX, "other", REG_TYPE, DOMAIN);
+        testSubscriber.dispose();
+        verify(mockService, times(2)).stop();
+    }
+
+    @Test
+    public void test_discover_resolve_timeout() throws Exception {
+        when(mockDNSSD.browse(anyInt(), anyInt(), anyString(), anyString(), any(BrowseListener.class))).thenReturn(mockService);
+        DNSSDService firstResolver = mock(DNSSDService.class);
+        DNSSDService secondResolver = mock(DNSSDService.class);
+        when(mockDNSSD.resolve(anyInt(), anyInt(), anyString(), anyString(), anyString(), any(ResolveListener.class)))
+                .thenReturn(firstResolver, secondResolver);
+        TestScheduler scheduler = new TestScheduler();
+        TestSubscriber<BonjourService> testSubscriber = rxDnssd.discover(REG_TYPE, DOMAIN, 100, TimeUnit.MILLISECONDS, scheduler).test();
+
+        ArgumentCaptor<BrowseListener> browseCaptor = ArgumentCaptor.forClass(BrowseListener.class);
+        verify(mockDNSSD).browse(eq(0), eq(DNSSD.ALL_INTERFACES), eq(REG_TYPE), eq(DOMAIN), browseCaptor.capture());
+        BrowseListener browseListener = browseCaptor.getValue();
+        browseListener.serviceFound(mockService, FLAGS, IF_INDEX, SERVICE_NAME, REG_TYPE, DOMAIN);
+        ArgumentCaptor<ResolveListener> resolveCaptor = ArgumentCaptor.forClass(ResolveListener.class);
+        verify(mockDNSSD).resolve(eq(FLAGS), eq(IF_INDEX), eq(SERVICE_NAME), eq(REG_TYPE), eq(DOMAIN), resolveCaptor.capture());
+
+        // The resolve is started again when DNSSD gave up on it, and a late answer of the first one is ignored
+        scheduler.advanceTimeBy(DNSSD.DNSSD_DEFAULT_TIMEOUT, TimeUnit.MILLISECONDS);
+        verify(firstResolver).stop();
+        verify(mockDNSSD, times(2)).resolve(eq(FLAGS), eq(IF_INDEX), eq(SERVICE_NAME), eq(REG_TYPE), eq(DOMAIN), any(ResolveListener.class));
+        resolveCaptor.getValue().serviceResolved(firstResolver, FLAGS, IF_INDEX, SERVICE_NAME, HOSTNAME, PORT, new HashMap<>(0));
+        verify(mockDNSSD, never()).queryRecord(anyInt(), anyInt(), anyString(), anyInt(), anyInt(), any(Boolean.class), any(QueryListener.class));
+
+        // An instance that was never emitted isn't reported lost
+        browseListener.serviceLost(mockService, FLAGS, IF_INDEX, SERVICE_NAME, REG_TYPE, DOMAIN);
+        verify(secondResolver).stop();
+        testSubscriber.assertNoValues();
+        scheduler.advanceTimeBy(DNSSD.DNSSD_DEFAULT_TIMEOUT, TimeUnit.MILLISECONDS);
+        verify(mockDNSSD, times(2)).resolve(anyInt(), anyInt(), anyString(), anyString(), anyString(), any(ResolveListener.class));
+        testSubscriber.dispose();
+    }
+
+    @Test
+    public void test_balance() throws DNSSDException {
+        when(mockDNSSD.queryRecord(anyInt(), anyInt(), anyString(), anyInt(), anyInt(), any(Boolean.class), any(QueryListener.class)))
+                .thenReturn(mockService);
+        Rx2SrvBalancer balancer = new Rx2SrvBalancer();
+        String fullName = "serviceName.regType.domain.";
+        BonjourService service = new BonjourService.Builder(FLAGS, IF_INDEX, SERVICE_NAME, "_http._tcp", DOMAIN).build();
+        BonjourService lostService = new BonjourService.Builder(BonjourService.LOST, IF_INDEX, SERVICE_NAME, "_http._tcp", DOMAIN).build();
+        TestSubscriber<Rx2SrvBalancer.Endpoint> testSubscriber = Flowable.just(service).concatWith(Flowable.never())
+                .compose(rxDnssd.balance(balancer)).test();
+
+        ArgumentCaptor<QueryListener> listenerCaptor = ArgumentCaptor.forClass(QueryListener.class);
+        verify(mockDNSSD).queryRecord(eq(0), eq(IF_INDEX), eq("serviceName._http._tcp.domain."), eq(NSType.SRV), eq(1), eq(false),
+                listenerCaptor.capture());
+        byte[] rdata = {0, 0, 0, 0, 0x1F, (byte) 0x90, 4, 'h', 'o', 's', 't', 0};
+        listenerCaptor.getValue().queryAnswered(mockService, DNSSD.ADD, IF_INDEX, fullName, NSType.SRV, 1, rdata, 120);
+        Rx2SrvBalancer.Endpoint endpoint = balancer.pick();
+        assertEquals("host.", endpoint.getTarget());
+        assertEquals(8080, endpoint.getPort());
+        testSubscriber.assertValues(endpoint);
+        testSubscriber.dispose();
+        verify(mockService).stop();
+
+        Flowable.just(service, lostService).compose(rxDnssd.balance(balancer)).test().assertValues(endpoint);
+        assertTrue(endpoint.isLost());
+        assertNull(balancer.pick());
+    }
+
+    @Test
+    public void test_balance_many_instances() throws DNSSDException {
+        when(mockDNSSD.queryRecord(anyInt(), anyInt(), anyString(), anyInt(), anyInt(), any(Boolean.class), any(QueryListener.class)))
+                .thenReturn(mockService);
+        int count = 200;
+        Rx2SrvBalancer balancer = new Rx2SrvBalancer();
+        PublishProcessor<BonjourService> browse = PublishProcessor.create();
+        TestSubscriber<Rx2SrvBalancer.Endpoint> testSubscriber = browse.compose(rxDnssd.balance(balancer)).test();
+        for (int i = 0; i < count; i++) {
+            browse.onNext(new BonjourService.Builder(FLAGS, IF_INDEX, "instance" + i, "_http._tcp", DOMAIN).build());
+        }
+        verify(mockDNSSD, times(count)).queryRecord(eq(0), eq(IF_INDEX), anyString(), eq(NSType.SRV), eq(1), eq(false), any(QueryListener.class));
+
+        for (int i = 0; i < count; i++) {
+            browse.onNext(new BonjourService.Builder(BonjourService.LOST, IF_INDEX, "instance" + i, "_http._tcp", DOMAIN).build());
+        }
+        verify(mockService, times(count)).stop();
+
+        // Instances found again after they were lost are queried again
+        browse.onNext(new BonjourService.Builder(FLAGS, IF_INDEX, "instance0", "_http._tcp", DOMAIN).build());
+        verify(mockDNSSD, times(2)).queryRecord(eq(0), eq(IF_INDEX), eq("instance0._http._tcp.domain."), eq(NSType.SRV), eq(1), eq(false),
+                any(QueryListener.class));
+        testSubscriber.assertNoValues();
+        testSubscriber.dispose();
+    }
+
+    @Test
+    public void test_query_record_unsupported_type() throws DNSSDException {
+        rxDnssd.queryRecord(IF_INDEX, HOSTNAME, NSType.MX, (rdata, flags, ifIndex, ttl) -> rdata).test()
+                .assertError(IllegalArgumentException.class);
+        verify(mockDNSSD, never()).queryRecord(anyInt(), anyInt(), anyString(), anyInt(), anyInt(), any(Boolean.class), any(QueryListener.class));
+    }
+
     @Test
     public void test_query_ipv4_records_successfully() throws DNSSDException, UnknownHostException {
         when(mockDNSSD.queryRecord(anyInt(), anyInt(), anyString(), eq(1), eq(1), any(QueryListener.class))).thenReturn(mockService);
@@ -603,6 +935,95 @@ public class Rx2DnssdTest {
         testSubscriber.assertNoErrors();
     }
 
+    @Test
+    public void test_registration_coalesces_txt_updates() throws DNSSDException {
+        DNSSDRegistration mockRegistration = mock(DNSSDRegistration.class);
+        DNSRecord mockRecord = mock(DNSRecord.class);
+        when(mockRegistration.getTXTRecord()).thenReturn(mockRecord);
+        when(mockDNSSD.register(anyInt(), anyInt(), anyString(), anyString(), anyString(), any(), anyInt(), any(TXTRecord.class),
+                any(RegisterListener.class))).thenReturn(mockRegistration);
+        TestScheduler scheduler = new TestScheduler();
+
+        TestSubscriber<Rx2Registration> testSubscriber = rxDnssd.registration(resolvedBonjourService, 1, TimeUnit.SECONDS, scheduler).test();
+        ArgumentCaptor<RegisterListener> propertiesCaptor = ArgumentCaptor.forClass(RegisterListener.class);
+        verify(mockDNSSD).register(anyInt(), anyInt(), anyString(), anyString(), anyString(), any(), eq(PORT), any(TXTRecord.class),
+                propertiesCaptor.capture());
+        propertiesCaptor.getValue().serviceRegistered(mockRegistration, FLAGS, SERVICE_NAME, REG_TYPE, DOMAIN);
+        testSubscriber.assertValueCount(1);
+        Rx2Registration registration = testSubscriber.values().get(0);
+
+        registration.putTxtRecord("status", "busy");
+        registration.putTxtRecord("status", "idle");
+        registration.putTxtRecord("load", "1");
+        scheduler.advanceTimeBy(999, TimeUnit.MILLISECONDS);
+        verify(mockRecord, never()).update(anyInt(), any(byte[].class), anyInt());
+
+        scheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        Map<String, String> txt = new HashMap<>();
+        txt.put("status", "idle");
+        txt.put("load", "1");
+        ArgumentCaptor<byte[]> rDataCaptor = ArgumentCaptor.forClass(byte[].class);
+        verify(mockRecord).update(eq(0), rDataCaptor.capture(), eq(0));
+        TXTRecord published = new TXTRecord(rDataCaptor.getValue());
+        if (published.size() != 2 || !"idle".equals(published.getValueAsString("status"))) fail();
+        if (!registration.getService().getTxtRecords().equals(txt)) fail();
+
+        registration.updateTxtRecords(txt);
+        scheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+        verify(mockRecord, times(1)).update(anyInt(), any(byte[].class), anyInt());
+        if (registration.getUpdateCount() != 1) fail();
+    }
+
+    @Test
+    public void test_registration_unsubscribe_drops_pending_update() throws DNSSDException {
+        DNSSDRegistration mockRegistration = mock(DNSSDRegistration.class);
+        DNSRecord mockRecord = mock(DNSRecord.class);
+        when(mockRegistration.getTXTRecord()).thenReturn(mockRecord);
+        when(mockDNSSD.register(anyInt(), anyInt(), anyString(), anyString(), anyString(), any(), anyInt(), any(TXTRecord.class),
+                any(RegisterListener.class))).thenReturn(mockRegistration);
+        TestScheduler scheduler = new TestScheduler();
+
+        TestSubscriber<Rx2Registration> testSubscriber = rxDnssd.registration(resolvedBonjourService, 1, TimeUnit.SECONDS, scheduler).test();
+        ArgumentCaptor<RegisterListener> propertiesCaptor = ArgumentCaptor.forClass(RegisterListener.class);
+        verify(mockDNSSD).register(anyInt(), anyInt(), anyString(), anyString(), anyString(), any(), eq(PORT), any(TXTRecord.class),
+                propertiesCaptor.capture());
+        propertiesCaptor.getValue().serviceRegistered(mockRegistration, FLAGS, SERVICE_NAME, REG_TYPE, DOMAIN);
+        Rx2Registration registration = testSubscriber.values().get(0);
+
+        registration.updateTxtRecords(Collections.singletonMap("status", "busy"));
+        testSubscriber.dispose();
+        scheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+        verify(mockRegistration).stop();
+        verify(mockRecord, never()).update(anyInt(), any(byte[].class), anyInt());
+    }
+
+    @Test
+    public void test_registration_update_failure() throws DNSSDException {
+        DNSSDRegistration mockRegistration = mock(DNSSDRegistration.class);
+        DNSRecord mockRecord = mock(DNSRecord.class);
+        when(mockRegistration.getTXTRecord()).thenReturn(mockRecord);
+        doThrow(new DNSSDException() {
+            @Override
+            public int getErrorCode() {
+                return UNSUPPORTED;
+            }
+        }).when(mockRecord).update(anyInt(), any(byte[].class), anyInt());
+        when(mockDNSSD.register(anyInt(), anyInt(), anyString(), anyString(), anyString(), any(), anyInt(), any(TXTRecord.class),
+                any(RegisterListener.class))).thenReturn(mockRegistration);
+        TestScheduler scheduler = new TestScheduler();
+
+        TestSubscriber<Rx2Registration> testSubscriber = rxDnssd.registration(resolvedBonjourService, 1, TimeUnit.SECONDS, scheduler).test();
+        ArgumentCaptor<RegisterListener> propertiesCaptor = ArgumentCaptor.forClass(RegisterListener.class);
+        verify(mockDNSSD).register(anyInt(), anyInt(), anyString(), anyString(), anyString(), any(), eq(PORT), any(TXTRecord.class),
+                propertiesCaptor.capture());
+        propertiesCaptor.getValue().serviceRegistered(mockRegistration, FLAGS, SERVICE_NAME, REG_TYPE, DOMAIN);
+
+        testSubscriber.values().get(0).putTxtRecord("status", "busy");
+        scheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+        testSubscriber.assertError(DNSSDException.class);
+        verify(mockRegistration).stop();
+    }
+
     @After
     public void tearDown() {
         RxAndroidPlugins.reset();
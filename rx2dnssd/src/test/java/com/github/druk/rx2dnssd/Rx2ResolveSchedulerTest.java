@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2016 Andriy Druk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.druk.rx2dnssd;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Flowable;
+import io.reactivex.processors.PublishProcessor;
+import io.reactivex.schedulers.TestScheduler;
+import io.reactivex.subscribers.TestSubscriber;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class Rx2ResolveSchedulerTest {
+
+    TestScheduler timer = new TestScheduler();
+    List<String> started = new ArrayList<>();
+
+    @Test
+    public void test_max_in_flight() {
+        Rx2ResolveScheduler scheduler = new Rx2ResolveScheduler(2, null, 1, TimeUnit.SECONDS, timer);
+        PublishProcessor<String> a = PublishProcessor.create();
+        TestSubscriber<String> subscriberA = scheduler.schedule(service("a"), source("a", a)).test();
+        scheduler.schedule(service("b"), source("b", PublishProcessor.create())).test();
+        TestSubscriber<String> subscriberC = scheduler.schedule(service("c"), source("c", Flowable.just("c"))).test();
+        assertEquals(2, scheduler.getInFlight());
+        assertEquals(1, scheduler.getQueued());
+        subscriberC.assertNoValues();
+
+        a.onNext("a");
+        a.onComplete();
+        subscriberA.assertValues("a").assertComplete();
+        subscriberC.assertValues("c").assertComplete();
+        assertEquals(1, scheduler.getInFlight());
+        assertEquals(0, scheduler.getQueued());
+
+        // A resolve without an answer gives up its slot after the timeout
+        timer.advanceTimeBy(1, TimeUnit.SECONDS);
+        assertEquals(0, scheduler.getInFlight());
+        assertEquals(3, started.size());
+    }
+
+    @Test
+    public void test_priority() {
+        Set<String> visible = new HashSet<>();
+        visible.add("c");
+        Rx2ResolveScheduler scheduler = new Rx2ResolveScheduler(1, bs -> visible.contains(bs.getServiceName()) ? 1 : 0,
+                1, TimeUnit.SECONDS, timer);
+        PublishProcessor<String> first = PublishProcessor.create();
+        scheduler.schedule(service("first"), source("first", first)).test();
+        for (String name : new String[]{"a", "b", "c", "d"}) {
+            scheduler.schedule(service(name), source(name, Flowable.<String>empty().delay(1, TimeUnit.MILLISECONDS, timer))).test();
+        }
+        visible.add("d");
+        scheduler.reprioritize();
+
+        first.onComplete();
+        for (int i = 0; i < 4; i++) {
+            timer.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        }
+        assertEquals("[first, c, d, a, b]", started.toString());
+    }
+
+    @Test
+    public void test_cancel_queued() {
+        Rx2ResolveScheduler scheduler = new Rx2ResolveScheduler(1, null, 1, TimeUnit.SECONDS, timer);
+        PublishProcessor<String> first = PublishProcessor.create();
+        scheduler.schedule(service("first"), source("first", first)).test();
+        List<TestSubscriber<String>> queued = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            queued.add(scheduler.schedule(service("queued" + i), source("queued" + i, Flowable.just("queued"))).test());
+        }
+        TestSubscriber<String> last = scheduler.schedule(service("last"), source("last", Flowable.just("last"))).test();
+        assertEquals(101, scheduler.getQueued());
+        for (TestSubscriber<String> subscriber : queued) {
+            subscriber.dispose();
+        }
+        assertEquals(1, scheduler.getQueued());
+
+        first.onComplete();
+        last.assertValues("last");
+        assertEquals("[first, last]", started.toString());
+        assertFalse(started.contains("queued0"));
+        assertTrue(queued.get(0).isCancelled());
+        assertEquals(0, scheduler.getInFlight());
+    }
+
+    private Flowable<String> source(String name, Flowable<String> source) {
+        return source.doOnSubscribe(s -> started.add(name));
+    }
+
+    private static BonjourService service(String name) {
+        return new BonjourService.Builder(0, 0, name, "_http._tcp", "local.").build();
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2016 Andriy Druk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.druk.rx2dnssd;
+
+import com.github.druk.dnssd.DNSSD;
+import com.github.druk.dnssd.NSType;
+import com.github.druk.dnssd.RData;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class Rx2SrvBalancerTest {
+
+    static final String INSTANCE_A = "a._http._tcp.local.";
+    static final String INSTANCE_B = "b._http._tcp.local.";
+    static final int PICKS = 100000;
+
+    Rx2SrvBalancer balancer = new Rx2SrvBalancer(Rx2SrvBalancer.DEFAULT_ALPHA, new Random(42));
+
+    @Test
+    public void test_empty() {
+        assertNull(balancer.pick());
+    }
+
+    @Test
+    public void test_weights_of_lowest_priority() {
+        Rx2SrvBalancer.Endpoint a = balancer.put(INSTANCE_A, "a.local.", 80, 10, 30);
+        Rx2SrvBalancer.Endpoint b = balancer.put(INSTANCE_B, "b.local.", 80, 10, 10);
+        Rx2SrvBalancer.Endpoint backup = balancer.put(INSTANCE_B, "backup.local.", 80, 20, 1000);
+        Map<Rx2SrvBalancer.Endpoint, Integer> picks = pick();
+        assertEquals(0.75, share(picks, a), 0.01);
+        assertEquals(0.25, share(picks, b), 0.01);
+        assertEquals(0, share(picks, backup), 0);
+
+        balancer.removeInstance(INSTANCE_A);
+        assertTrue(a.isLost());
+        balancer.remove(INSTANCE_B, "b.local.", 80);
+        assertSame(backup, balancer.pick());
+    }
+
+    @Test
+    public void test_latency() {
+        Rx2SrvBalancer.Endpoint fast = balancer.put(INSTANCE_A, "a.local.", 80, 0, 0);
+        Rx2SrvBalancer.Endpoint slow = balancer.put(INSTANCE_B, "b.local.", 80, 0, 0);
+        assertEquals(0.5, share(pick(), fast), 0.01);
+
+        balancer.reportLatency(fast, 10, TimeUnit.MILLISECONDS);
+        balancer.reportLatency(slow, 30, TimeUnit.MILLISECONDS);
+        assertEquals(0.75, share(pick(), fast), 0.01);
+
+        // 30 -> 24 ms is within the drift, the table is kept
+        balancer.reportLatency(slow, 10, TimeUnit.MILLISECONDS);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(24), slow.getLatency(), 1);
+        assertEquals(0.75, share(pick(), fast), 0.01);
+
+        balancer.reportLatency(slow, 10, TimeUnit.MILLISECONDS);
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(19800), slow.getLatency(), 1);
+        assertEquals(19.8 / (10 + 19.8), share(pick(), fast), 0.01);
+    }
+
+    @Test
+    public void test_srv_mapper() throws Exception {
+        Rx2RecordMapper<RData.SRV, Rx2SrvBalancer.Endpoint> mapper = balancer.srvMapper(INSTANCE_A);
+        byte[] rdata = {0, 1, 0, 5, 0x1F, (byte) 0x90, 4, 'h', 'o', 's', 't', 5, 'l', 'o', 'c', 'a', 'l', 0};
+        Rx2SrvBalancer.Endpoint endpoint = mapper.map(srv(rdata), DNSSD.ADD, 0, 120);
+        assertEquals("host.local.", endpoint.getTarget());
+        assertEquals(8080, endpoint.getPort());
+        assertEquals(1, endpoint.getPriority());
+        assertEquals(5, endpoint.getWeight());
+
+        rdata[3] = 7;
+        assertSame(endpoint, mapper.map(srv(rdata), DNSSD.ADD, 0, 120));
+        assertEquals(7, endpoint.getWeight());
+        assertSame(endpoint, balancer.pick());
+
+        assertSame(endpoint, mapper.map(srv(rdata), 0, 0, 0));
+        assertTrue(endpoint.isLost());
+        assertNull(mapper.map(srv(rdata), 0, 0, 0));
+        assertNull(balancer.pick());
+        assertFalse(balancer.getEndpoints().contains(endpoint));
+    }
+
+    private static RData.SRV srv(byte[] rdata) {
+        return ((RData.SRV) RData.forType(NSType.SRV)).wrap(rdata);
+    }
+
+    private Map<Rx2SrvBalancer.Endpoint, Integer> pick() {
+        Map<Rx2SrvBalancer.Endpoint, Integer> picks = new HashMap<>();
+        for (int i = 0; i < PICKS; i++) {
+            Rx2SrvBalancer.Endpoint endpoint = balancer.pick();
+            Integer count = picks.get(endpoint);
+            picks.put(endpoint, count == null ? 1 : count + 1);
+        }
+        return picks;
+    }
+
+    private static double share(Map<Rx2SrvBalancer.Endpoint, Integer> picks, Rx2SrvBalancer.Endpoint endpoint) {
+        Integer count = picks.get(endpoint);
+        return count == null ? 0 : (double) count / PICKS;
+    }
+}